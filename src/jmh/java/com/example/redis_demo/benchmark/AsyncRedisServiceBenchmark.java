@@ -0,0 +1,85 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.service.AsyncRedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 与 {@link PoolContentionBenchmark} 对照: 同样的 GET 走单个 Lettuce 连接
+ * <p>
+ * burst 由一个线程一次发出 {@link #BURST} 条命令再统一等待, 对应突发流量下阻塞版本需要 {@link #BURST} 个连接的场景
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncRedisServiceBenchmark {
+
+    private static final String KEY = "bench:pool";
+
+    private static final int BURST = 256;
+
+    private BenchmarkContext context;
+
+    private AsyncRedisService asyncRedisService;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new BenchmarkContext();
+        asyncRedisService = context.getBean(AsyncRedisService.class);
+        asyncRedisService.set(KEY, "value").join();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object threads1() {
+        return asyncRedisService.get(KEY).join();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object threads8() {
+        return asyncRedisService.get(KEY).join();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object threads64() {
+        return asyncRedisService.get(KEY).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public Object burst() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            futures[i] = asyncRedisService.get(KEY);
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.RedisDemoApplication;
+import com.example.redis_demo.service.RedisService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+
+/**
+ * 启动 {@link FakeRedisServer} 和指向它的 spring 上下文
+ * <p>
+ * properties 为额外的配置项(key=value); 设置 -Dbenchmark.redis.host / -Dbenchmark.redis.port 时改为连接真实的 redis-server
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BenchmarkContext implements AutoCloseable {
+
+    private final FakeRedisServer server;
+
+    private final ConfigurableApplicationContext context;
+
+    public BenchmarkContext(String... properties) throws IOException {
+        String host = System.getProperty("benchmark.redis.host");
+        int port;
+        if (host == null) {
+            server = new FakeRedisServer();
+            host = "127.0.0.1";
+            port = server.getPort();
+        } else {
+            server = null;
+            port = Integer.getInteger("benchmark.redis.port", 6379);
+        }
+        // 以命令行参数传入, 优先级高于 application.properties
+        String[] args = new String[properties.length + 3];
+        args[0] = "--redis.host=" + host;
+        args[1] = "--redis.port=" + port;
+        args[2] = "--logging.level.root=WARN";
+        for (int i = 0; i < properties.length; i++) {
+            args[i + 3] = "--" + properties[i];
+        }
+        context = new SpringApplicationBuilder(RedisDemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args);
+    }
+
+    public RedisService redisService() {
+        return context.getBean(RedisService.class);
+    }
+
+    /**
+     * @return 进程内的 redis 替身, 连接真实 redis-server 时为 null
+     */
+    public FakeRedisServer server() {
+        return server;
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        if (server != null) {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.bulk.BulkExporter;
+import com.example.redis_demo.bulk.BulkLoader;
+import com.example.redis_demo.bulk.BulkOptions;
+import com.example.redis_demo.bulk.BulkProgress;
+import com.example.redis_demo.bulk.BulkRecord;
+import com.example.redis_demo.routing.RedisRouter;
+import com.example.redis_demo.service.RedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写入 / 导出 10000 个键: 逐个 set 与批量导入(pipeline + 并行)的对比, 以及 SCAN + DUMP/PTTL 的批量导出
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkBenchmark {
+
+    private static final int KEYS = 10000;
+
+    private BenchmarkContext context;
+
+    private RedisService redisService;
+
+    private BulkLoader loader;
+
+    private BulkExporter exporter;
+
+    private List<BulkRecord> records;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new BenchmarkContext();
+        redisService = context.redisService();
+        RedisRouter router = context.getBean(RedisRouter.class);
+        BulkOptions options = new BulkOptions().setProgressIntervalMillis(Long.MAX_VALUE);
+        loader = new BulkLoader(router, options);
+        exporter = new BulkExporter(router, options);
+        records = new ArrayList<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            records.add(BulkRecord.value("bench:bulk:" + i, "value-" + i, 0));
+        }
+        // 导出需要已有的键
+        loader.load(records.iterator(), progress -> {
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public int setOneByOne() {
+        for (BulkRecord record : records) {
+            redisService.set(record.getKey(), record.getValue());
+        }
+        return records.size();
+    }
+
+    @Benchmark
+    public BulkProgress bulkLoad() {
+        return loader.load(records.iterator(), progress -> {
+        });
+    }
+
+    @Benchmark
+    public BulkProgress bulkExport() {
+        BulkProgress progress = exporter.export("bench:bulk:*", record -> {
+        }, p -> {
+        });
+        if (progress.getCompleted() != KEYS) {
+            throw new IllegalStateException("exported " + progress);
+        }
+        return progress;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.service.RedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 计数器读写: 原有的 incrBy + get(经值序列化器) 与原生数值接口的对比, 配合 -prof gc 查看每次调用的分配
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterBenchmark {
+
+    private static final String KEY = "bench:counter";
+
+    private BenchmarkContext context;
+
+    private RedisService redisService;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new BenchmarkContext();
+        redisService = context.redisService();
+        redisService.incrAndGet(KEY, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public Object incrThenGet() {
+        redisService.incrBy(KEY, 1L);
+        return redisService.get(KEY);
+    }
+
+    @Benchmark
+    public long incrAndGet() {
+        return redisService.incrAndGet(KEY, 1);
+    }
+
+    @Benchmark
+    public Object get() {
+        return redisService.get(KEY);
+    }
+
+    @Benchmark
+    public long[] mgetLongs() {
+        return redisService.mgetLongs(KEY);
+    }
+}
@@ -0,0 +1,679 @@
+package com.example.redis_demo.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 基准测试用的进程内 redis 替身
+ * <p>
+ * 实现 RESP2 协议和基准测试用到的常用命令, 命令串行执行(与 redis 单线程模型一致), 不做持久化。
+ * 只用于对比客户端一侧的开销(序列化/往返次数/连接池争用), 绝对延迟不能代表真实 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class FakeRedisServer implements Closeable {
+
+    private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] PONG = "+PONG\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] NULL_BULK = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ServerSocket serverSocket;
+
+    private final Map<String, Object> data = new HashMap<>();
+
+    private final Map<String, Long> expires = new HashMap<>();
+
+    private final List<Socket> clients = new ArrayList<>();
+
+    /**
+     * EVALSHA 的 Java 替身, 按脚本 SHA1 注册
+     */
+    private final Map<String, ScriptHandler> scripts = new HashMap<>();
+
+    private final Set<String> loadedScripts = new HashSet<>();
+
+    private volatile boolean running = true;
+
+    public FakeRedisServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "fake-redis-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * 注册脚本的替身实现; 与 redis 一样, SCRIPT LOAD 之前 EVALSHA 返回 NOSCRIPT
+     *
+     * @param sha1    脚本 SHA1
+     * @param handler 在命令执行线程中调用, 与其他命令串行
+     */
+    public void script(String sha1, ScriptHandler handler) {
+        synchronized (data) {
+            scripts.put(sha1, handler);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        synchronized (clients) {
+            for (Socket client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                synchronized (clients) {
+                    clients.add(socket);
+                }
+                Thread worker = new Thread(() -> serve(socket), "fake-redis-client");
+                worker.setDaemon(true);
+                worker.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (InputStream in = new BufferedInputStream(socket.getInputStream(), 65536);
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 65536)) {
+            while (running) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                synchronized (data) {
+                    execute(command, out);
+                }
+                // pipeline 中的后续命令已经到达时先不 flush, 合并写回
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // 客户端断开
+        }
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        if (first != '*') {
+            throw new IOException("inline commands are not supported");
+        }
+        int count = (int) readNumber(in);
+        List<byte[]> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("bulk string expected");
+            }
+            int length = (int) readNumber(in);
+            byte[] arg = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(arg, read, length - read);
+                if (n < 0) {
+                    throw new IOException("unexpected end of stream");
+                }
+                read += n;
+            }
+            in.read();
+            in.read();
+            args.add(arg);
+        }
+        return args;
+    }
+
+    private static long readNumber(InputStream in) throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == '-') {
+                negative = true;
+            } else {
+                value = value * 10 + (b - '0');
+            }
+        }
+        in.read();
+        return negative ? -value : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void execute(List<byte[]> command, OutputStream out) throws IOException {
+        String name = str(command.get(0)).toUpperCase();
+        switch (name) {
+            case "PING":
+                out.write(PONG);
+                return;
+            case "AUTH":
+            case "SELECT":
+            case "CLIENT":
+            case "QUIT":
+                out.write(OK);
+                return;
+            case "FLUSHALL":
+            case "FLUSHDB":
+                data.clear();
+                expires.clear();
+                out.write(OK);
+                return;
+            case "DBSIZE":
+                writeInteger(out, data.size());
+                return;
+            case "GET":
+                writeBulk(out, (byte[]) lookup(command.get(1)));
+                return;
+            case "SET":
+                set(command, out);
+                return;
+            case "SETEX":
+            case "PSETEX": {
+                String key = str(command.get(1));
+                long amount = Long.parseLong(str(command.get(2)));
+                data.put(key, command.get(3));
+                expires.put(key, System.currentTimeMillis() + ("SETEX".equals(name) ? amount * 1000 : amount));
+                out.write(OK);
+                return;
+            }
+            case "SETNX":
+                if (lookup(command.get(1)) != null) {
+                    writeInteger(out, 0);
+                } else {
+                    data.put(str(command.get(1)), command.get(2));
+                    writeInteger(out, 1);
+                }
+                return;
+            case "MGET": {
+                writeArrayHeader(out, command.size() - 1);
+                for (int i = 1; i < command.size(); i++) {
+                    Object value = lookup(command.get(i));
+                    writeBulk(out, value instanceof byte[] ? (byte[]) value : null);
+                }
+                return;
+            }
+            case "MSET":
+                for (int i = 1; i + 1 < command.size(); i += 2) {
+                    data.put(str(command.get(i)), command.get(i + 1));
+                    expires.remove(str(command.get(i)));
+                }
+                out.write(OK);
+                return;
+            case "DEL":
+            case "UNLINK": {
+                int removed = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    if (lookup(command.get(i)) != null) {
+                        removed++;
+                    }
+                    data.remove(str(command.get(i)));
+                    expires.remove(str(command.get(i)));
+                }
+                writeInteger(out, removed);
+                return;
+            }
+            case "DUMP": {
+                // 只支持字符串, 格式与真实 redis 不同, 只保证 RESTORE 可以还原
+                Object value = lookup(command.get(1));
+                if (value != null && !(value instanceof byte[])) {
+                    writeError(out, "ERR DUMP of non-string values is not supported");
+                    return;
+                }
+                byte[] dump = null;
+                if (value != null) {
+                    dump = new byte[((byte[]) value).length + 1];
+                    System.arraycopy(value, 0, dump, 1, dump.length - 1);
+                }
+                writeBulk(out, dump);
+                return;
+            }
+            case "RESTORE": {
+                String key = str(command.get(1));
+                boolean replace = command.size() > 4 && "REPLACE".equalsIgnoreCase(str(command.get(4)));
+                if (lookup(command.get(1)) != null && !replace) {
+                    writeError(out, "BUSYKEY Target key name already exists.");
+                    return;
+                }
+                byte[] dump = command.get(3);
+                byte[] value = new byte[dump.length - 1];
+                System.arraycopy(dump, 1, value, 0, value.length);
+                data.put(key, value);
+                long ttl = Long.parseLong(str(command.get(2)));
+                if (ttl > 0) {
+                    expires.put(key, System.currentTimeMillis() + ttl);
+                } else {
+                    expires.remove(key);
+                }
+                out.write(OK);
+                return;
+            }
+            case "EXISTS":
+                writeInteger(out, lookup(command.get(1)) == null ? 0 : 1);
+                return;
+            case "EXPIRE":
+            case "PEXPIRE": {
+                long amount = Long.parseLong(str(command.get(2)));
+                long millis = "EXPIRE".equals(name) ? amount * 1000 : amount;
+                if (lookup(command.get(1)) == null) {
+                    writeInteger(out, 0);
+                } else {
+                    expires.put(str(command.get(1)), System.currentTimeMillis() + millis);
+                    writeInteger(out, 1);
+                }
+                return;
+            }
+            case "TTL":
+            case "PTTL": {
+                String key = str(command.get(1));
+                if (lookup(command.get(1)) == null) {
+                    writeInteger(out, -2);
+                } else if (!expires.containsKey(key)) {
+                    writeInteger(out, -1);
+                } else {
+                    long millis = expires.get(key) - System.currentTimeMillis();
+                    writeInteger(out, "TTL".equals(name) ? millis / 1000 : millis);
+                }
+                return;
+            }
+            case "INCR":
+            case "INCRBY":
+            case "DECRBY": {
+                byte[] current = (byte[]) lookup(command.get(1));
+                long delta = command.size() > 2 ? Long.parseLong(str(command.get(2))) : 1;
+                long value = (current == null ? 0 : Long.parseLong(str(current))) + ("DECRBY".equals(name) ? -delta : delta);
+                data.put(str(command.get(1)), Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+                writeInteger(out, value);
+                return;
+            }
+            case "INCRBYFLOAT": {
+                byte[] current = (byte[]) lookup(command.get(1));
+                double value = (current == null ? 0 : Double.parseDouble(str(current))) + Double.parseDouble(str(command.get(2)));
+                byte[] bytes = Double.toString(value).getBytes(StandardCharsets.US_ASCII);
+                data.put(str(command.get(1)), bytes);
+                writeBulk(out, bytes);
+                return;
+            }
+            case "HGET": {
+                Map<String, byte[]> hash = (Map<String, byte[]>) lookup(command.get(1));
+                writeBulk(out, hash == null ? null : hash.get(str(command.get(2))));
+                return;
+            }
+            case "HSET":
+            case "HMSET": {
+                Map<String, byte[]> hash = (Map<String, byte[]>) data.computeIfAbsent(str(command.get(1)), k -> new LinkedHashMap<>());
+                int added = 0;
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    if (hash.put(str(command.get(i)), command.get(i + 1)) == null) {
+                        added++;
+                    }
+                }
+                if ("HMSET".equals(name)) {
+                    out.write(OK);
+                } else {
+                    writeInteger(out, added);
+                }
+                return;
+            }
+            case "HMGET": {
+                Map<String, byte[]> hash = (Map<String, byte[]>) lookup(command.get(1));
+                writeArrayHeader(out, command.size() - 2);
+                for (int i = 2; i < command.size(); i++) {
+                    writeBulk(out, hash == null ? null : hash.get(str(command.get(i))));
+                }
+                return;
+            }
+            case "HGETALL": {
+                Map<String, byte[]> hash = (Map<String, byte[]>) lookup(command.get(1));
+                if (hash == null) {
+                    writeArrayHeader(out, 0);
+                    return;
+                }
+                writeArrayHeader(out, hash.size() * 2);
+                for (Map.Entry<String, byte[]> entry : hash.entrySet()) {
+                    writeBulk(out, bytes(entry.getKey()));
+                    writeBulk(out, entry.getValue());
+                }
+                return;
+            }
+            case "HDEL": {
+                Map<String, byte[]> hash = (Map<String, byte[]>) lookup(command.get(1));
+                int removed = 0;
+                for (int i = 2; hash != null && i < command.size(); i++) {
+                    if (hash.remove(str(command.get(i))) != null) {
+                        removed++;
+                    }
+                }
+                writeInteger(out, removed);
+                return;
+            }
+            case "HINCRBY":
+            case "HINCRBYFLOAT": {
+                Map<String, byte[]> hash = (Map<String, byte[]>) data.computeIfAbsent(str(command.get(1)), k -> new LinkedHashMap<>());
+                String field = str(command.get(2));
+                byte[] current = hash.get(field);
+                if ("HINCRBY".equals(name)) {
+                    long value = (current == null ? 0 : Long.parseLong(str(current))) + Long.parseLong(str(command.get(3)));
+                    hash.put(field, Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+                    writeInteger(out, value);
+                } else {
+                    double value = (current == null ? 0 : Double.parseDouble(str(current))) + Double.parseDouble(str(command.get(3)));
+                    byte[] bytes = Double.toString(value).getBytes(StandardCharsets.US_ASCII);
+                    hash.put(field, bytes);
+                    writeBulk(out, bytes);
+                }
+                return;
+            }
+            case "LPUSH":
+            case "RPUSH": {
+                LinkedList<byte[]> list = (LinkedList<byte[]>) data.computeIfAbsent(str(command.get(1)), k -> new LinkedList<>());
+                for (int i = 2; i < command.size(); i++) {
+                    if ("LPUSH".equals(name)) {
+                        list.addFirst(command.get(i));
+                    } else {
+                        list.addLast(command.get(i));
+                    }
+                }
+                writeInteger(out, list.size());
+                return;
+            }
+            case "LLEN": {
+                List<byte[]> list = (List<byte[]>) lookup(command.get(1));
+                writeInteger(out, list == null ? 0 : list.size());
+                return;
+            }
+            case "LRANGE": {
+                List<byte[]> list = (List<byte[]>) lookup(command.get(1));
+                if (list == null) {
+                    writeArrayHeader(out, 0);
+                    return;
+                }
+                int size = list.size();
+                int start = index(Integer.parseInt(str(command.get(2))), size);
+                int end = Math.min(index(Integer.parseInt(str(command.get(3))), size), size - 1);
+                List<byte[]> range = start > end ? new ArrayList<>() : new ArrayList<>(list.subList(start, end + 1));
+                writeArrayHeader(out, range.size());
+                for (byte[] value : range) {
+                    writeBulk(out, value);
+                }
+                return;
+            }
+            case "SADD": {
+                Set<String> set = (Set<String>) data.computeIfAbsent(str(command.get(1)), k -> new LinkedHashSet<>());
+                int added = 0;
+                for (int i = 2; i < command.size(); i++) {
+                    if (set.add(str(command.get(i)))) {
+                        added++;
+                    }
+                }
+                writeInteger(out, added);
+                return;
+            }
+            case "SMEMBERS": {
+                Set<String> set = (Set<String>) lookup(command.get(1));
+                if (set == null) {
+                    writeArrayHeader(out, 0);
+                    return;
+                }
+                writeArrayHeader(out, set.size());
+                for (String member : set) {
+                    writeBulk(out, bytes(member));
+                }
+                return;
+            }
+            case "SCARD": {
+                Set<String> set = (Set<String>) lookup(command.get(1));
+                writeInteger(out, set == null ? 0 : set.size());
+                return;
+            }
+            case "SCAN":
+                scan(data.keySet(), command, 1, false, out);
+                return;
+            case "HSCAN": {
+                Map<String, byte[]> hash = (Map<String, byte[]>) lookup(command.get(1));
+                scan(hash == null ? new ArrayList<>() : hash.entrySet(), command, 2, true, out);
+                return;
+            }
+            case "SSCAN": {
+                Set<String> set = (Set<String>) lookup(command.get(1));
+                scan(set == null ? new ArrayList<>() : set, command, 2, false, out);
+                return;
+            }
+            case "SCRIPT":
+                if (!"LOAD".equalsIgnoreCase(str(command.get(1)))) {
+                    out.write(OK);
+                    return;
+                }
+                String sha1 = sha1(command.get(2));
+                loadedScripts.add(sha1);
+                writeBulk(out, bytes(sha1));
+                return;
+            case "EVALSHA": {
+                String sha = str(command.get(1)).toLowerCase();
+                ScriptHandler handler = scripts.get(sha);
+                if (handler == null || !loadedScripts.contains(sha)) {
+                    writeError(out, "NOSCRIPT No matching script. Please use EVAL.");
+                    return;
+                }
+                int numKeys = Integer.parseInt(str(command.get(2)));
+                List<String> keys = new ArrayList<>(numKeys);
+                List<String> args = new ArrayList<>();
+                for (int i = 3; i < command.size(); i++) {
+                    (i < 3 + numKeys ? keys : args).add(str(command.get(i)));
+                }
+                writeReply(out, handler.eval(keys, args));
+                return;
+            }
+            default:
+                writeError(out, "ERR unknown command '" + name + "'");
+        }
+    }
+
+    private void set(List<byte[]> command, OutputStream out) throws IOException {
+        String key = str(command.get(1));
+        Long expireAt = null;
+        boolean nx = false;
+        boolean xx = false;
+        for (int i = 3; i < command.size(); i++) {
+            String option = str(command.get(i)).toUpperCase();
+            if ("EX".equals(option)) {
+                expireAt = System.currentTimeMillis() + Long.parseLong(str(command.get(++i))) * 1000;
+            } else if ("PX".equals(option)) {
+                expireAt = System.currentTimeMillis() + Long.parseLong(str(command.get(++i)));
+            } else if ("NX".equals(option)) {
+                nx = true;
+            } else if ("XX".equals(option)) {
+                xx = true;
+            }
+        }
+        boolean exists = lookup(command.get(1)) != null;
+        if ((nx && exists) || (xx && !exists)) {
+            out.write(NULL_BULK);
+            return;
+        }
+        data.put(key, command.get(2));
+        if (expireAt == null) {
+            expires.remove(key);
+        } else {
+            expires.put(key, expireAt);
+        }
+        out.write(OK);
+    }
+
+    /**
+     * 游标即遍历顺序中的下标, 遍历期间集合不变时结果与真实 redis 一致; 不复制集合, 避免替身自身的分配干扰 -prof gc
+     *
+     * @param items       元素, hash 为 Map.Entry
+     * @param cursorIndex 游标参数的位置
+     * @param pairs       是否按 项, 值 两个元素返回
+     */
+    @SuppressWarnings("unchecked")
+    private void scan(Collection<?> items, List<byte[]> command, int cursorIndex, boolean pairs, OutputStream out) throws IOException {
+        int cursor = Integer.parseInt(str(command.get(cursorIndex)));
+        int count = 10;
+        Pattern pattern = null;
+        for (int i = cursorIndex + 1; i + 1 < command.size(); i += 2) {
+            String option = str(command.get(i)).toUpperCase();
+            if ("COUNT".equals(option)) {
+                count = Integer.parseInt(str(command.get(i + 1)));
+            } else if ("MATCH".equals(option)) {
+                pattern = glob(str(command.get(i + 1)));
+            }
+        }
+        int end = Math.min(items.size(), cursor + count);
+        List<byte[]> matched = new ArrayList<>();
+        Iterator<?> iterator = items.iterator();
+        for (int i = 0; i < end; i++) {
+            Object item = iterator.next();
+            if (i < cursor) {
+                continue;
+            }
+            String member = pairs ? ((Map.Entry<String, byte[]>) item).getKey() : (String) item;
+            if (pattern == null || pattern.matcher(member).matches()) {
+                matched.add(bytes(member));
+                if (pairs) {
+                    matched.add(((Map.Entry<String, byte[]>) item).getValue());
+                }
+            }
+        }
+        writeArrayHeader(out, 2);
+        writeBulk(out, bytes(Integer.toString(end >= items.size() ? 0 : end)));
+        writeArrayHeader(out, matched.size());
+        for (byte[] value : matched) {
+            writeBulk(out, value);
+        }
+    }
+
+    private static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private Object lookup(byte[] rawKey) {
+        String key = str(rawKey);
+        Long expireAt = expires.get(key);
+        if (expireAt != null && expireAt <= System.currentTimeMillis()) {
+            expires.remove(key);
+            data.remove(key);
+            return null;
+        }
+        return data.get(key);
+    }
+
+    private static int index(int index, int size) {
+        return index < 0 ? Math.max(size + index, 0) : index;
+    }
+
+    /**
+     * 键和成员按 ISO-8859-1 保存, 保证任意字节都能原样往返
+     */
+    private static String str(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void writeBulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.write(NULL_BULK);
+            return;
+        }
+        out.write(('$' + Integer.toString(value.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(value);
+        out.write('\r');
+        out.write('\n');
+    }
+
+    private static void writeArrayHeader(OutputStream out, int size) throws IOException {
+        out.write(('*' + Integer.toString(size) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeInteger(OutputStream out, long value) throws IOException {
+        out.write((':' + Long.toString(value) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeReply(OutputStream out, Object reply) throws IOException {
+        if (reply instanceof Long) {
+            writeInteger(out, (Long) reply);
+        } else if (reply instanceof List) {
+            List<?> items = (List<?>) reply;
+            writeArrayHeader(out, items.size());
+            for (Object item : items) {
+                writeReply(out, item);
+            }
+        } else {
+            writeBulk(out, reply == null ? null : bytes(reply.toString()));
+        }
+    }
+
+    private static String sha1(byte[] body) {
+        try {
+            StringBuilder hex = new StringBuilder(40);
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(body)) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeError(OutputStream out, String message) throws IOException {
+        out.write(('-' + message + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 脚本替身, 返回 Long / String / List
+     */
+    public interface ScriptHandler {
+        Object eval(List<String> keys, List<String> args);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.entity.User;
+import com.example.redis_demo.repository.HashRepository;
+import com.example.redis_demo.repository.UserHashSchema;
+import com.example.redis_demo.service.RedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 修改 / 读取 User 的单个属性: 整体序列化的 get + set 与哈希仓库按字段读写的对比, 配合 -prof gc 查看每次调用的分配
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashRepositoryBenchmark {
+
+    private static final String ID = "bench";
+
+    private static final String BLOB_KEY = "bench:user";
+
+    private BenchmarkContext context;
+
+    private RedisService redisService;
+
+    private HashRepository<User> repository;
+
+    private int age;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        context = new BenchmarkContext();
+        redisService = context.redisService();
+        repository = context.getBean(HashRepository.class);
+        User user = new User();
+        user.setName("benchmark user");
+        user.setAge(30);
+        List<Integer> scores = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            scores.add(60 + i % 40);
+        }
+        user.setScores(scores);
+        redisService.set(BLOB_KEY, user);
+        repository.save(ID, user);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean blobUpdateAge() {
+        User user = (User) redisService.get(BLOB_KEY);
+        user.setAge(++age);
+        return redisService.set(BLOB_KEY, user);
+    }
+
+    @Benchmark
+    public int hashUpdateAge() {
+        repository.set(ID, UserHashSchema.AGE, ++age);
+        return age;
+    }
+
+    @Benchmark
+    public Integer blobReadAge() {
+        return ((User) redisService.get(BLOB_KEY)).getAge();
+    }
+
+    @Benchmark
+    public Integer hashReadAge() {
+        return repository.get(ID, UserHashSchema.AGE);
+    }
+
+    @Benchmark
+    public User hashFind() {
+        return repository.find(ID);
+    }
+}
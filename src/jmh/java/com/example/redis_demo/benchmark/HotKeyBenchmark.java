@@ -0,0 +1,75 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.hotkey.HotKeyDetector;
+import com.example.redis_demo.service.RedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热键探测的开销: 开启/关闭时 get 的耗时, 以及探测器本身每次记录的耗时(不访问 redis)
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotKeyBenchmark {
+
+    private static final int KEYS = 1000;
+
+    @Param({"false", "true"})
+    private boolean enabled;
+
+    private BenchmarkContext context;
+
+    private RedisService redisService;
+
+    private final HotKeyDetector detector = new HotKeyDetector(128, 16, 10000, 1 << 20, false);
+
+    private final String[] keys = new String[KEYS];
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new BenchmarkContext("redis.hot-key.enabled=" + enabled);
+        redisService = context.redisService();
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "bench:hot:" + i;
+            redisService.set(keys[i], "value-" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public Object get() {
+        return redisService.get(keys[ThreadLocalRandom.current().nextInt(KEYS)]);
+    }
+
+    @Benchmark
+    public long detectorRecordRead() {
+        long mark = detector.mark();
+        detector.recordRead(keys[ThreadLocalRandom.current().nextInt(KEYS)], mark);
+        return mark;
+    }
+}
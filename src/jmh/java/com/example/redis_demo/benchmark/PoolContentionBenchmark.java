@@ -0,0 +1,69 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.service.RedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接池争用: 1/8/64 个线程同时执行 GET, 64 线程超过默认 maxTotal(50), 能看到借连接的排队开销
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PoolContentionBenchmark {
+
+    private static final String KEY = "bench:pool";
+
+    private BenchmarkContext context;
+
+    private RedisService redisService;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new BenchmarkContext();
+        redisService = context.redisService();
+        redisService.set(KEY, "value");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object threads1() {
+        return redisService.get(KEY);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object threads8() {
+        return redisService.get(KEY);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object threads64() {
+        return redisService.get(KEY);
+    }
+}
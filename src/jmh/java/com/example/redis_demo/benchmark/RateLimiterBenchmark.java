@@ -0,0 +1,117 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.ratelimit.RateLimit;
+import com.example.redis_demo.ratelimit.RateLimitDecision;
+import com.example.redis_demo.ratelimit.RedisRateLimiter;
+import com.example.redis_demo.script.ScriptRegistry;
+import com.example.redis_demo.service.RedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流判断的吞吐和延迟: 原有的 incrBy + expire 固定窗口(两次往返)、一次脚本调用、本地拒绝缓存
+ * <p>
+ * 使用 {@link FakeRedisServer} 时 GCRA 脚本由 Java 替身执行, 只反映客户端一侧的开销和往返次数;
+ * 脚本在 redis 中的执行耗时需要 -Dbenchmark.redis.host 连接真实的 redis-server 测量
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final RateLimit UNLIMITED = RateLimit.gcra(1_000_000, 1, TimeUnit.SECONDS, 1_000_000);
+
+    private static final RateLimit EXHAUSTED = RateLimit.gcra(1, 1, TimeUnit.HOURS, 1);
+
+    private BenchmarkContext context;
+
+    private RedisService redisService;
+
+    private RedisRateLimiter limiter;
+
+    private RedisRateLimiter uncached;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new BenchmarkContext();
+        redisService = context.redisService();
+        limiter = context.getBean(RedisRateLimiter.class);
+        ScriptRegistry scripts = context.getBean(ScriptRegistry.class);
+        uncached = new RedisRateLimiter(scripts, 0);
+        if (context.server() != null) {
+            context.server().script(scripts.get("rateLimitGcra").getSha1(), new Gcra()::eval);
+        }
+        // 用掉唯一的许可, 之后一直拒绝
+        limiter.tryAcquire("bench:exhausted", EXHAUSTED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean incrExpire() {
+        redisService.incrBy("bench:window", 1L);
+        return redisService.expire("bench:window", 1L, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public RateLimitDecision allowed() {
+        return limiter.tryAcquire("bench:unlimited", UNLIMITED);
+    }
+
+    @Benchmark
+    public RateLimitDecision deniedRemote() {
+        return uncached.tryAcquire("bench:exhausted", EXHAUSTED);
+    }
+
+    @Benchmark
+    public RateLimitDecision deniedLocal() {
+        return limiter.tryAcquire("bench:exhausted", EXHAUSTED);
+    }
+
+    /**
+     * GCRA 脚本的 Java 替身, 计算与脚本一致
+     */
+    private static final class Gcra {
+
+        private final Map<String, Double> tats = new HashMap<>();
+
+        Object eval(List<String> keys, List<String> args) {
+            double now = System.currentTimeMillis();
+            double interval = Double.parseDouble(args.get(1)) / Double.parseDouble(args.get(2));
+            double tolerance = Double.parseDouble(args.get(0)) * interval;
+            double tat = Math.max(tats.getOrDefault(keys.get(0), now), now);
+            double newTat = tat + interval * Long.parseLong(args.get(3));
+            double allowAt = newTat - tolerance;
+            if (allowAt > now) {
+                return Arrays.asList(0L, (long) Math.max(0, Math.floor((now - tat + tolerance) / interval)), (long) Math.ceil(allowAt - now));
+            }
+            tats.put(keys.get(0), newTat);
+            return Arrays.asList(1L, (long) Math.floor((now - allowAt) / interval), 0L);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.service.RedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 逐条命令与批量/pipeline 的对比, 每次调用读写 batchSize 个键
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisServiceBenchmark {
+
+    @Param({"10", "200"})
+    private int batchSize;
+
+    private BenchmarkContext context;
+
+    private RedisService redisService;
+
+    private List<String> keys;
+
+    private Map<String, Object> values;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new BenchmarkContext();
+        redisService = context.redisService();
+        keys = new ArrayList<>(batchSize);
+        values = new LinkedHashMap<>();
+        for (int i = 0; i < batchSize; i++) {
+            keys.add("bench:user:" + i);
+            values.put("bench:user:" + i, "value-" + i);
+        }
+        redisService.mset(values);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public void singleGet(Blackhole blackhole) {
+        for (String key : keys) {
+            blackhole.consume(redisService.get(key));
+        }
+    }
+
+    @Benchmark
+    public Object mget() {
+        return redisService.mget(keys);
+    }
+
+    @Benchmark
+    public Object pipelineGet() {
+        return redisService.pipeline(batch -> keys.forEach(batch::get));
+    }
+
+    @Benchmark
+    public void singleSet(Blackhole blackhole) {
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            blackhole.consume(redisService.set(entry.getKey(), entry.getValue(), 600L));
+        }
+    }
+
+    @Benchmark
+    public Object pipelineSet() {
+        return redisService.mset(values, 600L);
+    }
+}
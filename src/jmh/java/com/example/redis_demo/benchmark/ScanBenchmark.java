@@ -0,0 +1,85 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.service.RedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 大 hash 一次性 HGETALL 与 HSCAN 分批遍历的对比, 配合 -prof gc 观察单次调用的内存分配峰值
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+    private static final String KEY = "bench:big-hash";
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"500"})
+    private int count;
+
+    private BenchmarkContext context;
+
+    private RedisService redisService;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new BenchmarkContext();
+        redisService = context.redisService();
+        Map<String, Object> chunk = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            chunk.put("field-" + i, "value-" + i);
+            if (chunk.size() == 1000) {
+                redisService.hset(KEY, chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            redisService.hset(KEY, chunk);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public void hgetAll(Blackhole blackhole) {
+        for (Map.Entry<Object, Object> entry : redisService.hgetAll(KEY).entrySet()) {
+            blackhole.consume(entry);
+        }
+    }
+
+    @Benchmark
+    public void hscan(Blackhole blackhole) {
+        try (Stream<Map.Entry<Object, Object>> entries = redisService.hscan(KEY, null, count)) {
+            entries.forEach(blackhole::consume);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.codec.BinaryRedisSerializer;
+import com.example.redis_demo.codec.BinaryWriterPool;
+import com.example.redis_demo.codec.CodecRegistry;
+import com.example.redis_demo.codec.UserCodec;
+import com.example.redis_demo.config.RedisConfig;
+import com.example.redis_demo.entity.User;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link User} 在 JSON(默认类型信息) 与二进制编码下的序列化/反序列化吞吐, 序列化后的大小见 {@link Sizes}。
+ * binarySerializeUnpooled 为每次新建缓冲区的编码, 配合 -prof gc 对比复用缓冲区前后每次调用的分配(gc.alloc.rate.norm)
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @Param({"0", "10", "1000"})
+    private int scores;
+
+    private RedisSerializer<Object> json;
+
+    private RedisSerializer<Object> binary;
+
+    private RedisSerializer<Object> binaryUnpooled;
+
+    private User user;
+
+    private byte[] jsonBytes;
+
+    private byte[] binaryBytes;
+
+    @Setup
+    public void setup() {
+        json = RedisConfig.createJacksonRedisSerializer();
+        CodecRegistry registry = new CodecRegistry().register(UserCodec.ID, User.class, new UserCodec());
+        binary = new BinaryRedisSerializer(registry, json);
+        binaryUnpooled = new BinaryRedisSerializer(registry, json, new BinaryWriterPool(0));
+        user = new User();
+        user.setName("benchmark-user");
+        user.setAge(30);
+        List<Integer> values = new ArrayList<>(scores);
+        for (int i = 0; i < scores; i++) {
+            values.add(ThreadLocalRandom.current().nextInt(0, 1000));
+        }
+        user.setScores(values);
+        jsonBytes = json.serialize(user);
+        binaryBytes = binary.serialize(user);
+    }
+
+    @Benchmark
+    public byte[] jsonSerialize(Sizes sizes) {
+        byte[] bytes = json.serialize(user);
+        sizes.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] binarySerialize(Sizes sizes) {
+        byte[] bytes = binary.serialize(user);
+        sizes.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] binarySerializeUnpooled() {
+        return binaryUnpooled.serialize(user);
+    }
+
+    @Benchmark
+    public Object jsonDeserialize() {
+        return json.deserialize(jsonBytes);
+    }
+
+    @Benchmark
+    public Object binaryDeserialize() {
+        return binary.deserialize(binaryBytes);
+    }
+
+    /**
+     * 序列化后的字节数, 作为附加结果输出(jsonSerialize:bytes, binarySerialize:bytes);
+     * JMH 在每轮迭代开始时清零, 由被测方法赋值, 一次字段写入相对序列化可以忽略
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+
+        public long bytes;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.redis_demo.benchmark;
+
+import com.example.redis_demo.execution.RedisExecutor;
+import com.example.redis_demo.execution.VirtualThreads;
+import com.example.redis_demo.service.RedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1000 / 10000 个并发调用方同时执行阻塞的 GET: 200 个平台线程与每调用一个虚拟线程的对比, 连接池均为 64 个连接
+ * <p>
+ * virtual 需要 JDK 21+, 低版本 JDK 上该组参数在 setup 时失败并跳过;
+ * FakeRedisServer 在本机几乎没有 RTT, 设置 -Dbenchmark.redis.host 连接远端 redis-server 时差别更明显
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VirtualThreadBenchmark {
+
+    private static final int KEYS = 1000;
+
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    @Param({"1000", "10000"})
+    private int callers;
+
+    private BenchmarkContext context;
+
+    private RedisExecutor executor;
+
+    private List<Callable<Object>> calls;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        boolean virtual = "virtual".equals(mode);
+        if (virtual && !VirtualThreads.isAvailable()) {
+            throw new IllegalStateException("virtual threads require JDK 21+, running on " + System.getProperty("java.version"));
+        }
+        context = new BenchmarkContext("redis.execution.virtual-threads=" + virtual, "redis.execution.platform-threads=200",
+                "redis.pool.max-total=64", "redis.pool.max-idle=64", "redis.pool.max-wait-ms=60000");
+        executor = context.getBean(RedisExecutor.class);
+        RedisService redisService = context.redisService();
+        for (int i = 0; i < KEYS; i++) {
+            redisService.set("bench:vt:" + i, "value-" + i);
+        }
+        calls = new ArrayList<>(callers);
+        for (int i = 0; i < callers; i++) {
+            String key = "bench:vt:" + (i % KEYS);
+            calls.add(() -> redisService.get(key));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public int concurrentGet() {
+        return executor.invokeAll(calls).size();
+    }
+}
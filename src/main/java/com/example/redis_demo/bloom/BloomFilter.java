@@ -0,0 +1,302 @@
+package com.example.redis_demo.bloom;
+
+import com.example.redis_demo.routing.Pipelines;
+import com.example.redis_demo.routing.RedisRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.clients.jedis.util.MurmurHash;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * redis 位图上的布隆过滤器
+ * <p>
+ * 位图保存在一个字符串键中, 添加和查询的 k 个位各用一次 pipeline(SETBIT / GETBIT)发送, 一次往返;
+ * 集群连接不支持 pipeline, 逐条发送, 见 {@link Pipelines}。
+ * 位数和哈希函数个数按预期元素数和误判率计算, 位图最大 2^32 位(512MB), 超出时应按业务拆成多个过滤器。
+ * <p>
+ * 本地镜像: 开启后定时 GET 整个位图到本地, 本地判定存在的查询不访问 redis; 本地判定不存在时仍查询 redis,
+ * 因为其他实例刚添加的元素要到下一个刷新周期才进入镜像, 镜像只能省去存在的键的查询, 不会产生误判为不存在
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BloomFilter implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BloomFilter.class);
+
+    private static final long MAX_BITS = 1L << 32;
+
+    private static final int SEED1 = 0x1234ABCD;
+
+    private static final int SEED2 = 0x5F3759DF;
+
+    private final String name;
+
+    private final String key;
+
+    private final byte[] rawKey;
+
+    private final RedisRouter router;
+
+    private final long bits;
+
+    private final int hashes;
+
+    /**
+     * 位图的本地副本, 按 redis 的位序(第 0 位为第一个字节的最高位), 未开启或未加载时为 null
+     */
+    private volatile AtomicLongArray mirror;
+
+    private ScheduledExecutorService refresher;
+
+    /**
+     * @param name               过滤器名称, redis 键为 bloom:{name}
+     * @param expectedInsertions 预期元素数
+     * @param fpp                预期元素数下的误判率, (0, 1)
+     * @param router             路由
+     * @throws IllegalArgumentException 参数超出范围或位图超过 2^32 位
+     */
+    public BloomFilter(String name, long expectedInsertions, double fpp, RedisRouter router) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expectedInsertions must be positive and fpp in (0, 1)");
+        }
+        this.name = name;
+        this.key = "bloom:{" + name + "}";
+        this.rawKey = key.getBytes(StandardCharsets.UTF_8);
+        this.router = router;
+        this.bits = optimalBits(expectedInsertions, fpp);
+        if (bits > MAX_BITS) {
+            throw new IllegalArgumentException("bloom filter " + name + " needs " + bits + " bits, more than a redis string can hold");
+        }
+        this.hashes = optimalHashes(expectedInsertions, bits);
+    }
+
+    /**
+     * 添加元素
+     *
+     * @param element 元素
+     * @return true 元素之前一定不存在; false 可能已存在
+     */
+    public boolean add(String element) {
+        long[] offsets = offsets(element);
+        setLocal(offsets);
+        return Pipelines.execute(template(), setBits(offsets)).contains(Boolean.FALSE);
+    }
+
+    /**
+     * 批量添加, 所有元素的位在一次 pipeline 中写入
+     *
+     * @param elements 元素
+     */
+    public void addAll(Collection<String> elements) {
+        if (elements.isEmpty()) {
+            return;
+        }
+        long[][] offsets = new long[elements.size()][];
+        int i = 0;
+        for (String element : elements) {
+            offsets[i] = offsets(element);
+            setLocal(offsets[i++]);
+        }
+        List<Function<RedisConnection, Object>> commands = new ArrayList<>(offsets.length * hashes);
+        for (long[] element : offsets) {
+            commands.addAll(setBits(element));
+        }
+        Pipelines.execute(template(), commands);
+    }
+
+    /**
+     * @param element 元素
+     * @return false 元素一定不存在; true 可能存在
+     */
+    public boolean mightContain(String element) {
+        long[] offsets = offsets(element);
+        if (mirrored(offsets)) {
+            return true;
+        }
+        List<Function<RedisConnection, Object>> commands = new ArrayList<>(offsets.length);
+        for (long offset : offsets) {
+            commands.add(connection -> connection.stringCommands().getBit(rawKey, offset));
+        }
+        return !Pipelines.execute(template(), commands).contains(Boolean.FALSE);
+    }
+
+    /**
+     * @return 镜像已加载且所有位都已置位; 未开启镜像或有位未置位时 false, 由调用方查询 redis
+     */
+    private boolean mirrored(long[] offsets) {
+        AtomicLongArray local = mirror;
+        if (local == null) {
+            return false;
+        }
+        for (long offset : offsets) {
+            if (!isSet(local, offset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 开启本地镜像并定时刷新; 首次加载在后台进行, 不阻塞调用方
+     *
+     * @param refreshMillis 刷新间隔(毫秒)
+     */
+    public synchronized void startMirror(long refreshMillis) {
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-bloom-mirror-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refreshMirror();
+            } catch (Exception e) {
+                log.warn("bloom filter {} mirror refresh failed", name, e);
+            }
+        }, 0, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 从 redis 重新加载本地镜像
+     * <p>
+     * 布隆过滤器的位只会被置 1, 新位图与旧镜像按位或, 加载期间本实例添加的元素不会丢失
+     */
+    public void refreshMirror() {
+        byte[] bytes = template().execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+        AtomicLongArray loaded = new AtomicLongArray((int) ((bits + 63) >>> 6));
+        if (bytes != null) {
+            for (int i = 0; i < bytes.length && (i >>> 3) < loaded.length(); i++) {
+                int word = i >>> 3;
+                loaded.set(word, loaded.get(word) | (bytes[i] & 0xFFL) << (56 - ((i & 7) << 3)));
+            }
+        }
+        synchronized (this) {
+            AtomicLongArray previous = mirror;
+            if (previous != null) {
+                for (int i = 0; i < loaded.length(); i++) {
+                    loaded.set(i, loaded.get(i) | previous.get(i));
+                }
+            }
+            mirror = loaded;
+        }
+    }
+
+    /**
+     * 删除位图, 清空本地镜像
+     */
+    public synchronized void clear() {
+        template().delete(key);
+        if (mirror != null) {
+            mirror = new AtomicLongArray(mirror.length());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 位图的位数
+     */
+    public long getBits() {
+        return bits;
+    }
+
+    /**
+     * @return 哈希函数个数
+     */
+    public int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * @return 本地镜像是否已加载
+     */
+    public boolean isMirrored() {
+        return mirror != null;
+    }
+
+    /**
+     * 双重哈希: 第 i 个位置为 h1 + i * h2, 两个 64 位 murmur 哈希取不同种子
+     */
+    long[] offsets(String element) {
+        byte[] bytes = element.getBytes(StandardCharsets.UTF_8);
+        long h1 = MurmurHash.hash64A(bytes, SEED1);
+        long h2 = MurmurHash.hash64A(bytes, SEED2);
+        long[] offsets = new long[hashes];
+        long combined = h1;
+        for (int i = 0; i < hashes; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % bits;
+            combined += h2;
+        }
+        return offsets;
+    }
+
+    static long optimalBits(long n, double p) {
+        return (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+    }
+
+    static int optimalHashes(long n, long m) {
+        return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    /**
+     * 写入本地镜像; 写入期间镜像被刷新替换时再写一次新镜像
+     */
+    private void setLocal(long[] offsets) {
+        AtomicLongArray local;
+        do {
+            local = mirror;
+            if (local == null) {
+                return;
+            }
+            for (long offset : offsets) {
+                int word = (int) (offset >>> 6);
+                long mask = 1L << (63 - (offset & 63));
+                long current;
+                do {
+                    current = local.get(word);
+                } while ((current & mask) == 0 && !local.compareAndSet(word, current, current | mask));
+            }
+        } while (local != mirror);
+    }
+
+    private List<Function<RedisConnection, Object>> setBits(long[] offsets) {
+        List<Function<RedisConnection, Object>> commands = new ArrayList<>(offsets.length);
+        for (long offset : offsets) {
+            commands.add(connection -> connection.stringCommands().setBit(rawKey, offset, true));
+        }
+        return commands;
+    }
+
+    private static boolean isSet(AtomicLongArray local, long offset) {
+        return (local.get((int) (offset >>> 6)) & 1L << (63 - (offset & 63))) != 0;
+    }
+
+    private RedisTemplate<String, Object> template() {
+        return router.forKey(key);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.redis_demo.bloom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * get 前的布隆过滤器守卫, 防止大量查询不存在的键(缓存穿透)
+ * <p>
+ * 只守卫指定前缀的键: 这些键经 RedisService / ReactiveRedisService 的任一写入方法(含 pipeline 和 getOrLoad)、
+ * 哈希仓库和批量导入写入前同时加入过滤器; 字符串读取(get)时过滤器判定不存在的直接返回空, 不访问 redis。
+ * hasKey 适用于所有类型的键, 不经过过滤器。
+ * 绕过上述入口写入的键(如直接使用 RedisTemplate、执行脚本)需由业务预先 {@link BloomFilter#addAll} 加入, 否则会被误判为不存在
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BloomGuard {
+
+    private final BloomFilter filter;
+
+    private final List<String> prefixes;
+
+    private final LongAdder checked = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    public BloomGuard(BloomFilter filter, List<String> prefixes) {
+        this.filter = filter;
+        this.prefixes = prefixes;
+    }
+
+    /**
+     * @param key 键
+     * @return 是否受守卫
+     */
+    public boolean guards(String key) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key 键
+     * @return false 键一定不存在, 可以跳过 redis 查询; 不受守卫的键总是 true
+     */
+    public boolean mightExist(String key) {
+        if (!guards(key)) {
+            return true;
+        }
+        checked.increment();
+        if (filter.mightContain(key)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * 键将被写入, 受守卫时加入过滤器; 在写入 redis 之前调用, 避免写入后、加入前的查询被误拒
+     *
+     * @param key 键
+     */
+    public void adding(String key) {
+        if (guards(key)) {
+            filter.add(key);
+        }
+    }
+
+    /**
+     * 批量写入前调用, 受守卫的键一次 pipeline 加入过滤器
+     *
+     * @param keys 键
+     */
+    public void addingAll(Collection<String> keys) {
+        List<String> guarded = new ArrayList<>();
+        for (String key : keys) {
+            if (guards(key)) {
+                guarded.add(key);
+            }
+        }
+        filter.addAll(guarded);
+    }
+
+    public BloomFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return 经过滤器判断的查询次数
+     */
+    public long getChecked() {
+        return checked.sum();
+    }
+
+    /**
+     * @return 被判定不存在、跳过 redis 的查询次数
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
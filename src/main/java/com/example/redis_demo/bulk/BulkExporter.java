@@ -0,0 +1,206 @@
+package com.example.redis_demo.bulk;
+
+import com.example.redis_demo.routing.Pipelines;
+import com.example.redis_demo.routing.RedisRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 批量导出
+ * <p>
+ * SCAN 得到的键每 batchSize 个一批, 按节点各用一个 pipeline 发送 DUMP + PTTL(集群连接逐条发送, 见 {@link Pipelines}),
+ * 多个批次由 parallelism 个线程并行读取。
+ * 结果按批次顺序在调用线程交给输出, 输出不需要线程安全; 已提交未输出的批次不超过 maxInFlightBatches。
+ * 导出期间被删除或过期的键跳过; SCAN 不是快照, 导出期间新写入的键可能导出也可能不导出
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BulkExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkExporter.class);
+
+    private static final AtomicInteger EXPORTS = new AtomicInteger();
+
+    private final RedisRouter router;
+
+    private final BulkOptions options;
+
+    public BulkExporter(RedisRouter router, BulkOptions options) {
+        options.validate();
+        this.router = router;
+        this.options = options;
+    }
+
+    /**
+     * 导出匹配的键, 进度按间隔写日志
+     *
+     * @param pattern SCAN 的 MATCH 模式, 例如 "user:*"
+     * @param sink    输出, 例如 {@link BulkFileWriter}
+     * @return 最终进度
+     */
+    public BulkProgress export(String pattern, Consumer<BulkRecord> sink) {
+        return export(pattern, sink, progress -> log.info("bulk export {}", progress));
+    }
+
+    /**
+     * 导出匹配的键
+     *
+     * @param pattern  SCAN 的 MATCH 模式
+     * @param sink     输出, 在调用线程执行
+     * @param listener 每隔 progressIntervalMillis 以及结束时回调, 在调用线程执行
+     * @return 最终进度; 调用线程被中断时停止, 返回未完成的进度
+     */
+    public BulkProgress export(String pattern, Consumer<BulkRecord> sink, Consumer<BulkProgress> listener) {
+        int id = EXPORTS.incrementAndGet();
+        AtomicInteger index = new AtomicInteger();
+        ExecutorService readers = Executors.newFixedThreadPool(options.getParallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "redis-bulk-export-" + id + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Export export = new Export();
+        Deque<Future<Batch>> inFlight = new ArrayDeque<>();
+        long nextReport = System.currentTimeMillis() + options.getProgressIntervalMillis();
+        boolean interrupted = false;
+        ScanOptions scanOptions = ScanOptions.scanOptions().match(pattern).count(options.getBatchSize()).build();
+        try (Stream<String> keys = router.scan(scanOptions)) {
+            Iterator<String> iterator = keys.iterator();
+            List<String> batch = new ArrayList<>(options.getBatchSize());
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                export.records++;
+                if (batch.size() >= options.getBatchSize()) {
+                    List<String> submitted = batch;
+                    inFlight.add(readers.submit(() -> read(submitted)));
+                    batch = new ArrayList<>(options.getBatchSize());
+                    if (inFlight.size() >= options.getMaxInFlightBatches()) {
+                        drain(inFlight.poll(), sink, export);
+                    }
+                }
+                if (System.currentTimeMillis() >= nextReport) {
+                    listener.accept(export.progress(false));
+                    nextReport = System.currentTimeMillis() + options.getProgressIntervalMillis();
+                }
+            }
+            if (!batch.isEmpty()) {
+                List<String> submitted = batch;
+                inFlight.add(readers.submit(() -> read(submitted)));
+            }
+            while (!inFlight.isEmpty()) {
+                drain(inFlight.poll(), sink, export);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            interrupted = true;
+        } finally {
+            readers.shutdownNow();
+        }
+        BulkProgress progress = export.progress(!interrupted);
+        listener.accept(progress);
+        return progress;
+    }
+
+    private void drain(Future<Batch> future, Consumer<BulkRecord> sink, Export export) throws InterruptedException {
+        Batch batch;
+        try {
+            batch = future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("bulk export: failed to read a batch of keys", e.getCause());
+        }
+        export.failed += batch.failed;
+        for (BulkRecord record : batch.records) {
+            sink.accept(record);
+            export.completed++;
+            export.bytes += record.weight();
+        }
+    }
+
+    /**
+     * 按节点各一个 pipeline, 每个键 DUMP + PTTL; 某个节点读取失败时该节点的键计入失败数
+     *
+     * @return 仍然存在的键
+     */
+    private Batch read(List<String> keys) {
+        Batch batch = new Batch(keys.size());
+        for (Map.Entry<Integer, List<String>> group : router.partitionByNode(keys).entrySet()) {
+            List<String> shardKeys = group.getValue();
+            List<Function<RedisConnection, Object>> commands = new ArrayList<>(shardKeys.size() * 2);
+            for (String key : shardKeys) {
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                commands.add(connection -> connection.keyCommands().dump(rawKey));
+                commands.add(connection -> connection.keyCommands().pTtl(rawKey));
+            }
+            List<Object> results;
+            try {
+                // 结果不经过值序列化器, DUMP 的结果保持原始字节
+                results = Pipelines.execute(router.template(group.getKey()), commands);
+            } catch (RuntimeException e) {
+                log.warn("bulk export: failed to read {} keys", shardKeys.size(), e);
+                batch.failed += shardKeys.size();
+                continue;
+            }
+            for (int i = 0; i < shardKeys.size(); i++) {
+                Object dump = results.get(i * 2);
+                Object ttl = results.get(i * 2 + 1);
+                // PTTL: -2 键不存在, -1 不过期
+                if (!(dump instanceof byte[]) || !(ttl instanceof Long) || (Long) ttl == -2) {
+                    continue;
+                }
+                batch.records.add(BulkRecord.dump(shardKeys.get(i), (byte[]) dump, Math.max((Long) ttl, 0)));
+            }
+        }
+        return batch;
+    }
+
+    private static final class Batch {
+
+        private final List<BulkRecord> records;
+
+        private int failed;
+
+        Batch(int size) {
+            this.records = new ArrayList<>(size);
+        }
+    }
+
+    /**
+     * 一次导出的计数, 只在调用线程修改
+     */
+    private static final class Export {
+
+        private final long start = System.nanoTime();
+
+        private long records;
+
+        private long completed;
+
+        private long failed;
+
+        private long bytes;
+
+        BulkProgress progress(boolean finished) {
+            return new BulkProgress(records, completed, failed, bytes,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), finished);
+        }
+    }
+}
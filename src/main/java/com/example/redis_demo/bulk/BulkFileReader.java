@@ -0,0 +1,117 @@
+package com.example.redis_demo.bulk;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 读取 {@link BulkFileWriter} 写出的文件, 按顺序逐条返回, 不会一次读入整个文件
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BulkFileReader implements Iterator<BulkRecord>, Closeable {
+
+    private final DataInputStream in;
+
+    private BulkRecord next;
+
+    private boolean finished;
+
+    public BulkFileReader(Path path) throws IOException {
+        this(open(path));
+    }
+
+    /**
+     * @throws IOException 不是导出文件或版本不支持
+     */
+    public BulkFileReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        byte[] magic = new byte[BulkFileWriter.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, BulkFileWriter.MAGIC)) {
+            throw new IOException("not a bulk export file");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != BulkFileWriter.VERSION) {
+            throw new IOException("unsupported bulk export version " + version);
+        }
+    }
+
+    private static InputStream open(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        if (path.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new BufferedInputStream(in, 1 << 16);
+    }
+
+    /**
+     * @throws UncheckedIOException 读取失败或文件被截断
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            next = read();
+        }
+        return next != null;
+    }
+
+    @Override
+    public BulkRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        BulkRecord record = next;
+        next = null;
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private BulkRecord read() {
+        try {
+            int keyLength = (int) readVarLong();
+            if (keyLength == 0) {
+                finished = true;
+                return null;
+            }
+            byte[] key = new byte[keyLength];
+            in.readFully(key);
+            byte[] dump = new byte[(int) readVarLong()];
+            in.readFully(dump);
+            long ttl = readVarLong();
+            return BulkRecord.dump(new String(key, StandardCharsets.UTF_8), dump, ttl);
+        } catch (EOFException e) {
+            throw new UncheckedIOException("bulk export file is truncated", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long readVarLong() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+}
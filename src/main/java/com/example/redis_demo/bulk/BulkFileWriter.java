@@ -0,0 +1,101 @@
+package com.example.redis_demo.bulk;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 导出文件
+ * <p>
+ * 格式: 文件头 "RBULK" + 版本号 1 字节, 之后每条记录为
+ * [键长度 varint][键 UTF-8][DUMP 长度 varint][DUMP][过期时间毫秒 varint, 0 不过期], 最后写入键长度 0 作为结束标记,
+ * 读取时据此发现被截断的文件。DUMP 本身是 redis 的 RDB 编码, 已经很紧凑; 文件名以 .gz 结尾时整体再 gzip 压缩
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BulkFileWriter implements Consumer<BulkRecord>, Closeable {
+
+    static final byte[] MAGIC = "RBULK".getBytes(StandardCharsets.US_ASCII);
+
+    static final int VERSION = 1;
+
+    private final OutputStream out;
+
+    private long records;
+
+    public BulkFileWriter(Path path) throws IOException {
+        this(open(path));
+    }
+
+    public BulkFileWriter(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    private static OutputStream open(Path path) throws IOException {
+        OutputStream out = Files.newOutputStream(path);
+        if (path.getFileName().toString().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, 1 << 16);
+        }
+        return new BufferedOutputStream(out, 1 << 16);
+    }
+
+    /**
+     * @param record DUMP 记录
+     * @throws IllegalArgumentException 不是 DUMP 记录
+     * @throws UncheckedIOException     写入失败
+     */
+    @Override
+    public void accept(BulkRecord record) {
+        if (record.getKind() != BulkRecord.Kind.DUMP) {
+            throw new IllegalArgumentException("only DUMP records can be written, got " + record.getKind());
+        }
+        byte[] key = record.rawKey();
+        if (key.length == 0) {
+            throw new IllegalArgumentException("empty key can not be exported");
+        }
+        try {
+            writeVarLong(key.length);
+            out.write(key);
+            writeVarLong(record.getDump().length);
+            out.write(record.getDump());
+            writeVarLong(record.getTtlMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        records++;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * 写入结束标记并关闭
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writeVarLong(0);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
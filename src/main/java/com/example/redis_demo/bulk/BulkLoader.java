@@ -0,0 +1,344 @@
+package com.example.redis_demo.bulk;
+
+import com.example.redis_demo.codec.SerializationContext;
+import com.example.redis_demo.routing.Pipelines;
+import com.example.redis_demo.routing.RedisRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 批量导入
+ * <p>
+ * 调用线程逐条读取数据源, 按节点分组, 每组达到 batchSize 条或 batchBytes 字节后作为一个 pipeline
+ * 交给 parallelism 个线程并行发送; 集群连接不支持 pipeline, 批次内逐条发送, 见 {@link Pipelines}。已切分未完成的批次不超过 maxInFlightBatches, 达到后调用线程阻塞,
+ * 不再读取数据源, 因此数据源再大内存也是有界的。单条命令失败只计入失败数, 不中断导入。
+ * 不覆盖(replace=false)时已存在的键不写入, 计入失败数: DUMP 用不带 REPLACE 的 RESTORE, 值用 SET NX, hash / list 先检查 EXISTS
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BulkLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkLoader.class);
+
+    private static final AtomicInteger LOADS = new AtomicInteger();
+
+    private final RedisRouter router;
+
+    private final BulkOptions options;
+
+    private volatile Consumer<Collection<String>> guard = keys -> {
+    };
+
+    private volatile Consumer<Collection<String>> invalidator = keys -> {
+    };
+
+    public BulkLoader(RedisRouter router, BulkOptions options) {
+        options.validate();
+        this.router = router;
+        this.options = options;
+    }
+
+    /**
+     * @param guard 每批写入前调用, 用于把批次中的键加入布隆过滤器
+     */
+    public void setGuard(Consumer<Collection<String>> guard) {
+        this.guard = guard;
+    }
+
+    /**
+     * @param invalidator 每批发送完成后调用(含部分失败的批次), 用于失效批次中键的一级缓存
+     */
+    public void setInvalidator(Consumer<Collection<String>> invalidator) {
+        this.invalidator = invalidator;
+    }
+
+    /**
+     * 导入, 进度按间隔写日志
+     *
+     * @param source 数据源, 例如 {@link BulkFileReader}
+     * @return 最终进度
+     */
+    public BulkProgress load(Iterator<BulkRecord> source) {
+        return load(source, progress -> log.info("bulk load {}", progress));
+    }
+
+    /**
+     * 导入
+     *
+     * @param source   数据源
+     * @param listener 每隔 progressIntervalMillis 以及结束时回调, 在调用线程执行
+     * @return 最终进度; 调用线程被中断时停止读取, 返回未完成的进度
+     */
+    public BulkProgress load(Iterator<BulkRecord> source, Consumer<BulkProgress> listener) {
+        Load load = new Load();
+        int id = LOADS.incrementAndGet();
+        AtomicInteger index = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(options.getParallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "redis-bulk-load-" + id + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(options.getMaxInFlightBatches());
+        Map<Integer, Batch> pending = new HashMap<>();
+        long nextReport = System.currentTimeMillis() + options.getProgressIntervalMillis();
+        boolean interrupted = false;
+        try {
+            while (source.hasNext()) {
+                BulkRecord record = source.next();
+                load.records++;
+                int node = router.nodeOf(record.getKey());
+                Batch batch = pending.computeIfAbsent(node, Batch::new);
+                batch.add(record);
+                if (batch.records.size() >= options.getBatchSize() || batch.bytes >= options.getBatchBytes()) {
+                    pending.remove(node);
+                    submit(batch, load, workers, inFlight);
+                }
+                if (System.currentTimeMillis() >= nextReport) {
+                    listener.accept(load.progress(false));
+                    nextReport = System.currentTimeMillis() + options.getProgressIntervalMillis();
+                }
+            }
+            for (Batch batch : pending.values()) {
+                submit(batch, load, workers, inFlight);
+            }
+            // 取回全部许可即所有批次已完成
+            inFlight.acquire(options.getMaxInFlightBatches());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            interrupted = true;
+        } finally {
+            workers.shutdownNow();
+        }
+        BulkProgress progress = load.progress(!interrupted);
+        listener.accept(progress);
+        return progress;
+    }
+
+    private void submit(Batch batch, Load load, ExecutorService workers, Semaphore inFlight) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            workers.execute(() -> {
+                try {
+                    write(batch, load);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void write(Batch batch, Load load) {
+        RedisTemplate<String, Object> template = router.template(batch.node);
+        int failed = 0;
+        List<String> keys = new ArrayList<>(batch.records.size());
+        for (BulkRecord record : batch.records) {
+            keys.add(record.getKey());
+        }
+        try {
+            guard.accept(keys);
+            List<BulkRecord> records = options.isReplace() ? batch.records : absent(template, batch.records);
+            failed = batch.records.size() - records.size();
+            List<Function<RedisConnection, Object>> commands = new ArrayList<>(records.size());
+            for (BulkRecord record : records) {
+                commands.add(connection -> write(connection, template, record));
+            }
+            failed += countFailures(Pipelines.execute(template, commands));
+        } catch (RedisPipelineException e) {
+            failed += countFailures(e.getPipelineResult());
+            log.warn("bulk load: {} commands failed in a batch of {} records, first error: {}", failed, batch.records.size(), e.getMessage());
+        } catch (RuntimeException e) {
+            failed = batch.records.size();
+            log.warn("bulk load: batch of {} records failed", batch.records.size(), e);
+        }
+        // 一条记录可能对应多条命令, 失败数不超过记录数
+        failed = Math.min(failed, batch.records.size());
+        int size = batch.records.size();
+        load.completed.add(size - failed);
+        load.failed.add(failed);
+        load.bytes.add(batch.bytes * (size - failed) / size);
+        try {
+            invalidator.accept(keys);
+        } catch (RuntimeException e) {
+            log.warn("bulk load: failed to invalidate near cache for a batch of {} records", size, e);
+        }
+    }
+
+    /**
+     * 不覆盖时先用 EXISTS 排除已存在的 hash / list 键(RESTORE 和 SET NX 自己会拒绝已存在的键);
+     * 检查与写入之间被其他客户端创建的键仍会被追加写入
+     *
+     * @return 需要写入的记录
+     */
+    private List<BulkRecord> absent(RedisTemplate<String, Object> template, List<BulkRecord> records) {
+        List<BulkRecord> checked = new ArrayList<>();
+        List<Function<RedisConnection, Object>> commands = new ArrayList<>();
+        for (BulkRecord record : records) {
+            if (record.getKind() == BulkRecord.Kind.HASH || record.getKind() == BulkRecord.Kind.LIST) {
+                byte[] key = record.rawKey();
+                checked.add(record);
+                commands.add(connection -> connection.keyCommands().exists(key));
+            }
+        }
+        if (checked.isEmpty()) {
+            return records;
+        }
+        List<Object> exists = Pipelines.execute(template, commands);
+        Set<BulkRecord> existing = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < checked.size(); i++) {
+            if (!Boolean.FALSE.equals(exists.get(i))) {
+                existing.add(checked.get(i));
+            }
+        }
+        List<BulkRecord> absent = new ArrayList<>(records.size() - existing.size());
+        for (BulkRecord record : records) {
+            if (!existing.contains(record)) {
+                absent.add(record);
+            }
+        }
+        return absent;
+    }
+
+    /**
+     * @return 逐条执行时 SET NX 的结果(false 为键已存在), 其他命令为 null; pipeline 中结果由 closePipeline 返回
+     */
+    @SuppressWarnings("unchecked")
+    private Object write(RedisConnection connection, RedisTemplate<String, Object> template, BulkRecord record) {
+        byte[] key = record.rawKey();
+        long ttl = record.getTtlMillis();
+        boolean replace = options.isReplace();
+        switch (record.getKind()) {
+            case DUMP:
+                connection.keyCommands().restore(key, ttl, record.getDump(), replace);
+                return null;
+            case VALUE: {
+                byte[] value = serialize((RedisSerializer<Object>) template.getValueSerializer(), record.getKey(), record.getValue());
+                Expiration expiration = ttl > 0 ? Expiration.milliseconds(ttl) : Expiration.persistent();
+                return connection.stringCommands().set(key, value, expiration,
+                        replace ? RedisStringCommands.SetOption.upsert() : RedisStringCommands.SetOption.ifAbsent());
+            }
+            case HASH: {
+                RedisSerializer<Object> serializer = (RedisSerializer<Object>) template.getHashValueSerializer();
+                Map<byte[], byte[]> entries = new LinkedHashMap<>();
+                for (Map.Entry<String, Object> entry : record.getEntries().entrySet()) {
+                    entries.put(entry.getKey().getBytes(StandardCharsets.UTF_8), serialize(serializer, record.getKey(), entry.getValue()));
+                }
+                if (replace) {
+                    connection.keyCommands().del(key);
+                }
+                connection.hashCommands().hMSet(key, entries);
+                break;
+            }
+            case LIST: {
+                RedisSerializer<Object> serializer = (RedisSerializer<Object>) template.getValueSerializer();
+                byte[][] values = new byte[record.getValues().size()][];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = serialize(serializer, record.getKey(), record.getValues().get(i));
+                }
+                if (replace) {
+                    connection.keyCommands().del(key);
+                }
+                connection.listCommands().rPush(key, values);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unsupported record kind " + record.getKind());
+        }
+        if (ttl > 0) {
+            connection.keyCommands().pExpire(key, ttl);
+        }
+        return null;
+    }
+
+    private static byte[] serialize(RedisSerializer<Object> serializer, String key, Object value) {
+        String previous = SerializationContext.enter(key);
+        try {
+            return serializer.serialize(value);
+        } finally {
+            SerializationContext.exit(previous);
+        }
+    }
+
+    /**
+     * 失败的命令和未写入的 SET NX(结果为 false); hash / list 的 PEXPIRE 在写入之后, 不会返回 false
+     */
+    private static int countFailures(List<Object> results) {
+        int failed = 0;
+        if (results != null) {
+            for (Object result : results) {
+                if (result instanceof Exception || Boolean.FALSE.equals(result)) {
+                    failed++;
+                }
+            }
+        }
+        return failed;
+    }
+
+    private static final class Batch {
+
+        private final int node;
+
+        private final List<BulkRecord> records = new ArrayList<>();
+
+        private long bytes;
+
+        Batch(int node) {
+            this.node = node;
+        }
+
+        void add(BulkRecord record) {
+            records.add(record);
+            bytes += record.weight();
+        }
+    }
+
+    /**
+     * 一次导入的计数, records 只在调用线程修改
+     */
+    private static final class Load {
+
+        private final long start = System.nanoTime();
+
+        private long records;
+
+        private final LongAdder completed = new LongAdder();
+
+        private final LongAdder failed = new LongAdder();
+
+        private final LongAdder bytes = new LongAdder();
+
+        BulkProgress progress(boolean finished) {
+            return new BulkProgress(records, completed.sum(), failed.sum(), bytes.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), finished);
+        }
+    }
+}
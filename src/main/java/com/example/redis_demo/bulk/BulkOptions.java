@@ -0,0 +1,100 @@
+package com.example.redis_demo.bulk;
+
+/**
+ * 批量导入/导出参数
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BulkOptions {
+
+    /**
+     * 每个 pipeline 的最大命令(键)数
+     */
+    private int batchSize = 1000;
+
+    /**
+     * 每个 pipeline 的最大字节数(估算), 大值较多时先于 batchSize 切分
+     */
+    private long batchBytes = 1 << 20;
+
+    /**
+     * 并行发送 pipeline 的线程数, 每个线程同时占用一个连接
+     */
+    private int parallelism = 4;
+
+    /**
+     * 已切分未完成的批次上限, 达到后暂停读取数据源(背压), 在途内存约为 maxInFlightBatches * batchBytes
+     */
+    private int maxInFlightBatches = 8;
+
+    /**
+     * 进度回调间隔(毫秒)
+     */
+    private long progressIntervalMillis = 5000;
+
+    /**
+     * 导入时是否覆盖已有的键; 不覆盖时已存在的键不写入, 计入失败数
+     */
+    private boolean replace = true;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public BulkOptions setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+
+    public BulkOptions setBatchBytes(long batchBytes) {
+        this.batchBytes = batchBytes;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public BulkOptions setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    public BulkOptions setMaxInFlightBatches(int maxInFlightBatches) {
+        this.maxInFlightBatches = maxInFlightBatches;
+        return this;
+    }
+
+    public long getProgressIntervalMillis() {
+        return progressIntervalMillis;
+    }
+
+    public BulkOptions setProgressIntervalMillis(long progressIntervalMillis) {
+        this.progressIntervalMillis = progressIntervalMillis;
+        return this;
+    }
+
+    public boolean isReplace() {
+        return replace;
+    }
+
+    public BulkOptions setReplace(boolean replace) {
+        this.replace = replace;
+        return this;
+    }
+
+    void validate() {
+        if (batchSize <= 0 || batchBytes <= 0 || parallelism <= 0 || maxInFlightBatches <= 0) {
+            throw new IllegalArgumentException("batchSize, batchBytes, parallelism and maxInFlightBatches must be positive");
+        }
+    }
+}
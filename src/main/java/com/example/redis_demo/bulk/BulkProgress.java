@@ -0,0 +1,79 @@
+package com.example.redis_demo.bulk;
+
+/**
+ * 批量导入/导出的进度快照
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class BulkProgress {
+
+    private final long records;
+
+    private final long completed;
+
+    private final long failed;
+
+    private final long bytes;
+
+    private final long elapsedMillis;
+
+    private final boolean finished;
+
+    BulkProgress(long records, long completed, long failed, long bytes, long elapsedMillis, boolean finished) {
+        this.records = records;
+        this.completed = completed;
+        this.failed = failed;
+        this.bytes = bytes;
+        this.elapsedMillis = elapsedMillis;
+        this.finished = finished;
+    }
+
+    /**
+     * @return 已从数据源读取(导入)或扫描到(导出)的记录数
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return 已成功写入 redis(导入)或写出(导出)的记录数
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return 已完成记录的字节数(估算)
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public double getRecordsPerSecond() {
+        return elapsedMillis == 0 ? 0 : completed * 1000.0 / elapsedMillis;
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedMillis == 0 ? 0 : bytes * 1000.0 / elapsedMillis / (1 << 20);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkProgress{records=" + records + ", completed=" + completed + ", failed=" + failed
+                + ", elapsed=" + elapsedMillis + "ms, " + String.format("%.0f records/s, %.2f MB/s", getRecordsPerSecond(), getMegabytesPerSecond())
+                + (finished ? ", finished" : "") + '}';
+    }
+}
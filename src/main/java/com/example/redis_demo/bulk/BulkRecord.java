@@ -0,0 +1,125 @@
+package com.example.redis_demo.bulk;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量导入/导出的一条记录
+ * <p>
+ * DUMP 为 redis DUMP 的原始内容, 导入时 RESTORE, 任意类型通用, 导出文件只包含这种记录;
+ * VALUE / HASH / LIST 由业务代码构造, 导入时经值序列化器写入, 代替逐个调用 set / hset / rpush
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class BulkRecord {
+
+    public enum Kind {
+        DUMP, VALUE, HASH, LIST
+    }
+
+    /**
+     * 估算非 DUMP 记录每个元素占用的内存, 只用于限制在途数据量
+     */
+    private static final int ELEMENT_WEIGHT = 64;
+
+    private final Kind kind;
+
+    private final String key;
+
+    private final Object payload;
+
+    private final long ttlMillis;
+
+    private BulkRecord(Kind kind, String key, Object payload, long ttlMillis) {
+        if (key == null || payload == null) {
+            throw new IllegalArgumentException("key and payload must not be null");
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("ttlMillis must not be negative");
+        }
+        this.kind = kind;
+        this.key = key;
+        this.payload = payload;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param key       键
+     * @param dump      DUMP 的结果
+     * @param ttlMillis 剩余过期时间(毫秒), 0 不过期
+     */
+    public static BulkRecord dump(String key, byte[] dump, long ttlMillis) {
+        return new BulkRecord(Kind.DUMP, key, dump, ttlMillis);
+    }
+
+    public static BulkRecord value(String key, Object value, long ttlMillis) {
+        return new BulkRecord(Kind.VALUE, key, value, ttlMillis);
+    }
+
+    /**
+     * 导入时先删除已有的键再 HMSET(允许覆盖时)
+     */
+    public static BulkRecord hash(String key, Map<String, Object> entries, long ttlMillis) {
+        return new BulkRecord(Kind.HASH, key, entries, ttlMillis);
+    }
+
+    /**
+     * 导入时先删除已有的键再 RPUSH(允许覆盖时)
+     */
+    public static BulkRecord list(String key, List<Object> values, long ttlMillis) {
+        return new BulkRecord(Kind.LIST, key, values, ttlMillis);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public byte[] getDump() {
+        return (byte[]) payload;
+    }
+
+    public Object getValue() {
+        return payload;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getEntries() {
+        return (Map<String, Object>) payload;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Object> getValues() {
+        return (List<Object>) payload;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * @return 估算的字节数, 用于按字节切分批次和限制在途数据量
+     */
+    long weight() {
+        int keyBytes = key.length() * 3;
+        switch (kind) {
+            case DUMP:
+                return keyBytes + getDump().length;
+            case HASH:
+                return keyBytes + (long) getEntries().size() * ELEMENT_WEIGHT * 2;
+            case LIST:
+                return keyBytes + (long) getValues().size() * ELEMENT_WEIGHT;
+            default:
+                return keyBytes + ELEMENT_WEIGHT;
+        }
+    }
+
+    byte[] rawKey() {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.redis_demo.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 进程内一级缓存(near cache)
+ * <p>
+ * 按 redis 键做 LRU, 同一个键下可以缓存多种读取结果(GET / HGET 的某一项 / HGETALL / SMEMBERS),
+ * 键被修改时整体失效。容量同时受条目数和序列化字节数限制, 每条缓存的本地过期时间不超过该键在 redis 中的剩余 TTL
+ * <p>
+ * 缓存返回的是同一个对象实例, 调用方不应修改取到的值
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class NearCache {
+
+    /**
+     * GET 结果
+     */
+    public static final String VALUE = "\0v";
+
+    /**
+     * HGETALL 结果
+     */
+    public static final String HASH = "\0H";
+
+    /**
+     * SMEMBERS 结果
+     */
+    public static final String MEMBERS = "\0S";
+
+    private final long maxEntries;
+
+    private final long maxBytes;
+
+    private final long ttlMillis;
+
+    private final LinkedHashMap<String, Holder> holders = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long entries;
+
+    private long bytes;
+
+    /**
+     * 失效序号的分段数, 2 的幂
+     */
+    private static final int STRIPES = 1024;
+
+    /**
+     * 按键分段的失效序号, 键失效时递增所在分段; 读取期间同一分段发生过失效则不回填, 避免把旧值放回缓存。
+     * 分段而不是全局一个序号: 写入频繁时其他键的失效不会让无关的读取都无法回填
+     */
+    private final AtomicLongArray invalidationSequences = new AtomicLongArray(STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private volatile Consumer<String> invalidationPublisher;
+
+    /**
+     * @param maxEntries 最大缓存条数
+     * @param maxBytes   最大缓存字节数(按 redis 返回的原始字节估算)
+     * @param ttlMillis  本地最长缓存时间(毫秒)
+     */
+    public NearCache(long maxEntries, long maxBytes, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param key  redis 键
+     * @param part 读取类型 {@link #VALUE} {@link #HASH} {@link #MEMBERS} 或 hash 的项
+     * @return 缓存值, 未命中返回 null
+     */
+    public Object get(String key, String part) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Holder holder = holders.get(key);
+            Entry entry = holder == null ? null : holder.parts.get(part);
+            if (entry != null) {
+                if (entry.expireAt > now) {
+                    hits.increment();
+                    return entry.value;
+                }
+                holder.parts.remove(part);
+                entries--;
+                bytes -= entry.weight;
+                holder.weight -= entry.weight;
+                if (holder.parts.isEmpty()) {
+                    holders.remove(key);
+                }
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @param key redis 键
+     * @return 键所在分段的当前失效序号, 读取 redis 前获取, 回填时传入 {@link #put}
+     */
+    public long sequence(String key) {
+        return invalidationSequences.get(stripe(key));
+    }
+
+    /**
+     * 回填缓存
+     *
+     * @param key       redis 键
+     * @param part      读取类型
+     * @param value     值, null 不缓存
+     * @param weight    原始字节数
+     * @param pttl      键在 redis 中的剩余时间(毫秒), -1 永久, -2 不存在
+     * @param sequence  读取前获取的 {@link #sequence(String)}
+     */
+    public void put(String key, String part, Object value, long weight, long pttl, long sequence) {
+        if (value == null || pttl == -2 || pttl == 0 || weight > maxBytes) {
+            return;
+        }
+        long ttl = pttl < 0 ? ttlMillis : Math.min(ttlMillis, pttl);
+        long expireAt = System.currentTimeMillis() + ttl;
+        synchronized (this) {
+            if (invalidationSequences.get(stripe(key)) != sequence) {
+                return;
+            }
+            Holder holder = holders.computeIfAbsent(key, k -> new Holder());
+            Entry old = holder.parts.put(part, new Entry(value, weight, expireAt));
+            if (old != null) {
+                bytes -= old.weight;
+                holder.weight -= old.weight;
+            } else {
+                entries++;
+            }
+            bytes += weight;
+            holder.weight += weight;
+            evictIfNecessary();
+        }
+    }
+
+    /**
+     * 本地失效并通知其它节点
+     *
+     * @param key redis 键
+     */
+    public void invalidate(String key) {
+        invalidateLocal(key);
+        Consumer<String> publisher = invalidationPublisher;
+        if (publisher != null) {
+            publisher.accept(key);
+        }
+    }
+
+    /**
+     * 仅本地失效, 收到其它节点的失效通知时调用
+     *
+     * @param key redis 键
+     */
+    public void invalidateLocal(String key) {
+        invalidationSequences.incrementAndGet(stripe(key));
+        synchronized (this) {
+            Holder holder = holders.remove(key);
+            if (holder != null) {
+                entries -= holder.parts.size();
+                bytes -= holder.weight;
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * 清空本地缓存
+     */
+    public void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            invalidationSequences.incrementAndGet(i);
+        }
+        synchronized (this) {
+            holders.clear();
+            entries = 0;
+            bytes = 0;
+        }
+    }
+
+    public void setInvalidationPublisher(Consumer<String> invalidationPublisher) {
+        this.invalidationPublisher = invalidationPublisher;
+    }
+
+    /**
+     * @return 命中/未命中/淘汰等统计, 用于评估缓存容量
+     */
+    public Stats stats() {
+        synchronized (this) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), invalidations.sum(), entries, bytes);
+        }
+    }
+
+    private static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private void evictIfNecessary() {
+        Iterator<Map.Entry<String, Holder>> iterator = holders.entrySet().iterator();
+        while ((entries > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            Holder holder = iterator.next().getValue();
+            iterator.remove();
+            entries -= holder.parts.size();
+            bytes -= holder.weight;
+            evictions.add(holder.parts.size());
+        }
+    }
+
+    private static final class Holder {
+
+        private final Map<String, Entry> parts = new HashMap<>(4);
+
+        private long weight;
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+
+        private final long weight;
+
+        private final long expireAt;
+
+        private Entry(Object value, long weight, long expireAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 缓存统计快照
+     */
+    public static final class Stats {
+
+        private final long hits;
+
+        private final long misses;
+
+        private final long evictions;
+
+        private final long expirations;
+
+        private final long invalidations;
+
+        private final long entries;
+
+        private final long bytes;
+
+        Stats(long hits, long misses, long evictions, long expirations, long invalidations, long entries, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.invalidations = invalidations;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getExpirations() {
+            return expirations;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "NearCache.Stats{hits=" + hits + ", misses=" + misses + ", hitRate=" + String.format("%.4f", getHitRate())
+                    + ", evictions=" + evictions + ", expirations=" + expirations + ", invalidations=" + invalidations
+                    + ", entries=" + entries + ", bytes=" + bytes + '}';
+        }
+    }
+}
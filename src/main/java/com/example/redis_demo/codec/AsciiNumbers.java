@@ -0,0 +1,66 @@
+package com.example.redis_demo.codec;
+
+/**
+ * redis 计数器的原始格式: INCRBY / HINCRBY 保存的是十进制 ASCII 数字
+ * <p>
+ * 直接在字节上解析, 不经过 String 和值序列化器, 读取计数器时没有额外的对象分配
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class AsciiNumbers {
+
+    private AsciiNumbers() {
+    }
+
+    /**
+     * @param bytes 原始字节
+     * @return 是否为 redis 整数格式(可选的负号加 1~19 位数字)
+     */
+    public static boolean isLong(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return false;
+        }
+        int start = bytes[0] == '-' ? 1 : 0;
+        int digits = bytes.length - start;
+        if (digits == 0 || digits > 19) {
+            return false;
+        }
+        for (int i = start; i < bytes.length; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解析十进制整数
+     *
+     * @param bytes 原始字节
+     * @return 值
+     * @throws NumberFormatException 不是整数或超出 long 范围
+     */
+    public static long parseLong(byte[] bytes) {
+        if (!isLong(bytes)) {
+            throw new NumberFormatException("not an integer value");
+        }
+        boolean negative = bytes[0] == '-';
+        // 按负数累加, 使 Long.MIN_VALUE 也能表示
+        long result = 0;
+        for (int i = negative ? 1 : 0; i < bytes.length; i++) {
+            int digit = bytes[i] - '0';
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("integer value out of range");
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw new NumberFormatException("integer value out of range");
+            }
+            return -result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.redis_demo.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 二进制输入, 与 {@link BinaryWriter} 对应
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class BinaryReader {
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private final int limit;
+
+    public BinaryReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    public BinaryReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int readByte() {
+        check(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    public byte[] readBytes(int length) {
+        check(length);
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    public int readVarInt() {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("malformed varint");
+    }
+
+    public long readVarLong() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("malformed varlong");
+    }
+
+    public int readInt() {
+        int raw = readVarInt();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public long readLong() {
+        long raw = readVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public double readDouble() {
+        check(8);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (buffer[position++] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public Integer readNullableInt() {
+        long raw = readVarLong();
+        if (raw == 0) {
+            return null;
+        }
+        raw -= 1;
+        return (int) ((raw >>> 1) ^ -(raw & 1));
+    }
+
+    public Long readNullableLong() {
+        return readByte() == 0 ? null : readLong();
+    }
+
+    public String readString() {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        length -= 1;
+        check(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    public String readRawString() {
+        String value = new String(buffer, position, limit - position, StandardCharsets.UTF_8);
+        position = limit;
+        return value;
+    }
+
+    public List<Integer> readIntList() {
+        int size = readVarInt();
+        if (size == 0) {
+            return null;
+        }
+        size -= 1;
+        List<Integer> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readNullableInt());
+        }
+        return values;
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+
+    private void check(int length) {
+        if (length < 0 || position + length > limit) {
+            throw new IllegalStateException("unexpected end of binary value");
+        }
+    }
+}
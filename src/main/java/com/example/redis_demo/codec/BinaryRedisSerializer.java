@@ -0,0 +1,118 @@
+package com.example.redis_demo.codec;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 二进制值序列化
+ * <p>
+ * 已注册的类型写成 [0x01][类型 ID varint][编码内容], 不再携带完整类名;
+ * 未注册的类型以及数字(INCR/INCRBYFLOAT 需要 ASCII 数字)交给 JSON 序列化。
+ * JSON 文本不会以 0x01 开头, 因此读取时可以直接兼容已有的 JSON 数据, 支持在线迁移。
+ * writeBinary 为 false 时所有值都写成 JSON, 只是读取时能识别二进制格式, 用于滚动升级的第一阶段
+ * 编码在按线程复用的缓冲区中进行, 每个值只分配一次结果数组; 解码直接读取 redis 返回的数组, 不再复制
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BinaryRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 二进制格式的首字节
+     */
+    public static final int MAGIC = 0x01;
+
+    /**
+     * 每个线程默认保留的编码缓冲区上限
+     */
+    public static final int DEFAULT_POOLED_BYTES = 64 * 1024;
+
+    private final CodecRegistry registry;
+
+    private final RedisSerializer<Object> fallback;
+
+    private final BinaryWriterPool writers;
+
+    private final boolean writeBinary;
+
+    /**
+     * @param registry 类型注册表
+     * @param fallback 未注册类型及旧数据使用的序列化, 一般是原有的 JSON 序列化
+     */
+    public BinaryRedisSerializer(CodecRegistry registry, RedisSerializer<Object> fallback) {
+        this(registry, fallback, new BinaryWriterPool(DEFAULT_POOLED_BYTES));
+    }
+
+    /**
+     * @param registry 类型注册表
+     * @param fallback 未注册类型及旧数据使用的序列化, 一般是原有的 JSON 序列化
+     * @param writers  编码缓冲区的复用
+     */
+    public BinaryRedisSerializer(CodecRegistry registry, RedisSerializer<Object> fallback, BinaryWriterPool writers) {
+        this(registry, fallback, writers, true);
+    }
+
+    /**
+     * @param registry    类型注册表
+     * @param fallback    未注册类型及旧数据使用的序列化, 一般是原有的 JSON 序列化
+     * @param writers     编码缓冲区的复用
+     * @param writeBinary 是否把已注册的类型写成二进制; false 时只写 JSON, 仍能读取二进制
+     */
+    public BinaryRedisSerializer(CodecRegistry registry, RedisSerializer<Object> fallback, BinaryWriterPool writers, boolean writeBinary) {
+        this.registry = registry;
+        this.fallback = fallback;
+        this.writers = writers;
+        this.writeBinary = writeBinary;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null || !writeBinary) {
+            return fallback.serialize(value);
+        }
+        CodecRegistry.Registration<Object> registration = (CodecRegistry.Registration<Object>) registry.forType(value.getClass());
+        if (registration == null) {
+            return fallback.serialize(value);
+        }
+        BinaryWriter out = writers.acquire();
+        try {
+            out.writeByte(MAGIC);
+            out.writeVarInt(registration.id);
+            registration.codec.encode(value, out);
+            return out.toByteArray();
+        } catch (RuntimeException e) {
+            throw new SerializationException("Could not write " + value.getClass().getName(), e);
+        } finally {
+            writers.release(out);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (!isBinary(bytes)) {
+            return fallback.deserialize(bytes);
+        }
+        try {
+            BinaryReader in = new BinaryReader(bytes, 1, bytes.length - 1);
+            int id = in.readVarInt();
+            CodecRegistry.Registration<?> registration = registry.forId(id);
+            if (registration == null) {
+                throw new SerializationException("Unknown codec id " + id);
+            }
+            return registration.codec.decode(in);
+        } catch (SerializationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new SerializationException("Could not read binary value", e);
+        }
+    }
+
+    /**
+     * @param bytes redis 中的原始值
+     * @return 是否为二进制格式
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length > 0 && bytes[0] == MAGIC;
+    }
+}
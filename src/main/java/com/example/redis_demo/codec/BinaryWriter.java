@@ -0,0 +1,235 @@
+package com.example.redis_demo.codec;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 二进制输出, 整数使用 varint / zigzag 编码, 可为 null 的字段用 0 表示 null
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class BinaryWriter {
+
+    private byte[] buffer;
+
+    private int position;
+
+    public BinaryWriter() {
+        this(64);
+    }
+
+    public BinaryWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    public BinaryWriter writeByte(int value) {
+        ensure(1);
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    public BinaryWriter writeBytes(byte[] bytes) {
+        return writeBytes(bytes, 0, bytes.length);
+    }
+
+    public BinaryWriter writeBytes(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+        return this;
+    }
+
+    /**
+     * 无符号 varint, 0~127 只占 1 个字节
+     */
+    public BinaryWriter writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    public BinaryWriter writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * 有符号整数, 绝对值小的负数同样只占很少的字节
+     */
+    public BinaryWriter writeInt(int value) {
+        return writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public BinaryWriter writeLong(long value) {
+        return writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public BinaryWriter writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        ensure(8);
+        for (int i = 56; i >= 0; i -= 8) {
+            buffer[position++] = (byte) (bits >>> i);
+        }
+        return this;
+    }
+
+    public BinaryWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    public BinaryWriter writeNullableInt(Integer value) {
+        if (value == null) {
+            return writeVarLong(0);
+        }
+        return writeVarLong(zigZag(value) + 1);
+    }
+
+    public BinaryWriter writeNullableLong(Long value) {
+        // zigzag 后的 long 已占满 64 位, 无法再 +1 区分 null, 单独写一个标记字节
+        if (value == null) {
+            return writeByte(0);
+        }
+        writeByte(1);
+        return writeLong(value);
+    }
+
+    /**
+     * 可为 null 的字符串, 长度 +1 后写入, 0 表示 null
+     */
+    public BinaryWriter writeString(String value) {
+        if (value == null) {
+            return writeVarInt(0);
+        }
+        writeVarInt(utf8Length(value) + 1);
+        return writeUtf8(value);
+    }
+
+    /**
+     * 不带长度的字符串, 只能作为最后一个字段
+     */
+    public BinaryWriter writeRawString(String value) {
+        return writeUtf8(value);
+    }
+
+    /**
+     * 可为 null 的整数列表, 元素也可以为 null
+     */
+    public BinaryWriter writeIntList(List<Integer> values) {
+        if (values == null) {
+            return writeVarInt(0);
+        }
+        writeVarInt(values.size() + 1);
+        for (Integer value : values) {
+            writeNullableInt(value);
+        }
+        return this;
+    }
+
+    /**
+     * @return 当前缓冲区大小, 复用时据此决定是否保留
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int size() {
+        return position;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * 复用前清空
+     */
+    public void reset() {
+        position = 0;
+    }
+
+    /**
+     * 直接编码到缓冲区, 不经过 String.getBytes 的中间数组; 不成对的代理字符与 String.getBytes 一样写为 '?'
+     */
+    private BinaryWriter writeUtf8(String value) {
+        int length = value.length();
+        ensure(length);
+        int i = 0;
+        // ASCII 前缀逐字节复制
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buffer[position++] = (byte) c;
+            i++;
+        }
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                ensure(1);
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[position++] = (byte) (0xC0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensure(4);
+                buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                ensure(1);
+                buffer[position++] = '?';
+            } else {
+                ensure(3);
+                buffer[position++] = (byte) (0xE0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return this;
+    }
+
+    private static int utf8Length(String value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                // 两个 char 共 4 字节
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    private static long zigZag(int value) {
+        return ((long) value << 1) ^ ((long) value >> 63);
+    }
+
+    private void ensure(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + extra));
+        }
+    }
+}
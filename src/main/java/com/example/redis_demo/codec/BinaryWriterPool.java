@@ -0,0 +1,76 @@
+package com.example.redis_demo.codec;
+
+/**
+ * 按线程复用的 {@link BinaryWriter}
+ * <p>
+ * 序列化时在线程自己的缓冲区中编码, 最后只分配一次结果数组, 不再为每个值分配并逐次扩容缓冲区。
+ * 缓冲区超过 maxRetainedBytes 时用完即丢弃, 避免偶发的大值长期占用内存; 同一线程嵌套使用
+ * (例如编码过程中再次序列化)时临时创建新的 writer。每个线程最多保留 maxRetainedBytes,
+ * 线程数很多(例如虚拟线程)时应关闭
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class BinaryWriterPool {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int maxRetainedBytes;
+
+    private final ThreadLocal<Holder> holders = ThreadLocal.withInitial(Holder::new);
+
+    /**
+     * @param maxRetainedBytes 每个线程保留的缓冲区上限, 0 不复用, 每次创建新的 writer
+     */
+    public BinaryWriterPool(int maxRetainedBytes) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("maxRetainedBytes must not be negative");
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * @return 空的 writer, 用完后调用 {@link #release(BinaryWriter)}
+     */
+    public BinaryWriter acquire() {
+        if (maxRetainedBytes == 0) {
+            return new BinaryWriter();
+        }
+        Holder holder = holders.get();
+        if (holder.inUse) {
+            return new BinaryWriter();
+        }
+        holder.inUse = true;
+        if (holder.writer == null) {
+            holder.writer = new BinaryWriter(Math.min(INITIAL_CAPACITY, maxRetainedBytes));
+        }
+        return holder.writer;
+    }
+
+    public void release(BinaryWriter writer) {
+        if (maxRetainedBytes == 0) {
+            return;
+        }
+        Holder holder = holders.get();
+        if (holder.writer != writer) {
+            return;
+        }
+        if (writer.capacity() > maxRetainedBytes) {
+            holder.writer = null;
+        } else {
+            writer.reset();
+        }
+        holder.inUse = false;
+    }
+
+    public int getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    private static final class Holder {
+
+        private BinaryWriter writer;
+
+        private boolean inUse;
+    }
+}
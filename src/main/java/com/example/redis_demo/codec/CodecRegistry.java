@@ -0,0 +1,89 @@
+package com.example.redis_demo.codec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 类型 ID 与编解码的注册表
+ * <p>
+ * ID 一旦写入 redis 就不能再修改或复用, 1~63 保留给内置类型
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class CodecRegistry {
+
+    /**
+     * 业务类型可用的最小 ID
+     */
+    public static final int MIN_USER_ID = 64;
+
+    private final Map<Class<?>, Registration<?>> byType = new HashMap<>();
+
+    private final Map<Integer, Registration<?>> byId = new HashMap<>();
+
+    public CodecRegistry() {
+        register(1, String.class, StringCodec.INSTANCE);
+    }
+
+    /**
+     * 注册编解码, 只匹配精确类型, 子类不会使用父类的编解码
+     *
+     * @param id    类型 ID
+     * @param type  类型
+     * @param codec 编解码
+     * @return this
+     */
+    public synchronized <T> CodecRegistry register(int id, Class<T> type, ValueCodec<T> codec) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("codec id must be positive: " + id);
+        }
+        Registration<?> existing = byId.get(id);
+        if (existing != null && existing.type != type) {
+            throw new IllegalStateException("codec id " + id + " already registered for " + existing.type.getName());
+        }
+        Registration<T> registration = new Registration<>(id, type, codec);
+        byType.put(type, registration);
+        byId.put(id, registration);
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Registration<T> forType(Class<T> type) {
+        return (Registration<T>) byType.get(type);
+    }
+
+    Registration<?> forId(int id) {
+        return byId.get(id);
+    }
+
+    static final class Registration<T> {
+
+        final int id;
+
+        final Class<T> type;
+
+        final ValueCodec<T> codec;
+
+        private Registration(int id, Class<T> type, ValueCodec<T> codec) {
+            this.id = id;
+            this.type = type;
+            this.codec = codec;
+        }
+    }
+
+    private enum StringCodec implements ValueCodec<String> {
+
+        INSTANCE;
+
+        @Override
+        public void encode(String value, BinaryWriter out) {
+            out.writeRawString(value);
+        }
+
+        @Override
+        public String decode(BinaryReader in) {
+            return in.readRawString();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.redis_demo.codec;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压缩包装, 序列化结果超过阈值时压缩
+ * <p>
+ * 压缩后的格式为 [算法首字节][原始长度 varint][压缩内容], 首字节与 JSON 以及 {@link BinaryRedisSerializer} 的首字节都不冲突,
+ * 因此读取时自动识别, 未压缩的旧数据可以直接读取。压缩后没有明显变小(少于 1/8)时保留原始内容
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class CompressingRedisSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> delegate;
+
+    private final CompressionPolicy policy;
+
+    private final LongAdder values = new LongAdder();
+
+    private final LongAdder compressedValues = new LongAdder();
+
+    private final LongAdder bytesBeforeCompression = new LongAdder();
+
+    private final LongAdder bytesAfterCompression = new LongAdder();
+
+    private final LongAdder decompressedValues = new LongAdder();
+
+    public CompressingRedisSerializer(RedisSerializer<Object> delegate, CompressionPolicy policy) {
+        this.delegate = delegate;
+        this.policy = policy;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = delegate.serialize(value);
+        if (bytes == null) {
+            return null;
+        }
+        values.increment();
+        CompressionPolicy.Rule rule = policy.forKey(SerializationContext.currentKey());
+        if (!rule.shouldCompress(bytes.length)) {
+            return bytes;
+        }
+        byte[] header = header(rule.algorithm.getMarker(), bytes.length);
+        byte[] compressed = rule.algorithm.compress(header, bytes);
+        if (compressed == null || compressed.length > bytes.length - (bytes.length >> 3)) {
+            return bytes;
+        }
+        compressedValues.increment();
+        bytesBeforeCompression.add(bytes.length);
+        bytesAfterCompression.add(compressed.length);
+        return compressed;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        CompressionAlgorithm algorithm = bytes == null || bytes.length == 0 ? null : CompressionAlgorithm.forMarker(bytes[0] & 0xFF);
+        if (algorithm == null) {
+            return delegate.deserialize(bytes);
+        }
+        byte[] original;
+        try {
+            BinaryReader in = new BinaryReader(bytes, 1, bytes.length - 1);
+            int originalLength = in.readVarInt();
+            original = algorithm.decompress(bytes, bytes.length - in.remaining(), originalLength);
+        } catch (RuntimeException e) {
+            throw new SerializationException("Could not decompress " + algorithm + " value", e);
+        }
+        decompressedValues.increment();
+        return delegate.deserialize(original);
+    }
+
+    /**
+     * [算法首字节][原始长度 varint], 直接按长度分配
+     */
+    private static byte[] header(int marker, int length) {
+        int size = 2;
+        for (int rest = length >>> 7; rest != 0; rest >>>= 7) {
+            size++;
+        }
+        byte[] header = new byte[size];
+        header[0] = (byte) marker;
+        for (int i = 1; i < size - 1; i++) {
+            header[i] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        header[size - 1] = (byte) length;
+        return header;
+    }
+
+    /**
+     * @return 压缩统计
+     */
+    public Stats stats() {
+        return new Stats(values.sum(), compressedValues.sum(), bytesBeforeCompression.sum(), bytesAfterCompression.sum(),
+                decompressedValues.sum());
+    }
+
+    /**
+     * 压缩统计快照
+     */
+    public static final class Stats {
+
+        private final long values;
+
+        private final long compressedValues;
+
+        private final long bytesBeforeCompression;
+
+        private final long bytesAfterCompression;
+
+        private final long decompressedValues;
+
+        Stats(long values, long compressedValues, long bytesBeforeCompression, long bytesAfterCompression, long decompressedValues) {
+            this.values = values;
+            this.compressedValues = compressedValues;
+            this.bytesBeforeCompression = bytesBeforeCompression;
+            this.bytesAfterCompression = bytesAfterCompression;
+            this.decompressedValues = decompressedValues;
+        }
+
+        /**
+         * @return 序列化的值总数
+         */
+        public long getValues() {
+            return values;
+        }
+
+        /**
+         * @return 被压缩的值数量
+         */
+        public long getCompressedValues() {
+            return compressedValues;
+        }
+
+        public long getBytesBeforeCompression() {
+            return bytesBeforeCompression;
+        }
+
+        public long getBytesAfterCompression() {
+            return bytesAfterCompression;
+        }
+
+        public long getDecompressedValues() {
+            return decompressedValues;
+        }
+
+        /**
+         * @return 压缩后/压缩前, 越小越好, 没有压缩过时为 1
+         */
+        public double getCompressionRatio() {
+            return bytesBeforeCompression == 0 ? 1 : (double) bytesAfterCompression / bytesBeforeCompression;
+        }
+
+        @Override
+        public String toString() {
+            return "CompressingRedisSerializer.Stats{values=" + values + ", compressed=" + compressedValues
+                    + ", ratio=" + String.format("%.3f", getCompressionRatio()) + ", decompressed=" + decompressedValues + '}';
+        }
+    }
+}
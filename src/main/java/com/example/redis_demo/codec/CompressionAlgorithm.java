@@ -0,0 +1,139 @@
+package com.example.redis_demo.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩算法, 每种算法对应一个首字节, 读取时据此自动识别
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public enum CompressionAlgorithm {
+
+    /**
+     * 速度优先
+     */
+    LZ4(0x02) {
+
+        private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+        private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+        @Override
+        byte[] compress(byte[] header, byte[] source) {
+            int headerLength = header.length;
+            int maxLength = compressor.maxCompressedLength(source.length);
+            byte[] target = new byte[headerLength + maxLength];
+            System.arraycopy(header, 0, target, 0, headerLength);
+            int length = compressor.compress(source, 0, source.length, target, headerLength, maxLength);
+            return trim(target, headerLength + length);
+        }
+
+        @Override
+        byte[] decompress(byte[] source, int offset, int originalLength) {
+            byte[] target = new byte[originalLength];
+            decompressor.decompress(source, offset, target, 0, originalLength);
+            return target;
+        }
+    },
+
+    /**
+     * 压缩率优先
+     */
+    DEFLATE(0x03) {
+
+        @Override
+        byte[] compress(byte[] header, byte[] source) {
+            int headerLength = header.length;
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(source);
+                deflater.finish();
+                byte[] target = new byte[headerLength + source.length + 64];
+                System.arraycopy(header, 0, target, 0, headerLength);
+                int length = headerLength;
+                while (!deflater.finished()) {
+                    if (length == target.length) {
+                        // 不可压缩的数据, 放弃压缩
+                        return null;
+                    }
+                    length += deflater.deflate(target, length, target.length - length);
+                }
+                return trim(target, length);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        byte[] decompress(byte[] source, int offset, int originalLength) {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(source, offset, source.length - offset);
+                byte[] target = new byte[originalLength];
+                int length = 0;
+                while (length < originalLength && !inflater.finished()) {
+                    int read = inflater.inflate(target, length, originalLength - length);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += read;
+                }
+                if (length != originalLength) {
+                    throw new IllegalStateException("corrupted deflate value, expected " + originalLength + " bytes but got " + length);
+                }
+                return target;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("corrupted deflate value", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    private final int marker;
+
+    CompressionAlgorithm(int marker) {
+        this.marker = marker;
+    }
+
+    public int getMarker() {
+        return marker;
+    }
+
+    /**
+     * 压缩, 结果以 header 开头
+     *
+     * @return 压缩结果, 无法压缩时返回 null
+     */
+    abstract byte[] compress(byte[] header, byte[] source);
+
+    /**
+     * 解压 offset 之后的内容
+     */
+    abstract byte[] decompress(byte[] source, int offset, int originalLength);
+
+    static CompressionAlgorithm forMarker(int marker) {
+        for (CompressionAlgorithm algorithm : values()) {
+            if (algorithm.marker == marker) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] trim(byte[] bytes, int length) {
+        if (bytes.length == length) {
+            return bytes;
+        }
+        byte[] trimmed = new byte[length];
+        System.arraycopy(bytes, 0, trimmed, 0, length);
+        return trimmed;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.redis_demo.codec;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 按键前缀决定压缩阈值和算法, 最长前缀优先, 没有匹配时使用默认规则
+ * <p>
+ * 配置格式: 前缀=阈值[:算法], 多个用逗号分隔, 阈值为 off 表示不压缩, 例如
+ * <pre>
+ * user:=1024,log:=off,report:=512:deflate
+ * </pre>
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class CompressionPolicy {
+
+    private final Rule defaultRule;
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * @param threshold 默认阈值(字节), 序列化后不小于该值才压缩, 小于 0 表示不压缩
+     * @param algorithm 默认算法
+     */
+    public CompressionPolicy(int threshold, CompressionAlgorithm algorithm) {
+        this.defaultRule = new Rule("", threshold, algorithm);
+    }
+
+    /**
+     * 增加前缀规则
+     *
+     * @param prefix    键前缀
+     * @param threshold 阈值, 小于 0 表示不压缩
+     * @param algorithm 算法
+     * @return this
+     */
+    public CompressionPolicy prefix(String prefix, int threshold, CompressionAlgorithm algorithm) {
+        rules.add(new Rule(prefix, threshold, algorithm));
+        rules.sort(Comparator.comparingInt((Rule rule) -> rule.prefix.length()).reversed());
+        return this;
+    }
+
+    /**
+     * 解析前缀规则配置
+     *
+     * @param spec 配置, 为空时不追加规则
+     * @return this
+     */
+    public CompressionPolicy prefixes(String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return this;
+        }
+        for (String item : spec.split(",")) {
+            String trimmed = item.trim();
+            int index = trimmed.lastIndexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("invalid compression prefix rule: " + trimmed);
+            }
+            String prefix = trimmed.substring(0, index);
+            String[] parts = trimmed.substring(index + 1).split(":");
+            int threshold = "off".equalsIgnoreCase(parts[0]) ? -1 : Integer.parseInt(parts[0]);
+            CompressionAlgorithm algorithm = parts.length > 1
+                    ? CompressionAlgorithm.valueOf(parts[1].toUpperCase()) : defaultRule.algorithm;
+            prefix(prefix, threshold, algorithm);
+        }
+        return this;
+    }
+
+    /**
+     * @param key 当前写入的键, 可以为 null
+     * @return 适用的规则
+     */
+    Rule forKey(String key) {
+        if (key != null) {
+            for (Rule rule : rules) {
+                if (key.startsWith(rule.prefix)) {
+                    return rule;
+                }
+            }
+        }
+        return defaultRule;
+    }
+
+    static final class Rule {
+
+        final String prefix;
+
+        final int threshold;
+
+        final CompressionAlgorithm algorithm;
+
+        private Rule(String prefix, int threshold, CompressionAlgorithm algorithm) {
+            this.prefix = prefix;
+            this.threshold = threshold;
+            this.algorithm = algorithm;
+        }
+
+        boolean shouldCompress(int length) {
+            return threshold >= 0 && length >= threshold;
+        }
+    }
+}
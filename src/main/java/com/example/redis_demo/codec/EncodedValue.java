@@ -0,0 +1,27 @@
+package com.example.redis_demo.codec;
+
+/**
+ * 已经序列化好的值, 由 {@link EncodedValueRedisSerializer} 原样写出
+ * <p>
+ * 响应式调用中序列化发生在订阅之后, 可能在 IO 线程上, 也拿不到调用方登记的 {@link SerializationContext}。
+ * 调用方可以先在自己的线程里按键完成序列化, 再把结果包装成 EncodedValue 交给模板
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class EncodedValue {
+
+    private final byte[] bytes;
+
+    private EncodedValue(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public static EncodedValue of(byte[] bytes) {
+        return new EncodedValue(bytes);
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.redis_demo.codec;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * {@link EncodedValue} 直接写出, 其它值交给被包装的序列化
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class EncodedValueRedisSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> delegate;
+
+    public EncodedValueRedisSerializer(RedisSerializer<Object> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value instanceof EncodedValue) {
+            return ((EncodedValue) value).getBytes();
+        }
+        return delegate.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        return delegate.deserialize(bytes);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.redis_demo.codec;
+
+/**
+ * 当前线程正在写入的 redis 键
+ * <p>
+ * RedisSerializer 只拿得到值, 需要按键前缀决定策略(例如是否压缩)时, 由调用方在序列化前登记当前键
+ * <pre>
+ * String previous = SerializationContext.enter(key);
+ * try {
+ *     redisTemplate.opsForValue().set(key, value);
+ * } finally {
+ *     SerializationContext.exit(previous);
+ * }
+ * </pre>
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class SerializationContext {
+
+    private static final ThreadLocal<String> CURRENT_KEY = new ThreadLocal<>();
+
+    private SerializationContext() {
+    }
+
+    /**
+     * @param key 当前键
+     * @return 之前登记的键, 传给 {@link #exit(String)} 以支持嵌套
+     */
+    public static String enter(String key) {
+        String previous = CURRENT_KEY.get();
+        CURRENT_KEY.set(key);
+        return previous;
+    }
+
+    public static void exit(String previous) {
+        if (previous == null) {
+            CURRENT_KEY.remove();
+        } else {
+            CURRENT_KEY.set(previous);
+        }
+    }
+
+    /**
+     * @return 当前键, 未登记时为 null
+     */
+    public static String currentKey() {
+        return CURRENT_KEY.get();
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.redis_demo.codec;
+
+import com.example.redis_demo.entity.User;
+
+/**
+ * {@link User} 的二进制编码: name, age, scores 依次写入, 均可为 null
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class UserCodec implements ValueCodec<User> {
+
+    /**
+     * 类型 ID, 写入 redis 后不可修改
+     */
+    public static final int ID = 64;
+
+    @Override
+    public void encode(User value, BinaryWriter out) {
+        out.writeString(value.getName());
+        out.writeNullableInt(value.getAge());
+        out.writeIntList(value.getScores());
+    }
+
+    @Override
+    public User decode(BinaryReader in) {
+        User user = new User();
+        user.setName(in.readString());
+        user.setAge(in.readNullableInt());
+        user.setScores(in.readIntList());
+        return user;
+    }
+}
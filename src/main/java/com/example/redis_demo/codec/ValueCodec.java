@@ -0,0 +1,28 @@
+package com.example.redis_demo.codec;
+
+/**
+ * 值编解码 SPI, 通过 {@link CodecRegistry#register(int, Class, ValueCodec)} 为具体类型注册紧凑的二进制格式
+ * <p>
+ * 存储时只写入注册的类型 ID, 不再写入完整类名
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public interface ValueCodec<T> {
+
+    /**
+     * 编码
+     *
+     * @param value 值, 不为 null
+     * @param out   输出
+     */
+    void encode(T value, BinaryWriter out);
+
+    /**
+     * 解码
+     *
+     * @param in 输入
+     * @return 值
+     */
+    T decode(BinaryReader in);
+}
@@ -0,0 +1,18 @@
+package com.example.redis_demo.codec;
+
+/**
+ * 业务模块声明该类型的 bean 即可向 {@link CodecRegistry} 注册自己的编解码
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@FunctionalInterface
+public interface ValueCodecRegistrar {
+
+    /**
+     * 注册编解码
+     *
+     * @param registry 注册表
+     */
+    void register(CodecRegistry registry);
+}
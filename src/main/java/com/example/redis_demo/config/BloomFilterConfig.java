@@ -0,0 +1,65 @@
+package com.example.redis_demo.config;
+
+import com.example.redis_demo.bloom.BloomFilter;
+import com.example.redis_demo.bloom.BloomGuard;
+import com.example.redis_demo.routing.RedisRouter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * get 前的布隆过滤器守卫, redis.bloom.enabled=true 时启用
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Configuration
+@ConditionalOnProperty(name = "redis.bloom.enabled", havingValue = "true")
+public class BloomFilterConfig {
+
+    @Value("${redis.bloom.name:keys}")
+    private String name;
+
+    @Value("${redis.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    @Value("${redis.bloom.fpp:0.01}")
+    private double fpp;
+
+    /**
+     * 受守卫的键前缀, 逗号分隔
+     */
+    @Value("${redis.bloom.prefixes:}")
+    private String prefixes;
+
+    /**
+     * 本地镜像刷新间隔(毫秒), 默认 0 不开启镜像, 每次查询访问 redis; 开启后镜像判定存在的查询不访问 redis
+     */
+    @Value("${redis.bloom.mirror-refresh-ms:0}")
+    private long mirrorRefreshMs;
+
+    @Bean
+    public BloomFilter keyBloomFilter(RedisRouter redisRouter) {
+        BloomFilter filter = new BloomFilter(name, expectedInsertions, fpp, redisRouter);
+        if (mirrorRefreshMs > 0) {
+            filter.startMirror(mirrorRefreshMs);
+        }
+        return filter;
+    }
+
+    @Bean
+    public BloomGuard bloomGuard(BloomFilter keyBloomFilter) {
+        List<String> list = new ArrayList<>();
+        for (String prefix : StringUtils.commaDelimitedListToStringArray(prefixes)) {
+            if (StringUtils.hasText(prefix)) {
+                list.add(prefix.trim());
+            }
+        }
+        return new BloomGuard(keyBloomFilter, list);
+    }
+}
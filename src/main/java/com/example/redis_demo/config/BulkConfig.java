@@ -0,0 +1,69 @@
+package com.example.redis_demo.config;
+
+import com.example.redis_demo.bloom.BloomGuard;
+import com.example.redis_demo.bulk.BulkExporter;
+import com.example.redis_demo.bulk.BulkLoader;
+import com.example.redis_demo.bulk.BulkOptions;
+import com.example.redis_demo.cache.NearCache;
+import com.example.redis_demo.routing.RedisRouter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 批量导入/导出, 线程只在导入/导出期间创建
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Configuration
+public class BulkConfig {
+
+    @Value("${redis.bulk.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${redis.bulk.batch-bytes:1048576}")
+    private long batchBytes;
+
+    /**
+     * 需不大于连接池的 max-total, 否则多出的线程在借连接时等待
+     */
+    @Value("${redis.bulk.parallelism:4}")
+    private int parallelism;
+
+    @Value("${redis.bulk.max-in-flight-batches:8}")
+    private int maxInFlightBatches;
+
+    @Value("${redis.bulk.progress-interval-ms:5000}")
+    private long progressIntervalMillis;
+
+    @Value("${redis.bulk.replace:true}")
+    private boolean replace;
+
+    /**
+     * 开启布隆过滤器时, 导入的键在写入前加入过滤器; 开启一级缓存时, 每批写入后失效批次中的键
+     */
+    @Bean
+    public BulkLoader bulkLoader(RedisRouter redisRouter, ObjectProvider<BloomGuard> bloomGuard, ObjectProvider<NearCache> nearCache) {
+        BulkLoader loader = new BulkLoader(redisRouter, options());
+        bloomGuard.ifAvailable(guard -> loader.setGuard(guard::addingAll));
+        nearCache.ifAvailable(cache -> loader.setInvalidator(keys -> keys.forEach(cache::invalidate)));
+        return loader;
+    }
+
+    @Bean
+    public BulkExporter bulkExporter(RedisRouter redisRouter) {
+        return new BulkExporter(redisRouter, options());
+    }
+
+    private BulkOptions options() {
+        return new BulkOptions()
+                .setBatchSize(batchSize)
+                .setBatchBytes(batchBytes)
+                .setParallelism(parallelism)
+                .setMaxInFlightBatches(maxInFlightBatches)
+                .setProgressIntervalMillis(progressIntervalMillis)
+                .setReplace(replace);
+    }
+}
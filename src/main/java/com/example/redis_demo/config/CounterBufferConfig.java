@@ -0,0 +1,34 @@
+package com.example.redis_demo.config;
+
+import com.example.redis_demo.counter.CounterBuffer;
+import com.example.redis_demo.service.RedisService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 热点计数器本地合并写, redis.counter-buffer.enabled=true 时启用
+ * <p>
+ * 容器关闭时先于 RedisService 销毁, 剩余增量在 {@link CounterBuffer#close()} 中写入
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Configuration
+@ConditionalOnProperty(name = "redis.counter-buffer.enabled", havingValue = "true")
+public class CounterBufferConfig {
+
+    @Value("${redis.counter-buffer.interval-ms:100}")
+    private long intervalMillis;
+
+    @Value("${redis.counter-buffer.max-updates:50000}")
+    private long maxUpdates;
+
+    @Bean
+    public CounterBuffer counterBuffer(RedisService redisService) {
+        CounterBuffer buffer = new CounterBuffer(redisService, intervalMillis, maxUpdates);
+        buffer.start();
+        return buffer;
+    }
+}
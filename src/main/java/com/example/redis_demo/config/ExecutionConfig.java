@@ -0,0 +1,51 @@
+package com.example.redis_demo.config;
+
+import com.example.redis_demo.execution.RedisExecutor;
+import com.example.redis_demo.execution.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 阻塞调用的执行方式
+ * <p>
+ * redis.execution.virtual-threads=true 且运行在 JDK 21+ 时 {@link RedisExecutor} 和多键命令的分片并发使用虚拟线程,
+ * 同时默认开启 redis.pool.borrow-gate; 低版本 JDK 上记录警告并退回平台线程
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Configuration
+public class ExecutionConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionConfig.class);
+
+    @Value("${redis.execution.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    /**
+     * 平台线程模式下的线程数
+     */
+    @Value("${redis.execution.platform-threads:64}")
+    private int platformThreads;
+
+    /**
+     * 同时执行的任务上限, 0 不限制
+     */
+    @Value("${redis.execution.max-concurrency:0}")
+    private int maxConcurrency;
+
+    @Bean(destroyMethod = "close")
+    public RedisExecutor redisExecutor() {
+        if (virtualThreads) {
+            if (VirtualThreads.isAvailable()) {
+                return RedisExecutor.virtual(maxConcurrency);
+            }
+            log.warn("redis.execution.virtual-threads requires JDK 21+, running on {}, falling back to {} platform threads",
+                    System.getProperty("java.version"), platformThreads);
+        }
+        return RedisExecutor.platform(platformThreads, maxConcurrency);
+    }
+}
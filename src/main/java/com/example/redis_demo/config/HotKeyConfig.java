@@ -0,0 +1,56 @@
+package com.example.redis_demo.config;
+
+import com.example.redis_demo.cache.NearCache;
+import com.example.redis_demo.hotkey.HotKeyDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 热键/大键探测, redis.hot-key.enabled=true 时启用; 结果见日志、redis.hotkey.* 指标和 JMX com.example.redis_demo:type=HotKeys
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Configuration
+@ConditionalOnProperty(name = "redis.hot-key.enabled", havingValue = "true")
+public class HotKeyConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(HotKeyConfig.class);
+
+    @Value("${redis.hot-key.capacity:128}")
+    private int capacity;
+
+    @Value("${redis.hot-key.sample-rate:16}")
+    private int sampleRate;
+
+    @Value("${redis.hot-key.threshold:10000}")
+    private long threshold;
+
+    @Value("${redis.hot-key.big-key-bytes:1048576}")
+    private long bigKeyBytes;
+
+    @Value("${redis.hot-key.window-ms:60000}")
+    private long windowMillis;
+
+    /**
+     * 一级缓存只缓存热键, 需要同时开启 redis.near-cache.enabled
+     */
+    @Value("${redis.hot-key.promote:false}")
+    private boolean promote;
+
+    @Bean(destroyMethod = "close")
+    public HotKeyDetector hotKeyDetector(ObjectProvider<NearCache> nearCache) {
+        if (promote && nearCache.getIfAvailable() == null) {
+            log.warn("redis.hot-key.promote requires redis.near-cache.enabled=true, hot keys will not be cached");
+        }
+        HotKeyDetector detector = new HotKeyDetector(capacity, sampleRate, threshold, bigKeyBytes, promote);
+        detector.start(windowMillis);
+        detector.registerMBean();
+        return detector;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.redis_demo.config;
+
+import com.example.redis_demo.cache.NearCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * 进程内一级缓存配置, redis.near-cache.enabled=true 时启用
+ * <p>
+ * 失效通知两种方式:
+ * pubsub   写操作后向 channel 发布被修改的键, 各节点订阅后本地失效
+ * keyspace 订阅 redis 的 keyspace 通知, 需要服务端开启 notify-keyspace-events KA, 写操作不再额外发布
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Configuration
+@ConditionalOnProperty(name = "redis.near-cache.enabled", havingValue = "true")
+public class NearCacheConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(NearCacheConfig.class);
+
+    private static final String SEPARATOR = "|";
+
+    @Value("${redis.near-cache.max-entries:10000}")
+    private long maxEntries;
+
+    @Value("${redis.near-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${redis.near-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${redis.near-cache.invalidation:pubsub}")
+    private String invalidation;
+
+    @Value("${redis.near-cache.channel:near-cache:invalidate}")
+    private String channel;
+
+    @Value("${redis.near-cache.database:0}")
+    private int database;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Bean
+    public NearCache nearCache(RedisTemplate<String, Object> redisTemplate) {
+        NearCache nearCache = new NearCache(maxEntries, maxBytes, ttlSeconds * 1000);
+        if (!isKeyspace()) {
+            byte[] rawChannel = channel.getBytes(StandardCharsets.UTF_8);
+            nearCache.setInvalidationPublisher(key -> {
+                byte[] message = (instanceId + SEPARATOR + key).getBytes(StandardCharsets.UTF_8);
+                try {
+                    redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(rawChannel, message));
+                } catch (Exception e) {
+                    // 通知失败时其它节点依赖本地 TTL 兜底
+                    log.warn("near cache invalidation publish failed, key={}", key, e);
+                }
+            });
+        }
+        return nearCache;
+    }
+
+    @Bean
+    public RedisMessageListenerContainer nearCacheListenerContainer(RedisConnectionFactory factory, NearCache nearCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        if (isKeyspace()) {
+            String prefix = "__keyspace@" + database + "__:";
+            container.addMessageListener((message, pattern) -> {
+                String source = new String(message.getChannel(), StandardCharsets.UTF_8);
+                nearCache.invalidateLocal(source.substring(prefix.length()));
+            }, new PatternTopic(prefix + "*"));
+        } else {
+            container.addMessageListener((message, pattern) -> {
+                String body = new String(message.getBody(), StandardCharsets.UTF_8);
+                int index = body.indexOf(SEPARATOR);
+                if (index > 0 && !body.startsWith(instanceId)) {
+                    nearCache.invalidateLocal(body.substring(index + 1));
+                }
+            }, new ChannelTopic(channel));
+        }
+        return container;
+    }
+
+    private boolean isKeyspace() {
+        return "keyspace".equalsIgnoreCase(invalidation);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.redis_demo.config;
+
+import com.example.redis_demo.codec.EncodedValueRedisSerializer;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.time.Duration;
+
+/**
+ * 非阻塞客户端配置, 供 ReactiveRedisService / AsyncRedisService 使用
+ * <p>
+ * 所有调用共用一个 Lettuce 连接(shareNativeConnection), 命令发出后不等待响应即可继续发送,
+ * 一个连接上可以同时有成千上万条在途命令, 不再受连接池大小和 maxWait 限制。
+ * 连接在第一次使用时建立, redis 不可用时不影响应用启动
+ * <p>
+ * redis.mode=cluster 时使用集群连接, 定时及收到 MOVED/ASK、重连等事件时刷新拓扑;
+ * sharded 模式的路由只在阻塞的 RedisService 中实现, 不创建非阻塞客户端
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Configuration
+@ConditionalOnExpression("'${redis.mode:standalone}' != 'sharded'")
+public class ReactiveRedisConfig {
+
+    @Value("${redis.host}")
+    private String host;
+
+    @Value("${redis.port}")
+    private int port;
+
+    @Value("${redis.password:}")
+    private String password;
+
+    @Value("${redis.mode:standalone}")
+    private String mode;
+
+    @Value("${redis.cluster.nodes:}")
+    private String clusterNodes;
+
+    @Value("${redis.cluster.max-redirects:5}")
+    private int clusterMaxRedirects;
+
+    @Value("${redis.cluster.topology-refresh-ms:10000}")
+    private long clusterTopologyRefreshMs;
+
+    /**
+     * 单条命令超时时间, 超时后 Mono 以 RedisCommandTimeoutException 结束
+     */
+    @Value("${redis.reactive.command-timeout-ms:2000}")
+    private long commandTimeoutMs;
+
+    /**
+     * 断线期间最多缓存的命令数, 超过后直接失败, 避免重连期间堆积
+     */
+    @Value("${redis.reactive.request-queue-size:100000}")
+    private int requestQueueSize;
+
+    @Bean
+    public LettuceConnectionFactory reactiveRedisConnectionFactory() {
+        boolean cluster = "cluster".equalsIgnoreCase(mode);
+        SocketOptions socketOptions = SocketOptions.builder().tcpNoDelay(true).build();
+        TimeoutOptions timeoutOptions = TimeoutOptions.enabled(Duration.ofMillis(commandTimeoutMs));
+        ClientOptions clientOptions;
+        if (cluster) {
+            ClusterTopologyRefreshOptions refreshOptions = ClusterTopologyRefreshOptions.builder()
+                    .enablePeriodicRefresh(Duration.ofMillis(clusterTopologyRefreshMs))
+                    .enableAllAdaptiveRefreshTriggers()
+                    .build();
+            clientOptions = ClusterClientOptions.builder()
+                    .socketOptions(socketOptions)
+                    .autoReconnect(true)
+                    .requestQueueSize(requestQueueSize)
+                    .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                    .timeoutOptions(timeoutOptions)
+                    .maxRedirects(clusterMaxRedirects)
+                    .topologyRefreshOptions(refreshOptions)
+                    .build();
+        } else {
+            clientOptions = ClientOptions.builder()
+                    .socketOptions(socketOptions)
+                    .autoReconnect(true)
+                    .requestQueueSize(requestQueueSize)
+                    .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                    .timeoutOptions(timeoutOptions)
+                    .build();
+        }
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .commandTimeout(Duration.ofMillis(commandTimeoutMs))
+                .clientOptions(clientOptions)
+                .build();
+        LettuceConnectionFactory factory;
+        if (cluster) {
+            RedisClusterConfiguration clusterConfig = RedisConfig.clusterConfiguration(clusterNodes, clusterMaxRedirects, password);
+            factory = new LettuceConnectionFactory(clusterConfig, clientConfiguration);
+        } else {
+            RedisStandaloneConfiguration redisConfig = new RedisStandaloneConfiguration();
+            redisConfig.setHostName(host);
+            redisConfig.setPort(port);
+            redisConfig.setPassword(RedisPassword.of(password));
+            factory = new LettuceConnectionFactory(redisConfig, clientConfiguration);
+        }
+        factory.setShareNativeConnection(true);
+        return factory;
+    }
+
+    /**
+     * 值序列化与 redisTemplate 一致; 写入的值已由调用方预先序列化为 {@link com.example.redis_demo.codec.EncodedValue}
+     */
+    @Bean
+    public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(@Qualifier("reactiveRedisConnectionFactory") LettuceConnectionFactory factory,
+                                                                       @Qualifier("redisValueSerializer") RedisSerializer<Object> redisValueSerializer) {
+        StringRedisSerializer stringRedisSerializer = new StringRedisSerializer();
+        RedisSerializer<Object> valueSerializer = new EncodedValueRedisSerializer(redisValueSerializer);
+        RedisSerializationContext<String, Object> context = RedisSerializationContext.<String, Object>newSerializationContext()
+                .key(stringRedisSerializer)
+                .value(valueSerializer)
+                .hashKey(stringRedisSerializer)
+                .hashValue(valueSerializer)
+                .build();
+        return new ReactiveRedisTemplate<>(factory, context);
+    }
+}
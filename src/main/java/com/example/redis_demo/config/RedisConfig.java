@@ -1,26 +1,62 @@
 package com.example.redis_demo.config;
 
+import com.example.redis_demo.bloom.BloomGuard;
+import com.example.redis_demo.cache.NearCache;
+import com.example.redis_demo.codec.BinaryRedisSerializer;
+import com.example.redis_demo.codec.BinaryWriterPool;
+import com.example.redis_demo.codec.CodecRegistry;
+import com.example.redis_demo.codec.CompressingRedisSerializer;
+import com.example.redis_demo.codec.CompressionAlgorithm;
+import com.example.redis_demo.codec.CompressionPolicy;
+import com.example.redis_demo.codec.UserCodec;
+import com.example.redis_demo.codec.ValueCodecRegistrar;
+import com.example.redis_demo.entity.User;
+import com.example.redis_demo.hotkey.SizeRecordingRedisSerializer;
+import com.example.redis_demo.metrics.MeteredRedisSerializer;
+import com.example.redis_demo.pool.AdaptivePoolController;
+import com.example.redis_demo.pool.InstrumentedJedisConnectionFactory;
+import com.example.redis_demo.ratelimit.RedisRateLimiter;
+import com.example.redis_demo.repository.HashRepository;
+import com.example.redis_demo.repository.UserHashSchema;
+import com.example.redis_demo.routing.ClusterSlotRouter;
+import com.example.redis_demo.routing.ConsistentHashRouter;
+import com.example.redis_demo.routing.ReadPolicy;
+import com.example.redis_demo.routing.RedisRouter;
+import com.example.redis_demo.routing.ReplicaReadRouter;
+import com.example.redis_demo.routing.SentinelReplicaWatcher;
+import com.example.redis_demo.routing.SingleNodeRouter;
+import com.example.redis_demo.script.ScriptRegistry;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
-import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.StringUtils;
 import redis.clients.jedis.JedisPoolConfig;
 
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author dengR
@@ -35,46 +71,428 @@ public class RedisConfig {
     @Value("${redis.port}")
     private int port;
 
+    @Value("${redis.password:}")
+    private String password;
+
+    /**
+     * standalone 单机; cluster redis cluster; sharded 在多个独立节点之间按一致性哈希分片
+     */
+    @Value("${redis.mode:standalone}")
+    private String mode;
+
+    /**
+     * cluster 模式的种子节点 host:port,host:port, 其余节点和 slot 分布自动发现
+     */
+    @Value("${redis.cluster.nodes:}")
+    private String clusterNodes;
+
+    /**
+     * MOVED/ASK 最多跟随的次数
+     */
+    @Value("${redis.cluster.max-redirects:5}")
+    private int clusterMaxRedirects;
+
+    /**
+     * 集群拓扑缓存时间(毫秒), 收到 MOVED 时无论是否到期都会刷新 slot 分布
+     */
+    @Value("${redis.cluster.topology-refresh-ms:10000}")
+    private long clusterTopologyRefreshMs;
+
+    /**
+     * sharded 模式的节点 host:port,host:port, 每个节点独立的连接池
+     */
+    @Value("${redis.shard.nodes:}")
+    private String shardNodes;
+
+    @Value("${redis.shard.virtual-nodes:160}")
+    private int shardVirtualNodes;
+
+    /**
+     * standalone 模式下改用 Sentinel 发现主节点, 为空时直连 redis.host
+     */
+    @Value("${redis.sentinel.master:}")
+    private String sentinelMaster;
+
+    @Value("${redis.sentinel.nodes:}")
+    private String sentinelNodes;
+
+    /**
+     * 从 Sentinel 刷新从节点列表的间隔(毫秒)
+     */
+    @Value("${redis.sentinel.refresh-ms:10000}")
+    private long sentinelRefreshMs;
+
+    /**
+     * 只读方法是否读从节点, 仅 standalone 模式支持
+     */
+    @Value("${redis.replica.enabled:false}")
+    private boolean replicaEnabled;
+
+    /**
+     * 静态配置的从节点 host:port,host:port; 使用 Sentinel 时从 Sentinel 获取, 无需配置
+     */
+    @Value("${redis.replica.nodes:}")
+    private String replicaNodes;
+
+    /**
+     * round-robin / least-latency / replica-preferred, 声明 {@link ReadPolicy} bean 时以 bean 为准
+     */
+    @Value("${redis.replica.read-policy:replica-preferred}")
+    private String replicaReadPolicy;
+
+    /**
+     * 从节点读取失败后摘除的时间(毫秒)
+     */
+    @Value("${redis.replica.retry-after-ms:5000}")
+    private long replicaRetryAfterMs;
+
+    /**
+     * 连接和读取超时(毫秒)
+     */
+    @Value("${redis.timeout-ms:2000}")
+    private long timeoutMs;
+
+    @Value("${redis.pool.max-total:50}")
+    private int poolMaxTotal;
+
+    @Value("${redis.pool.max-idle:10}")
+    private int poolMaxIdle;
+
+    @Value("${redis.pool.min-idle:5}")
+    private int poolMinIdle;
+
+    @Value("${redis.pool.max-wait-ms:5000}")
+    private long poolMaxWaitMs;
+
+    /**
+     * 启动时预建 minIdle 个连接 sync / async / none
+     */
+    @Value("${redis.pool.prewarm:async}")
+    private String poolPrewarm;
+
+    /**
+     * 借连接等待超过该时间(毫秒)视为慢借用, 自适应扩容的依据
+     */
+    @Value("${redis.pool.slow-borrow-ms:5}")
+    private long poolSlowBorrowMs;
+
+    /**
+     * 借连接前先经过许可数为 maxTotal 的信号量, 大量虚拟线程并发时排队不发生在连接池的 synchronized 块内
+     */
+    @Value("${redis.pool.borrow-gate:${redis.execution.virtual-threads:false}}")
+    private boolean poolBorrowGate;
+
+    @Value("${redis.pool.adaptive.min-total:${redis.pool.max-total:50}}")
+    private int adaptiveMinTotal;
+
+    @Value("${redis.pool.adaptive.max-total:200}")
+    private int adaptiveMaxTotal;
+
+    @Value("${redis.pool.adaptive.interval-ms:5000}")
+    private long adaptiveIntervalMs;
+
+    @Value("${redis.pool.adaptive.shrink-after:12}")
+    private int adaptiveShrinkAfter;
+
+    /**
+     * 值序列化方式 binary 或 json, 两种方式都能读取对方写入的值; 旧版本节点无法读取 binary, 默认 json, 升级步骤见 application.properties
+     */
+    @Value("${redis.serializer.codec:json}")
+    private String codec;
+
+    @Value("${redis.hot-key.enabled:false}")
+    private boolean hotKeyEnabled;
+
+    /**
+     * 二进制编码时每个线程复用的缓冲区上限(字节), 0 不复用
+     */
+    @Value("${redis.serializer.pooled-buffer-bytes:65536}")
+    private int serializerPooledBytes;
+
+    /**
+     * 是否压缩写入的大值; 关闭时仍能读取已压缩的值, 旧版本节点无法读取压缩值, 默认关闭
+     */
+    @Value("${redis.compression.enabled:false}")
+    private boolean compressionEnabled;
+
+    /**
+     * 序列化后不小于该字节数才压缩
+     */
+    @Value("${redis.compression.threshold:4096}")
+    private int compressionThreshold;
+
+    @Value("${redis.compression.algorithm:lz4}")
+    private String compressionAlgorithm;
+
+    /**
+     * 按键前缀的压缩规则, 格式见 {@link CompressionPolicy#prefixes(String)}
+     */
+    @Value("${redis.compression.prefixes:}")
+    private String compressionPrefixes;
+
+    @Value("${redis.metrics.enabled:true}")
+    private boolean metricsEnabled;
+
+    /**
+     * 限流器本地拒绝缓存的最大条目数, 0 关闭
+     */
+    @Value("${redis.rate-limit.local-denials:10000}")
+    private int rateLimitLocalDenials;
+
+    /**
+     * 哈希结构保存的 User 的键前缀
+     */
+    @Value("${redis.repository.user-prefix:user:}")
+    private String userKeyPrefix;
+
     @Primary
     @Bean
     public JedisPoolConfig jedisPoolConfig() {
         JedisPoolConfig jedisPoolConfig = new JedisPoolConfig();
-        jedisPoolConfig.setMaxWait(Duration.ofMillis(5000));
-        jedisPoolConfig.setMaxIdle(10);
-        jedisPoolConfig.setMaxTotal(50);
-        jedisPoolConfig.setMinIdle(5);
+        jedisPoolConfig.setMaxWait(Duration.ofMillis(poolMaxWaitMs));
+        jedisPoolConfig.setMaxIdle(poolMaxIdle);
+        jedisPoolConfig.setMaxTotal(poolMaxTotal);
+        jedisPoolConfig.setMinIdle(poolMinIdle);
         return jedisPoolConfig;
     }
 
+    /**
+     * 阻塞调用使用的 Jedis 连接池, 非阻塞调用使用 {@link ReactiveRedisConfig} 中的 Lettuce 连接
+     * <p>
+     * cluster 模式下为集群连接; sharded 模式下仍连接 redis.host, 用于 pub/sub 等不按键分片的操作
+     */
+    @Primary
     @Bean
-    public RedisConnectionFactory redisConnectionFactory(JedisPoolConfig jedisPoolConfig) {
+    public InstrumentedJedisConnectionFactory redisConnectionFactory(JedisPoolConfig jedisPoolConfig) {
+        if (isCluster()) {
+            RedisClusterConfiguration clusterConfig = clusterConfiguration(clusterNodes, clusterMaxRedirects, password);
+            return new InstrumentedJedisConnectionFactory(clusterConfig, createClientConfiguration(jedisPoolConfig),
+                    Duration.ofMillis(clusterTopologyRefreshMs), poolSlowBorrowMs);
+        }
+        if (isSentinel()) {
+            RedisSentinelConfiguration sentinelConfig = new RedisSentinelConfiguration(sentinelMaster, nodeList(sentinelNodes));
+            sentinelConfig.setPassword(RedisPassword.of(password));
+            return new InstrumentedJedisConnectionFactory(sentinelConfig, createClientConfiguration(jedisPoolConfig), poolSlowBorrowMs);
+        }
+        return createStandaloneFactory(host, port, jedisPoolConfig);
+    }
+
+    /**
+     * 键到节点的路由, RedisService 的每个操作经它选择节点, 多键操作经它按分片拆分
+     */
+    @Bean
+    public RedisRouter redisRouter(RedisTemplate<String, Object> redisTemplate, JedisPoolConfig jedisPoolConfig,
+                                   RedisSerializer<Object> redisValueSerializer, ObjectProvider<ReadPolicy> readPolicy) {
+        if (replicaEnabled && !"standalone".equalsIgnoreCase(mode)) {
+            throw new IllegalArgumentException("redis.replica.enabled 只支持 standalone 模式");
+        }
+        if (isCluster()) {
+            return new ClusterSlotRouter(redisTemplate, clusterTopologyRefreshMs);
+        }
+        if (!"sharded".equalsIgnoreCase(mode)) {
+            if (!"standalone".equalsIgnoreCase(mode)) {
+                throw new IllegalArgumentException("不支持的 redis.mode: " + mode);
+            }
+            SingleNodeRouter router = new SingleNodeRouter(redisTemplate);
+            if (!replicaEnabled) {
+                return router;
+            }
+            ReplicaReadRouter replicaRouter = new ReplicaReadRouter(router, isSentinel() ? sentinelMaster : host + ":" + port,
+                    readPolicy.getIfAvailable(() -> ReadPolicy.of(replicaReadPolicy)), address -> {
+                InstrumentedJedisConnectionFactory factory = createStandaloneFactory(address, jedisPoolConfig);
+                factory.afterPropertiesSet();
+                return createTemplate(factory, redisValueSerializer);
+            }, replicaRetryAfterMs);
+            if (!isSentinel()) {
+                replicaRouter.updateReplicas(nodeList(replicaNodes));
+            }
+            return replicaRouter;
+        }
+        Map<String, RedisTemplate<String, Object>> shards = new LinkedHashMap<>();
+        for (String address : nodeList(shardNodes)) {
+            InstrumentedJedisConnectionFactory factory = createStandaloneFactory(address, jedisPoolConfig);
+            factory.afterPropertiesSet();
+            shards.put(address, createTemplate(factory, redisValueSerializer));
+        }
+        return new ConsistentHashRouter(shards, shardVirtualNodes);
+    }
+
+    /**
+     * Lua 脚本注册表, 按 SHA 执行; 开启一级缓存时脚本执行后失效 KEYS
+     */
+    @Bean
+    public ScriptRegistry scriptRegistry(RedisRouter redisRouter, ObjectProvider<NearCache> nearCache) {
+        ScriptRegistry registry = new ScriptRegistry(redisRouter);
+        nearCache.ifAvailable(cache -> registry.setInvalidator(cache::invalidate));
+        return registry;
+    }
+
+    /**
+     * 限流器, 令牌桶 / 滑动日志 / GCRA 均为一次脚本调用
+     */
+    @Bean
+    public RedisRateLimiter redisRateLimiter(ScriptRegistry scriptRegistry) {
+        return new RedisRateLimiter(scriptRegistry, rateLimitLocalDenials);
+    }
+
+    /**
+     * User 的哈希仓库, 按属性读写; 开启布隆过滤器时写入前加入过滤器, 开启一级缓存时写入后失效对应的键
+     */
+    @Bean
+    public HashRepository<User> userRepository(RedisRouter redisRouter, ObjectProvider<NearCache> nearCache,
+                                               ObjectProvider<BloomGuard> bloomGuard) {
+        HashRepository<User> repository = new HashRepository<>(redisRouter, UserHashSchema.SCHEMA, userKeyPrefix);
+        bloomGuard.ifAvailable(guard -> repository.setGuard(guard::adding));
+        nearCache.ifAvailable(cache -> repository.setInvalidator(cache::invalidate));
+        return repository;
+    }
+
+    /**
+     * Sentinel 模式下开启从节点读取时, 定时从 Sentinel 获取从节点列表
+     */
+    @Bean
+    @ConditionalOnExpression("${redis.replica.enabled:false} and '${redis.sentinel.master:}' != ''")
+    public SentinelReplicaWatcher sentinelReplicaWatcher(InstrumentedJedisConnectionFactory redisConnectionFactory, RedisRouter redisRouter) {
+        SentinelReplicaWatcher watcher = new SentinelReplicaWatcher(redisConnectionFactory,
+                redisConnectionFactory.getSentinelConfiguration().getMaster(), (ReplicaReadRouter) redisRouter, sentinelRefreshMs);
+        watcher.start();
+        return watcher;
+    }
+
+    /**
+     * redis.pool.adaptive.enabled=true 时按借连接等待情况在 [min-total, max-total] 之间调整 maxTotal 和 minIdle
+     */
+    @Bean
+    @ConditionalOnProperty(name = "redis.pool.adaptive.enabled", havingValue = "true")
+    public AdaptivePoolController adaptivePoolController(InstrumentedJedisConnectionFactory redisConnectionFactory) {
+        if (redisConnectionFactory.getPool() == null) {
+            throw new IllegalStateException("redis.pool.adaptive 只支持直连的单机连接池, cluster/sentinel 模式下请关闭");
+        }
+        AdaptivePoolController controller = new AdaptivePoolController(redisConnectionFactory.getPool(),
+                adaptiveMinTotal, adaptiveMaxTotal, adaptiveIntervalMs, adaptiveShrinkAfter);
+        controller.start();
+        return controller;
+    }
+
+    /**
+     * 二进制序列化的类型注册表, 业务模块可以声明 {@link ValueCodecRegistrar} bean 追加自己的类型
+     */
+    @Bean
+    public CodecRegistry codecRegistry(ObjectProvider<ValueCodecRegistrar> registrars) {
+        CodecRegistry registry = new CodecRegistry();
+        registry.register(UserCodec.ID, User.class, new UserCodec());
+        registrars.orderedStream().forEach(registrar -> registrar.register(registry));
+        return registry;
+    }
+
+    /**
+     * 值和 hash 值的序列化, 为 {@link CompressingRedisSerializer}, 可从中获取压缩率统计;
+     * 未开启压缩时不压缩任何值, 但仍能读取其他节点写入的压缩值
+     */
+    @Bean
+    public RedisSerializer<Object> redisValueSerializer(CodecRegistry codecRegistry) {
+        RedisSerializer<Object> serializer = createValueSerializer(codecRegistry);
+        CompressionAlgorithm algorithm = CompressionAlgorithm.valueOf(compressionAlgorithm.toUpperCase());
+        CompressionPolicy policy = compressionEnabled
+                ? new CompressionPolicy(compressionThreshold, algorithm).prefixes(compressionPrefixes)
+                : new CompressionPolicy(-1, algorithm);
+        return new CompressingRedisSerializer(serializer, policy);
+    }
+
+    @Bean
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory, RedisSerializer<Object> redisValueSerializer) {
+        return createTemplate(factory, redisValueSerializer);
+    }
+
+    /**
+     * @param nodes        host:port,host:port
+     * @param maxRedirects MOVED/ASK 最多跟随的次数
+     * @param password     密码
+     */
+    static RedisClusterConfiguration clusterConfiguration(String nodes, int maxRedirects, String password) {
+        Set<String> addresses = nodeList(nodes);
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("redis.mode=cluster 时需要配置 redis.cluster.nodes");
+        }
+        RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(addresses);
+        clusterConfig.setMaxRedirects(maxRedirects);
+        clusterConfig.setPassword(RedisPassword.of(password));
+        return clusterConfig;
+    }
+
+    private boolean isCluster() {
+        return "cluster".equalsIgnoreCase(mode);
+    }
+
+    private boolean isSentinel() {
+        return !isCluster() && StringUtils.hasText(sentinelMaster);
+    }
+
+    private static Set<String> nodeList(String nodes) {
+        Set<String> addresses = new LinkedHashSet<>();
+        for (String node : StringUtils.commaDelimitedListToSet(nodes)) {
+            String address = node.trim();
+            if (address.lastIndexOf(':') <= 0) {
+                throw new IllegalArgumentException("节点格式应为 host:port, 实际为 " + address);
+            }
+            addresses.add(address);
+        }
+        return addresses;
+    }
+
+    private InstrumentedJedisConnectionFactory createStandaloneFactory(String address, JedisPoolConfig jedisPoolConfig) {
+        int separator = address.lastIndexOf(':');
+        return createStandaloneFactory(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)), jedisPoolConfig);
+    }
+
+    private InstrumentedJedisConnectionFactory createStandaloneFactory(String host, int port, JedisPoolConfig jedisPoolConfig) {
         RedisStandaloneConfiguration redisConfig = new RedisStandaloneConfiguration();
         redisConfig.setHostName(host);
         redisConfig.setPort(port);
-        redisConfig.setPassword("aa123456");
+        redisConfig.setPassword(RedisPassword.of(password));
+        InstrumentedJedisConnectionFactory factory = new InstrumentedJedisConnectionFactory(redisConfig,
+                createClientConfiguration(jedisPoolConfig), poolPrewarm, poolSlowBorrowMs);
+        factory.setBorrowGate(poolBorrowGate);
+        return factory;
+    }
+
+    private JedisClientConfiguration createClientConfiguration(JedisPoolConfig jedisPoolConfig) {
         // 生成一个默认配置，通过config对象即可对缓存进行自定义配置
-        JedisClientConfiguration.JedisPoolingClientConfigurationBuilder clientBuilder = (JedisClientConfiguration.JedisPoolingClientConfigurationBuilder) JedisClientConfiguration.builder();
-        clientBuilder.poolConfig(jedisPoolConfig);
-        JedisClientConfiguration clientConfiguration = clientBuilder.build();
-        return new JedisConnectionFactory(redisConfig, clientConfiguration);
+        JedisClientConfiguration.JedisClientConfigurationBuilder clientBuilder = JedisClientConfiguration.builder()
+                .connectTimeout(Duration.ofMillis(timeoutMs))
+                .readTimeout(Duration.ofMillis(timeoutMs));
+        clientBuilder.usePooling().poolConfig(jedisPoolConfig);
+        return clientBuilder.build();
     }
 
-    @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory) {
+    private RedisTemplate<String, Object> createTemplate(RedisConnectionFactory factory, RedisSerializer<Object> redisValueSerializer) {
         RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
         redisTemplate.setConnectionFactory(factory);
         StringRedisSerializer stringRedisSerializer = new StringRedisSerializer();
+        // 开启热键探测时累计每次读取的响应字节数
+        RedisSerializer<Object> valueSerializer = hotKeyEnabled ? new SizeRecordingRedisSerializer(redisValueSerializer) : redisValueSerializer;
+        // 开启指标时统计每个 RedisService 方法读写的字节数
+        valueSerializer = metricsEnabled ? new MeteredRedisSerializer(valueSerializer) : valueSerializer;
         redisTemplate.setKeySerializer(stringRedisSerializer);
         redisTemplate.setHashKeySerializer(stringRedisSerializer);
-        Jackson2JsonRedisSerializer<?> jackson2JsonRedisSerializer = createJacksonRedisSerializer();
-        redisTemplate.setValueSerializer(jackson2JsonRedisSerializer);
-        redisTemplate.setHashValueSerializer(jackson2JsonRedisSerializer);
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.setHashValueSerializer(valueSerializer);
         redisTemplate.afterPropertiesSet();
         return redisTemplate;
     }
 
-    private Jackson2JsonRedisSerializer<?> createJacksonRedisSerializer() {
-        Jackson2JsonRedisSerializer<?> jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
+    private RedisSerializer<Object> createValueSerializer(CodecRegistry codecRegistry) {
+        Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer = createJacksonRedisSerializer();
+        boolean binary = "binary".equalsIgnoreCase(codec);
+        if (!binary && !"json".equalsIgnoreCase(codec)) {
+            throw new IllegalArgumentException("不支持的 redis.serializer.codec: " + codec);
+        }
+        // 两种方式读取时都兼容 JSON 和二进制, json 只是写入时不使用二进制格式
+        return new BinaryRedisSerializer(codecRegistry, jackson2JsonRedisSerializer, new BinaryWriterPool(serializerPooledBytes), binary);
+    }
+
+    public static Jackson2JsonRedisSerializer<Object> createJacksonRedisSerializer() {
+        Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
         ObjectMapper om = new ObjectMapper();
         om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
         om.activateDefaultTyping(om.getPolymorphicTypeValidator(), ObjectMapper.DefaultTyping.NON_FINAL);
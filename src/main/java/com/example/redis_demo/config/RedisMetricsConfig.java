@@ -0,0 +1,190 @@
+package com.example.redis_demo.config;
+
+import com.example.redis_demo.bloom.BloomGuard;
+import com.example.redis_demo.cache.NearCache;
+import com.example.redis_demo.codec.CompressingRedisSerializer;
+import com.example.redis_demo.counter.CounterBuffer;
+import com.example.redis_demo.execution.RedisExecutor;
+import com.example.redis_demo.hotkey.HotKeyDetector;
+import com.example.redis_demo.metrics.MeteredRedisServiceHandler;
+import com.example.redis_demo.pool.InstrumentedJedisConnectionFactory;
+import com.example.redis_demo.queue.StreamQueues;
+import com.example.redis_demo.ratelimit.RedisRateLimiter;
+import com.example.redis_demo.routing.ConsistentHashRouter;
+import com.example.redis_demo.routing.RedisRouter;
+import com.example.redis_demo.routing.ReplicaReadRouter;
+import com.example.redis_demo.script.ScriptRegistry;
+import com.example.redis_demo.service.RedisService;
+import com.example.redis_demo.service.impl.RedisLockServiceImpl;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * RedisService 方法级指标, redis.metrics.enabled=false 时关闭
+ * <p>
+ * redis.service.calls    每个方法的调用次数和耗时(p50/p99/p999)
+ * redis.service.errors   按方法和异常类型统计的失败次数, 包括方法内部吞掉后返回 false/null 的异常
+ * redis.service.payload  每个方法序列化(out)/反序列化(in)的字节数
+ * redis.pool.*           连接池借用等待、耗尽次数和连接数
+ * redis.read.*           开启从节点读取时每个节点的读取次数、失败次数和耗时
+ * redis.counter-buffer.* 计数器合并写的递增次数、刷新次数、写入成功/失败的命令数和本地计数器数
+ * redis.lock.*           分布式锁的获取/争用/超时次数、等待时间和持有时间
+ * redis.script.*         Lua 脚本执行次数和 NOSCRIPT 重新加载次数
+ * <p>
+ * 没有其它 MeterRegistry 时通过 JMX 暴露
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Configuration
+@ConditionalOnProperty(name = "redis.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class RedisMetricsConfig {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public MeterRegistry meterRegistry() {
+        return new JmxMeterRegistry(JmxConfig.DEFAULT, Clock.SYSTEM);
+    }
+
+    /**
+     * 用计时代理替换 RedisService bean, 注入方拿到的都是代理
+     */
+    @Bean
+    public static BeanPostProcessor meteredRedisServicePostProcessor(ObjectProvider<MeterRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof RedisService) {
+                    return MeteredRedisServiceHandler.wrap((RedisService) bean, RedisService.class, registry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * 连接池借用等待时间、耗尽次数、活跃/空闲连接数; 客户端分片时每个节点的连接池带 shard 标签; 从节点读取的分节点统计
+     */
+    @Bean
+    public SmartInitializingSingleton redisPoolMeters(MeterRegistry registry, ObjectProvider<InstrumentedJedisConnectionFactory> connectionFactory,
+                                                      ObjectProvider<RedisRouter> router) {
+        return () -> {
+            connectionFactory.ifAvailable(factory -> {
+                if (factory.getPool() != null) {
+                    factory.getPool().bindTo(registry);
+                }
+            });
+            router.ifAvailable(r -> {
+                if (r instanceof ReplicaReadRouter) {
+                    ((ReplicaReadRouter) r).bindTo(registry);
+                }
+                if (r instanceof ConsistentHashRouter) {
+                    ((ConsistentHashRouter) r).getShards().forEach((name, template) -> {
+                        RedisConnectionFactory factory = template.getConnectionFactory();
+                        if (factory instanceof InstrumentedJedisConnectionFactory
+                                && ((InstrumentedJedisConnectionFactory) factory).getPool() != null) {
+                            ((InstrumentedJedisConnectionFactory) factory).getPool().bindTo(registry, Tags.of("shard", name));
+                        }
+                    });
+                }
+            });
+        };
+    }
+
+    /**
+     * 一级缓存命中率和压缩率, 对应功能未开启时不注册
+     */
+    @Bean
+    public SmartInitializingSingleton redisCacheMeters(MeterRegistry registry, ObjectProvider<NearCache> nearCache,
+                                                       RedisSerializer<Object> redisValueSerializer) {
+        return () -> {
+            nearCache.ifAvailable(cache -> {
+                FunctionCounter.builder("redis.near-cache.hits", cache, c -> c.stats().getHits()).register(registry);
+                FunctionCounter.builder("redis.near-cache.misses", cache, c -> c.stats().getMisses()).register(registry);
+                FunctionCounter.builder("redis.near-cache.evictions", cache, c -> c.stats().getEvictions()).register(registry);
+                Gauge.builder("redis.near-cache.entries", cache, c -> c.stats().getEntries()).register(registry);
+                Gauge.builder("redis.near-cache.bytes", cache, c -> c.stats().getBytes()).baseUnit("bytes").register(registry);
+            });
+            if (redisValueSerializer instanceof CompressingRedisSerializer) {
+                CompressingRedisSerializer serializer = (CompressingRedisSerializer) redisValueSerializer;
+                Gauge.builder("redis.compression.ratio", serializer, s -> s.stats().getCompressionRatio()).register(registry);
+                FunctionCounter.builder("redis.compression.compressed", serializer, s -> s.stats().getCompressedValues()).register(registry);
+            }
+        };
+    }
+
+    /**
+     * 计数器合并写, 递增次数与写入命令数之比即合并效果
+     */
+    @Bean
+    public SmartInitializingSingleton redisCounterBufferMeters(MeterRegistry registry, ObjectProvider<CounterBuffer> counterBuffer) {
+        return () -> counterBuffer.ifAvailable(buffer -> {
+            FunctionCounter.builder("redis.counter-buffer.updates", buffer, CounterBuffer::getUpdates).register(registry);
+            FunctionCounter.builder("redis.counter-buffer.flushes", buffer, CounterBuffer::getFlushes).register(registry);
+            FunctionCounter.builder("redis.counter-buffer.commands", buffer, CounterBuffer::getFlushedCommands)
+                    .tag("result", "success").register(registry);
+            FunctionCounter.builder("redis.counter-buffer.commands", buffer, CounterBuffer::getFailedCommands)
+                    .tag("result", "failure").register(registry);
+            Gauge.builder("redis.counter-buffer.counters", buffer, CounterBuffer::getCounters).register(registry);
+        });
+    }
+
+    @Bean
+    public SmartInitializingSingleton redisLockMeters(MeterRegistry registry, ObjectProvider<RedisLockServiceImpl> lockService) {
+        return () -> lockService.ifAvailable(service -> service.bindTo(registry));
+    }
+
+    @Bean
+    public SmartInitializingSingleton redisScriptMeters(MeterRegistry registry, ObjectProvider<ScriptRegistry> scriptRegistry) {
+        return () -> scriptRegistry.ifAvailable(scripts -> {
+            FunctionCounter.builder("redis.script.executions", scripts, ScriptRegistry::getExecutions).register(registry);
+            FunctionCounter.builder("redis.script.reloads", scripts, ScriptRegistry::getReloads).register(registry);
+        });
+    }
+
+    /**
+     * 布隆过滤器守卫, 跳过的查询数与判断次数之比即拦截率
+     */
+    @Bean
+    public SmartInitializingSingleton redisBloomMeters(MeterRegistry registry, ObjectProvider<BloomGuard> bloomGuard) {
+        return () -> bloomGuard.ifAvailable(guard -> {
+            FunctionCounter.builder("redis.bloom.checks", guard, BloomGuard::getChecked).register(registry);
+            FunctionCounter.builder("redis.bloom.rejected", guard, BloomGuard::getRejected).register(registry);
+            Gauge.builder("redis.bloom.mirrored", guard, g -> g.getFilter().isMirrored() ? 1 : 0).register(registry);
+        });
+    }
+
+    @Bean
+    public SmartInitializingSingleton redisQueueMeters(MeterRegistry registry, ObjectProvider<StreamQueues> streamQueues) {
+        return () -> streamQueues.ifAvailable(queues -> queues.bindTo(registry));
+    }
+
+    @Bean
+    public SmartInitializingSingleton redisHotKeyMeters(MeterRegistry registry, ObjectProvider<HotKeyDetector> hotKeyDetector) {
+        return () -> hotKeyDetector.ifAvailable(detector -> detector.bindTo(registry));
+    }
+
+    @Bean
+    public SmartInitializingSingleton redisRateLimitMeters(MeterRegistry registry, ObjectProvider<RedisRateLimiter> rateLimiter) {
+        return () -> rateLimiter.ifAvailable(limiter -> limiter.bindTo(registry));
+    }
+
+    @Bean
+    public SmartInitializingSingleton redisExecutorMeters(MeterRegistry registry, ObjectProvider<RedisExecutor> redisExecutor) {
+        return () -> redisExecutor.ifAvailable(executor -> executor.bindTo(registry));
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.redis_demo.config;
+
+import com.example.redis_demo.queue.QueueOptions;
+import com.example.redis_demo.queue.StreamQueues;
+import com.example.redis_demo.routing.RedisRouter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * stream 工作队列的默认参数, 队列在首次使用时创建, 启动时不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Configuration
+public class StreamQueueConfig {
+
+    @Value("${redis.queue.batch-size:32}")
+    private int batchSize;
+
+    /**
+     * 需小于 redis.timeout-ms
+     */
+    @Value("${redis.queue.block-ms:1000}")
+    private long blockMillis;
+
+    @Value("${redis.queue.workers:4}")
+    private int workers;
+
+    @Value("${redis.queue.max-in-flight:128}")
+    private int maxInFlight;
+
+    @Value("${redis.queue.claim-idle-ms:60000}")
+    private long claimIdleMillis;
+
+    @Value("${redis.queue.claim-interval-ms:10000}")
+    private long claimIntervalMillis;
+
+    @Value("${redis.queue.max-deliveries:5}")
+    private int maxDeliveries;
+
+    @Value("${redis.queue.max-length:1000000}")
+    private long maxLength;
+
+    @Bean
+    public StreamQueues streamQueues(RedisRouter redisRouter) {
+        return new StreamQueues(redisRouter, () -> new QueueOptions()
+                .setBatchSize(batchSize)
+                .setBlockMillis(blockMillis)
+                .setWorkers(workers)
+                .setMaxInFlight(maxInFlight)
+                .setClaimIdleMillis(claimIdleMillis)
+                .setClaimIntervalMillis(claimIntervalMillis)
+                .setMaxDeliveries(maxDeliveries)
+                .setMaxLength(maxLength));
+    }
+}
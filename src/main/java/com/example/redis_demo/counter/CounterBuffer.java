@@ -0,0 +1,485 @@
+package com.example.redis_demo.counter;
+
+import com.example.redis_demo.service.BatchResult;
+import com.example.redis_demo.service.RedisBatch;
+import com.example.redis_demo.service.RedisService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热点计数器的本地合并写(write-behind)
+ * <p>
+ * 递增先累加到本地按键(hash 按键+项)分段的 LongAdder / DoubleAdder, 每隔 intervalMillis 毫秒,
+ * 或累计 maxUpdates 次递增后, 把各计数器的增量合成 INCRBY / INCRBYFLOAT / HINCRBY / HINCRBYFLOAT 在一次 pipeline 中写入。
+ * 同一个键每秒递增几万次时, 写 redis 的次数只与刷新频率和键的数量有关
+ * <p>
+ * 语义:
+ * 1. redis 中的值落后于本地最多一个刷新周期, 读取 redis 看不到尚未刷新的增量, 需要读写一致的计数不要走这里
+ * 2. 进程正常关闭时 {@link #close()} 会刷新剩余增量; 进程崩溃或被强制杀掉时, 最多丢失最近一个周期(或 maxUpdates 次)的增量
+ * 3. 写入失败的增量保留在本地, 下一周期重试; 超时这类服务端可能已经执行的失败, 重试会使增量被重复计入
+ * 4. 本地只保存每个计数器的累计值, redis 长时间不可用时内存随计数器数量增长, 而不是随递增次数增长
+ * <p>
+ * 计数器从不清零: 每次刷新写入 "累计值 - 已写入值", 刷新与递增并发时增量最晚在下一周期写入, 不会丢失。
+ * 闲置(连续至少 {@value #MIN_IDLE_FLUSHES} 个周期且不少于 {@value #IDLE_MILLIS} 毫秒没有变化)的计数器从本地移除并打上标记,
+ * 之后的刷新仍会读取它, 再闲置同样长的时间才丢弃。递增在累加后检查标记, 已被移除则撤销这次累加并改用新的计数器,
+ * 因此移除前已取到计数器的递增不会丢失, 也不会重复; 除非递增线程在累加和检查之间被挂起超过闲置时间
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class CounterBuffer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CounterBuffer.class);
+
+    /**
+     * 计数器至少连续多少个周期没有变化才移除
+     */
+    static final int MIN_IDLE_FLUSHES = 3;
+
+    /**
+     * 计数器至少多久没有变化才移除, 远大于递增线程在两条指令之间可能被挂起的时间
+     */
+    static final long IDLE_MILLIS = 10000;
+
+    /**
+     * 每 64 次递增检查一次是否达到 maxUpdates, 热路径上不读全局计数
+     */
+    private static final int CHECK_MASK = 63;
+
+    private final RedisService redisService;
+
+    private final long intervalMillis;
+
+    private final long maxUpdates;
+
+    private final int idleFlushes;
+
+    private final ConcurrentHashMap<String, Counter> values = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Fields> fields = new ConcurrentHashMap<>();
+
+    /**
+     * 已从 map 中移除但可能还有增量未写入的计数器, 只在刷新线程中访问
+     */
+    private final List<Counter> retired = new ArrayList<>();
+
+    private final List<Fields> retiredFields = new ArrayList<>();
+
+    private final LongAdder updates = new LongAdder();
+
+    private volatile long updatesAtLastFlush;
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final LongAdder flushes = new LongAdder();
+
+    private final LongAdder flushedCommands = new LongAdder();
+
+    private final LongAdder failedCommands = new LongAdder();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "redis-counter-buffer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param redisService   写入用的 RedisService
+     * @param intervalMillis 刷新间隔(毫秒)
+     * @param maxUpdates     两次刷新之间累计多少次递增后提前刷新
+     */
+    public CounterBuffer(RedisService redisService, long intervalMillis, long maxUpdates) {
+        if (intervalMillis <= 0 || maxUpdates <= 0) {
+            throw new IllegalArgumentException("intervalMillis and maxUpdates must be positive");
+        }
+        this.redisService = redisService;
+        this.intervalMillis = intervalMillis;
+        this.maxUpdates = maxUpdates;
+        this.idleFlushes = (int) Math.max(MIN_IDLE_FLUSHES, IDLE_MILLIS / intervalMillis);
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 递增, 下次刷新时以 INCRBY 写入
+     *
+     * @param key   键
+     * @param delta 要增加几
+     */
+    public void incr(String key, long delta) {
+        while (!counter(key).add(delta)) {
+            // 计数器刚被移除, 重新取
+        }
+        updated();
+    }
+
+    /**
+     * 浮点递增, 下次刷新时以 INCRBYFLOAT 写入
+     *
+     * @param key   键
+     * @param delta 要增加多少
+     */
+    public void incr(String key, double delta) {
+        while (!counter(key).add(delta)) {
+            // 计数器刚被移除, 重新取
+        }
+        updated();
+    }
+
+    /**
+     * hash 递增, 下次刷新时以 HINCRBY 写入
+     *
+     * @param key   键
+     * @param item  项
+     * @param delta 要增加几
+     */
+    public void hincr(String key, String item, long delta) {
+        while (!counter(key, item).add(delta)) {
+            // 计数器或所在的 hash 刚被移除, 重新取
+        }
+        updated();
+    }
+
+    /**
+     * hash 浮点递增, 下次刷新时以 HINCRBYFLOAT 写入
+     *
+     * @param key   键
+     * @param item  项
+     * @param delta 要增加多少
+     */
+    public void hincr(String key, String item, double delta) {
+        while (!counter(key, item).add(delta)) {
+            // 计数器或所在的 hash 刚被移除, 重新取
+        }
+        updated();
+    }
+
+    /**
+     * 立即把所有未写入的增量在一次 pipeline 中写入 redis
+     *
+     * @return 写入成功的命令数
+     */
+    public synchronized int flush() {
+        updatesAtLastFlush = updates.sum();
+        List<Delta> deltas = new ArrayList<>();
+        // 上一周期移除的 hash 中的计数器转入 retired, 与其它已移除的计数器一起再写一次
+        for (Fields removed : retiredFields) {
+            removed.counters.values().forEach(this::retire);
+        }
+        retiredFields.clear();
+        for (Iterator<Counter> iterator = retired.iterator(); iterator.hasNext(); ) {
+            Counter counter = iterator.next();
+            if (!collect(counter, deltas) && ++counter.idle >= idleFlushes) {
+                iterator.remove();
+            }
+        }
+        for (Counter counter : values.values()) {
+            if (!collect(counter, deltas) && ++counter.idle >= idleFlushes && values.remove(counter.key, counter)) {
+                retire(counter);
+            }
+        }
+        for (Map.Entry<String, Fields> entry : fields.entrySet()) {
+            Fields hash = entry.getValue();
+            for (Counter counter : hash.counters.values()) {
+                if (!collect(counter, deltas) && ++counter.idle >= idleFlushes && hash.counters.remove(counter.item, counter)) {
+                    retire(counter);
+                }
+            }
+            // 移除后仍可能有递增在其中新建计数器, 下一周期再把其中的计数器转入 retired
+            if (hash.counters.isEmpty() && fields.remove(entry.getKey(), hash)) {
+                hash.removed = true;
+                retiredFields.add(hash);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+        flushes.increment();
+        List<BatchResult<?>> results;
+        try {
+            results = redisService.pipeline(batch -> deltas.forEach(delta -> delta.send(batch)));
+        } catch (Exception e) {
+            // 全部保留到下一周期
+            failedCommands.add(deltas.size());
+            log.warn("counter buffer flush failed, {} counters kept for retry", deltas.size(), e);
+            return 0;
+        }
+        int succeeded = 0;
+        for (int i = 0; i < deltas.size(); i++) {
+            BatchResult<?> result = results.get(i);
+            if (result.isSuccess()) {
+                deltas.get(i).commit();
+                succeeded++;
+            } else {
+                log.warn("counter buffer flush failed: {}", result, result.getError());
+            }
+        }
+        flushedCommands.add(succeeded);
+        failedCommands.add(deltas.size() - succeeded);
+        return succeeded;
+    }
+
+    /**
+     * 停止定时刷新并写入剩余增量, 关闭后的递增不再写入 redis
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(intervalMillis + 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    /**
+     * @return 累计递增次数
+     */
+    public long getUpdates() {
+        return updates.sum();
+    }
+
+    /**
+     * @return 执行过写入的刷新次数
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * @return 写入成功的命令数
+     */
+    public long getFlushedCommands() {
+        return flushedCommands.sum();
+    }
+
+    /**
+     * @return 写入失败(留待重试)的命令数
+     */
+    public long getFailedCommands() {
+        return failedCommands.sum();
+    }
+
+    /**
+     * @return 本地计数器数量
+     */
+    public int getCounters() {
+        int count = values.size();
+        for (Fields hash : fields.values()) {
+            count += hash.counters.size();
+        }
+        return count;
+    }
+
+    private Counter counter(String key) {
+        Counter counter = values.get(key);
+        return counter != null ? counter : values.computeIfAbsent(key, k -> new Counter(k, null, null));
+    }
+
+    private Counter counter(String key, String item) {
+        Fields hash = fields.get(key);
+        if (hash == null) {
+            hash = fields.computeIfAbsent(key, k -> new Fields());
+        }
+        Counter counter = hash.counters.get(item);
+        if (counter != null) {
+            return counter;
+        }
+        Fields owner = hash;
+        return hash.counters.computeIfAbsent(item, i -> new Counter(key, i, owner));
+    }
+
+    private void updated() {
+        updates.increment();
+        if ((ThreadLocalRandom.current().nextInt() & CHECK_MASK) == 0
+                && updates.sum() - updatesAtLastFlush >= maxUpdates
+                && !closed.get()
+                && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    flushRequested.set(false);
+                    flushQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                // 检查 closed 之后 close() 关闭了线程池, 增量由 close() 的最后一次刷新写入
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void retire(Counter counter) {
+        counter.removed = true;
+        counter.idle = 0;
+        retired.add(counter);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("counter buffer flush failed", e);
+        }
+    }
+
+    /**
+     * @return 是否有未写入的增量
+     */
+    private static boolean collect(Counter counter, List<Delta> deltas) {
+        long longSum = counter.longs.sum();
+        double doubleSum = counter.doubles.sum();
+        boolean changed = false;
+        if (longSum != counter.flushedLongs) {
+            deltas.add(new Delta(counter, longSum, 0, false));
+            changed = true;
+        }
+        if (doubleSum != counter.flushedDoubles) {
+            deltas.add(new Delta(counter, 0, doubleSum, true));
+            changed = true;
+        }
+        if (changed) {
+            counter.idle = 0;
+        }
+        return changed;
+    }
+
+    private static final class Counter {
+
+        private final String key;
+
+        /**
+         * hash 的项, 普通键为 null
+         */
+        private final String item;
+
+        /**
+         * 所在的 hash, 普通键为 null
+         */
+        private final Fields owner;
+
+        private final LongAdder longs = new LongAdder();
+
+        private final DoubleAdder doubles = new DoubleAdder();
+
+        /**
+         * 已从 map 中移除, 之后的递增需要撤销并改用新的计数器
+         */
+        private volatile boolean removed;
+
+        /**
+         * 以下字段只在刷新线程中访问
+         */
+        private long flushedLongs;
+
+        private double flushedDoubles;
+
+        private int idle;
+
+        private Counter(String key, String item, Fields owner) {
+            this.key = key;
+            this.item = item;
+            this.owner = owner;
+        }
+
+        /**
+         * 先累加再检查移除标记: 未被移除时刷新线程一定能读到这次累加; 已被移除时撤销,
+         * 撤销前被读到的部分会在下一周期以负增量抵消
+         *
+         * @return false 计数器已被移除
+         */
+        private boolean add(long delta) {
+            longs.add(delta);
+            if (isRemoved()) {
+                longs.add(-delta);
+                return false;
+            }
+            return true;
+        }
+
+        private boolean add(double delta) {
+            doubles.add(delta);
+            if (isRemoved()) {
+                doubles.add(-delta);
+                return false;
+            }
+            return true;
+        }
+
+        private boolean isRemoved() {
+            return removed || owner != null && owner.removed;
+        }
+    }
+
+    private static final class Fields {
+
+        private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+        private volatile boolean removed;
+    }
+
+    private static final class Delta {
+
+        private final Counter counter;
+
+        /**
+         * 本次读取的累计值, 写入成功后作为已写入值; 浮点直接记录累计值, 不会因为反复相减累积误差
+         */
+        private final long longSum;
+
+        private final double doubleSum;
+
+        private final boolean floating;
+
+        private Delta(Counter counter, long longSum, double doubleSum, boolean floating) {
+            this.counter = counter;
+            this.longSum = longSum;
+            this.doubleSum = doubleSum;
+            this.floating = floating;
+        }
+
+        private void send(RedisBatch batch) {
+            if (counter.item == null) {
+                if (floating) {
+                    batch.incrByFloat(counter.key, doubleSum - counter.flushedDoubles);
+                } else {
+                    batch.incrBy(counter.key, longSum - counter.flushedLongs);
+                }
+            } else {
+                if (floating) {
+                    batch.hincr(counter.key, counter.item, doubleSum - counter.flushedDoubles);
+                } else {
+                    batch.hincrLong(counter.key, counter.item, longSum - counter.flushedLongs);
+                }
+            }
+        }
+
+        private void commit() {
+            if (floating) {
+                counter.flushedDoubles = doubleSum;
+            } else {
+                counter.flushedLongs = longSum;
+            }
+        }
+    }
+}
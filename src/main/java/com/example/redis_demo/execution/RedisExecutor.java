@@ -0,0 +1,245 @@
+package com.example.redis_demo.execution;
+
+import com.example.redis_demo.metrics.RedisInvocationContext;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 在独立线程上执行阻塞的 RedisService 调用, 以及把 N 个互不相关的读取并发发出的 fan-out 工具
+ * <p>
+ * virtual  每个任务一个虚拟线程(JDK 21+), 等待 redis 响应时不占用平台线程, 并发数只受 maxConcurrency 和连接池限制;
+ * platform 固定大小的平台线程池, 吞吐上限约为 线程数 / RTT。
+ * maxConcurrency 大于 0 时同时执行的任务不超过该值, 超出的提交方在信号量上等待(虚拟线程等待时会让出载体线程)
+ * <p>
+ * 连接池本身用 redis.pool.borrow-gate 限制进入借连接路径的线程数, 见 {@link com.example.redis_demo.pool.InstrumentedJedisPool}
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class RedisExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+
+    private final boolean virtual;
+
+    private final Semaphore permits;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder submitted = new LongAdder();
+
+    private RedisExecutor(ExecutorService executor, boolean virtual, int maxConcurrency) {
+        this.executor = executor;
+        this.virtual = virtual;
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency, true) : null;
+    }
+
+    /**
+     * @param maxConcurrency 同时执行的任务上限, 0 不限制
+     * @return 每个任务一个虚拟线程的执行器
+     * @throws UnsupportedOperationException 当前 JDK 不支持虚拟线程
+     */
+    public static RedisExecutor virtual(int maxConcurrency) {
+        return new RedisExecutor(VirtualThreads.newThreadPerTaskExecutor("redis-virtual-"), true, maxConcurrency);
+    }
+
+    /**
+     * @param threads        线程数
+     * @param maxConcurrency 同时执行的任务上限, 0 不限制(超出线程数的任务在线程池队列中排队)
+     * @return 平台线程池执行器
+     */
+    public static RedisExecutor platform(int threads, int maxConcurrency) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "redis-executor-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new RedisExecutor(executor, false, maxConcurrency);
+    }
+
+    /**
+     * @return 是否运行在虚拟线程上
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return 正在执行(含等待信号量)的任务数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * 异步执行一个阻塞调用, 调用线程上的 RedisInvocationContext 会传递到执行线程
+     *
+     * @param task 任务, 如 () -> redisService.get(key)
+     * @return 结果
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Callable<T> propagated = RedisInvocationContext.propagate(task);
+        submitted.increment();
+        inFlight.incrementAndGet();
+        try {
+            executor.execute(() -> run(propagated, future));
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 并发执行所有任务并等待完成
+     *
+     * @param tasks 任务
+     * @return 结果, 顺序与任务一致
+     * @throws RuntimeException 任一任务失败时抛出第一个失败任务的异常, 其余任务仍会执行完
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(submit(task));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        RuntimeException failure = null;
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待并发结果时被中断", e);
+            } catch (ExecutionException e) {
+                results.add(null);
+                failure = failure == null ? unwrap(e.getCause()) : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * 对每个输入并发执行一次调用, 适合无法合并成一条多键命令的读取, 如多个 hash 的 hgetAll
+     *
+     * @param inputs 输入, 一般是键
+     * @param call   调用, 如 redisService::hgetAll
+     * @return 输入 -> 结果, 顺序与输入一致, 重复的输入只执行一次
+     */
+    public <K, V> Map<K, V> fanOut(Collection<K> inputs, Function<? super K, ? extends V> call) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        for (K input : inputs) {
+            if (!futures.containsKey(input)) {
+                futures.put(input, submit(() -> call.apply(input)));
+            }
+        }
+        Map<K, V> results = new LinkedHashMap<>();
+        RuntimeException failure = null;
+        for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+            try {
+                results.put(entry.getKey(), entry.getValue().join());
+            } catch (CompletionException e) {
+                failure = failure == null ? unwrap(e.getCause()) : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * 注册指标
+     *
+     * @param registry 注册表
+     */
+    public void bindTo(MeterRegistry registry) {
+        String mode = virtual ? "virtual" : "platform";
+        Gauge.builder("redis.executor.in-flight", inFlight, AtomicInteger::get)
+                .description("RedisExecutor 正在执行的任务数")
+                .tag("mode", mode)
+                .register(registry);
+        FunctionCounter.builder("redis.executor.submitted", submitted, LongAdder::sum)
+                .tag("mode", mode)
+                .register(registry);
+        if (permits != null) {
+            Gauge.builder("redis.executor.waiting", permits, Semaphore::getQueueLength)
+                    .description("等待并发名额的任务数")
+                    .tag("mode", mode)
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> void run(Callable<T> task, CompletableFuture<T> future) {
+        T result = null;
+        Throwable error = null;
+        try {
+            if (permits != null) {
+                permits.acquire();
+            }
+            try {
+                result = task.call();
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = e;
+        } catch (Throwable e) {
+            error = e;
+        }
+        // 先释放计数再完成, 调用方拿到结果时 inFlight 已不包含该任务
+        inFlight.decrementAndGet();
+        if (error == null) {
+            future.complete(result);
+        } else {
+            future.completeExceptionally(error);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        return error instanceof RuntimeException ? (RuntimeException) error : new IllegalStateException(error);
+    }
+}
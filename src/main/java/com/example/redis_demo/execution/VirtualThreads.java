@@ -0,0 +1,113 @@
+package com.example.redis_demo.execution;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程(JDK 21+)的反射入口
+ * <p>
+ * 项目按 JDK 11 编译, 运行在 JDK 21 及以上时通过反射调用 Thread.ofVirtual() 和 Executors.newThreadPerTaskExecutor,
+ * 同一个 jar 在旧版本 JDK 上 {@link #isAvailable()} 为 false, 由调用方退回平台线程
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = method(Thread.class, "ofVirtual");
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = method(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+
+    private static final Method IS_VIRTUAL = method(Thread.class, "isVirtual");
+
+    /**
+     * 实现类不可访问, 通过公开接口 Thread.Builder 调用
+     */
+    private static final Class<?> BUILDER = builderClass();
+
+    private static final Method BUILDER_NAME = BUILDER == null ? null : method(BUILDER, "name", String.class, long.class);
+
+    private static final Method BUILDER_FACTORY = BUILDER == null ? null : method(BUILDER, "factory");
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return 当前 JDK 是否支持虚拟线程
+     */
+    public static boolean isAvailable() {
+        return OF_VIRTUAL != null && NEW_THREAD_PER_TASK_EXECUTOR != null && BUILDER_NAME != null && BUILDER_FACTORY != null;
+    }
+
+    /**
+     * @param thread 线程
+     * @return 是否虚拟线程, 不支持虚拟线程的 JDK 上总是 false
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 创建虚拟线程的工厂, 线程名为 prefix + 序号
+     *
+     * @param prefix 线程名前缀
+     * @return 线程工厂
+     * @throws UnsupportedOperationException 当前 JDK 不支持虚拟线程
+     */
+    public static ThreadFactory factory(String prefix) {
+        requireAvailable();
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 1L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("create virtual thread factory failed", e);
+        }
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器, 没有队列也没有线程数上限
+     *
+     * @param prefix 线程名前缀
+     * @return 执行器
+     * @throws UnsupportedOperationException 当前 JDK 不支持虚拟线程
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+        ThreadFactory factory = factory(prefix);
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("create virtual thread executor failed", e);
+        }
+    }
+
+    private static void requireAvailable() {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("virtual threads require JDK 21+, running on " + System.getProperty("java.version"));
+        }
+    }
+
+    private static Class<?> builderClass() {
+        try {
+            return Class.forName("java.lang.Thread$Builder");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
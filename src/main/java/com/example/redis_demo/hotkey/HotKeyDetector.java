@@ -0,0 +1,308 @@
+package com.example.redis_demo.hotkey;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端热键/大键探测
+ * <p>
+ * 访问按 1/sampleRate 抽样计入 Space-Saving top-K, 计数乘以抽样间隔作为估算值, 每个窗口减半, 反映最近的访问频率;
+ * 窗口内估算次数达到 hotThreshold 的键标记为热键。每次读取的响应字节数由 {@link SizeRecordingRedisSerializer}
+ * 累计到当前线程, 不小于 bigKeyBytes 的响应不抽样, 全部计入大键表并写告警日志。
+ * 未抽中的访问只有两次 ThreadLocal 读取和一次随机数, 没有锁和对象分配
+ * <p>
+ * promote 开启时一级缓存只缓存热键, 热键由一级缓存承担读取, 其他键直接访问 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class HotKeyDetector implements HotKeysMXBean, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(HotKeyDetector.class);
+
+    private static final String OBJECT_NAME = "com.example.redis_demo:type=HotKeys";
+
+    private static final int REPORT_SIZE = 20;
+
+    private static final ThreadLocal<long[]> RESPONSE_BYTES = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final int sampleRate;
+
+    private final long hotThreshold;
+
+    private final long bigKeyBytes;
+
+    private final boolean promote;
+
+    private final SpaceSaving hot;
+
+    private final SpaceSaving big;
+
+    private final Set<String> hotKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder sampledAccesses = new LongAdder();
+
+    private final LongAdder bigResponses = new LongAdder();
+
+    private final LongAdder detected = new LongAdder();
+
+    private ScheduledExecutorService decayer;
+
+    private ObjectName objectName;
+
+    /**
+     * @param capacity     热键表和大键表各自跟踪的键数
+     * @param sampleRate   每多少次访问抽样一次, 1 不抽样
+     * @param hotThreshold 一个窗口内估算访问次数达到该值标记为热键
+     * @param bigKeyBytes  单次响应达到该字节数记为大键
+     * @param promote      一级缓存是否只缓存热键
+     */
+    public HotKeyDetector(int capacity, int sampleRate, long hotThreshold, long bigKeyBytes, boolean promote) {
+        if (sampleRate <= 0 || hotThreshold <= 0 || bigKeyBytes <= 0) {
+            throw new IllegalArgumentException("sampleRate, hotThreshold and bigKeyBytes must be positive");
+        }
+        this.sampleRate = sampleRate;
+        this.hotThreshold = hotThreshold;
+        this.bigKeyBytes = bigKeyBytes;
+        this.promote = promote;
+        this.hot = new SpaceSaving(capacity);
+        this.big = new SpaceSaving(capacity);
+    }
+
+    /**
+     * 由 {@link SizeRecordingRedisSerializer} 调用, 累计当前线程反序列化的字节数
+     */
+    static void recordResponseBytes(int bytes) {
+        RESPONSE_BYTES.get()[0] += bytes;
+    }
+
+    /**
+     * 读取前调用, 与 {@link #recordRead(String, long)} 配对, 可以嵌套
+     *
+     * @return 当前线程已累计的响应字节数
+     */
+    public long mark() {
+        return RESPONSE_BYTES.get()[0];
+    }
+
+    /**
+     * 记录一次读取
+     *
+     * @param key  键
+     * @param mark 读取前 {@link #mark()} 的返回值
+     */
+    public void recordRead(String key, long mark) {
+        long bytes = RESPONSE_BYTES.get()[0] - mark;
+        if (bytes >= bigKeyBytes) {
+            bigResponses.increment();
+            // 大响应很少, 每次多一次查表无妨; 只在键进入大键表时告警
+            boolean known = big.count(key) > 0;
+            big.offer(key, 1, bytes);
+            if (!known) {
+                log.warn("big redis response: key={} bytes={}", key, bytes);
+            }
+        }
+        if (sampled()) {
+            offer(key, bytes);
+        }
+    }
+
+    /**
+     * 记录一次不关心响应大小的访问(写入、一级缓存命中)
+     *
+     * @param key 键
+     */
+    public void recordAccess(String key) {
+        if (sampled()) {
+            offer(key, 0);
+        }
+    }
+
+    /**
+     * @param key 键
+     * @return 当前窗口内是否为热键
+     */
+    public boolean isHot(String key) {
+        return hotKeys.contains(key);
+    }
+
+    /**
+     * @param key 键
+     * @return 一级缓存是否可以缓存该键; 未开启 promote 时总是 true
+     */
+    public boolean admits(String key) {
+        return !promote || hotKeys.contains(key);
+    }
+
+    /**
+     * 结束一个窗口: 计数减半, 低于阈值的键不再是热键
+     */
+    public void decay() {
+        hot.decay();
+        big.decay();
+        hotKeys.removeIf(key -> hot.count(key) < hotThreshold);
+    }
+
+    /**
+     * 按窗口定时衰减
+     *
+     * @param windowMillis 窗口长度(毫秒)
+     */
+    public synchronized void start(long windowMillis) {
+        if (decayer != null) {
+            return;
+        }
+        decayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-hot-key-decay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        decayer.scheduleWithFixedDelay(() -> {
+            try {
+                decay();
+            } catch (Exception e) {
+                log.warn("hot key decay failed", e);
+            }
+        }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 注册到平台 MBeanServer; 同名 MBean 已存在(例如同一进程内多个应用上下文)时跳过
+     */
+    public synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                log.warn("MBean {} already registered, skipping", OBJECT_NAME);
+                return;
+            }
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            log.warn("failed to register MBean {}", OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * @param limit 最多返回的个数
+     * @return 访问次数最多的键
+     */
+    public List<KeyStats> topHotKeys(int limit) {
+        return hot.top(limit, Comparator.comparingLong(KeyStats::getCount).reversed());
+    }
+
+    /**
+     * @param limit 最多返回的个数
+     * @return 响应最大的键
+     */
+    public List<KeyStats> topBigKeys(int limit) {
+        return big.top(limit, Comparator.comparingLong(KeyStats::getMaxBytes).reversed());
+    }
+
+    @Override
+    public List<String> getTopHotKeys() {
+        return describe(topHotKeys(REPORT_SIZE));
+    }
+
+    @Override
+    public List<String> getTopBigKeys() {
+        return describe(topBigKeys(REPORT_SIZE));
+    }
+
+    @Override
+    public List<String> getHotKeys() {
+        return new ArrayList<>(hotKeys);
+    }
+
+    @Override
+    public long getSampledAccesses() {
+        return sampledAccesses.sum();
+    }
+
+    @Override
+    public long getBigResponses() {
+        return bigResponses.sum();
+    }
+
+    public long getDetected() {
+        return detected.sum();
+    }
+
+    @Override
+    public void reset() {
+        hot.clear();
+        big.clear();
+        hotKeys.clear();
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("redis.hotkey.sampled", this, HotKeyDetector::getSampledAccesses)
+                .description("抽样计入热键统计的访问次数")
+                .register(registry);
+        FunctionCounter.builder("redis.hotkey.big-responses", this, HotKeyDetector::getBigResponses)
+                .description("超过大键阈值的响应次数")
+                .register(registry);
+        FunctionCounter.builder("redis.hotkey.detected", this, HotKeyDetector::getDetected)
+                .description("键被标记为热键的次数")
+                .register(registry);
+        Gauge.builder("redis.hotkey.hot", hotKeys, Set::size)
+                .description("当前热键数")
+                .register(registry);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (decayer != null) {
+            decayer.shutdownNow();
+            decayer = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.warn("failed to unregister MBean {}", objectName, e);
+            }
+            objectName = null;
+        }
+    }
+
+    private boolean sampled() {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    private void offer(String key, long bytes) {
+        sampledAccesses.increment();
+        long count = hot.offer(key, sampleRate, bytes);
+        if (count >= hotThreshold && !hotKeys.contains(key) && hotKeys.add(key)) {
+            detected.increment();
+            log.warn("hot redis key: key={} estimated accesses={} in current window", key, count);
+        }
+    }
+
+    private static List<String> describe(List<KeyStats> stats) {
+        List<String> lines = new ArrayList<>(stats.size());
+        for (KeyStats stat : stats) {
+            lines.add(stat.toString());
+        }
+        return lines;
+    }
+}
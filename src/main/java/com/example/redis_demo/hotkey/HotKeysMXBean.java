@@ -0,0 +1,36 @@
+package com.example.redis_demo.hotkey;
+
+import java.util.List;
+
+/**
+ * 热键/大键的 JMX 视图, ObjectName 为 com.example.redis_demo:type=HotKeys
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public interface HotKeysMXBean {
+
+        /**
+         * @return 访问次数最多的键, 按次数降序
+         */
+        List<String> getTopHotKeys();
+
+        /**
+         * @return 响应最大的键, 按最大响应字节数降序
+         */
+        List<String> getTopBigKeys();
+
+        /**
+         * @return 当前窗口内超过阈值的热键
+         */
+        List<String> getHotKeys();
+
+        long getSampledAccesses();
+
+        long getBigResponses();
+
+        /**
+         * 清空统计
+         */
+        void reset();
+}
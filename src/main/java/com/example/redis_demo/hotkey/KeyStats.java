@@ -0,0 +1,59 @@
+package com.example.redis_demo.hotkey;
+
+/**
+ * 一个键的统计快照
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class KeyStats {
+
+    private final String key;
+
+    private final long count;
+
+    private final long error;
+
+    private final long maxBytes;
+
+    private final long averageBytes;
+
+    KeyStats(String key, long count, long error, long maxBytes, long averageBytes) {
+        this.key = key;
+        this.count = count;
+        this.error = error;
+        this.maxBytes = maxBytes;
+        this.averageBytes = averageBytes;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return 估算的次数(抽样数乘以抽样间隔, 按窗口衰减), 真实值在 [count - error, count] 之间
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public long getError() {
+        return error;
+    }
+
+    /**
+     * @return 记录到的最大响应字节数
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getAverageBytes() {
+        return averageBytes;
+    }
+
+    @Override
+    public String toString() {
+        return key + " count=" + count + (error > 0 ? "(-" + error + ")" : "") + " maxBytes=" + maxBytes + " avgBytes=" + averageBytes;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.redis_demo.hotkey;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 把反序列化的字节数累计到当前线程, {@link HotKeyDetector} 据此得到每次读取的响应大小
+ * <p>
+ * 逐个元素反序列化的 HGETALL / LRANGE / SMEMBERS 也会累计, 哈希的字段名不计入
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class SizeRecordingRedisSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> delegate;
+
+    public SizeRecordingRedisSerializer(RedisSerializer<Object> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        return delegate.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes != null) {
+            HotKeyDetector.recordResponseBytes(bytes.length);
+        }
+        return delegate.deserialize(bytes);
+    }
+
+    public RedisSerializer<Object> getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.redis_demo.hotkey;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Space-Saving top-K 计数
+ * <p>
+ * 最多跟踪 capacity 个键, 新键在表满时替换计数最小的键并继承其计数作为误差上界, 出现次数超过 总数/capacity
+ * 的键一定在表中。计数最小的键用最小堆维护, 每次记录 O(log capacity)
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+final class SpaceSaving {
+
+    private final int capacity;
+
+    private final HashMap<String, Counter> counters;
+
+    private final Counter[] heap;
+
+    private int size;
+
+    SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * @param key    键
+     * @param weight 计数增量
+     * @param bytes  本次响应字节数
+     * @return 记录后的计数
+     */
+    synchronized long offer(String key, long weight, long bytes) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            if (size < capacity) {
+                counter = new Counter();
+                counter.index = size;
+                heap[size++] = counter;
+            } else {
+                counter = heap[0];
+                counters.remove(counter.key);
+                counter.error = counter.count;
+                counter.maxBytes = 0;
+                counter.totalBytes = 0;
+                counter.samples = 0;
+            }
+            counter.key = key;
+            counters.put(key, counter);
+        }
+        counter.count += weight;
+        counter.samples++;
+        counter.totalBytes += bytes;
+        counter.maxBytes = Math.max(counter.maxBytes, bytes);
+        siftDown(counter.index);
+        return counter.count;
+    }
+
+    /**
+     * @return 键的计数, 不在表中时为 0
+     */
+    synchronized long count(String key) {
+        Counter counter = counters.get(key);
+        return counter == null ? 0 : counter.count;
+    }
+
+    /**
+     * 计数和误差减半, 减到 0 的键移出, 使统计反映最近的访问
+     */
+    synchronized void decay() {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Counter counter = heap[i];
+            counter.count >>= 1;
+            counter.error >>= 1;
+            if (counter.count == 0) {
+                counters.remove(counter.key);
+            } else {
+                counter.index = kept;
+                heap[kept++] = counter;
+            }
+        }
+        for (int i = kept; i < size; i++) {
+            heap[i] = null;
+        }
+        size = kept;
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    synchronized void clear() {
+        counters.clear();
+        for (int i = 0; i < size; i++) {
+            heap[i] = null;
+        }
+        size = 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param limit 最多返回的个数
+     * @param order 排序
+     * @return 快照
+     */
+    List<KeyStats> top(int limit, Comparator<KeyStats> order) {
+        List<KeyStats> stats = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < size; i++) {
+                Counter counter = heap[i];
+                stats.add(new KeyStats(counter.key, counter.count, counter.error, counter.maxBytes,
+                        counter.samples == 0 ? 0 : counter.totalBytes / counter.samples));
+            }
+        }
+        stats.sort(order);
+        return stats.size() > limit ? new ArrayList<>(stats.subList(0, limit)) : stats;
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        while (true) {
+            int child = (index << 1) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (heap[child].count >= counter.count) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    private static final class Counter {
+
+        private String key;
+
+        private long count;
+
+        private long error;
+
+        private long maxBytes;
+
+        private long totalBytes;
+
+        private long samples;
+
+        private int index;
+    }
+}
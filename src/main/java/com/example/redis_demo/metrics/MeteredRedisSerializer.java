@@ -0,0 +1,43 @@
+package com.example.redis_demo.metrics;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 统计序列化/反序列化字节数, 记到当前 RedisService 方法上
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class MeteredRedisSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> delegate;
+
+    public MeteredRedisSerializer(RedisSerializer<Object> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = delegate.serialize(value);
+        if (bytes != null) {
+            RedisInvocationContext.recordBytesOut(bytes.length);
+        }
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes != null) {
+            RedisInvocationContext.recordBytesIn(bytes.length);
+        }
+        return delegate.deserialize(bytes);
+    }
+
+    /**
+     * @return 被包装的序列化, 用于获取压缩统计等
+     */
+    public RedisSerializer<Object> getDelegate() {
+        return delegate;
+    }
+}
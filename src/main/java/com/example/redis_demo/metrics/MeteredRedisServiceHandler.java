@@ -0,0 +1,88 @@
+package com.example.redis_demo.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * RedisService 的计时代理
+ * <p>
+ * 每个接口方法的 {@link MethodMetrics} 在创建代理时就准备好, 调用时只有一次只读 HashMap 查找和 ThreadLocal 登记,
+ * 不产生额外对象
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class MeteredRedisServiceHandler implements InvocationHandler {
+
+    private final Object target;
+
+    private final Map<Method, MethodMetrics> metrics = new HashMap<>();
+
+    MeteredRedisServiceHandler(Object target, Class<?> serviceInterface, MeterRegistry registry) {
+        this.target = target;
+        for (Method method : serviceInterface.getMethods()) {
+            metrics.put(method, new MethodMetrics(name(method), registry));
+        }
+    }
+
+    /**
+     * 创建代理
+     *
+     * @param target           被代理对象
+     * @param serviceInterface 接口
+     * @param registry         指标注册表
+     * @return 代理
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T wrap(T target, Class<T> serviceInterface, MeterRegistry registry) {
+        return (T) Proxy.newProxyInstance(serviceInterface.getClassLoader(), new Class<?>[]{serviceInterface},
+                new MeteredRedisServiceHandler(target, serviceInterface, registry));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        MethodMetrics methodMetrics = metrics.get(method);
+        if (methodMetrics == null) {
+            // Object 上的方法(toString/hashCode/equals)
+            return invokeTarget(method, args);
+        }
+        MethodMetrics previous = RedisInvocationContext.enter(methodMetrics);
+        long start = System.nanoTime();
+        try {
+            return invokeTarget(method, args);
+        } catch (Throwable e) {
+            methodMetrics.recordError(e);
+            throw e;
+        } finally {
+            methodMetrics.recordLatency(System.nanoTime() - start);
+            RedisInvocationContext.exit(previous);
+        }
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 重载方法按参数类型区分, 如 lpush(String,Object) 与 lpush(String,List);
+     * 只按参数个数区分时同样个数的重载会合并成一个指标
+     */
+    private static String name(Method method) {
+        StringJoiner signature = new StringJoiner(",", method.getName() + "(", ")");
+        for (Class<?> type : method.getParameterTypes()) {
+            signature.add(type.getSimpleName());
+        }
+        return signature.toString();
+    }
+}
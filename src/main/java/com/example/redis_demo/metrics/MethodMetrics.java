@@ -0,0 +1,78 @@
+package com.example.redis_demo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个 RedisService 方法的指标, 启动时为每个方法预先创建, 调用路径上只做记录不再查找/创建 meter
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class MethodMetrics {
+
+    private final String method;
+
+    private final MeterRegistry registry;
+
+    private final Timer latency;
+
+    private final DistributionSummary bytesIn;
+
+    private final DistributionSummary bytesOut;
+
+    private final ConcurrentHashMap<Class<?>, Counter> errors = new ConcurrentHashMap<>();
+
+    MethodMetrics(String method, MeterRegistry registry) {
+        this.method = method;
+        this.registry = registry;
+        this.latency = Timer.builder("redis.service.calls")
+                .description("RedisService 方法耗时")
+                .tag("method", method)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        this.bytesIn = DistributionSummary.builder("redis.service.payload")
+                .description("反序列化的字节数")
+                .baseUnit("bytes")
+                .tags("method", method, "direction", "in")
+                .register(registry);
+        this.bytesOut = DistributionSummary.builder("redis.service.payload")
+                .description("序列化的字节数")
+                .baseUnit("bytes")
+                .tags("method", method, "direction", "out")
+                .register(registry);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    void recordLatency(long nanos) {
+        latency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordBytesIn(int bytes) {
+        bytesIn.record(bytes);
+    }
+
+    void recordBytesOut(int bytes) {
+        bytesOut.record(bytes);
+    }
+
+    void recordError(Throwable error) {
+        Class<?> type = error.getClass();
+        Counter counter = errors.get(type);
+        if (counter == null) {
+            counter = errors.computeIfAbsent(type, t -> Counter.builder("redis.service.errors")
+                    .description("RedisService 方法异常次数, 包括被方法内部吞掉的异常")
+                    .tags("method", method, "exception", t.getSimpleName())
+                    .register(registry));
+        }
+        counter.increment();
+    }
+}
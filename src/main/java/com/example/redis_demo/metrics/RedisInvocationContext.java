@@ -0,0 +1,84 @@
+package com.example.redis_demo.metrics;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 当前线程正在执行的 RedisService 方法
+ * <p>
+ * 由 {@link MeteredRedisServiceHandler} 在方法执行期间登记, 序列化层据此把字节数记到对应方法上,
+ * RedisServiceImpl 内部吞掉的异常也通过 {@link #recordError(Throwable)} 计入该方法
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class RedisInvocationContext {
+
+    private static final ThreadLocal<MethodMetrics> CURRENT = new ThreadLocal<>();
+
+    private RedisInvocationContext() {
+    }
+
+    static MethodMetrics enter(MethodMetrics metrics) {
+        MethodMetrics previous = CURRENT.get();
+        CURRENT.set(metrics);
+        return previous;
+    }
+
+    static void exit(MethodMetrics previous) {
+        CURRENT.set(previous);
+    }
+
+    /**
+     * @return 当前方法, 不在 RedisService 调用中时为 null
+     */
+    public static MethodMetrics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 把当前方法带到其它线程执行的任务中, 多键命令按分片并行执行时字节数和异常仍计入发起调用的方法
+     *
+     * @param task 任务
+     * @return 在执行线程上登记当前方法的任务
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        MethodMetrics metrics = CURRENT.get();
+        if (metrics == null) {
+            return task;
+        }
+        return () -> {
+            MethodMetrics previous = enter(metrics);
+            try {
+                return task.call();
+            } finally {
+                exit(previous);
+            }
+        };
+    }
+
+    /**
+     * 记录被调用方内部处理掉的异常
+     *
+     * @param error 异常
+     */
+    public static void recordError(Throwable error) {
+        MethodMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.recordError(error);
+        }
+    }
+
+    static void recordBytesIn(int bytes) {
+        MethodMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.recordBytesIn(bytes);
+        }
+    }
+
+    static void recordBytesOut(int bytes) {
+        MethodMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.recordBytesOut(bytes);
+        }
+    }
+}
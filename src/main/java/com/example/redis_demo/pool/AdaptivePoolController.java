@@ -0,0 +1,131 @@
+package com.example.redis_demo.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按借连接等待情况自动调整连接池大小
+ * <p>
+ * 每个周期比较区间内的借用统计:
+ * 出现耗尽、有线程在排队或超过 5% 的借用等待超过慢借用阈值时扩容, maxTotal 增加一半(不超过上限),
+ * minIdle 提高到当前活跃连接数, 使下一次突发不必现建连接;
+ * 连续 shrinkAfter 个周期利用率低于 25% 且没有慢借用时缩容, maxTotal 减少四分之一(不低于下限), minIdle 向初始值回落
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class AdaptivePoolController implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptivePoolController.class);
+
+    private final InstrumentedJedisPool pool;
+
+    private final int minTotal;
+
+    private final int maxTotal;
+
+    private final int baseMinIdle;
+
+    private final int baseMaxIdle;
+
+    private final long intervalMillis;
+
+    private final int shrinkAfter;
+
+    private ScheduledExecutorService scheduler;
+
+    private InstrumentedJedisPool.Counters last;
+
+    private int quietIntervals;
+
+    /**
+     * @param pool           连接池
+     * @param minTotal       maxTotal 下限
+     * @param maxTotal       maxTotal 上限
+     * @param intervalMillis 调整周期(毫秒)
+     * @param shrinkAfter    连续多少个空闲周期后缩容
+     */
+    public AdaptivePoolController(InstrumentedJedisPool pool, int minTotal, int maxTotal, long intervalMillis, int shrinkAfter) {
+        this.pool = pool;
+        this.minTotal = minTotal;
+        this.maxTotal = Math.max(minTotal, maxTotal);
+        this.baseMinIdle = pool.getMinIdle();
+        this.baseMaxIdle = pool.getMaxIdle();
+        this.intervalMillis = intervalMillis;
+        this.shrinkAfter = shrinkAfter;
+        this.last = pool.counters();
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-pool-adaptive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::adjustSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void adjustSafely() {
+        try {
+            adjust();
+        } catch (Exception e) {
+            log.warn("redis pool adaptive adjustment failed", e);
+        }
+    }
+
+    /**
+     * 执行一次调整, 由调度线程周期调用
+     */
+    synchronized void adjust() throws Exception {
+        InstrumentedJedisPool.Counters current = pool.counters();
+        long borrows = current.getBorrows() - last.getBorrows();
+        long slowBorrows = current.getSlowBorrows() - last.getSlowBorrows();
+        long exhaustions = current.getExhaustions() - last.getExhaustions();
+        last = current;
+
+        int active = pool.getNumActive();
+        int waiters = pool.getNumWaiters();
+        int total = pool.getMaxTotal();
+        boolean pressure = exhaustions > 0 || waiters > 0 || slowBorrows * 20 > borrows;
+        if (pressure) {
+            quietIntervals = 0;
+            if (total >= maxTotal) {
+                return;
+            }
+            int newTotal = Math.min(maxTotal, total + Math.max(1, total / 2));
+            int newMinIdle = Math.min(newTotal, Math.max(pool.getMinIdle(), active));
+            pool.resize(newTotal, Math.max(baseMaxIdle, newMinIdle), newMinIdle);
+            log.info("redis pool grown: maxTotal {} -> {}, minIdle {}, active {}, waiters {}, slow {}/{}, exhausted {}",
+                    total, newTotal, newMinIdle, active, waiters, slowBorrows, borrows, exhaustions);
+            pool.ensureMinIdle();
+            return;
+        }
+        if (active * 4 >= total) {
+            quietIntervals = 0;
+            return;
+        }
+        if (++quietIntervals < shrinkAfter || total <= minTotal && pool.getMinIdle() <= baseMinIdle) {
+            return;
+        }
+        quietIntervals = 0;
+        int newTotal = Math.max(minTotal, total - Math.max(1, total / 4));
+        int newMinIdle = Math.min(newTotal, Math.max(baseMinIdle, (pool.getMinIdle() + baseMinIdle) / 2));
+        pool.resize(newTotal, Math.max(baseMaxIdle, newMinIdle), newMinIdle);
+        log.info("redis pool shrunk: maxTotal {} -> {}, minIdle {}, active {}", total, newTotal, newMinIdle, active);
+    }
+}
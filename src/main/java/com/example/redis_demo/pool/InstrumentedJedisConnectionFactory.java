@@ -0,0 +1,155 @@
+package com.example.redis_demo.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.ClusterTopologyProvider;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClusterConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.util.Pool;
+
+import java.time.Duration;
+
+/**
+ * 使用 {@link InstrumentedJedisPool} 的连接工厂, 启动时按 minIdle 预建连接; 集群模式下可配置拓扑缓存时间
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class InstrumentedJedisConnectionFactory extends JedisConnectionFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentedJedisConnectionFactory.class);
+
+    /**
+     * 预建连接方式 sync 启动时同步建立, async 后台建立不阻塞启动, none 不预建
+     */
+    private final String prewarm;
+
+    private final long slowBorrowMillis;
+
+    /**
+     * 集群拓扑缓存时间, 单机模式为 null
+     */
+    private final Duration topologyCacheTimeout;
+
+    /**
+     * 借连接前经过信号量闸门, 见 {@link InstrumentedJedisPool}
+     */
+    private boolean borrowGate;
+
+    private volatile InstrumentedJedisPool pool;
+
+    public InstrumentedJedisConnectionFactory(RedisStandaloneConfiguration standaloneConfig, JedisClientConfiguration clientConfig,
+                                              String prewarm, long slowBorrowMillis) {
+        super(standaloneConfig, clientConfig);
+        this.prewarm = prewarm;
+        this.slowBorrowMillis = slowBorrowMillis;
+        this.topologyCacheTimeout = null;
+    }
+
+    /**
+     * 集群模式, 每个节点的连接池由 JedisCluster 管理, {@link #getPool()} 为 null
+     *
+     * @param topologyCacheTimeout 拓扑缓存时间, 到期后下一次按节点执行的命令重新读取 CLUSTER NODES
+     */
+    public InstrumentedJedisConnectionFactory(RedisClusterConfiguration clusterConfig, JedisClientConfiguration clientConfig,
+                                              Duration topologyCacheTimeout, long slowBorrowMillis) {
+        super(clusterConfig, clientConfig);
+        this.prewarm = "none";
+        this.slowBorrowMillis = slowBorrowMillis;
+        this.topologyCacheTimeout = topologyCacheTimeout;
+    }
+
+    /**
+     * Sentinel 模式, 主节点连接池由 JedisSentinelPool 管理并跟随故障转移, {@link #getPool()} 为 null
+     */
+    public InstrumentedJedisConnectionFactory(RedisSentinelConfiguration sentinelConfig, JedisClientConfiguration clientConfig,
+                                              long slowBorrowMillis) {
+        super(sentinelConfig, clientConfig);
+        this.prewarm = "none";
+        this.slowBorrowMillis = slowBorrowMillis;
+        this.topologyCacheTimeout = null;
+    }
+
+    @Override
+    protected Pool<Jedis> createRedisPool() {
+        if (isRedisSentinelAware()) {
+            return super.createRedisPool();
+        }
+        RedisStandaloneConfiguration standaloneConfig = getStandaloneConfiguration();
+        JedisClientConfiguration clientConfiguration = getClientConfiguration();
+        DefaultJedisClientConfig.Builder builder = DefaultJedisClientConfig.builder()
+                .connectionTimeoutMillis((int) clientConfiguration.getConnectTimeout().toMillis())
+                .socketTimeoutMillis((int) clientConfiguration.getReadTimeout().toMillis())
+                .database(getDatabase())
+                .clientName(getClientName())
+                .ssl(isUseSsl());
+        if (standaloneConfig != null) {
+            builder.user(standaloneConfig.getUsername());
+        }
+        if (getPassword() != null) {
+            builder.password(getPassword());
+        }
+        pool = new InstrumentedJedisPool(getPoolConfig(), new HostAndPort(getHostName(), getPort()), builder.build(), slowBorrowMillis, borrowGate);
+        return pool;
+    }
+
+    @Override
+    protected ClusterTopologyProvider createTopologyProvider(JedisCluster cluster) {
+        if (topologyCacheTimeout == null) {
+            return super.createTopologyProvider(cluster);
+        }
+        return new JedisClusterConnection.JedisClusterTopologyProvider(cluster, topologyCacheTimeout);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        if (pool == null || "none".equalsIgnoreCase(prewarm)) {
+            return;
+        }
+        if ("async".equalsIgnoreCase(prewarm)) {
+            Thread thread = new Thread(this::prewarm, "redis-pool-prewarm");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            prewarm();
+        }
+    }
+
+    /**
+     * 开启借用闸门, 须在 {@link #afterPropertiesSet()} 之前调用; 只对直连的单机连接池生效
+     *
+     * @param borrowGate 是否开启
+     */
+    public void setBorrowGate(boolean borrowGate) {
+        this.borrowGate = borrowGate;
+    }
+
+    /**
+     * @return 连接池, 未启用连接池时为 null
+     */
+    public InstrumentedJedisPool getPool() {
+        return pool;
+    }
+
+    private void prewarm() {
+        InstrumentedJedisPool current = pool;
+        int count = current.getMinIdle();
+        try {
+            long start = System.currentTimeMillis();
+            current.prewarm(count);
+            log.info("redis pool pre-warmed {} connections in {}ms", count, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            // redis 暂时不可用不影响启动, 连接在首次使用时再建立
+            log.warn("redis pool pre-warm failed", e);
+        }
+    }
+}
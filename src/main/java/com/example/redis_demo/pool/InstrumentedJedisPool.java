@@ -0,0 +1,371 @@
+package com.example.redis_demo.pool;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 记录借连接等待时间和耗尽次数的 JedisPool
+ * <p>
+ * 等待时间分布注册为 redis.pool.borrow, 同时按区间累计供 {@link AdaptivePoolController} 判断是否需要扩缩容;
+ * 借连接超时(连接池耗尽)计入 redis.pool.exhausted
+ * <p>
+ * 开启借用闸门时, 进入 commons-pool 借连接路径前先在公平信号量(许可数 = maxTotal)上等待。
+ * GenericObjectPool 在连接数达到上限时会在 synchronized 块内 wait, 虚拟线程在那里会钉住载体线程;
+ * 经过闸门后进入池内的线程不超过 maxTotal, 排队都发生在信号量上, 虚拟线程等待时让出载体线程
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class InstrumentedJedisPool extends JedisPool {
+
+    private final long slowBorrowNanos;
+
+    private final LongAdder borrows = new LongAdder();
+
+    private final LongAdder slowBorrows = new LongAdder();
+
+    private final LongAdder exhaustions = new LongAdder();
+
+    private final LongAdder borrowWaitNanos = new LongAdder();
+
+    private volatile Timer borrowTimer;
+
+    /**
+     * 借用闸门, 未开启时为 null
+     */
+    private final Gate gate;
+
+    /**
+     * 闸门当前的许可总数, 跟随 maxTotal
+     */
+    private final AtomicInteger gateLimit;
+
+    private final Internals internals = new Internals();
+
+    /**
+     * @param poolConfig      连接池配置
+     * @param hostAndPort     地址
+     * @param clientConfig    连接配置
+     * @param slowBorrowMillis 借连接等待超过该时间(毫秒)视为慢借用
+     */
+    public InstrumentedJedisPool(GenericObjectPoolConfig<Jedis> poolConfig, HostAndPort hostAndPort,
+                                 JedisClientConfig clientConfig, long slowBorrowMillis) {
+        this(poolConfig, hostAndPort, clientConfig, slowBorrowMillis, false);
+    }
+
+    /**
+     * @param poolConfig       连接池配置
+     * @param hostAndPort      地址
+     * @param clientConfig     连接配置
+     * @param slowBorrowMillis 借连接等待超过该时间(毫秒)视为慢借用
+     * @param borrowGate       是否开启借用闸门
+     */
+    public InstrumentedJedisPool(GenericObjectPoolConfig<Jedis> poolConfig, HostAndPort hostAndPort,
+                                 JedisClientConfig clientConfig, long slowBorrowMillis, boolean borrowGate) {
+        super(poolConfig, hostAndPort, clientConfig);
+        this.slowBorrowNanos = TimeUnit.MILLISECONDS.toNanos(slowBorrowMillis);
+        this.gate = borrowGate ? new Gate(poolConfig.getMaxTotal()) : null;
+        this.gateLimit = borrowGate ? new AtomicInteger(poolConfig.getMaxTotal()) : null;
+    }
+
+    @Override
+    public Jedis getResource() {
+        long start = System.nanoTime();
+        if (gate != null) {
+            enterGate(start);
+        }
+        try {
+            Jedis jedis = super.getResource();
+            recordBorrow(System.nanoTime() - start);
+            return jedis;
+        } catch (RuntimeException e) {
+            if (gate != null) {
+                gate.release();
+            }
+            if (internals.isExhausted(e)) {
+                exhaustions.increment();
+                recordBorrow(System.nanoTime() - start);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 与 JedisPool 相同的归还逻辑, 失败时直接作废连接而不再经过 {@link #returnBrokenResource}, 保证闸门许可只归还一次
+     */
+    @Override
+    public void returnResource(Jedis resource) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.resetState();
+            internals.returnObject(resource);
+        } catch (RuntimeException e) {
+            internals.returnBrokenObject(resource);
+        } finally {
+            if (gate != null) {
+                gate.release();
+            }
+        }
+    }
+
+    @Override
+    public void returnBrokenResource(Jedis resource) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            super.returnBrokenResource(resource);
+        } finally {
+            if (gate != null) {
+                gate.release();
+            }
+        }
+    }
+
+    /**
+     * @return 等待借连接的线程数, 开启闸门时包括在闸门上等待的线程
+     */
+    @Override
+    public int getNumWaiters() {
+        int waiters = super.getNumWaiters();
+        return gate == null ? waiters : Math.max(waiters, 0) + gate.getQueueLength();
+    }
+
+    /**
+     * @return 是否开启了借用闸门
+     */
+    public boolean isBorrowGated() {
+        return gate != null;
+    }
+
+    /**
+     * 调整连接池大小, 运行时生效; 缩小 maxTotal 时多出的连接在归还后关闭
+     *
+     * @param maxTotal 最大连接数
+     * @param maxIdle  最大空闲连接数
+     * @param minIdle  最小空闲连接数
+     */
+    public void resize(int maxTotal, int maxIdle, int minIdle) {
+        GenericObjectPool<Jedis> pool = internals.pool();
+        if (gate != null) {
+            int delta = maxTotal - gateLimit.getAndSet(maxTotal);
+            if (delta > 0) {
+                gate.release(delta);
+            } else if (delta < 0) {
+                // 许可可以暂时为负, 多借出的连接归还后才允许新的借用
+                gate.reducePermits(-delta);
+            }
+        }
+        pool.setMaxTotal(maxTotal);
+        pool.setMaxIdle(maxIdle);
+        pool.setMinIdle(minIdle);
+    }
+
+    public int getMaxTotal() {
+        return internals.pool().getMaxTotal();
+    }
+
+    public int getMaxIdle() {
+        return internals.pool().getMaxIdle();
+    }
+
+    public int getMinIdle() {
+        return internals.pool().getMinIdle();
+    }
+
+    /**
+     * 预先建立连接, 遇到第一个失败即停止
+     *
+     * @param count 连接数
+     * @return 实际建立的连接数
+     */
+    public int prewarm(int count) {
+        int created = 0;
+        for (int i = 0; i < count; i++) {
+            try {
+                internals.pool().addObject();
+                created++;
+            } catch (Exception e) {
+                throw new IllegalStateException("pre-warm stopped after " + created + " connections", e);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * 补足 minIdle 个空闲连接, 调大 minIdle 后调用, 不必等到下次空闲检测
+     *
+     * @throws Exception 建立连接失败
+     */
+    public void ensureMinIdle() throws Exception {
+        internals.pool().preparePool();
+    }
+
+    /**
+     * @return 当前累计值, 用于按区间计算增量
+     */
+    public Counters counters() {
+        return new Counters(borrows.sum(), slowBorrows.sum(), exhaustions.sum(), borrowWaitNanos.sum());
+    }
+
+    /**
+     * 注册指标
+     *
+     * @param registry 注册表
+     */
+    public void bindTo(MeterRegistry registry) {
+        bindTo(registry, Tags.empty());
+    }
+
+    /**
+     * 注册指标, 有多个连接池(客户端分片)时用标签区分
+     *
+     * @param registry 注册表
+     * @param tags     附加标签, 如 shard=host:port
+     */
+    public void bindTo(MeterRegistry registry, Iterable<Tag> tags) {
+        borrowTimer = Timer.builder("redis.pool.borrow")
+                .description("从连接池借连接的等待时间")
+                .tags(tags)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        FunctionCounter.builder("redis.pool.exhausted", exhaustions, LongAdder::sum)
+                .description("等待超过 maxWait 仍借不到连接的次数")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("redis.pool.active", this, JedisPool::getNumActive).tags(tags).register(registry);
+        Gauge.builder("redis.pool.idle", this, JedisPool::getNumIdle).tags(tags).register(registry);
+        Gauge.builder("redis.pool.waiters", this, JedisPool::getNumWaiters).tags(tags).register(registry);
+        Gauge.builder("redis.pool.max-total", this, InstrumentedJedisPool::getMaxTotal).tags(tags).register(registry);
+        Gauge.builder("redis.pool.min-idle", this, InstrumentedJedisPool::getMinIdle).tags(tags).register(registry);
+    }
+
+    private void enterGate(long start) {
+        Duration maxWait = internals.pool().getMaxWaitDuration();
+        try {
+            if (maxWait.isNegative()) {
+                gate.acquire();
+            } else if (!gate.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                exhaustions.increment();
+                recordBorrow(System.nanoTime() - start);
+                throw internals.exhausted("Could not get a resource since the pool is exhausted");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw internals.exhausted("Interrupted while waiting for a resource");
+        }
+    }
+
+    private void recordBorrow(long nanos) {
+        borrows.increment();
+        borrowWaitNanos.add(nanos);
+        if (nanos >= slowBorrowNanos) {
+            slowBorrows.increment();
+        }
+        Timer timer = borrowTimer;
+        if (timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Jedis 3.x 把 internalPool、returnResourceObject 等标为过时(4.x 改为继承 GenericObjectPool),
+     * 但调整池大小、预热和绕过 returnBrokenResource 归还仍只能通过它们; 过时 API 的使用都集中在这里
+     */
+    @SuppressWarnings("deprecation")
+    private final class Internals {
+
+        GenericObjectPool<Jedis> pool() {
+            return internalPool;
+        }
+
+        void returnObject(Jedis resource) {
+            returnResourceObject(resource);
+        }
+
+        void returnBrokenObject(Jedis resource) {
+            returnBrokenResourceObject(resource);
+        }
+
+        boolean isExhausted(RuntimeException e) {
+            return e instanceof JedisExhaustedPoolException;
+        }
+
+        RuntimeException exhausted(String message) {
+            return new JedisExhaustedPoolException(message);
+        }
+    }
+
+    /**
+     * 公平信号量, 开放 reducePermits 以便缩容
+     */
+    private static final class Gate extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        Gate(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    /**
+     * 借用统计累计值
+     */
+    public static final class Counters {
+
+        private final long borrows;
+
+        private final long slowBorrows;
+
+        private final long exhaustions;
+
+        private final long borrowWaitNanos;
+
+        Counters(long borrows, long slowBorrows, long exhaustions, long borrowWaitNanos) {
+            this.borrows = borrows;
+            this.slowBorrows = slowBorrows;
+            this.exhaustions = exhaustions;
+            this.borrowWaitNanos = borrowWaitNanos;
+        }
+
+        public long getBorrows() {
+            return borrows;
+        }
+
+        public long getSlowBorrows() {
+            return slowBorrows;
+        }
+
+        public long getExhaustions() {
+            return exhaustions;
+        }
+
+        public long getBorrowWaitNanos() {
+            return borrowWaitNanos;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.redis_demo.queue;
+
+/**
+ * 队列中的一条消息
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class QueueMessage {
+
+    private final String id;
+
+    private final Object payload;
+
+    QueueMessage(String id, Object payload) {
+        this.id = id;
+        this.payload = payload;
+    }
+
+    /**
+     * @return stream 中的消息 id(毫秒时间戳-序号), 重复投递时不变, 可用于幂等处理
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return 消息内容, 按值序列化器反序列化
+     */
+    public Object getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return 发布时间(毫秒), 取自消息 id
+     */
+    public long getTimestamp() {
+        int index = id.indexOf('-');
+        return Long.parseLong(index < 0 ? id : id.substring(0, index));
+    }
+
+    @Override
+    public String toString() {
+        return id + "=" + payload;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.redis_demo.queue;
+
+/**
+ * 队列参数
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class QueueOptions {
+
+    /**
+     * 每次 XREADGROUP 最多读取的消息数
+     */
+    private int batchSize = 32;
+
+    /**
+     * XREADGROUP 阻塞等待时间(毫秒), 需小于 redis.timeout-ms, 阻塞期间占用一个连接
+     */
+    private long blockMillis = 1000;
+
+    /**
+     * 处理消息的线程数
+     */
+    private int workers = 4;
+
+    /**
+     * 已读取未处理完的消息上限, 达到后暂停读取(背压)
+     */
+    private int maxInFlight = 128;
+
+    /**
+     * 消息未确认超过该时间(毫秒)视为消费者失效或处理失败, 由其他消费者认领重新处理
+     */
+    private long claimIdleMillis = 60000;
+
+    /**
+     * 检查待认领消息的间隔(毫秒)
+     */
+    private long claimIntervalMillis = 10000;
+
+    /**
+     * 投递次数达到该值仍未确认的消息转入死信 stream(键后缀 :dead)
+     */
+    private int maxDeliveries = 5;
+
+    /**
+     * stream 近似保留的最大长度, 0 不裁剪
+     */
+    private long maxLength = 1_000_000;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public QueueOptions setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public long getBlockMillis() {
+        return blockMillis;
+    }
+
+    public QueueOptions setBlockMillis(long blockMillis) {
+        this.blockMillis = blockMillis;
+        return this;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public QueueOptions setWorkers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public QueueOptions setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    public long getClaimIdleMillis() {
+        return claimIdleMillis;
+    }
+
+    public QueueOptions setClaimIdleMillis(long claimIdleMillis) {
+        this.claimIdleMillis = claimIdleMillis;
+        return this;
+    }
+
+    public long getClaimIntervalMillis() {
+        return claimIntervalMillis;
+    }
+
+    public QueueOptions setClaimIntervalMillis(long claimIntervalMillis) {
+        this.claimIntervalMillis = claimIntervalMillis;
+        return this;
+    }
+
+    public int getMaxDeliveries() {
+        return maxDeliveries;
+    }
+
+    public QueueOptions setMaxDeliveries(int maxDeliveries) {
+        this.maxDeliveries = maxDeliveries;
+        return this;
+    }
+
+    public long getMaxLength() {
+        return maxLength;
+    }
+
+    public QueueOptions setMaxLength(long maxLength) {
+        this.maxLength = maxLength;
+        return this;
+    }
+}
@@ -0,0 +1,449 @@
+package com.example.redis_demo.queue;
+
+import com.example.redis_demo.codec.SerializationContext;
+import com.example.redis_demo.routing.RedisRouter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 redis stream 和消费者组的工作队列
+ * <p>
+ * 发布为 XADD(近似裁剪到 maxLength), 消费为 XREADGROUP 阻塞批量读取, 处理成功后 XACK。
+ * 处理抛出异常的消息不确认, 留在待确认列表中; 定时 XPENDING 找出超过 claimIdle 未确认的消息
+ * (消费者宕机或处理失败), XCLAIM 到本消费者重新处理, 投递次数达到 maxDeliveries 的转入死信 stream。
+ * 消息至少投递一次, 处理逻辑需要幂等({@link QueueMessage#getId()} 在重复投递时不变)。
+ * <p>
+ * 已读取未处理完的消息数达到 maxInFlight 时暂停读取, 处理慢时消息留在 redis 中, 不在本地堆积。
+ * stream 键为 queue:{name}, 整个队列在一个分片上
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class StreamQueue implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamQueue.class);
+
+    private static final byte[] FIELD = "v".getBytes(StandardCharsets.UTF_8);
+
+    private final String name;
+
+    private final String key;
+
+    private final byte[] rawKey;
+
+    private final byte[] deadKey;
+
+    private final String group;
+
+    private final String consumer;
+
+    private final RedisRouter router;
+
+    private final QueueOptions options;
+
+    private final Semaphore inFlight;
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder processed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder claimed = new LongAdder();
+
+    private final LongAdder dead = new LongAdder();
+
+    /**
+     * 待确认消息数和 stream 长度, 认领检查时更新
+     */
+    private volatile long pending;
+
+    private volatile long length;
+
+    private volatile Timer processTimer;
+
+    private volatile Timer latencyTimer;
+
+    private volatile boolean running;
+
+    private java.util.function.Consumer<QueueMessage> handler;
+
+    private ExecutorService workers;
+
+    private ScheduledExecutorService reclaimer;
+
+    private Thread poller;
+
+    /**
+     * @param router  路由
+     * @param name    队列名称
+     * @param group   消费者组, 同组的消费者分担消息, 不同组各自收到全部消息
+     * @param options 参数
+     */
+    public StreamQueue(RedisRouter router, String name, String group, QueueOptions options) {
+        if (options.getBatchSize() <= 0 || options.getWorkers() <= 0 || options.getMaxInFlight() <= 0) {
+            throw new IllegalArgumentException("batchSize, workers and maxInFlight must be positive");
+        }
+        this.router = router;
+        this.name = name;
+        this.key = "queue:{" + name + "}";
+        this.rawKey = key.getBytes(StandardCharsets.UTF_8);
+        this.deadKey = (key + ":dead").getBytes(StandardCharsets.UTF_8);
+        this.group = group;
+        this.consumer = group + ":" + UUID.randomUUID();
+        this.options = options;
+        // 公平模式: 读取线程阻塞读取时占着许可, 认领线程排队等待, 不会被读取线程的下一轮抢先
+        this.inFlight = new Semaphore(options.getMaxInFlight(), true);
+    }
+
+    /**
+     * 发布消息
+     *
+     * @param payload 消息内容, 按值序列化器编码
+     * @return 消息 id
+     */
+    public String publish(Object payload) {
+        RedisTemplate<String, Object> template = template();
+        byte[] value;
+        String previous = SerializationContext.enter(key);
+        try {
+            value = rawValue(template, payload);
+        } finally {
+            SerializationContext.exit(previous);
+        }
+        RedisStreamCommands.XAddOptions addOptions = options.getMaxLength() > 0
+                ? RedisStreamCommands.XAddOptions.maxlen(options.getMaxLength()).approximateTrimming(true)
+                : RedisStreamCommands.XAddOptions.none();
+        RecordId id = template.execute((RedisCallback<RecordId>) connection -> connection.streamCommands()
+                .xAdd(StreamRecords.newRecord().in(rawKey).ofMap(Collections.singletonMap(FIELD, value)), addOptions));
+        published.increment();
+        return id == null ? null : id.getValue();
+    }
+
+    /**
+     * 开始消费; 消费者组不存在时创建(从 stream 起始处消费), 每个队列对象只能启动一次
+     *
+     * @param handler 消息处理, 正常返回即确认, 抛出异常的消息稍后重新投递
+     */
+    public synchronized void start(java.util.function.Consumer<QueueMessage> handler) {
+        if (running) {
+            throw new IllegalStateException("queue " + name + " is already started");
+        }
+        this.handler = handler;
+        running = true;
+        AtomicInteger index = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(options.getWorkers(), runnable -> {
+            Thread thread = new Thread(runnable, "redis-queue-" + name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        reclaimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-queue-" + name + "-reclaim");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reclaimer.scheduleWithFixedDelay(() -> {
+            try {
+                reclaim();
+            } catch (Exception e) {
+                log.warn("queue {} reclaim failed", name, e);
+            }
+        }, options.getClaimIntervalMillis(), options.getClaimIntervalMillis(), TimeUnit.MILLISECONDS);
+        poller = new Thread(this::poll, "redis-queue-" + name + "-poll");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /**
+     * 认领超时未确认的消息重新处理, 投递次数超限的转入死信; 定时执行, 也可手动调用
+     *
+     * @return 认领的消息数
+     */
+    public int reclaim() {
+        RedisTemplate<String, Object> template = template();
+        PendingMessagesSummary summary = template.execute((RedisCallback<PendingMessagesSummary>) connection ->
+                connection.streamCommands().xPending(rawKey, group));
+        Long size = template.execute((RedisCallback<Long>) connection -> connection.streamCommands().xLen(rawKey));
+        pending = summary == null ? 0 : summary.getTotalPendingMessages();
+        length = size == null ? 0 : size;
+        if (pending == 0 || !running) {
+            return 0;
+        }
+        PendingMessages messages = template.execute((RedisCallback<PendingMessages>) connection -> connection.streamCommands()
+                .xPending(rawKey, group, RedisStreamCommands.XPendingOptions.range(Range.unbounded(), (long) options.getBatchSize() * 4)));
+        if (messages == null) {
+            return 0;
+        }
+        List<RecordId> retry = new ArrayList<>();
+        List<RecordId> exhausted = new ArrayList<>();
+        for (PendingMessage message : messages) {
+            if (message.getElapsedTimeSinceLastDelivery().toMillis() < options.getClaimIdleMillis()) {
+                continue;
+            }
+            (message.getTotalDeliveryCount() >= options.getMaxDeliveries() ? exhausted : retry).add(message.getId());
+        }
+        if (!exhausted.isEmpty()) {
+            deadLetter(template, exhausted);
+        }
+        int count = 0;
+        // 只认领能处理的数量, 其余留给下一轮或其他消费者; 最多等待一次阻塞读取的时间
+        int permits = 0;
+        try {
+            if (!retry.isEmpty() && inFlight.tryAcquire(options.getBlockMillis() * 2, TimeUnit.MILLISECONDS)) {
+                permits = 1;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        while (permits > 0 && permits < retry.size() && inFlight.tryAcquire()) {
+            permits++;
+        }
+        if (permits > 0) {
+            List<ByteRecord> records = claim(template, retry.subList(0, permits));
+            inFlight.release(permits - records.size());
+            for (ByteRecord record : records) {
+                dispatch(template, record);
+            }
+            count = records.size();
+            claimed.add(count);
+        }
+        return count;
+    }
+
+    /**
+     * 停止读取, 等待已读取的消息处理完; 未处理的消息留在待确认列表中, 由其他消费者认领
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        reclaimer.shutdownNow();
+        try {
+            poller.join(options.getBlockMillis() + 1000);
+            workers.shutdown();
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * 注册发布/处理/失败/认领/死信次数, 处理中和待确认的消息数, 处理耗时和发布到处理完成的延迟
+     *
+     * @param registry 指标注册表
+     */
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("queue", name);
+        FunctionCounter.builder("redis.queue.published", published, LongAdder::sum).tags(tags).register(registry);
+        FunctionCounter.builder("redis.queue.processed", processed, LongAdder::sum).tags(tags).register(registry);
+        FunctionCounter.builder("redis.queue.failed", failed, LongAdder::sum).tags(tags).register(registry);
+        FunctionCounter.builder("redis.queue.claimed", claimed, LongAdder::sum).tags(tags).register(registry);
+        FunctionCounter.builder("redis.queue.dead", dead, LongAdder::sum).tags(tags).register(registry);
+        Gauge.builder("redis.queue.in-flight", this, q -> q.options.getMaxInFlight() - q.inFlight.availablePermits()).tags(tags).register(registry);
+        Gauge.builder("redis.queue.pending", this, q -> q.pending).tags(tags).register(registry);
+        Gauge.builder("redis.queue.length", this, q -> q.length).tags(tags).register(registry);
+        processTimer = Timer.builder("redis.queue.process").tags(tags).publishPercentiles(0.5, 0.99).register(registry);
+        latencyTimer = Timer.builder("redis.queue.latency").tags(tags).publishPercentiles(0.5, 0.99).register(registry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    private void poll() {
+        boolean groupReady = false;
+        while (running) {
+            int permits = 0;
+            try {
+                if (!groupReady) {
+                    createGroup();
+                    groupReady = true;
+                }
+                if (!inFlight.tryAcquire(options.getBlockMillis(), TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+                permits = 1;
+                while (permits < options.getBatchSize() && inFlight.tryAcquire()) {
+                    permits++;
+                }
+                RedisTemplate<String, Object> template = template();
+                StreamReadOptions readOptions = StreamReadOptions.empty().count(permits).block(Duration.ofMillis(options.getBlockMillis()));
+                List<ByteRecord> records = template.execute((RedisCallback<List<ByteRecord>>) connection -> connection.streamCommands()
+                        .xReadGroup(Consumer.from(group, consumer), readOptions, lastConsumed(rawKey)));
+                int read = records == null ? 0 : records.size();
+                inFlight.release(permits - read);
+                permits = 0;
+                for (int i = 0; i < read; i++) {
+                    dispatch(template, records.get(i));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                inFlight.release(permits);
+                if (!running) {
+                    return;
+                }
+                if (isNoGroup(e)) {
+                    groupReady = false;
+                }
+                log.warn("queue {} read failed, retrying", name, e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(options.getBlockMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 交给工作线程处理, 调用前已占用一个 inFlight 许可
+     */
+    private void dispatch(RedisTemplate<String, Object> template, ByteRecord record) {
+        workers.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                QueueMessage message = new QueueMessage(record.getId().getValue(), payload(template, record.getValue()));
+                handler.accept(message);
+                template.execute((RedisCallback<Long>) connection -> connection.streamCommands().xAck(rawKey, group, record.getId()));
+                processed.increment();
+                Timer latency = latencyTimer;
+                if (latency != null) {
+                    latency.record(Math.max(0, System.currentTimeMillis() - message.getTimestamp()), TimeUnit.MILLISECONDS);
+                }
+            } catch (Exception e) {
+                failed.increment();
+                log.warn("queue {} message {} failed, it will be redelivered after {}ms", name, record.getId(), options.getClaimIdleMillis(), e);
+            } finally {
+                Timer timer = processTimer;
+                if (timer != null) {
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                inFlight.release();
+            }
+        });
+    }
+
+    private List<ByteRecord> claim(RedisTemplate<String, Object> template, List<RecordId> ids) {
+        RedisStreamCommands.XClaimOptions claimOptions = RedisStreamCommands.XClaimOptions
+                .minIdleMs(options.getClaimIdleMillis()).ids(ids.toArray(new RecordId[0]));
+        List<ByteRecord> records = template.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xClaim(rawKey, group, consumer, claimOptions));
+        return records == null ? Collections.emptyList() : records;
+    }
+
+    /**
+     * 认领后写入死信 stream 并确认; 已被删除或裁剪的消息只确认
+     */
+    private void deadLetter(RedisTemplate<String, Object> template, List<RecordId> ids) {
+        List<ByteRecord> records = claim(template, ids);
+        template.execute((RedisCallback<Object>) connection -> {
+            for (ByteRecord record : records) {
+                connection.streamCommands().xAdd(StreamRecords.newRecord().in(deadKey).ofMap(record.getValue()),
+                        RedisStreamCommands.XAddOptions.none());
+            }
+            connection.streamCommands().xAck(rawKey, group, ids.toArray(new RecordId[0]));
+            return null;
+        });
+        dead.add(records.size());
+        log.warn("queue {} moved {} messages to {} after {} deliveries", name, records.size(),
+                new String(deadKey, StandardCharsets.UTF_8), options.getMaxDeliveries());
+    }
+
+    private void createGroup() {
+        try {
+            template().execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(rawKey, group, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            if (!hasMessage(e, "BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    private RedisTemplate<String, Object> template() {
+        return router.forKey(key);
+    }
+
+    private static Object payload(RedisTemplate<String, Object> template, Map<byte[], byte[]> fields) {
+        for (Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+            if (Arrays.equals(FIELD, field.getKey())) {
+                return template.getValueSerializer().deserialize(field.getValue());
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] rawValue(RedisTemplate<String, Object> template, Object value) {
+        return ((RedisSerializer<Object>) template.getValueSerializer()).serialize(value);
+    }
+
+    /**
+     * xReadGroup 的可变参数是泛型数组, 在这里一次性创建
+     */
+    @SuppressWarnings("unchecked")
+    private static StreamOffset<byte[]>[] lastConsumed(byte[] rawKey) {
+        return (StreamOffset<byte[]>[]) new StreamOffset<?>[]{StreamOffset.create(rawKey, ReadOffset.lastConsumed())};
+    }
+
+    private static boolean isNoGroup(Throwable e) {
+        return hasMessage(e, "NOGROUP");
+    }
+
+    private static boolean hasMessage(Throwable e, String text) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && message.contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.redis_demo.queue;
+
+import com.example.redis_demo.routing.RedisRouter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 按名称和消费者组获取 {@link StreamQueue}, 同名同组返回同一对象; 容器关闭时停止所有队列的消费
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class StreamQueues implements AutoCloseable {
+
+    private final RedisRouter router;
+
+    private final Supplier<QueueOptions> defaults;
+
+    private final ConcurrentHashMap<String, StreamQueue> queues = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry registry;
+
+    /**
+     * @param router   路由
+     * @param defaults 默认参数, 每个队列取一份新的
+     */
+    public StreamQueues(RedisRouter router, Supplier<QueueOptions> defaults) {
+        this.router = router;
+        this.defaults = defaults;
+    }
+
+    /**
+     * @param name  队列名称
+     * @param group 消费者组, 只发布不消费时可任意指定
+     * @return 使用默认参数的队列
+     */
+    public StreamQueue queue(String name, String group) {
+        return queue(name, group, defaults.get());
+    }
+
+    /**
+     * @param options 参数, 只在首次获取时生效
+     */
+    public StreamQueue queue(String name, String group, QueueOptions options) {
+        return queues.computeIfAbsent(name + "|" + group, k -> {
+            StreamQueue queue = new StreamQueue(router, name, group, options);
+            MeterRegistry meters = registry;
+            if (meters != null) {
+                queue.bindTo(meters);
+            }
+            return queue;
+        });
+    }
+
+    /**
+     * 注册已有和之后创建的队列的指标
+     *
+     * @param registry 指标注册表
+     */
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        queues.values().forEach(queue -> queue.bindTo(registry));
+    }
+
+    @Override
+    public void close() {
+        queues.values().forEach(StreamQueue::close);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.redis_demo.ratelimit;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流规则: 每 period 放行 permits 个许可, 最多允许 burst 个许可的突发
+ * <p>
+ * 滑动日志的 burst 即窗口内的许可数
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class RateLimit {
+
+    private final RateLimitAlgorithm algorithm;
+
+    private final long permits;
+
+    private final long periodMillis;
+
+    private final long burst;
+
+    private RateLimit(RateLimitAlgorithm algorithm, long permits, long period, TimeUnit unit, long burst) {
+        if (permits <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permits and burst must be positive");
+        }
+        this.periodMillis = unit.toMillis(period);
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("period must be at least 1 millisecond");
+        }
+        this.algorithm = algorithm;
+        this.permits = permits;
+        this.burst = burst;
+    }
+
+    /**
+     * @param permits 每个周期补充的令牌数
+     * @param period  周期
+     * @param unit    周期单位
+     * @param burst   桶容量
+     * @return 令牌桶规则
+     */
+    public static RateLimit tokenBucket(long permits, long period, TimeUnit unit, long burst) {
+        return new RateLimit(RateLimitAlgorithm.TOKEN_BUCKET, permits, period, unit, burst);
+    }
+
+    /**
+     * @param permits 窗口内最多放行的许可数
+     * @param window  窗口长度
+     * @param unit    窗口单位
+     * @return 滑动日志规则
+     */
+    public static RateLimit slidingLog(long permits, long window, TimeUnit unit) {
+        return new RateLimit(RateLimitAlgorithm.SLIDING_LOG, permits, window, unit, permits);
+    }
+
+    /**
+     * @param permits 每个周期放行的许可数
+     * @param period  周期
+     * @param unit    周期单位
+     * @param burst   空闲后最多连续放行的许可数
+     * @return GCRA 规则
+     */
+    public static RateLimit gcra(long permits, long period, TimeUnit unit, long burst) {
+        return new RateLimit(RateLimitAlgorithm.GCRA, permits, period, unit, burst);
+    }
+
+    public RateLimitAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public long getPermits() {
+        return permits;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    public long getBurst() {
+        return burst;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RateLimit)) {
+            return false;
+        }
+        RateLimit that = (RateLimit) o;
+        return algorithm == that.algorithm && permits == that.permits && periodMillis == that.periodMillis && burst == that.burst;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(algorithm, permits, periodMillis, burst);
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + "(" + permits + "/" + periodMillis + "ms, burst " + burst + ")";
+    }
+}
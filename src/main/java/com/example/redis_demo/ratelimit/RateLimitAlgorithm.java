@@ -0,0 +1,39 @@
+package com.example.redis_demo.ratelimit;
+
+/**
+ * 限流算法
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public enum RateLimitAlgorithm {
+
+    /**
+     * 令牌桶: 按速率匀速补充令牌, 桶容量即允许的突发量; 状态为一个 hash(剩余令牌, 上次补充时间)
+     */
+    TOKEN_BUCKET("tb"),
+
+    /**
+     * 滑动日志: 有序集合按时间记录窗口内的每次放行, 精确但每个许可占一个成员, 适合窗口内许可数不大的场景
+     */
+    SLIDING_LOG("sl"),
+
+    /**
+     * GCRA(通用信元速率算法): 效果与令牌桶相同, 状态只有一个"理论到达时间", 存储最小
+     */
+    GCRA("gcra");
+
+    private final String prefix;
+
+    RateLimitAlgorithm(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @param key 业务键
+     * @return redis 中保存限流状态的键
+     */
+    String redisKey(String key) {
+        return "rate:" + prefix + ":" + key;
+    }
+}
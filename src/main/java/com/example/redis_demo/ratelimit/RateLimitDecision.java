@@ -0,0 +1,59 @@
+package com.example.redis_demo.ratelimit;
+
+/**
+ * 限流结果
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class RateLimitDecision {
+
+    private final boolean allowed;
+
+    private final long remaining;
+
+    private final long retryAfterMillis;
+
+    private final boolean local;
+
+    RateLimitDecision(boolean allowed, long remaining, long retryAfterMillis, boolean local) {
+        this.allowed = allowed;
+        this.remaining = remaining;
+        this.retryAfterMillis = retryAfterMillis;
+        this.local = local;
+    }
+
+    /**
+     * @return 是否放行
+     */
+    public boolean isAllowed() {
+        return allowed;
+    }
+
+    /**
+     * @return 本次之后立即可用的许可数, 本地拒绝时为 0
+     */
+    public long getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * @return 拒绝时, 同样数量的许可最早可用的等待时间(毫秒); 放行时为 0
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * @return 是否由本地拒绝缓存直接拒绝, 没有访问 redis
+     */
+    public boolean isLocal() {
+        return local;
+    }
+
+    @Override
+    public String toString() {
+        return allowed ? "allowed(remaining " + remaining + ")"
+                : "denied(retry after " + retryAfterMillis + "ms" + (local ? ", local" : "") + ")";
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.redis_demo.ratelimit;
+
+import com.example.redis_demo.script.LuaScript;
+import com.example.redis_demo.script.ScriptRegistry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 redis 的限流器
+ * <p>
+ * 每次判断是一次 EVALSHA, 读取状态、计算和写回在脚本内原子完成, 时间取 redis 服务端时间, 各客户端的时钟偏差不影响结果。
+ * <p>
+ * 本地拒绝缓存: redis 拒绝时返回最早可重试的时间, 在此之前同一规则下申请不少于该数量的许可必然也被拒绝
+ * (许可只会随时间补充, 其他客户端只会消耗), 这些请求直接在本地拒绝, 不访问 redis。
+ * 被限流的调用方持续重试时, 拒绝路径上的 redis 压力因此降为每个重试周期一次。
+ * <p>
+ * redis 不可用时抛出异常, 由调用方决定放行还是拒绝
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class RedisRateLimiter {
+
+    /**
+     * 令牌桶
+     * <p>
+     * KEYS[1] 状态 hash; ARGV[1] 容量, ARGV[2] 周期(毫秒), ARGV[3] 每周期补充数, ARGV[4] 申请数
+     * <p>
+     * 返回 {是否放行, 剩余令牌, 重试等待毫秒}
+     */
+    static final LuaScript<List<Object>> TOKEN_BUCKET = LuaScript.multi("rateLimitTokenBucket",
+            "redis.replicate_commands() "
+                    + "local t = redis.call('time') "
+                    + "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) "
+                    + "local capacity = tonumber(ARGV[1]) "
+                    + "local period = tonumber(ARGV[2]) "
+                    + "local rate = tonumber(ARGV[3]) "
+                    + "local requested = tonumber(ARGV[4]) "
+                    + "local state = redis.call('hmget', KEYS[1], 'tokens', 'ts') "
+                    + "local tokens = tonumber(state[1]) "
+                    + "local ts = tonumber(state[2]) "
+                    + "if tokens == nil or ts == nil then tokens = capacity ts = now end "
+                    + "if now > ts then "
+                    + "tokens = math.min(capacity, tokens + (now - ts) * rate / period) "
+                    + "ts = now "
+                    + "end "
+                    + "local allowed = 0 "
+                    + "local retry = 0 "
+                    + "if tokens >= requested then "
+                    + "tokens = tokens - requested "
+                    + "allowed = 1 "
+                    + "else "
+                    + "retry = math.ceil((requested - tokens) * period / rate) "
+                    + "end "
+                    + "redis.call('hmset', KEYS[1], 'tokens', tokens, 'ts', ts) "
+                    + "redis.call('pexpire', KEYS[1], math.ceil(capacity * period / rate) + 1) "
+                    + "return {allowed, math.floor(tokens), retry}").skipNearCache();
+
+    /**
+     * 滑动日志
+     * <p>
+     * KEYS[1] 有序集合(成员为每个许可, 分值为放行时间); ARGV[1] 窗口内许可数, ARGV[2] 窗口(毫秒), ARGV[4] 申请数, ARGV[5] 成员前缀(每次调用唯一)
+     * <p>
+     * 返回 {是否放行, 剩余许可, 重试等待毫秒}
+     */
+    static final LuaScript<List<Object>> SLIDING_LOG = LuaScript.multi("rateLimitSlidingLog",
+            "redis.replicate_commands() "
+                    + "local t = redis.call('time') "
+                    + "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) "
+                    + "local limit = tonumber(ARGV[1]) "
+                    + "local window = tonumber(ARGV[2]) "
+                    + "local requested = tonumber(ARGV[4]) "
+                    + "redis.call('zremrangebyscore', KEYS[1], '-inf', now - window) "
+                    + "local count = redis.call('zcard', KEYS[1]) "
+                    + "if count + requested <= limit then "
+                    + "for i = 1, requested do "
+                    + "redis.call('zadd', KEYS[1], now, ARGV[5] .. ':' .. i) "
+                    + "end "
+                    + "redis.call('pexpire', KEYS[1], window) "
+                    + "return {1, limit - count - requested, 0} "
+                    + "end "
+                    // 至少要等最早的 need 个许可移出窗口
+                    + "local need = count + requested - limit "
+                    + "local retry = window "
+                    + "local entry = redis.call('zrange', KEYS[1], need - 1, need - 1, 'withscores') "
+                    + "if entry[2] then retry = math.max(1, tonumber(entry[2]) + window - now) end "
+                    + "return {0, math.max(0, limit - count), retry}").skipNearCache();
+
+    /**
+     * GCRA
+     * <p>
+     * KEYS[1] 理论到达时间(毫秒); ARGV[1] 突发量, ARGV[2] 周期(毫秒), ARGV[3] 每周期许可数, ARGV[4] 申请数
+     * <p>
+     * 返回 {是否放行, 剩余许可, 重试等待毫秒}
+     */
+    static final LuaScript<List<Object>> GCRA = LuaScript.multi("rateLimitGcra",
+            "redis.replicate_commands() "
+                    + "local t = redis.call('time') "
+                    + "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) "
+                    + "local interval = tonumber(ARGV[2]) / tonumber(ARGV[3]) "
+                    + "local tolerance = tonumber(ARGV[1]) * interval "
+                    + "local requested = tonumber(ARGV[4]) "
+                    + "local tat = tonumber(redis.call('get', KEYS[1])) "
+                    + "if tat == nil or tat < now then tat = now end "
+                    + "local newTat = tat + interval * requested "
+                    + "local allowAt = newTat - tolerance "
+                    + "if allowAt > now then "
+                    + "return {0, math.max(0, math.floor((now - tat + tolerance) / interval)), math.ceil(allowAt - now)} "
+                    + "end "
+                    + "redis.call('set', KEYS[1], newTat, 'px', math.ceil(newTat - now)) "
+                    + "return {1, math.floor((now - allowAt) / interval), 0}").skipNearCache();
+
+    private final ScriptRegistry scripts;
+
+    /**
+     * 本地拒绝缓存的最大条目数, 0 关闭
+     */
+    private final int maxLocalDenials;
+
+    private final ConcurrentHashMap<String, Denial> denials = new ConcurrentHashMap<>();
+
+    /**
+     * 滑动日志成员前缀, 保证不同实例、不同调用写入的成员不重复
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder allowed = new LongAdder();
+
+    private final LongAdder denied = new LongAdder();
+
+    private final LongAdder localDenied = new LongAdder();
+
+    private volatile Timer latency;
+
+    public RedisRateLimiter(ScriptRegistry scripts, int maxLocalDenials) {
+        this.scripts = scripts;
+        this.maxLocalDenials = maxLocalDenials;
+        scripts.register(TOKEN_BUCKET);
+        scripts.register(SLIDING_LOG);
+        scripts.register(GCRA);
+    }
+
+    /**
+     * 申请一个许可
+     *
+     * @param key   限流对象, 如用户 id、接口名
+     * @param limit 规则
+     * @return 结果
+     */
+    public RateLimitDecision tryAcquire(String key, RateLimit limit) {
+        return tryAcquire(key, limit, 1);
+    }
+
+    /**
+     * 一次申请多个许可, 要么全部放行要么全部拒绝
+     *
+     * @param key     限流对象
+     * @param limit   规则
+     * @param permits 许可数
+     * @return 结果
+     * @throws IllegalArgumentException 许可数不是正数或超过规则的突发量(永远不会放行)
+     */
+    public RateLimitDecision tryAcquire(String key, RateLimit limit, long permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        if (permits > limit.getBurst()) {
+            throw new IllegalArgumentException("requested " + permits + " permits exceeds the burst of " + limit);
+        }
+        String redisKey = limit.getAlgorithm().redisKey(key);
+        long start = System.nanoTime();
+        Denial denial = denials.get(redisKey);
+        if (denial != null) {
+            long wait = denial.until - start;
+            if (wait <= 0) {
+                denials.remove(redisKey, denial);
+            } else if (permits >= denial.permits && limit.equals(denial.limit)) {
+                localDenied.increment();
+                return new RateLimitDecision(false, 0, toMillis(wait), true);
+            }
+        }
+        List<Object> result = limit.getAlgorithm() == RateLimitAlgorithm.SLIDING_LOG
+                ? scripts.execute(SLIDING_LOG, Collections.singletonList(redisKey), limit.getBurst(), limit.getPeriodMillis(),
+                limit.getPermits(), permits, instanceId + ":" + sequence.incrementAndGet())
+                : scripts.execute(script(limit.getAlgorithm()), Collections.singletonList(redisKey), limit.getBurst(),
+                limit.getPeriodMillis(), limit.getPermits(), permits);
+        Timer timer = latency;
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        long remaining = (Long) result.get(1);
+        long retryAfter = (Long) result.get(2);
+        if ((Long) result.get(0) == 1L) {
+            allowed.increment();
+            return new RateLimitDecision(true, remaining, 0, false);
+        }
+        denied.increment();
+        remember(redisKey, new Denial(limit, permits, start + TimeUnit.MILLISECONDS.toNanos(retryAfter)));
+        return new RateLimitDecision(false, remaining, retryAfter, false);
+    }
+
+    /**
+     * 注册放行/拒绝次数、本地拒绝缓存大小和判断耗时
+     *
+     * @param registry 指标注册表
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("redis.ratelimit.decisions", allowed, LongAdder::sum).tag("result", "allowed").register(registry);
+        FunctionCounter.builder("redis.ratelimit.decisions", denied, LongAdder::sum).tag("result", "denied").register(registry);
+        FunctionCounter.builder("redis.ratelimit.decisions", localDenied, LongAdder::sum).tag("result", "local-denied").register(registry);
+        Gauge.builder("redis.ratelimit.local-denials", denials, Map::size).register(registry);
+        latency = Timer.builder("redis.ratelimit.latency").publishPercentiles(0.5, 0.99).register(registry);
+    }
+
+    /**
+     * @return 本地拒绝缓存的条目数
+     */
+    int localDenials() {
+        return denials.size();
+    }
+
+    /**
+     * 记录拒绝; 已有更小许可数的有效记录时保留原记录, 它能拦截的请求更多
+     */
+    private void remember(String redisKey, Denial denial) {
+        if (maxLocalDenials <= 0 || denial.until - System.nanoTime() <= 0) {
+            return;
+        }
+        if (denials.size() >= maxLocalDenials) {
+            long now = System.nanoTime();
+            denials.values().removeIf(d -> d.until - now <= 0);
+            if (denials.size() >= maxLocalDenials) {
+                return;
+            }
+        }
+        denials.merge(redisKey, denial, (old, update) -> old.limit.equals(update.limit) && old.permits < update.permits
+                && old.until - System.nanoTime() > 0 ? old : update);
+    }
+
+    private static LuaScript<List<Object>> script(RateLimitAlgorithm algorithm) {
+        return algorithm == RateLimitAlgorithm.TOKEN_BUCKET ? TOKEN_BUCKET : GCRA;
+    }
+
+    private static long toMillis(long nanos) {
+        return (nanos + 999_999) / 1_000_000;
+    }
+
+    private static final class Denial {
+
+        private final RateLimit limit;
+
+        private final long permits;
+
+        /**
+         * System.nanoTime 时间点, 之前申请不少于 permits 个许可都会被拒绝
+         */
+        private final long until;
+
+        private Denial(RateLimit limit, long permits, long until) {
+            this.limit = limit;
+            this.permits = permits;
+            this.until = until;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.redis_demo.repository;
+
+/**
+ * 哈希字段值的编码, 每个字段单独编码, 不经过值序列化器
+ *
+ * @param <V> 字段类型
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public interface FieldCodec<V> {
+
+        /**
+         * @param value 字段值, 不为 null
+         * @return 写入 redis 的字节
+         */
+        byte[] encode(V value);
+
+        /**
+         * @param bytes redis 中的字节, 不为 null
+         * @return 字段值
+         */
+        V decode(byte[] bytes);
+
+        /**
+         * @return 是否为十进制 ASCII 整数格式, 是则可以直接 HINCRBY
+         */
+        default boolean isInteger() {
+                return false;
+        }
+}
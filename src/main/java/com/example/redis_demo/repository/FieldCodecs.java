@@ -0,0 +1,108 @@
+package com.example.redis_demo.repository;
+
+import com.example.redis_demo.codec.AsciiNumbers;
+import com.example.redis_demo.codec.BinaryReader;
+import com.example.redis_demo.codec.BinaryWriter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 常用字段编码
+ * <p>
+ * 数字按 redis 计数器的十进制 ASCII 格式保存, 可以用 HINCRBY 原子修改, redis-cli 中也可读;
+ * 集合按 varint 紧凑编码, 整个集合作为一个字段
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class FieldCodecs {
+
+    public static final FieldCodec<String> STRING = new FieldCodec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    public static final FieldCodec<Long> LONG = new FieldCodec<Long>() {
+        @Override
+        public byte[] encode(Long value) {
+            return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public Long decode(byte[] bytes) {
+            return AsciiNumbers.parseLong(bytes);
+        }
+
+        @Override
+        public boolean isInteger() {
+            return true;
+        }
+    };
+
+    public static final FieldCodec<Integer> INT = new FieldCodec<Integer>() {
+        @Override
+        public byte[] encode(Integer value) {
+            return Integer.toString(value).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public Integer decode(byte[] bytes) {
+            return Math.toIntExact(AsciiNumbers.parseLong(bytes));
+        }
+
+        @Override
+        public boolean isInteger() {
+            return true;
+        }
+    };
+
+    public static final FieldCodec<Double> DOUBLE = new FieldCodec<Double>() {
+        @Override
+        public byte[] encode(Double value) {
+            return Double.toString(value).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public Double decode(byte[] bytes) {
+            return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+        }
+    };
+
+    public static final FieldCodec<Boolean> BOOLEAN = new FieldCodec<Boolean>() {
+        @Override
+        public byte[] encode(Boolean value) {
+            return new byte[]{(byte) (value ? '1' : '0')};
+        }
+
+        @Override
+        public Boolean decode(byte[] bytes) {
+            return bytes.length == 1 && bytes[0] == '1';
+        }
+    };
+
+    /**
+     * 整数列表: 元素个数加 zigzag varint 元素, 小整数每个 1 字节
+     */
+    public static final FieldCodec<List<Integer>> INT_LIST = new FieldCodec<List<Integer>>() {
+        @Override
+        public byte[] encode(List<Integer> value) {
+            return new BinaryWriter(value.size() + 2).writeIntList(value).toByteArray();
+        }
+
+        @Override
+        public List<Integer> decode(byte[] bytes) {
+            return new BinaryReader(bytes).readIntList();
+        }
+    };
+
+    private FieldCodecs() {
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.redis_demo.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 实体属性与哈希字段的映射
+ * <p>
+ * 读写通过构建时传入的 getter / setter(通常是方法引用), 不使用反射; 字段名的字节预先编码
+ *
+ * @param <T> 实体类型
+ * @param <V> 字段类型
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class HashField<T, V> {
+
+    private final String name;
+
+    private final byte[] rawName;
+
+    private final Function<T, V> getter;
+
+    private final BiConsumer<T, V> setter;
+
+    private final FieldCodec<V> codec;
+
+    HashField(String name, Function<T, V> getter, BiConsumer<T, V> setter, FieldCodec<V> codec) {
+        this.name = name;
+        this.rawName = name.getBytes(StandardCharsets.UTF_8);
+        this.getter = getter;
+        this.setter = setter;
+        this.codec = codec;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FieldCodec<V> getCodec() {
+        return codec;
+    }
+
+    byte[] rawName() {
+        return rawName;
+    }
+
+    /**
+     * @param value 字段值
+     * @return 编码后的字节, 值为 null 时返回 null
+     */
+    public byte[] encode(V value) {
+        return value == null ? null : codec.encode(value);
+    }
+
+    /**
+     * @param bytes redis 中的字节
+     * @return 字段值, 字段不存在时返回 null
+     */
+    public V decode(byte[] bytes) {
+        return bytes == null ? null : codec.decode(bytes);
+    }
+
+    /**
+     * @param entity 实体
+     * @return 实体中该属性编码后的字节, 属性为 null 时返回 null
+     */
+    byte[] read(T entity) {
+        return encode(getter.apply(entity));
+    }
+
+    /**
+     * 解码后写入实体
+     *
+     * @param entity 实体
+     * @param bytes  redis 中的字节
+     */
+    void write(T entity, byte[] bytes) {
+        setter.accept(entity, decode(bytes));
+    }
+}
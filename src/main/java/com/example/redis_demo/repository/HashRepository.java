@@ -0,0 +1,275 @@
+package com.example.redis_demo.repository;
+
+import com.example.redis_demo.routing.Pipelines;
+import com.example.redis_demo.routing.RedisRouter;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 按 {@link HashSchema} 把实体保存为 redis 哈希
+ * <p>
+ * 与整体序列化后 SET 相比, 修改单个属性只需 HSET 一个字段, 不需要先读出整个对象,
+ * 也不会覆盖其他实例同时修改的其他属性; 只读部分属性时用 HMGET, 只解码取回的字段。
+ * 字段值按各自的 {@link FieldCodec} 编码, 不经过模板的值序列化器
+ *
+ * @param <T> 实体类型
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class HashRepository<T> {
+
+    private final RedisRouter router;
+
+    private final HashSchema<T> schema;
+
+    private final String keyPrefix;
+
+    private volatile Consumer<String> guard = key -> {
+    };
+
+    private volatile Consumer<String> invalidator = key -> {
+    };
+
+    /**
+     * @param router    路由
+     * @param schema    映射
+     * @param keyPrefix 键前缀, 键为 keyPrefix + id
+     */
+    public HashRepository(RedisRouter router, HashSchema<T> schema, String keyPrefix) {
+        this.router = router;
+        this.schema = schema;
+        this.keyPrefix = keyPrefix;
+    }
+
+    /**
+     * @param guard 写入前调用, 用于把键加入布隆过滤器
+     */
+    public void setGuard(Consumer<String> guard) {
+        this.guard = guard;
+    }
+
+    /**
+     * @param invalidator 写入后调用, 用于失效键的一级缓存
+     */
+    public void setInvalidator(Consumer<String> invalidator) {
+        this.invalidator = invalidator;
+    }
+
+    public HashSchema<T> getSchema() {
+        return schema;
+    }
+
+    public String key(String id) {
+        return keyPrefix + id;
+    }
+
+    /**
+     * 保存整个实体: 非 null 属性一条 HSET, null 属性 HDEL, 有 null 属性时两条命令在同一个 pipeline 中(集群连接逐条发送)
+     *
+     * @param id     实体 ID
+     * @param entity 实体
+     */
+    public void save(String id, T entity) {
+        Map<byte[], byte[]> values = new LinkedHashMap<>();
+        List<byte[]> nulls = new ArrayList<>();
+        for (HashField<T, ?> field : schema.getFields()) {
+            byte[] value = field.read(entity);
+            if (value == null) {
+                nulls.add(field.rawName());
+            } else {
+                values.put(field.rawName(), value);
+            }
+        }
+        write(id, values, nulls);
+    }
+
+    /**
+     * 只保存实体的部分属性
+     *
+     * @param id     实体 ID
+     * @param entity 实体
+     * @param fields 要保存的字段名
+     * @throws IllegalArgumentException 字段不存在
+     */
+    public void update(String id, T entity, String... fields) {
+        Map<byte[], byte[]> values = new LinkedHashMap<>();
+        List<byte[]> nulls = new ArrayList<>();
+        for (String name : fields) {
+            HashField<T, ?> field = schema.field(name);
+            byte[] value = field.read(entity);
+            if (value == null) {
+                nulls.add(field.rawName());
+            } else {
+                values.put(field.rawName(), value);
+            }
+        }
+        write(id, values, nulls);
+    }
+
+    /**
+     * 修改单个字段, 值为 null 时删除字段
+     *
+     * @param id    实体 ID
+     * @param field 字段
+     * @param value 值
+     */
+    public <V> void set(String id, HashField<T, V> field, V value) {
+        String key = key(id);
+        byte[] rawKey = rawKey(key);
+        byte[] bytes = field.encode(value);
+        if (bytes != null) {
+            guard.accept(key);
+        }
+        router.forKey(key).execute((RedisCallback<Object>) connection -> bytes == null
+                ? connection.hashCommands().hDel(rawKey, field.rawName())
+                : connection.hashCommands().hSet(rawKey, field.rawName(), bytes));
+        invalidator.accept(key);
+    }
+
+    /**
+     * 整数字段原子增加, 字段不存在时从 0 开始
+     *
+     * @param id    实体 ID
+     * @param field 字段, 编码必须为 ASCII 整数
+     * @param delta 增量
+     * @return 增加后的值
+     * @throws IllegalArgumentException 字段不是整数编码
+     */
+    public long increment(String id, HashField<T, ? extends Number> field, long delta) {
+        if (!field.getCodec().isInteger()) {
+            throw new IllegalArgumentException("hash field " + field.getName() + " is not an integer field");
+        }
+        String key = key(id);
+        byte[] rawKey = rawKey(key);
+        guard.accept(key);
+        Long value = router.forKey(key).execute((RedisCallback<Long>) connection ->
+                connection.hashCommands().hIncrBy(rawKey, field.rawName(), delta));
+        invalidator.accept(key);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * 读取整个实体
+     *
+     * @param id 实体 ID
+     * @return 实体, 键不存在时返回 null; 结构中没有的字段被忽略
+     */
+    public T find(String id) {
+        String key = key(id);
+        byte[] rawKey = rawKey(key);
+        Map<byte[], byte[]> values = router.read(key, template -> template.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+                connection.hashCommands().hGetAll(rawKey)));
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        T entity = schema.newInstance();
+        for (Map.Entry<byte[], byte[]> entry : values.entrySet()) {
+            HashField<T, ?> field = schema.field(entry.getKey());
+            if (field != null) {
+                field.write(entity, entry.getValue());
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * 只读取部分属性, 一条 HMGET; 未读取的属性保持工厂创建时的默认值
+     *
+     * @param id     实体 ID
+     * @param fields 字段名
+     * @return 实体, 所有字段都不存在时返回 null
+     * @throws IllegalArgumentException 字段不存在
+     */
+    public T find(String id, String... fields) {
+        List<HashField<T, ?>> selected = new ArrayList<>(fields.length);
+        byte[][] rawNames = new byte[fields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            HashField<T, ?> field = schema.field(fields[i]);
+            selected.add(field);
+            rawNames[i] = field.rawName();
+        }
+        List<byte[]> values = hmget(id, rawNames);
+        if (values == null || values.stream().allMatch(value -> value == null)) {
+            return null;
+        }
+        T entity = schema.newInstance();
+        for (int i = 0; i < selected.size(); i++) {
+            selected.get(i).write(entity, values.get(i));
+        }
+        return entity;
+    }
+
+    /**
+     * 读取单个字段, 一条 HGET
+     *
+     * @param id    实体 ID
+     * @param field 字段
+     * @return 值, 字段不存在时返回 null
+     */
+    public <V> V get(String id, HashField<T, V> field) {
+        String key = key(id);
+        byte[] rawKey = rawKey(key);
+        byte[] bytes = router.read(key, template -> template.execute((RedisCallback<byte[]>) connection ->
+                connection.hashCommands().hGet(rawKey, field.rawName())));
+        return field.decode(bytes);
+    }
+
+    /**
+     * @param id 实体 ID
+     * @return 是否删除了实体
+     */
+    public boolean delete(String id) {
+        String key = key(id);
+        Boolean deleted = router.forKey(key).delete(key);
+        invalidator.accept(key);
+        return Boolean.TRUE.equals(deleted);
+    }
+
+    private List<byte[]> hmget(String id, byte[][] rawNames) {
+        String key = key(id);
+        byte[] rawKey = rawKey(key);
+        return router.read(key, template -> template.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.hashCommands().hMGet(rawKey, rawNames)));
+    }
+
+    private void write(String id, Map<byte[], byte[]> values, List<byte[]> nulls) {
+        if (values.isEmpty() && nulls.isEmpty()) {
+            return;
+        }
+        String key = key(id);
+        byte[] rawKey = rawKey(key);
+        if (!values.isEmpty()) {
+            guard.accept(key);
+        }
+        if (nulls.isEmpty()) {
+            router.forKey(key).execute((RedisCallback<Object>) connection -> {
+                connection.hashCommands().hMSet(rawKey, values);
+                return null;
+            });
+        } else {
+            List<Function<RedisConnection, Object>> commands = new ArrayList<>(2);
+            if (!values.isEmpty()) {
+                commands.add(connection -> {
+                    connection.hashCommands().hMSet(rawKey, values);
+                    return null;
+                });
+            }
+            byte[][] fields = nulls.toArray(new byte[0][]);
+            commands.add(connection -> connection.hashCommands().hDel(rawKey, fields));
+            Pipelines.execute(router.forKey(key), commands);
+        }
+        invalidator.accept(key);
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.redis_demo.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 实体到 redis 哈希的映射, 每个属性一个字段
+ * <p>
+ * 构建后不可修改, 可以在多个仓库间共享
+ *
+ * @param <T> 实体类型
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class HashSchema<T> {
+
+    private final Supplier<T> factory;
+
+    private final List<HashField<T, ?>> fields;
+
+    private final Map<String, HashField<T, ?>> byName;
+
+    /**
+     * 按字段名字节查找, HGETALL 的结果直接用原始字节匹配
+     */
+    private final Map<ByteBuffer, HashField<T, ?>> byRawName;
+
+    private HashSchema(Supplier<T> factory, List<HashField<T, ?>> fields) {
+        this.factory = factory;
+        this.fields = Collections.unmodifiableList(fields);
+        Map<String, HashField<T, ?>> names = new LinkedHashMap<>();
+        Map<ByteBuffer, HashField<T, ?>> rawNames = new HashMap<>();
+        for (HashField<T, ?> field : fields) {
+            names.put(field.getName(), field);
+            rawNames.put(ByteBuffer.wrap(field.rawName()), field);
+        }
+        this.byName = names;
+        this.byRawName = rawNames;
+    }
+
+    public static <T> Builder<T> builder(Supplier<T> factory) {
+        return new Builder<>(factory);
+    }
+
+    public List<HashField<T, ?>> getFields() {
+        return fields;
+    }
+
+    /**
+     * @param name 字段名
+     * @return 字段
+     * @throws IllegalArgumentException 字段不存在
+     */
+    public HashField<T, ?> field(String name) {
+        HashField<T, ?> field = byName.get(name);
+        if (field == null) {
+            throw new IllegalArgumentException("unknown hash field: " + name);
+        }
+        return field;
+    }
+
+    HashField<T, ?> field(byte[] rawName) {
+        return byRawName.get(ByteBuffer.wrap(rawName));
+    }
+
+    T newInstance() {
+        return factory.get();
+    }
+
+    public static final class Builder<T> {
+
+        private final Supplier<T> factory;
+
+        private final List<HashField<T, ?>> fields = new ArrayList<>();
+
+        private Builder(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        /**
+         * 添加字段, 返回的字段可以保存为常量, 用于类型安全的单字段读写
+         *
+         * @param name   字段名
+         * @param getter 读取属性
+         * @param setter 写入属性
+         * @param codec  字段编码
+         * @return 字段
+         */
+        public <V> HashField<T, V> field(String name, Function<T, V> getter, BiConsumer<T, V> setter, FieldCodec<V> codec) {
+            for (HashField<T, ?> field : fields) {
+                if (field.getName().equals(name)) {
+                    throw new IllegalArgumentException("duplicate hash field: " + name);
+                }
+            }
+            if (name.getBytes(StandardCharsets.UTF_8).length == 0) {
+                throw new IllegalArgumentException("hash field name must not be empty");
+            }
+            HashField<T, V> field = new HashField<>(name, getter, setter, codec);
+            fields.add(field);
+            return field;
+        }
+
+        public HashSchema<T> build() {
+            if (fields.isEmpty()) {
+                throw new IllegalArgumentException("hash schema has no fields");
+            }
+            return new HashSchema<>(factory, new ArrayList<>(fields));
+        }
+    }
+}
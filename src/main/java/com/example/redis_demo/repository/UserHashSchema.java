@@ -0,0 +1,27 @@
+package com.example.redis_demo.repository;
+
+import com.example.redis_demo.entity.User;
+
+import java.util.List;
+
+/**
+ * {@link User} 的哈希结构: name 为 UTF-8, age 为 ASCII 整数(可 HINCRBY), scores 为 varint 紧凑列表
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class UserHashSchema {
+
+    private static final HashSchema.Builder<User> BUILDER = HashSchema.builder(User::new);
+
+    public static final HashField<User, String> NAME = BUILDER.field("name", User::getName, User::setName, FieldCodecs.STRING);
+
+    public static final HashField<User, Integer> AGE = BUILDER.field("age", User::getAge, User::setAge, FieldCodecs.INT);
+
+    public static final HashField<User, List<Integer>> SCORES = BUILDER.field("scores", User::getScores, User::setScores, FieldCodecs.INT_LIST);
+
+    public static final HashSchema<User> SCHEMA = BUILDER.build();
+
+    private UserHashSchema() {
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.redis_demo.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * redis cluster 模式, 分片编号即 slot
+ * <p>
+ * 命令的路由、MOVED/ASK 重定向和拓扑刷新由集群连接完成, 这里只负责按 slot 分组,
+ * 使多键命令(DEL/MGET/MSET)在每个 slot 内一次发送, 不同 slot 之间并行。
+ * <p>
+ * 批量导入/导出按节点分组({@link #nodeOf}), 否则 16384 个 slot 各自攒批, 批次很难攒满。
+ * slot 到节点的对应关系按 topologyRefreshMillis 缓存, 过期的对应关系只影响分组, 每条命令仍由集群连接按 slot 路由
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class ClusterSlotRouter implements RedisRouter {
+
+    private static final int SLOTS = 16384;
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterSlotRouter.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final long topologyRefreshMillis;
+
+    /**
+     * slot -> 所在主节点的第一个 slot
+     */
+    private volatile int[] nodeSlots;
+
+    private volatile long nodeSlotsLoadedAt;
+
+    public ClusterSlotRouter(RedisTemplate<String, Object> redisTemplate) {
+        this(redisTemplate, 10000);
+    }
+
+    /**
+     * @param redisTemplate         集群连接的模板
+     * @param topologyRefreshMillis slot 到节点对应关系的缓存时间(毫秒)
+     */
+    public ClusterSlotRouter(RedisTemplate<String, Object> redisTemplate, long topologyRefreshMillis) {
+        this.redisTemplate = redisTemplate;
+        this.topologyRefreshMillis = topologyRefreshMillis;
+    }
+
+    @Override
+    public int size() {
+        return SLOTS;
+    }
+
+    @Override
+    public int indexOf(String key) {
+        return ClusterSlotHashUtil.calculateSlot(key);
+    }
+
+    @Override
+    public RedisTemplate<String, Object> template(int index) {
+        return redisTemplate;
+    }
+
+    /**
+     * @return 键所在主节点的第一个 slot; 获取拓扑失败时退回键自己的 slot
+     */
+    @Override
+    public int nodeOf(String key) {
+        int slot = indexOf(key);
+        int[] slots = nodeSlots;
+        if (slots == null || System.currentTimeMillis() - nodeSlotsLoadedAt > topologyRefreshMillis) {
+            slots = loadNodeSlots();
+        }
+        return slots[slot];
+    }
+
+    private synchronized int[] loadNodeSlots() {
+        if (nodeSlots != null && System.currentTimeMillis() - nodeSlotsLoadedAt <= topologyRefreshMillis) {
+            return nodeSlots;
+        }
+        int[] slots = new int[SLOTS];
+        for (int slot = 0; slot < SLOTS; slot++) {
+            slots[slot] = slot;
+        }
+        try (RedisClusterConnection connection = redisTemplate.getRequiredConnectionFactory().getClusterConnection()) {
+            for (RedisClusterNode node : connection.clusterGetNodes()) {
+                int[] owned = node.isMaster() ? node.getSlotRange().getSlotsArray() : new int[0];
+                if (owned.length > 0) {
+                    int first = Arrays.stream(owned).min().getAsInt();
+                    for (int slot : owned) {
+                        slots[slot] = first;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("load cluster slot owners failed, grouping by slot", e);
+        }
+        nodeSlots = slots;
+        nodeSlotsLoadedAt = System.currentTimeMillis();
+        return slots;
+    }
+
+    /**
+     * 集群连接不支持跨节点 SCAN, 依次遍历每个主节点
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Stream<String> scan(ScanOptions options) {
+        RedisConnectionFactory factory = redisTemplate.getRequiredConnectionFactory();
+        RedisClusterConnection connection = factory.getClusterConnection();
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        List<RedisClusterNode> masters = new ArrayList<>();
+        for (RedisClusterNode node : connection.clusterGetNodes()) {
+            if (node.isMaster()) {
+                masters.add(node);
+            }
+        }
+        return masters.stream()
+                .flatMap(node -> connection.scan(node, options).stream())
+                .map(keySerializer::deserialize)
+                .onClose(connection::close);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.redis_demo.routing;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import redis.clients.jedis.util.Hashing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * 客户端分片, 在多个独立的 redis 节点之间按一致性哈希分配键
+ * <p>
+ * 每个节点在哈希环上放 virtualNodes 个虚拟节点, 虚拟节点按节点名称(host:port)计算位置,
+ * 增删节点时只有约 1/N 的键换节点, 节点列表的顺序不影响分配结果。
+ * 跨节点的原子操作(SMOVE、Lua 多键脚本)只能作用于同一节点上的键, 需要时用 {tag} 把相关的键放到一起
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class ConsistentHashRouter implements RedisRouter, DisposableBean {
+
+    private final List<String> names;
+
+    private final List<RedisTemplate<String, Object>> templates;
+
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    /**
+     * @param shards       节点名称 -> 访问该节点的 RedisTemplate
+     * @param virtualNodes 每个节点的虚拟节点数, 越大分布越均匀
+     */
+    public ConsistentHashRouter(Map<String, RedisTemplate<String, Object>> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个分片节点");
+        }
+        this.names = new ArrayList<>(shards.keySet());
+        this.templates = new ArrayList<>(shards.values());
+        for (int i = 0; i < names.size(); i++) {
+            for (int n = 0; n < virtualNodes; n++) {
+                ring.put(Hashing.MURMUR_HASH.hash(names.get(i) + "#" + n), i);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return templates.size();
+    }
+
+    @Override
+    public int indexOf(String key) {
+        long hash = Hashing.MURMUR_HASH.hash(RedisRouter.hashTag(key));
+        SortedMap<Long, Integer> tail = ring.tailMap(hash);
+        return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+    }
+
+    @Override
+    public RedisTemplate<String, Object> template(int index) {
+        return templates.get(index);
+    }
+
+    /**
+     * 依次遍历每个节点
+     */
+    @Override
+    public Stream<String> scan(ScanOptions options) {
+        return templates.stream().flatMap(template -> template.scan(options).stream());
+    }
+
+    /**
+     * @return 节点名称 -> RedisTemplate, 用于按节点注册连接池指标
+     */
+    public Map<String, RedisTemplate<String, Object>> getShards() {
+        Map<String, RedisTemplate<String, Object>> shards = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            shards.put(names.get(i), templates.get(i));
+        }
+        return Collections.unmodifiableMap(shards);
+    }
+
+    /**
+     * 各节点的连接工厂由路由创建和持有, 随路由一起关闭
+     */
+    @Override
+    public void destroy() throws Exception {
+        for (RedisTemplate<String, Object> template : templates) {
+            RedisConnectionFactory factory = template.getConnectionFactory();
+            if (factory instanceof DisposableBean) {
+                ((DisposableBean) factory).destroy();
+            }
+        }
+    }
+}
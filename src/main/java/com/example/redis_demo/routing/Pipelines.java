@@ -0,0 +1,86 @@
+package com.example.redis_demo.routing;
+
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 在一个连接上批量执行命令
+ * <p>
+ * 单机/分片连接用 pipeline 一次往返; 集群连接不支持 pipeline(openPipeline 抛 UnsupportedOperationException),
+ * 逐条执行, 每条命令由集群连接按 slot 路由。两种方式的失败都以 {@link RedisPipelineException} 抛出,
+ * 异常按位置放在 {@link RedisPipelineException#getPipelineResult()} 中
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class Pipelines {
+
+    private Pipelines() {
+    }
+
+    /**
+     * @param connection 连接
+     * @return 是否支持 pipeline
+     */
+    public static boolean supported(RedisConnection connection) {
+        return !(connection instanceof RedisClusterConnection);
+    }
+
+    /**
+     * 执行命令, 结果保持原始形式(不经过值序列化器)
+     *
+     * @param template 模板, 所有命令使用它的同一个连接
+     * @param commands 命令
+     * @return 结果, 顺序与命令一致; 状态回复(如 HMSET)在 pipeline 中不占位置, 逐条执行时为 null,
+     * 需要按位置取结果时不要与状态命令混用
+     * @throws RedisPipelineException 有命令失败
+     */
+    public static List<Object> execute(RedisTemplate<String, ?> template, List<? extends Function<RedisConnection, Object>> commands) {
+        if (commands.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return template.execute((RedisCallback<List<Object>>) connection -> supported(connection)
+                ? pipelined(connection, commands)
+                : sequential(connection, commands));
+    }
+
+    private static List<Object> pipelined(RedisConnection connection, List<? extends Function<RedisConnection, Object>> commands) {
+        boolean closed = false;
+        connection.openPipeline();
+        try {
+            for (Function<RedisConnection, Object> command : commands) {
+                command.apply(connection);
+            }
+            closed = true;
+            return connection.closePipeline();
+        } finally {
+            if (!closed) {
+                connection.closePipeline();
+            }
+        }
+    }
+
+    private static List<Object> sequential(RedisConnection connection, List<? extends Function<RedisConnection, Object>> commands) {
+        List<Object> results = new ArrayList<>(commands.size());
+        Exception failure = null;
+        for (Function<RedisConnection, Object> command : commands) {
+            try {
+                results.add(command.apply(connection));
+            } catch (Exception e) {
+                results.add(e);
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw new RedisPipelineException(failure, results);
+        }
+        return results;
+    }
+}
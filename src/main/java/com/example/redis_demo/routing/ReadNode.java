@@ -0,0 +1,95 @@
+package com.example.redis_demo.routing;
+
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 可以处理读请求的节点(主节点或从节点), 记录读取耗时和故障状态, 供 {@link ReadPolicy} 选择
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class ReadNode {
+
+    /**
+     * 耗时的指数移动平均权重, 越大对最近的耗时越敏感
+     */
+    private static final double ALPHA = 0.2;
+
+    private final String name;
+
+    private final RedisTemplate<String, Object> template;
+
+    private final boolean master;
+
+    private volatile double latencyMicros;
+
+    private volatile long downUntil;
+
+    private final LongAdder reads = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    ReadNode(String name, RedisTemplate<String, Object> template, boolean master) {
+        this.name = name;
+        this.template = template;
+        this.master = master;
+    }
+
+    /**
+     * @return 节点名称 host:port
+     */
+    public String getName() {
+        return name;
+    }
+
+    public RedisTemplate<String, Object> getTemplate() {
+        return template;
+    }
+
+    public boolean isMaster() {
+        return master;
+    }
+
+    /**
+     * @return 读取耗时的移动平均(微秒), 还没有读取过时为 0
+     */
+    public double getLatencyMicros() {
+        return latencyMicros;
+    }
+
+    public long getReads() {
+        return reads.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return 节点当前是否可用, 读取失败后在一段时间内不再选择
+     */
+    public boolean isAvailable() {
+        return downUntil <= System.currentTimeMillis();
+    }
+
+    void recordRead(long nanos) {
+        reads.increment();
+        double micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        double current = latencyMicros;
+        // 并发更新时丢失个别样本不影响平均值
+        latencyMicros = current == 0 ? micros : current + ALPHA * (micros - current);
+    }
+
+    void markDown(long millis) {
+        failures.increment();
+        downUntil = System.currentTimeMillis() + millis;
+    }
+
+    @Override
+    public String toString() {
+        return (master ? "master " : "replica ") + name;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.redis_demo.routing;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 只读命令的节点选择策略, 可以实现该接口并声明为 bean 替换内置策略
+ * <p>
+ * 无论哪种策略, 从节点读取失败时都会暂时摘除该从节点并改读主节点
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public interface ReadPolicy {
+
+        /**
+         * 选择处理本次读取的节点
+         *
+         * @param master   主节点
+         * @param replicas 当前可用的从节点, 可能为空
+         * @return 节点
+         */
+        ReadNode select(ReadNode master, List<ReadNode> replicas);
+
+        /**
+         * 主从节点轮流读取, 读压力平均分到所有节点
+         */
+        static ReadPolicy roundRobin() {
+                AtomicInteger next = new AtomicInteger();
+                return (master, replicas) -> {
+                        int index = Math.floorMod(next.getAndIncrement(), replicas.size() + 1);
+                        return index == replicas.size() ? master : replicas.get(index);
+                };
+        }
+
+        /**
+         * 选择读取耗时移动平均最小的节点(含主节点); 约 1/32 的读取随机选择, 使变慢后恢复的节点有机会重新被测量
+         */
+        static ReadPolicy leastLatency() {
+                return (master, replicas) -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        if (!replicas.isEmpty() && random.nextInt(32) == 0) {
+                                int index = random.nextInt(replicas.size() + 1);
+                                return index == replicas.size() ? master : replicas.get(index);
+                        }
+                        ReadNode best = master;
+                        for (ReadNode replica : replicas) {
+                                if (replica.getLatencyMicros() < best.getLatencyMicros()) {
+                                        best = replica;
+                                }
+                        }
+                        return best;
+                };
+        }
+
+        /**
+         * 只在从节点之间轮流读取, 没有可用的从节点时读主节点
+         */
+        static ReadPolicy replicaPreferred() {
+                AtomicInteger next = new AtomicInteger();
+                return (master, replicas) -> replicas.isEmpty()
+                        ? master : replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+        }
+
+        /**
+         * @param name round-robin / least-latency / replica-preferred
+         * @return 策略
+         */
+        static ReadPolicy of(String name) {
+                switch (name.toLowerCase()) {
+                        case "round-robin":
+                                return roundRobin();
+                        case "least-latency":
+                                return leastLatency();
+                        case "replica-preferred":
+                                return replicaPreferred();
+                        default:
+                                throw new IllegalArgumentException("不支持的读取策略: " + name);
+                }
+        }
+}
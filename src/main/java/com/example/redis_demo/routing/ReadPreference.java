@@ -0,0 +1,63 @@
+package com.example.redis_demo.routing;
+
+import java.util.function.Supplier;
+
+/**
+ * 读主节点的调用范围
+ * <p>
+ * 开启从节点读取后, 只读方法默认读从节点, 刚写入的数据可能因复制延迟还读不到。
+ * 需要读到自己刚写入的值时把读取放在 {@link #master(Supplier)} 中执行:
+ * <pre>
+ * redisService.set(key, value);
+ * Object current = ReadPreference.master(() -&gt; redisService.get(key));
+ * </pre>
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class ReadPreference {
+
+    private static final ThreadLocal<Boolean> MASTER = new ThreadLocal<>();
+
+    private ReadPreference() {
+    }
+
+    /**
+     * 在当前线程上执行, 期间所有读取都发往主节点
+     *
+     * @param action 读取
+     * @return 读取结果
+     */
+    public static <T> T master(Supplier<T> action) {
+        Boolean previous = MASTER.get();
+        MASTER.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                MASTER.remove();
+            } else {
+                MASTER.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 在当前线程上执行, 期间所有读取都发往主节点
+     *
+     * @param action 读取
+     */
+    public static void master(Runnable action) {
+        master(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return 当前线程是否要求读主节点
+     */
+    public static boolean isMaster() {
+        return MASTER.get() != null;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.redis_demo.routing;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 键到 redis 节点的路由
+ * <p>
+ * 分片编号的含义由实现决定: 单机只有一个分片, 集群按 slot(0~16383), 客户端分片按一致性哈希环上的节点。
+ * 同一分片内的键可以放在一条多键命令或一个 pipeline 中执行, 不同分片之间可以并行
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public interface RedisRouter {
+
+        /**
+         * @return 分片数
+         */
+        int size();
+
+        /**
+         * 键所在的分片, 键中含 {tag} 时只按 tag 计算, 使相关的键落在同一分片
+         *
+         * @param key 键
+         * @return 分片编号 [0, size)
+         */
+        int indexOf(String key);
+
+        /**
+         * @param index 分片编号
+         * @return 访问该分片的 RedisTemplate
+         */
+        RedisTemplate<String, Object> template(int index);
+
+        /**
+         * 遍历所有节点上的键, 关闭 Stream 时释放游标
+         *
+         * @param options SCAN 参数
+         * @return 键
+         */
+        Stream<String> scan(ScanOptions options);
+
+        /**
+         * @param key 键
+         * @return 访问该键的 RedisTemplate
+         */
+        default RedisTemplate<String, Object> forKey(String key) {
+                return template(indexOf(key));
+        }
+
+        /**
+         * 执行只读操作, 开启从节点读取时由实现选择主节点或从节点
+         *
+         * @param key       键
+         * @param operation 读取
+         * @return 读取结果
+         */
+        default <T> T read(String key, Function<RedisTemplate<String, Object>, T> operation) {
+                return operation.apply(forKey(key));
+        }
+
+        /**
+         * 按分片对键分组, 组内保持原顺序
+         *
+         * @param keys 键
+         * @return 分片编号 -> 键
+         */
+        default Map<Integer, List<String>> partition(Collection<String> keys) {
+                Map<Integer, List<String>> groups = new LinkedHashMap<>();
+                for (String key : keys) {
+                        groups.computeIfAbsent(indexOf(key), index -> new ArrayList<>()).add(key);
+                }
+                return groups;
+        }
+
+        /**
+         * 键所在节点的代表分片: 返回值相同的键在同一个节点上, 可以用 template(返回值) 的一个连接批量发送。
+         * 默认每个分片就是一个节点
+         *
+         * @param key 键
+         * @return 分片编号 [0, size)
+         */
+        default int nodeOf(String key) {
+                return indexOf(key);
+        }
+
+        /**
+         * 按节点对键分组, 组内保持原顺序; 用于不要求同一分片、只要求同一连接的批量读写
+         *
+         * @param keys 键
+         * @return 代表分片编号 -> 键
+         */
+        default Map<Integer, List<String>> partitionByNode(Collection<String> keys) {
+                Map<Integer, List<String>> groups = new LinkedHashMap<>();
+                for (String key : keys) {
+                        groups.computeIfAbsent(nodeOf(key), index -> new ArrayList<>()).add(key);
+                }
+                return groups;
+        }
+
+        /**
+         * 与 redis cluster 相同的 hash tag 规则: 第一个 { 与其后第一个 } 之间非空时只取这一段
+         *
+         * @param key 键
+         * @return 参与哈希的部分
+         */
+        static String hashTag(String key) {
+                int start = key.indexOf('{');
+                if (start >= 0) {
+                        int end = key.indexOf('}', start + 1);
+                        if (end > start + 1) {
+                                return key.substring(start + 1, end);
+                        }
+                }
+                return key;
+        }
+}
@@ -0,0 +1,212 @@
+package com.example.redis_demo.routing;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 主从模式, 写入和 {@link #forKey(String)} 都走主节点, {@link #read(String, Function)} 按 {@link ReadPolicy} 选择节点
+ * <p>
+ * 从节点读取出现连接失败或超时时, 该从节点在 retryAfterMillis 内不再被选择, 本次读取改读主节点。
+ * 从节点的数据有复制延迟, 需要读到刚写入的值时使用 {@link ReadPreference#master(java.util.function.Supplier)}
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class ReplicaReadRouter implements RedisRouter, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaReadRouter.class);
+
+    private final RedisRouter primary;
+
+    private final ReadNode master;
+
+    private final ReadPolicy policy;
+
+    private final Function<String, RedisTemplate<String, Object>> replicaFactory;
+
+    private final long retryAfterMillis;
+
+    private volatile List<ReadNode> replicas = Collections.emptyList();
+
+    private final Map<String, List<Meter>> meters = new HashMap<>();
+
+    private MeterRegistry registry;
+
+    /**
+     * @param primary          主节点路由
+     * @param masterName       主节点名称, 用于指标
+     * @param policy           读取策略
+     * @param replicaFactory   按 host:port 创建访问从节点的 RedisTemplate
+     * @param retryAfterMillis 从节点读取失败后摘除的时间(毫秒)
+     */
+    public ReplicaReadRouter(RedisRouter primary, String masterName, ReadPolicy policy,
+                             Function<String, RedisTemplate<String, Object>> replicaFactory, long retryAfterMillis) {
+        this.primary = primary;
+        this.master = new ReadNode(masterName, primary.template(0), true);
+        this.policy = policy;
+        this.replicaFactory = replicaFactory;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    @Override
+    public int size() {
+        return primary.size();
+    }
+
+    @Override
+    public int indexOf(String key) {
+        return primary.indexOf(key);
+    }
+
+    @Override
+    public RedisTemplate<String, Object> template(int index) {
+        return primary.template(index);
+    }
+
+    @Override
+    public Stream<String> scan(ScanOptions options) {
+        return primary.scan(options);
+    }
+
+    @Override
+    public <T> T read(String key, Function<RedisTemplate<String, Object>, T> operation) {
+        if (ReadPreference.isMaster()) {
+            return execute(master, operation);
+        }
+        List<ReadNode> current = replicas;
+        List<ReadNode> available = new ArrayList<>(current.size());
+        for (ReadNode replica : current) {
+            if (replica.isAvailable()) {
+                available.add(replica);
+            }
+        }
+        ReadNode node = policy.select(master, available);
+        if (node.isMaster()) {
+            return execute(master, operation);
+        }
+        try {
+            return execute(node, operation);
+        } catch (DataAccessResourceFailureException | QueryTimeoutException e) {
+            node.markDown(retryAfterMillis);
+            log.warn("replica {} read failed, falling back to master for {}ms", node.getName(), retryAfterMillis, e);
+            return execute(master, operation);
+        }
+    }
+
+    /**
+     * 替换从节点列表, 已有的节点保留连接和统计, 移除的节点关闭连接池
+     *
+     * @param addresses 从节点 host:port
+     */
+    public synchronized void updateReplicas(Collection<String> addresses) {
+        Map<String, ReadNode> existing = new LinkedHashMap<>();
+        for (ReadNode replica : replicas) {
+            existing.put(replica.getName(), replica);
+        }
+        List<ReadNode> updated = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            ReadNode replica = existing.remove(address);
+            if (replica == null) {
+                replica = new ReadNode(address, replicaFactory.apply(address), false);
+                bindNode(replica);
+                log.info("redis replica {} added", address);
+            }
+            updated.add(replica);
+        }
+        replicas = Collections.unmodifiableList(updated);
+        for (ReadNode removed : existing.values()) {
+            log.info("redis replica {} removed", removed.getName());
+            unbindNode(removed);
+            close(removed);
+        }
+    }
+
+    /**
+     * @return 主节点和当前所有从节点
+     */
+    public List<ReadNode> nodes() {
+        List<ReadNode> nodes = new ArrayList<>(replicas.size() + 1);
+        nodes.add(master);
+        nodes.addAll(replicas);
+        return nodes;
+    }
+
+    /**
+     * 注册每个节点的读取次数、失败次数和耗时, 之后加入的从节点自动注册
+     *
+     * @param registry 注册表
+     */
+    public synchronized void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        for (ReadNode node : nodes()) {
+            bindNode(node);
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        for (ReadNode replica : replicas) {
+            close(replica);
+        }
+        replicas = Collections.emptyList();
+    }
+
+    private <T> T execute(ReadNode node, Function<RedisTemplate<String, Object>, T> operation) {
+        long start = System.nanoTime();
+        T result = operation.apply(node.getTemplate());
+        node.recordRead(System.nanoTime() - start);
+        return result;
+    }
+
+    private void bindNode(ReadNode node) {
+        if (registry == null || meters.containsKey(node.getName())) {
+            return;
+        }
+        Tags tags = Tags.of("node", node.getName(), "role", node.isMaster() ? "master" : "replica");
+        meters.put(node.getName(), Arrays.asList(
+                FunctionCounter.builder("redis.read.requests", node, ReadNode::getReads).tags(tags).register(registry),
+                FunctionCounter.builder("redis.read.failures", node, ReadNode::getFailures).tags(tags).register(registry),
+                Gauge.builder("redis.read.latency", node, ReadNode::getLatencyMicros).tags(tags).baseUnit("microseconds")
+                        .register(registry)));
+    }
+
+    private void unbindNode(ReadNode node) {
+        List<Meter> removed = meters.remove(node.getName());
+        if (removed != null && registry != null) {
+            removed.forEach(registry::remove);
+        }
+    }
+
+    private static void close(ReadNode replica) {
+        RedisConnectionFactory factory = replica.getTemplate().getConnectionFactory();
+        if (factory instanceof DisposableBean) {
+            try {
+                ((DisposableBean) factory).destroy();
+            } catch (Exception e) {
+                log.warn("close replica {} failed", replica.getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.redis_demo.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.NamedNode;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.data.redis.connection.RedisServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时从 Sentinel 读取从节点列表, 更新 {@link ReplicaReadRouter}
+ * <p>
+ * 主节点由 Sentinel 连接池跟随故障转移; 故障转移后新的主节点从列表中消失, 原主节点恢复后以从节点身份加入。
+ * 被 Sentinel 标记为主观/客观下线或断开的从节点不参与读取
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class SentinelReplicaWatcher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SentinelReplicaWatcher.class);
+
+    private final RedisConnectionFactory factory;
+
+    private final NamedNode master;
+
+    private final ReplicaReadRouter router;
+
+    private final long intervalMillis;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "redis-sentinel-replicas");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param factory        Sentinel 模式的连接工厂
+     * @param master         Sentinel 中的主节点名称
+     * @param router         从节点读取路由
+     * @param intervalMillis 刷新间隔(毫秒)
+     */
+    public SentinelReplicaWatcher(RedisConnectionFactory factory, NamedNode master, ReplicaReadRouter router, long intervalMillis) {
+        this.factory = factory;
+        this.master = master;
+        this.router = router;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void start() {
+        // 第一次刷新也在后台执行, Sentinel 不可用时不影响启动, 期间读主节点
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void refresh() {
+        try (RedisSentinelConnection connection = factory.getSentinelConnection()) {
+            List<String> addresses = new ArrayList<>();
+            for (RedisServer replica : connection.slaves(master)) {
+                String flags = replica.getFlags();
+                if (flags != null && (flags.contains("s_down") || flags.contains("o_down") || flags.contains("disconnected"))) {
+                    continue;
+                }
+                addresses.add(replica.getHost() + ":" + replica.getPort());
+            }
+            router.updateReplicas(addresses);
+        } catch (Exception e) {
+            // 保留上一次的列表, 读取失败的从节点会被路由自行摘除
+            log.warn("refresh replicas from sentinel failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.redis_demo.routing;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.util.stream.Stream;
+
+/**
+ * 单机模式, 所有键在同一个节点
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class SingleNodeRouter implements RedisRouter {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    public SingleNodeRouter(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public int size() {
+        return 1;
+    }
+
+    @Override
+    public int indexOf(String key) {
+        return 0;
+    }
+
+    @Override
+    public RedisTemplate<String, Object> template(int index) {
+        return redisTemplate;
+    }
+
+    @Override
+    public Stream<String> scan(ScanOptions options) {
+        return redisTemplate.scan(options).stream();
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.redis_demo.script;
+
+import org.springframework.data.redis.connection.ReturnType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Lua 脚本及其返回值类型
+ * <p>
+ * SHA1 在本地计算, 与 SCRIPT LOAD 返回的一致, 执行时直接 EVALSHA
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class LuaScript<T> {
+
+    private final String name;
+
+    private final String source;
+
+    private final byte[] body;
+
+    private final String sha1;
+
+    private final ReturnType returnType;
+
+    /**
+     * 原始返回值的转换, null 表示按值序列化器反序列化
+     */
+    private final Function<Object, T> converter;
+
+    /**
+     * 执行后是否失效 KEYS 的一级缓存
+     */
+    private final boolean invalidatesKeys;
+
+    private LuaScript(String name, String source, ReturnType returnType, Function<Object, T> converter, boolean invalidatesKeys) {
+        this.name = name;
+        this.source = source;
+        this.body = source.getBytes(StandardCharsets.UTF_8);
+        this.sha1 = sha1(body);
+        this.returnType = returnType;
+        this.converter = converter;
+        this.invalidatesKeys = invalidatesKeys;
+    }
+
+    /**
+     * @param name   名称, 注册表内唯一
+     * @param source 脚本
+     * @return 返回整数的脚本, 脚本返回 nil 时结果为 null
+     */
+    public static LuaScript<Long> integer(String name, String source) {
+        return new LuaScript<>(name, source, ReturnType.INTEGER, raw -> (Long) raw, true);
+    }
+
+    /**
+     * @return 返回布尔的脚本, 脚本返回 1 / true 为 true, 0 / nil / false 为 false
+     */
+    public static LuaScript<Boolean> bool(String name, String source) {
+        return new LuaScript<>(name, source, ReturnType.BOOLEAN, Boolean.TRUE::equals, true);
+    }
+
+    /**
+     * @return 返回字符串的脚本, 按 UTF-8 解码
+     */
+    public static LuaScript<String> text(String name, String source) {
+        return new LuaScript<>(name, source, ReturnType.VALUE, raw -> raw == null ? null : new String((byte[]) raw, StandardCharsets.UTF_8), true);
+    }
+
+    /**
+     * @return 返回 redis 中保存的值的脚本, 按 RedisService 的值序列化器反序列化
+     */
+    public static LuaScript<Object> value(String name, String source) {
+        return new LuaScript<>(name, source, ReturnType.VALUE, null, true);
+    }
+
+    /**
+     * @return 返回数组的脚本, 元素为 Long / byte[] / List, 由调用方解析
+     */
+    @SuppressWarnings("unchecked")
+    public static LuaScript<List<Object>> multi(String name, String source) {
+        return new LuaScript<>(name, source, ReturnType.MULTI, raw -> (List<Object>) raw, true);
+    }
+
+    /**
+     * @param returnType redis 返回值类型
+     * @param converter  原始返回值到结果类型的转换
+     */
+    public static <T> LuaScript<T> of(String name, String source, ReturnType returnType, Function<Object, T> converter) {
+        return new LuaScript<>(name, source, returnType, converter, true);
+    }
+
+    /**
+     * 默认认为脚本会修改 KEYS, 执行后失效这些键的一级缓存; 只读脚本或只操作锁、租约这类不缓存的键时用这个版本, 省去失效通知
+     *
+     * @return 执行后不失效一级缓存的同一脚本
+     */
+    public LuaScript<T> skipNearCache() {
+        return new LuaScript<>(name, source, returnType, converter, false);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    public ReturnType getReturnType() {
+        return returnType;
+    }
+
+    byte[] body() {
+        return body;
+    }
+
+    boolean invalidatesKeys() {
+        return invalidatesKeys;
+    }
+
+    boolean decodesValue() {
+        return converter == null;
+    }
+
+    T convert(Object raw) {
+        return converter.apply(raw);
+    }
+
+    private static String sha1(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + sha1 + ")";
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.redis_demo.script;
+
+import com.example.redis_demo.codec.SerializationContext;
+import com.example.redis_demo.routing.RedisRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Lua 脚本注册表
+ * <p>
+ * 执行时直接 EVALSHA, 节点上没有该脚本(NOSCRIPT, 如首次执行、节点重启或 SCRIPT FLUSH 后)时 SCRIPT LOAD 再重试一次,
+ * 之后同一节点上一直走 EVALSHA, 不再传输脚本正文。
+ * <p>
+ * 参数类型:
+ * byte[]                        原样传入
+ * String / Number / Boolean     按文本(UTF-8)传入, 脚本中可用 tonumber 转换
+ * {@link #value(Object)}        按 RedisService 的值序列化器编码, 与 set/hset 写入的值格式一致
+ * <p>
+ * 脚本的所有 KEYS 必须在同一分片(集群下同一 slot), 用 {tag} 保证
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class ScriptRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ScriptRegistry.class);
+
+    private final RedisRouter router;
+
+    private final ConcurrentHashMap<String, LuaScript<?>> scripts = new ConcurrentHashMap<>();
+
+    private final LongAdder executions = new LongAdder();
+
+    private final LongAdder reloads = new LongAdder();
+
+    private volatile Consumer<String> invalidator = key -> {
+    };
+
+    public ScriptRegistry(RedisRouter router) {
+        this.router = router;
+        register(Scripts.HSET_EXPIRE);
+        register(Scripts.SADD_EXPIRE);
+    }
+
+    /**
+     * @param invalidator 脚本执行后调用, 用于失效 KEYS 的一级缓存
+     */
+    public void setInvalidator(Consumer<String> invalidator) {
+        this.invalidator = invalidator;
+    }
+
+    /**
+     * 注册脚本, 之后可以按名称执行; 同名同内容重复注册无影响
+     *
+     * @param script 脚本
+     * @return 传入的脚本
+     * @throws IllegalArgumentException 同名脚本内容不同
+     */
+    public <T> LuaScript<T> register(LuaScript<T> script) {
+        LuaScript<?> existing = scripts.putIfAbsent(script.getName(), script);
+        if (existing != null && !existing.getSha1().equals(script.getSha1())) {
+            throw new IllegalArgumentException("script " + script.getName() + " is already registered with a different source");
+        }
+        return script;
+    }
+
+    /**
+     * @param name 名称
+     * @return 脚本, 未注册时为 null
+     */
+    public LuaScript<?> get(String name) {
+        return scripts.get(name);
+    }
+
+    /**
+     * @return 已注册的脚本
+     */
+    public Collection<LuaScript<?>> scripts() {
+        return Collections.unmodifiableCollection(scripts.values());
+    }
+
+    /**
+     * 执行脚本
+     *
+     * @param script 脚本, 不必事先注册
+     * @param keys   KEYS, 路由按第一个键
+     * @param args   ARGV
+     * @return 按脚本返回值类型转换的结果
+     * @throws IllegalArgumentException KEYS 不在同一分片
+     */
+    public <T> T execute(LuaScript<T> script, List<String> keys, Object... args) {
+        RedisTemplate<String, Object> template = route(keys);
+        String key = keys.isEmpty() ? null : keys.get(0);
+        byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        String previous = SerializationContext.enter(key);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                keysAndArgs[keys.size() + i] = encode(template, args[i]);
+            }
+        } finally {
+            SerializationContext.exit(previous);
+        }
+        executions.increment();
+        Object raw = template.execute((RedisCallback<Object>) connection -> evalSha(connection, script, keys.size(), keysAndArgs));
+        if (script.invalidatesKeys()) {
+            keys.forEach(invalidator);
+        }
+        if (script.decodesValue()) {
+            return raw == null ? null : castValue(template, (byte[]) raw);
+        }
+        return script.convert(raw);
+    }
+
+    /**
+     * 按名称执行已注册的脚本
+     *
+     * @throws IllegalArgumentException 脚本未注册
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String name, List<String> keys, Object... args) {
+        LuaScript<?> script = scripts.get(name);
+        if (script == null) {
+            throw new IllegalArgumentException("script " + name + " is not registered");
+        }
+        return (T) execute(script, keys, args);
+    }
+
+    /**
+     * 把所有已注册的脚本 SCRIPT LOAD 到每个节点, 可选的预热; 不调用时首次执行会自动加载
+     */
+    public void loadAll() {
+        Set<RedisTemplate<String, Object>> templates = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < router.size(); i++) {
+            templates.add(router.template(i));
+        }
+        for (RedisTemplate<String, Object> template : templates) {
+            try {
+                template.execute((RedisCallback<Object>) connection -> {
+                    for (LuaScript<?> script : scripts.values()) {
+                        connection.scriptingCommands().scriptLoad(script.body());
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                log.warn("script load failed, scripts will be loaded on first use", e);
+            }
+        }
+    }
+
+    /**
+     * 标记按值序列化器编码的参数
+     *
+     * @param value 值
+     * @return 参数
+     */
+    public static Object value(Object value) {
+        return new ValueArg(value);
+    }
+
+    /**
+     * @return 脚本执行次数
+     */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /**
+     * @return 因 NOSCRIPT 重新加载的次数, 持续增长说明节点频繁重启或被 SCRIPT FLUSH
+     */
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    private RedisTemplate<String, Object> route(List<String> keys) {
+        if (keys.isEmpty()) {
+            return router.template(0);
+        }
+        int index = router.indexOf(keys.get(0));
+        for (int i = 1; i < keys.size(); i++) {
+            if (router.indexOf(keys.get(i)) != index) {
+                throw new IllegalArgumentException("script keys must be on the same shard, use a {hash tag}: " + keys);
+            }
+        }
+        return router.template(index);
+    }
+
+    private Object evalSha(RedisConnection connection, LuaScript<?> script, int numKeys, byte[][] keysAndArgs) {
+        try {
+            return connection.scriptingCommands().evalSha(script.getSha1(), script.getReturnType(), numKeys, keysAndArgs);
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            reloads.increment();
+            connection.scriptingCommands().scriptLoad(script.body());
+            return connection.scriptingCommands().evalSha(script.getSha1(), script.getReturnType(), numKeys, keysAndArgs);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] encode(RedisTemplate<String, Object> template, Object arg) {
+        if (arg instanceof byte[]) {
+            return (byte[]) arg;
+        }
+        if (arg instanceof ValueArg) {
+            return ((RedisSerializer<Object>) template.getValueSerializer()).serialize(((ValueArg) arg).value);
+        }
+        if (arg instanceof CharSequence || arg instanceof Number || arg instanceof Boolean) {
+            return String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+        }
+        throw new IllegalArgumentException("unsupported script argument " + arg.getClass().getName() + ", use ScriptRegistry.value(...)");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T castValue(RedisTemplate<String, Object> template, byte[] raw) {
+        return (T) template.getValueSerializer().deserialize(raw);
+    }
+
+    static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && message.contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class ValueArg {
+
+        private final Object value;
+
+        private ValueArg(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.redis_demo.script;
+
+/**
+ * 内置脚本: 把 "写入 + 设置过期" 这类两步操作合成一次原子执行, 不会出现写入成功而过期没设置上的键
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class Scripts {
+
+    /**
+     * 写入 hash 的多个项并设置过期
+     * <p>
+     * KEYS[1] hash 键; ARGV[1] 过期时间(毫秒), 小于等于 0 不设置; ARGV[2..] 项和值交替
+     * <p>
+     * 返回写入的项数
+     */
+    public static final LuaScript<Long> HSET_EXPIRE = LuaScript.integer("hsetExpire",
+            "for i = 2, #ARGV, 2 do "
+                    + "redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) "
+                    + "end "
+                    + "if tonumber(ARGV[1]) > 0 then "
+                    + "redis.call('pexpire', KEYS[1], ARGV[1]) "
+                    + "end "
+                    + "return (#ARGV - 1) / 2");
+
+    /**
+     * 向集合添加元素并设置过期
+     * <p>
+     * KEYS[1] 集合键; ARGV[1] 过期时间(毫秒), 小于等于 0 不设置; ARGV[2..] 元素
+     * <p>
+     * 返回新增的元素个数
+     */
+    public static final LuaScript<Long> SADD_EXPIRE = LuaScript.integer("saddExpire",
+            "local added = 0 "
+                    + "for i = 2, #ARGV do "
+                    + "added = added + redis.call('sadd', KEYS[1], ARGV[i]) "
+                    + "end "
+                    + "if tonumber(ARGV[1]) > 0 then "
+                    + "redis.call('pexpire', KEYS[1], ARGV[1]) "
+                    + "end "
+                    + "return added");
+
+    private Scripts() {
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.redis_demo.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReactiveRedisService} 的 CompletableFuture 形式, 方法调用即发出命令
+ * <p>
+ * 回调在 Lettuce 的 IO 线程上执行, 耗时的后续处理请使用 *Async 方法切换到业务线程池
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public interface AsyncRedisService {
+
+        /**
+         * 指定缓存失效时间
+         *
+         * @param key  键
+         * @param time 时间(秒)
+         * @return 是否成功
+         */
+        CompletableFuture<Boolean> expire(String key, Long time);
+
+        CompletableFuture<Boolean> expire(String key, Long time, TimeUnit timeUnit);
+
+        /**
+         * @param key 键 不能为null
+         * @return 时间(秒) 返回-1代表为永久有效
+         */
+        CompletableFuture<Long> getExpire(String key);
+
+        /**
+         * 判断key是否存在
+         *
+         * @param key 键
+         * @return true 存在 false不存在
+         */
+        CompletableFuture<Boolean> hasKey(String key);
+
+        /**
+         * 删除缓存
+         *
+         * @param key 可以传一个值 或多个
+         * @return 删除的个数
+         */
+        CompletableFuture<Long> del(String... key);
+
+        /**
+         * 普通缓存获取
+         *
+         * @param key 键
+         * @return 值, 不存在时为 null
+         */
+        CompletableFuture<Object> get(String key);
+
+        /**
+         * 普通缓存放入
+         *
+         * @param key   键
+         * @param value 值
+         * @return true成功
+         */
+        CompletableFuture<Boolean> set(String key, Object value);
+
+        /**
+         * 普通缓存放入并设置时间
+         *
+         * @param key        键
+         * @param value      值
+         * @param secondTime 时间(秒) time要大于0 如果time小于等于0 将设置无限期
+         * @return true成功
+         */
+        CompletableFuture<Boolean> set(String key, Object value, Long secondTime);
+
+        CompletableFuture<Boolean> set(String key, Object value, Long time, TimeUnit timeUnit);
+
+        CompletableFuture<Boolean> setnx(String key, Object value);
+
+        CompletableFuture<Boolean> setnx(String key, Object value, Long secondTime);
+
+        CompletableFuture<Boolean> setnx(String key, Object value, Long time, TimeUnit timeUnit);
+
+        CompletableFuture<Boolean> setex(String key, Object value);
+
+        CompletableFuture<Boolean> setex(String key, Object value, Long secondTime);
+
+        CompletableFuture<Boolean> setex(String key, Object value, Long time, TimeUnit timeUnit);
+
+        /**
+         * 设置新值并返回旧值
+         *
+         * @param key   键
+         * @param value 新值
+         * @return 旧值
+         */
+        CompletableFuture<Object> getSet(String key, Object value);
+
+        /**
+         * 递增
+         *
+         * @param key   键
+         * @param delta 要增加几
+         * @return 递增后的值
+         */
+        CompletableFuture<Long> incrBy(String key, Long delta);
+
+        CompletableFuture<Long> decrBy(String key, Long delta);
+
+        CompletableFuture<Double> incrByFloat(String key, double delta);
+
+        CompletableFuture<Double> decrByFloat(String key, double delta);
+
+        /**
+         * HashGet
+         *
+         * @param key  键
+         * @param item 项
+         * @return 值
+         */
+        CompletableFuture<Object> hget(String key, String item);
+
+        /**
+         * 获取hashKey对应的所有键值
+         *
+         * @param key 键
+         * @return 对应的多个键值
+         */
+        CompletableFuture<Map<Object, Object>> hgetAll(String key);
+
+        CompletableFuture<Boolean> hset(String key, Map<String, Object> map);
+
+        /**
+         * HashSet 并设置时间
+         *
+         * @param key  键
+         * @param map  对应多个键值
+         * @param time 时间(秒)
+         * @return true成功
+         */
+        CompletableFuture<Boolean> hset(String key, Map<String, Object> map, Long time);
+
+        CompletableFuture<Boolean> hset(String key, String item, Object value);
+
+        CompletableFuture<Boolean> hset(String key, String item, Object value, Long time);
+
+        CompletableFuture<Boolean> hset(String key, String item, Object value, Long time, TimeUnit timeUnit);
+
+        /**
+         * 删除hash表中的值
+         *
+         * @param key  键
+         * @param item 项 可以使多个
+         * @return 删除的个数
+         */
+        CompletableFuture<Long> hdel(String key, Object... item);
+
+        CompletableFuture<Boolean> hHasKey(String key, String item);
+
+        /**
+         * hash递增 如果不存在,就会创建一个 并把新增后的值返回
+         *
+         * @param key  键
+         * @param item 项
+         * @param by   要增加几
+         * @return 递增后的值
+         */
+        CompletableFuture<Double> hincr(String key, String item, double by);
+
+        CompletableFuture<Double> hdecr(String key, String item, double by);
+
+        /**
+         * 根据key获取Set中的所有值
+         *
+         * @param key 键
+         * @return 值
+         */
+        CompletableFuture<Set<Object>> smembers(String key);
+
+        CompletableFuture<Boolean> sismember(String key, Object value);
+
+        CompletableFuture<Long> sadd(String key, Long time, Object... values);
+
+        CompletableFuture<Long> sadd(String key, Long time, TimeUnit timeUnit, Object... values);
+
+        CompletableFuture<Long> sadd(String key, Object... values);
+
+        CompletableFuture<Long> scard(String key);
+
+        CompletableFuture<Long> srem(String key, Object... values);
+
+        CompletableFuture<Boolean> smove(String sourceKey, String targetKey, Object value);
+
+        /**
+         * 获取list缓存的内容
+         *
+         * @param key   键
+         * @param start 开始
+         * @param end   结束 0 到 -1代表所有值
+         * @return 值
+         */
+        CompletableFuture<List<Object>> lrange(String key, Long start, Long end);
+
+        CompletableFuture<Long> llen(String key);
+
+        CompletableFuture<Object> lindex(String key, Long index);
+
+        /**
+         * 将值放入list表头
+         *
+         * @param key   键
+         * @param value 值
+         * @return list 长度
+         */
+        CompletableFuture<Long> lpush(String key, Object value);
+
+        CompletableFuture<Long> rpush(String key, Object value);
+
+        CompletableFuture<Long> lpush(String key, List<Object> value);
+
+        CompletableFuture<Long> rpush(String key, List<Object> value);
+
+        CompletableFuture<Boolean> lset(String key, Long index, Object value);
+
+        CompletableFuture<Long> lrem(String key, Long count, Object value);
+
+        CompletableFuture<Boolean> ltrim(String key, Long start, Long end);
+
+        CompletableFuture<Boolean> zadd(String key, Object value, Double score);
+
+        CompletableFuture<Long> zadd(String key, Map<Object, Double> values);
+
+        CompletableFuture<Set<Object>> zrange(String key, Long start, Long end);
+
+        CompletableFuture<Long> zrem(String key, Object... values);
+
+        /**
+         * 批量获取(MGET)
+         *
+         * @param keys 键
+         * @return 值, 顺序与 keys 一致, 不存在的键对应 null
+         */
+        CompletableFuture<List<Object>> mget(Collection<String> keys);
+
+        CompletableFuture<Boolean> mset(Map<String, Object> map);
+
+        /**
+         * 批量放入并设置时间, 各键的 SET 并发发出, 在同一连接上连续写出
+         *
+         * @param map  键值
+         * @param time 时间(秒) time要大于0 如果time小于等于0 将设置无限期
+         * @return true 全部成功
+         */
+        CompletableFuture<Boolean> mset(Map<String, Object> map, Long time);
+
+        /**
+         * 批量获取多个hash的多个项
+         *
+         * @param items 键 -> 项
+         * @return 键 -> (项 -> 值), 顺序与请求一致, 不存在的项对应 null
+         */
+        CompletableFuture<Map<String, Map<String, Object>>> hgetMulti(Map<String, Collection<String>> items);
+}
@@ -0,0 +1,120 @@
+package com.example.redis_demo.service;
+
+/**
+ * 批量(pipeline)命令的单条执行结果, 按命令加入顺序返回
+ * <p>
+ * pipeline 执行完毕前结果不可用; 单条命令失败不影响其它命令, 失败原因通过 {@link #getError()} 获取
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class BatchResult<T> {
+
+    private final String command;
+
+    private final String key;
+
+    private volatile boolean done;
+
+    private T value;
+
+    private Throwable error;
+
+    private long rawSize;
+
+    public BatchResult(String command, String key) {
+        this.command = command;
+        this.key = key;
+    }
+
+    /**
+     * @return 命令名称, 如 GET/HSET
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return 命令操作的键
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return pipeline 是否已经执行完毕
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return true 命令执行成功
+     */
+    public boolean isSuccess() {
+        return done && error == null;
+    }
+
+    /**
+     * 获取命令结果
+     *
+     * @return 值
+     * @throws IllegalStateException pipeline 尚未执行, 或该命令执行失败
+     */
+    public T get() {
+        if (!done) {
+            throw new IllegalStateException(command + " " + key + " 尚未执行, 请在 pipeline 结束后获取结果");
+        }
+        if (error != null) {
+            throw new IllegalStateException(command + " " + key + " 执行失败", error);
+        }
+        return value;
+    }
+
+    /**
+     * 获取命令结果, 失败时返回默认值
+     *
+     * @param defaultValue 默认值
+     * @return 值
+     */
+    public T getOrDefault(T defaultValue) {
+        return isSuccess() ? value : defaultValue;
+    }
+
+    /**
+     * @return 失败原因, 成功时为 null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return redis 返回的原始字节数, 用于估算缓存占用和流量
+     */
+    public long getRawSize() {
+        return rawSize;
+    }
+
+    public void complete(T value) {
+        complete(value, 0);
+    }
+
+    public void complete(T value, long rawSize) {
+        this.value = value;
+        this.rawSize = rawSize;
+        this.done = true;
+    }
+
+    public void fail(Throwable error) {
+        this.error = error;
+        this.done = true;
+    }
+
+    @Override
+    public String toString() {
+        if (!done) {
+            return command + " " + key + " (pending)";
+        }
+        return command + " " + key + (error == null ? " => " + value : " !! " + error.getMessage());
+    }
+}
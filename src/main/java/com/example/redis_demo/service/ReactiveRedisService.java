@@ -0,0 +1,270 @@
+package com.example.redis_demo.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RedisService} 的非阻塞版本, 基于 Lettuce 的单个多路复用连接
+ * <p>
+ * 调用线程不再等待连接池, 并发请求共用一个连接, 同时在途的命令由 Lettuce 连续写出, 相当于隐式 pipeline。
+ * 返回的 Mono/Flux 需要订阅后才会执行; 值在调用时即完成序列化, 不占用 IO 线程。
+ * 失败通过 onError 传递, 不再吞掉异常返回 false
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public interface ReactiveRedisService {
+
+        /**
+         * 指定缓存失效时间
+         *
+         * @param key  键
+         * @param time 时间(秒)
+         * @return 是否成功
+         */
+        Mono<Boolean> expire(String key, Long time);
+
+        Mono<Boolean> expire(String key, Long time, TimeUnit timeUnit);
+
+        /**
+         * @param key 键 不能为null
+         * @return 时间(秒) 返回-1代表为永久有效
+         */
+        Mono<Long> getExpire(String key);
+
+        /**
+         * 判断key是否存在
+         *
+         * @param key 键
+         * @return true 存在 false不存在
+         */
+        Mono<Boolean> hasKey(String key);
+
+        /**
+         * 删除缓存
+         *
+         * @param key 可以传一个值 或多个
+         * @return 删除的个数
+         */
+        Mono<Long> del(String... key);
+
+        /**
+         * 普通缓存获取
+         *
+         * @param key 键
+         * @return 值, 不存在时为空
+         */
+        Mono<Object> get(String key);
+
+        /**
+         * 普通缓存放入
+         *
+         * @param key   键
+         * @param value 值
+         * @return true成功
+         */
+        Mono<Boolean> set(String key, Object value);
+
+        /**
+         * 普通缓存放入并设置时间
+         *
+         * @param key        键
+         * @param value      值
+         * @param secondTime 时间(秒) time要大于0 如果time小于等于0 将设置无限期
+         * @return true成功
+         */
+        Mono<Boolean> set(String key, Object value, Long secondTime);
+
+        Mono<Boolean> set(String key, Object value, Long time, TimeUnit timeUnit);
+
+        Mono<Boolean> setnx(String key, Object value);
+
+        Mono<Boolean> setnx(String key, Object value, Long secondTime);
+
+        Mono<Boolean> setnx(String key, Object value, Long time, TimeUnit timeUnit);
+
+        Mono<Boolean> setex(String key, Object value);
+
+        Mono<Boolean> setex(String key, Object value, Long secondTime);
+
+        Mono<Boolean> setex(String key, Object value, Long time, TimeUnit timeUnit);
+
+        /**
+         * 设置新值并返回旧值
+         *
+         * @param key   键
+         * @param value 新值
+         * @return 旧值
+         */
+        Mono<Object> getSet(String key, Object value);
+
+        /**
+         * 递增
+         *
+         * @param key   键
+         * @param delta 要增加几
+         * @return 递增后的值
+         */
+        Mono<Long> incrBy(String key, Long delta);
+
+        Mono<Long> decrBy(String key, Long delta);
+
+        Mono<Double> incrByFloat(String key, double delta);
+
+        Mono<Double> decrByFloat(String key, double delta);
+
+        /**
+         * HashGet
+         *
+         * @param key  键
+         * @param item 项
+         * @return 值
+         */
+        Mono<Object> hget(String key, String item);
+
+        /**
+         * 获取hashKey对应的所有键值
+         *
+         * @param key 键
+         * @return 对应的多个键值
+         */
+        Mono<Map<Object, Object>> hgetAll(String key);
+
+        Mono<Boolean> hset(String key, Map<String, Object> map);
+
+        /**
+         * HashSet 并设置时间
+         *
+         * @param key  键
+         * @param map  对应多个键值
+         * @param time 时间(秒)
+         * @return true成功
+         */
+        Mono<Boolean> hset(String key, Map<String, Object> map, Long time);
+
+        Mono<Boolean> hset(String key, String item, Object value);
+
+        Mono<Boolean> hset(String key, String item, Object value, Long time);
+
+        Mono<Boolean> hset(String key, String item, Object value, Long time, TimeUnit timeUnit);
+
+        /**
+         * 删除hash表中的值
+         *
+         * @param key  键
+         * @param item 项 可以使多个
+         * @return 删除的个数
+         */
+        Mono<Long> hdel(String key, Object... item);
+
+        Mono<Boolean> hHasKey(String key, String item);
+
+        /**
+         * hash递增 如果不存在,就会创建一个 并把新增后的值返回
+         *
+         * @param key  键
+         * @param item 项
+         * @param by   要增加几
+         * @return 递增后的值
+         */
+        Mono<Double> hincr(String key, String item, double by);
+
+        Mono<Double> hdecr(String key, String item, double by);
+
+        /**
+         * 根据key获取Set中的所有值
+         *
+         * @param key 键
+         * @return 值
+         */
+        Flux<Object> smembers(String key);
+
+        Mono<Boolean> sismember(String key, Object value);
+
+        Mono<Long> sadd(String key, Long time, Object... values);
+
+        Mono<Long> sadd(String key, Long time, TimeUnit timeUnit, Object... values);
+
+        Mono<Long> sadd(String key, Object... values);
+
+        Mono<Long> scard(String key);
+
+        Mono<Long> srem(String key, Object... values);
+
+        Mono<Boolean> smove(String sourceKey, String targetKey, Object value);
+
+        /**
+         * 获取list缓存的内容
+         *
+         * @param key   键
+         * @param start 开始
+         * @param end   结束 0 到 -1代表所有值
+         * @return 值
+         */
+        Flux<Object> lrange(String key, Long start, Long end);
+
+        Mono<Long> llen(String key);
+
+        Mono<Object> lindex(String key, Long index);
+
+        /**
+         * 将值放入list表头
+         *
+         * @param key   键
+         * @param value 值
+         * @return list 长度
+         */
+        Mono<Long> lpush(String key, Object value);
+
+        Mono<Long> rpush(String key, Object value);
+
+        Mono<Long> lpush(String key, List<Object> value);
+
+        Mono<Long> rpush(String key, List<Object> value);
+
+        Mono<Boolean> lset(String key, Long index, Object value);
+
+        Mono<Long> lrem(String key, Long count, Object value);
+
+        Mono<Boolean> ltrim(String key, Long start, Long end);
+
+        Mono<Boolean> zadd(String key, Object value, Double score);
+
+        Mono<Long> zadd(String key, Map<Object, Double> values);
+
+        Flux<Object> zrange(String key, Long start, Long end);
+
+        Mono<Long> zrem(String key, Object... values);
+
+        /**
+         * 批量获取(MGET)
+         *
+         * @param keys 键
+         * @return 值, 顺序与 keys 一致, 不存在的键对应 null
+         */
+        Mono<List<Object>> mget(Collection<String> keys);
+
+        Mono<Boolean> mset(Map<String, Object> map);
+
+        /**
+         * 批量放入并设置时间, 各键的 SET 并发发出, 在同一连接上连续写出
+         *
+         * @param map  键值
+         * @param time 时间(秒) time要大于0 如果time小于等于0 将设置无限期
+         * @return true 全部成功
+         */
+        Mono<Boolean> mset(Map<String, Object> map, Long time);
+
+        /**
+         * 批量获取多个hash的多个项
+         *
+         * @param items 键 -> 项
+         * @return 键 -> (项 -> 值), 顺序与请求一致, 不存在的项对应 null
+         */
+        Mono<Map<String, Map<String, Object>>> hgetMulti(Map<String, Collection<String>> items);
+}
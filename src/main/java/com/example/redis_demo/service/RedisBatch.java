@@ -0,0 +1,164 @@
+package com.example.redis_demo.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量命令收集器, 在 {@link RedisService#pipeline(java.util.function.Consumer)} 中使用
+ * <p>
+ * 所有命令在一次网络往返中发送, 返回的 {@link BatchResult} 在 pipeline 结束后可用
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public interface RedisBatch {
+
+        /**
+         * 普通缓存获取
+         *
+         * @param key 键
+         * @return 值
+         */
+        BatchResult<Object> get(String key);
+
+        /**
+         * 普通缓存放入
+         *
+         * @param key   键
+         * @param value 值
+         * @return true成功
+         */
+        BatchResult<Boolean> set(String key, Object value);
+
+        /**
+         * 普通缓存放入并设置时间
+         *
+         * @param key      键
+         * @param value    值
+         * @param time     时间 time要大于0 如果time小于等于0 将设置无限期
+         * @param timeUnit 时间单位
+         * @return true成功
+         */
+        BatchResult<Boolean> set(String key, Object value, Long time, TimeUnit timeUnit);
+
+        /**
+         * 删除缓存
+         *
+         * @param key 键
+         * @return 删除的个数
+         */
+        BatchResult<Long> del(String key);
+
+        /**
+         * 指定缓存失效时间
+         *
+         * @param key      键
+         * @param time     时间
+         * @param timeUnit 时间单位
+         * @return 是否成功
+         */
+        BatchResult<Boolean> expire(String key, Long time, TimeUnit timeUnit);
+
+        /**
+         * 递增
+         *
+         * @param key   键
+         * @param delta 要增加几
+         * @return 递增后的值
+         */
+        BatchResult<Long> incrBy(String key, Long delta);
+
+        /**
+         * 浮点递增
+         *
+         * @param key   键
+         * @param delta 要增加多少
+         * @return 递增后的值
+         */
+        BatchResult<Double> incrByFloat(String key, double delta);
+
+        /**
+         * HashGet
+         *
+         * @param key  键
+         * @param item 项
+         * @return 值
+         */
+        BatchResult<Object> hget(String key, String item);
+
+        /**
+         * 获取hash中多个项的值, 顺序与 items 一致
+         *
+         * @param key   键
+         * @param items 项
+         * @return 值
+         */
+        BatchResult<List<Object>> hmget(String key, List<String> items);
+
+        /**
+         * 获取hashKey对应的所有键值
+         *
+         * @param key 键
+         * @return 对应的多个键值
+         */
+        BatchResult<Map<Object, Object>> hgetAll(String key);
+
+        /**
+         * 向一张hash表中放入数据
+         *
+         * @param key   键
+         * @param item  项
+         * @param value 值
+         * @return true 新建 false 覆盖
+         */
+        BatchResult<Boolean> hset(String key, String item, Object value);
+
+        /**
+         * hash递增
+         *
+         * @param key  键
+         * @param item 项
+         * @param by   要增加几
+         * @return 递增后的值
+         */
+        BatchResult<Double> hincr(String key, String item, double by);
+
+        /**
+         * hash 整数递增
+         *
+         * @param key   键
+         * @param item  项
+         * @param delta 要增加几
+         * @return 递增后的值
+         */
+        BatchResult<Long> hincrLong(String key, String item, long delta);
+
+        /**
+         * 根据key获取Set中的所有值
+         *
+         * @param key 键
+         * @return 值
+         */
+        BatchResult<Set<Object>> smembers(String key);
+
+        /**
+         * 获取list缓存的内容
+         *
+         * @param key   键
+         * @param start 开始
+         * @param end   结束 0 到 -1代表所有值
+         * @return 值
+         */
+        BatchResult<List<Object>> lrange(String key, Long start, Long end);
+
+        /**
+         * 将值放入list表尾
+         *
+         * @param key   键
+         * @param value 值
+         * @return list 长度
+         */
+        BatchResult<Long> rpush(String key, Object value);
+}
@@ -0,0 +1,69 @@
+package com.example.redis_demo.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis 分布式锁, 持有者为 "进程实例 + 线程", 同一线程可重入
+ * <pre>
+ * RedisLock lock = redisLockService.getLock("order:1");
+ * if (lock.tryLock(3, TimeUnit.SECONDS)) {
+ *     try {
+ *         storage.write(data, lock.getFencingToken());
+ *     } finally {
+ *         lock.unlock();
+ *     }
+ * }
+ * </pre>
+ * 锁有租期, 持有者长时间停顿(GC、网络分区)后锁可能已被别人拿走, 此时旧持有者的写入应由存储按 fencing token 拒绝
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public interface RedisLock {
+
+        /**
+         * @return 锁名称
+         */
+        String getName();
+
+        /**
+         * 在等待时间内获取锁, 不指定租期, 持有期间由看门狗定期续期, 进程退出后租期到达自动释放
+         *
+         * @param waitTime 最长等待时间, 小于等于 0 时只尝试一次
+         * @param unit     时间单位
+         * @return true 获取成功
+         */
+        boolean tryLock(long waitTime, TimeUnit unit);
+
+        /**
+         * 在等待时间内获取锁, 租期固定, 到期自动释放, 不续期
+         *
+         * @param waitTime  最长等待时间, 小于等于 0 时只尝试一次
+         * @param leaseTime 租期, 小于等于 0 时与 {@link #tryLock(long, TimeUnit)} 相同
+         * @param unit      时间单位
+         * @return true 获取成功
+         */
+        boolean tryLock(long waitTime, long leaseTime, TimeUnit unit);
+
+        /**
+         * 释放一次持有, 重入几次就要释放几次
+         *
+         * @throws IllegalMonitorStateException 当前线程未持有该锁, 或租期已到被释放
+         */
+        void unlock();
+
+        /**
+         * 本次持有的 fencing token, 同一把锁每次被新的持有者获取时单调递增, 重入不变
+         *
+         * @return token
+         * @throws IllegalMonitorStateException 当前线程未持有该锁
+         */
+        long getFencingToken();
+
+        /**
+         * 查询 redis, 租期已到时返回 false
+         *
+         * @return 当前线程是否持有该锁
+         */
+        boolean isHeldByCurrentThread();
+}
@@ -0,0 +1,29 @@
+package com.example.redis_demo.service;
+
+/**
+ * 分布式锁
+ * <p>
+ * 获取、释放、续期都是 Lua 脚本, 释放和续期会校验持有者; 等待锁时订阅释放通知, 不轮询 SETNX。
+ * 同一名称的普通锁和公平锁共用一个键, 不要混用
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public interface RedisLockService {
+
+        /**
+         * 非公平锁, 锁释放时所有等待者同时竞争
+         *
+         * @param name 锁名称
+         * @return 锁, 可以缓存复用
+         */
+        RedisLock getLock(String name);
+
+        /**
+         * 公平锁, 按开始等待的顺序获取; 等待者超过 redis.lock.fair-queue-timeout-ms 没有续约时移出队列
+         *
+         * @param name 锁名称
+         * @return 锁, 可以缓存复用
+         */
+        RedisLock getFairLock(String name);
+}
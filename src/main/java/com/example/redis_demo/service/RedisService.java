@@ -1,9 +1,15 @@
 package com.example.redis_demo.service;
 
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * @author dengR
@@ -30,6 +36,8 @@ public interface RedisService {
 
         /**
          * 判断key是否存在
+         * <p>
+         * 开启 redis.bloom.enabled 时, 守卫前缀下布隆过滤器判定不存在的键直接返回 false, 不访问 redis
          *
          * @param key 键
          * @return true 存在 false不存在
@@ -45,6 +53,8 @@ public interface RedisService {
 
         /**
          * 普通缓存获取
+         * <p>
+         * 开启 redis.bloom.enabled 时, 守卫前缀下布隆过滤器判定不存在的键直接返回 null, 不访问 redis
          *
          * @param key 键
          * @return 值
@@ -137,6 +147,36 @@ public interface RedisService {
          */
         void decrByFloat(String key, double delta);
 
+        /**
+         * 计数器递增并返回递增后的值
+         * <p>
+         * 计数器以 redis 原生的十进制 ASCII 格式保存, 不经过值序列化器
+         *
+         * @param key   键
+         * @param delta 要增加几, 负数为递减
+         * @return 递增后的值
+         */
+        long incrAndGet(String key, long delta);
+
+        /**
+         * 浮点计数器递增并返回递增后的值
+         *
+         * @param key   键
+         * @param delta 要增加多少, 负数为递减
+         * @return 递增后的值
+         */
+        double incrAndGetFloat(String key, double delta);
+
+        /**
+         * 批量读取计数器
+         * <p>
+         * 不存在的键为 0; 兼容通过 set 写入的数值(经值序列化器解码), 非数值时抛出 IllegalStateException
+         *
+         * @param keys 键
+         * @return 值, 顺序与 keys 一致
+         */
+        long[] mgetLongs(String... keys);
+
         /**
          * HashGet
          *
@@ -164,7 +204,7 @@ public interface RedisService {
         Boolean hset(String key, Map<String, Object> map);
 
         /**
-         * HashSet 并设置时间
+         * HashSet 并设置时间, 写入和设置时间在一个 Lua 脚本中原子执行
          *
          * @param key  键
          * @param map  对应多个键值
@@ -233,6 +273,16 @@ public interface RedisService {
          */
         double hdecr(String key, String item, double by);
 
+        /**
+         * hash 整数计数器递增(HINCRBY), 项不存在时从 0 开始
+         *
+         * @param key   键
+         * @param item  项
+         * @param delta 要增加几, 负数为递减
+         * @return 递增后的值
+         */
+        long hincrLong(String key, String item, long delta);
+
         /**
          * 根据key获取Set中的所有值
          *
@@ -251,7 +301,7 @@ public interface RedisService {
         Boolean sismember(String key, Object value);
 
         /**
-         * 将set数据放入缓存
+         * 将set数据放入缓存, 添加和设置时间在一个 Lua 脚本中原子执行
          *
          * @param key    键
          * @param values 值 可以是多个
@@ -375,6 +425,27 @@ public interface RedisService {
          */
         void ltrim(String key, Long start, Long end);
 
+        /**
+         * 阻塞弹出列表头部的元素, 列表为空时最多等待 timeout; 等待期间占用一个连接, 只适合少量消费者的轻量队列,
+         * 需要确认和失败重投时使用 {@link com.example.redis_demo.queue.StreamQueue}
+         *
+         * @param key     键
+         * @param timeout 最长等待时间, 按秒向上取整
+         * @param unit    时间单位
+         * @return 元素, 超时为 null
+         */
+        Object blpop(String key, long timeout, TimeUnit unit);
+
+        /**
+         * 阻塞弹出列表尾部的元素, 用法同 {@link #blpop(String, long, TimeUnit)}
+         *
+         * @param key     键
+         * @param timeout 最长等待时间, 按秒向上取整
+         * @param unit    时间单位
+         * @return 元素, 超时为 null
+         */
+        Object brpop(String key, long timeout, TimeUnit unit);
+
         Boolean zadd(String key, Object value, Double score);
 
         Long zadd(String key, Map<Object, Double> values);
@@ -382,4 +453,248 @@ public interface RedisService {
         Set<Object> zrange(String key, Long start, Long end);
 
         Long zrem(String key, Object...values);
+
+        /**
+         * 按排名范围读取成员和分数, 分数从低到高
+         *
+         * @param key   键
+         * @param start 开始排名(从 0 开始, 负数从末尾计)
+         * @param end   结束排名(包含), -1 为最后一个
+         * @return 成员和分数, 按排名顺序
+         */
+        List<ScoredMember> zrangeWithScores(String key, long start, long end);
+
+        /**
+         * 按排名范围读取成员和分数, 分数从高到低, 排行榜分页用 start = page * size, end = start + size - 1
+         *
+         * @param key   键
+         * @param start 开始排名(从 0 开始)
+         * @param end   结束排名(包含)
+         * @return 成员和分数, 按排名顺序
+         */
+        List<ScoredMember> zrevrangeWithScores(String key, long start, long end);
+
+        /**
+         * 按分数范围读取, 分数从低到高
+         * <p>
+         * offset 较大时 redis 仍要跳过 offset 个成员; 深分页可用上一页最后的分数作为下一页的 min, 避免大 offset
+         *
+         * @param key    键
+         * @param min    最小分数(包含)
+         * @param max    最大分数(包含)
+         * @param offset 跳过的成员数
+         * @param count  最多返回的成员数, 负数表示不限
+         * @return 成员和分数
+         */
+        List<ScoredMember> zrangeByScore(String key, double min, double max, long offset, long count);
+
+        /**
+         * 按分数范围读取, 分数从高到低
+         *
+         * @param key    键
+         * @param max    最大分数(包含)
+         * @param min    最小分数(包含)
+         * @param offset 跳过的成员数
+         * @param count  最多返回的成员数, 负数表示不限
+         * @return 成员和分数
+         */
+        List<ScoredMember> zrevrangeByScore(String key, double max, double min, long offset, long count);
+
+        /**
+         * @param key    键
+         * @param member 成员
+         * @return 分数从低到高的排名(从 0 开始), 成员不存在时为 null
+         */
+        Long zrank(String key, Object member);
+
+        /**
+         * @param key    键
+         * @param member 成员
+         * @return 分数从高到低的排名(从 0 开始), 成员不存在时为 null
+         */
+        Long zrevrank(String key, Object member);
+
+        /**
+         * @param key    键
+         * @param member 成员
+         * @return 分数, 成员不存在时为 null
+         */
+        Double zscore(String key, Object member);
+
+        /**
+         * 增加成员的分数, 成员不存在时以 delta 为分数加入
+         *
+         * @param key    键
+         * @param member 成员
+         * @param delta  增量
+         * @return 增加后的分数
+         */
+        double zincrby(String key, Object member, double delta);
+
+        /**
+         * @param key 键
+         * @return 成员数
+         */
+        long zcard(String key);
+
+        /**
+         * @param key 键
+         * @param min 最小分数(包含)
+         * @param max 最大分数(包含)
+         * @return 分数范围内的成员数
+         */
+        long zcount(String key, double min, double max);
+
+        /**
+         * 删除分数范围内的成员
+         *
+         * @param key 键
+         * @param min 最小分数(包含)
+         * @param max 最大分数(包含)
+         * @return 删除的成员数
+         */
+        long zremrangeByScore(String key, double min, double max);
+
+        /**
+         * 多个有序集合的并集写入 destKey, 同一成员的分数相加
+         * <p>
+         * destKey 和 keys 必须在同一分片(集群下同一 slot), 用 {tag} 保证
+         *
+         * @param destKey 结果键
+         * @param keys    参与计算的键
+         * @return 结果中的成员数
+         * @throws IllegalArgumentException 键不在同一分片
+         */
+        long zunionstore(String destKey, Collection<String> keys);
+
+        /**
+         * 多个有序集合的交集写入 destKey, 同一成员的分数相加; 分片要求同 {@link #zunionstore(String, Collection)}
+         *
+         * @param destKey 结果键
+         * @param keys    参与计算的键
+         * @return 结果中的成员数
+         * @throws IllegalArgumentException 键不在同一分片
+         */
+        long zinterstore(String destKey, Collection<String> keys);
+
+        /**
+         * 批量获取, 一次网络往返(MGET)
+         *
+         * @param keys 键
+         * @return 值, 顺序与 keys 一致, 不存在的键对应 null
+         */
+        List<Object> mget(Collection<String> keys);
+
+        /**
+         * 批量放入
+         *
+         * @param map 键值
+         * @return true成功 false失败
+         */
+        Boolean mset(Map<String, Object> map);
+
+        /**
+         * 批量放入并设置时间, 所有命令在一次 pipeline 中发送
+         *
+         * @param map  键值
+         * @param time 时间(秒) time要大于0 如果time小于等于0 将设置无限期
+         * @return true成功 false失败
+         */
+        Boolean mset(Map<String, Object> map, Long time);
+
+        /**
+         * 批量获取多个hash的多个项, 所有 HMGET 在一次 pipeline 中发送
+         *
+         * @param items 键 -> 项
+         * @return 键 -> (项 -> 值), 顺序与请求一致, 不存在的项对应 null
+         */
+        Map<String, Map<String, Object>> hgetMulti(Map<String, Collection<String>> items);
+
+        /**
+         * 在一次网络往返中执行多条命令
+         * <pre>
+         * List&lt;BatchResult&lt;?&gt;&gt; results = redisService.pipeline(batch -&gt; {
+         *     batch.get("user:1");
+         *     batch.hset("stat", "pv", 1);
+         * });
+         * </pre>
+         *
+         * @param commands 命令收集
+         * @return 每条命令的结果, 顺序与加入顺序一致, 单条失败不影响其它命令
+         */
+        List<BatchResult<?>> pipeline(Consumer<RedisBatch> commands);
+
+        /**
+         * 缓存读取, 未命中时调用 loader 加载并写入, 同一个键并发未命中时只加载一次(进程内合并, 跨节点以租约互斥)
+         * <p>
+         * 值以 hash 形式保存(含加载耗时和逻辑过期时间), 只能通过 getOrLoad 读取。
+         * 到期前按加载耗时概率性提前刷新, 到期后的 redis.loader.stale-seconds 内返回旧值并在后台刷新。
+         * loader 返回 null 时不缓存
+         *
+         * @param key    键
+         * @param time   时间(秒)
+         * @param loader 加载, 如查询数据库
+         * @return 值
+         */
+        <T> T getOrLoad(String key, Long time, Supplier<T> loader);
+
+        <T> T getOrLoad(String key, Long time, TimeUnit timeUnit, Supplier<T> loader);
+
+        /**
+         * 按游标分批遍历hash, 每批 count 项, 不会一次性读取整个hash
+         * <p>
+         * 遍历期间占用一个连接, 必须关闭返回的 Stream 才会归还:
+         * <pre>
+         * try (Stream&lt;Map.Entry&lt;Object, Object&gt;&gt; entries = redisService.hscan("myhash", "user:*", 500)) {
+         *     entries.forEach(...);
+         * }
+         * </pre>
+         * 遍历期间被修改的项可能重复或遗漏, 与 HSCAN 语义一致
+         *
+         * @param key     键
+         * @param pattern 项的匹配模式, null 表示全部
+         * @param count   每批数量
+         * @return 项 -> 值
+         */
+        Stream<Map.Entry<Object, Object>> hscan(String key, String pattern, long count);
+
+        /**
+         * 按游标分批遍历Set, 用法同 {@link #hscan(String, String, long)}
+         *
+         * @param key     键
+         * @param pattern 匹配模式, null 表示全部
+         * @param count   每批数量
+         * @return 值
+         */
+        Stream<Object> sscan(String key, String pattern, long count);
+
+        /**
+         * 按游标分批遍历ZSet, 用法同 {@link #hscan(String, String, long)}
+         *
+         * @param key     键
+         * @param pattern 匹配模式, null 表示全部
+         * @param count   每批数量
+         * @return 值和分数
+         */
+        Stream<ZSetOperations.TypedTuple<Object>> zscan(String key, String pattern, long count);
+
+        /**
+         * 按游标分批遍历键, 代替 KEYS, 用法同 {@link #hscan(String, String, long)}
+         *
+         * @param pattern 匹配模式, null 表示全部
+         * @param count   每批数量
+         * @return 键
+         */
+        Stream<String> scan(String pattern, long count);
+
+        /**
+         * 分页读取list, 每次 LRANGE count 个, 不占用连接
+         * <p>
+         * 按下标分页, 遍历期间在表头插入或删除会导致重复或遗漏
+         *
+         * @param key   键
+         * @param count 每页数量
+         * @return 值
+         */
+        Stream<Object> lscan(String key, long count);
 }
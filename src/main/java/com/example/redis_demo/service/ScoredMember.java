@@ -0,0 +1,54 @@
+package com.example.redis_demo.service;
+
+import java.util.Objects;
+
+/**
+ * 有序集合的成员和分数
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class ScoredMember {
+
+    private final Object member;
+
+    private final double score;
+
+    public ScoredMember(Object member, double score) {
+        this.member = member;
+        this.score = score;
+    }
+
+    /**
+     * @return 成员, 按值序列化器反序列化
+     */
+    public Object getMember() {
+        return member;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ScoredMember)) {
+            return false;
+        }
+        ScoredMember that = (ScoredMember) o;
+        return Double.compare(score, that.score) == 0 && Objects.equals(member, that.member);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(member, score);
+    }
+
+    @Override
+    public String toString() {
+        return member + "=" + score;
+    }
+}
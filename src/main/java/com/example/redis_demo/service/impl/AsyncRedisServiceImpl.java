@@ -0,0 +1,321 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.service.AsyncRedisService;
+import com.example.redis_demo.service.ReactiveRedisService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订阅 {@link ReactiveRedisService} 返回的 Mono, 调用即发出命令
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Service
+@ConditionalOnExpression("'${redis.mode:standalone}' != 'sharded'")
+public class AsyncRedisServiceImpl implements AsyncRedisService {
+
+    @Autowired
+    private ReactiveRedisService reactiveRedisService;
+
+    public AsyncRedisServiceImpl() {
+    }
+
+    AsyncRedisServiceImpl(ReactiveRedisService reactiveRedisService) {
+        this.reactiveRedisService = reactiveRedisService;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> expire(String key, Long time) {
+        return reactiveRedisService.expire(key, time).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> expire(String key, Long time, TimeUnit timeUnit) {
+        return reactiveRedisService.expire(key, time, timeUnit).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> getExpire(String key) {
+        return reactiveRedisService.getExpire(key).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hasKey(String key) {
+        return reactiveRedisService.hasKey(key).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> del(String... key) {
+        return reactiveRedisService.del(key).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Object> get(String key) {
+        return reactiveRedisService.get(key).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> set(String key, Object value) {
+        return reactiveRedisService.set(key, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> set(String key, Object value, Long secondTime) {
+        return reactiveRedisService.set(key, value, secondTime).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> set(String key, Object value, Long time, TimeUnit timeUnit) {
+        return reactiveRedisService.set(key, value, time, timeUnit).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setnx(String key, Object value) {
+        return reactiveRedisService.setnx(key, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setnx(String key, Object value, Long secondTime) {
+        return reactiveRedisService.setnx(key, value, secondTime).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setnx(String key, Object value, Long time, TimeUnit timeUnit) {
+        return reactiveRedisService.setnx(key, value, time, timeUnit).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setex(String key, Object value) {
+        return reactiveRedisService.setex(key, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setex(String key, Object value, Long secondTime) {
+        return reactiveRedisService.setex(key, value, secondTime).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setex(String key, Object value, Long time, TimeUnit timeUnit) {
+        return reactiveRedisService.setex(key, value, time, timeUnit).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Object> getSet(String key, Object value) {
+        return reactiveRedisService.getSet(key, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> incrBy(String key, Long delta) {
+        return reactiveRedisService.incrBy(key, delta).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> decrBy(String key, Long delta) {
+        return reactiveRedisService.decrBy(key, delta).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Double> incrByFloat(String key, double delta) {
+        return reactiveRedisService.incrByFloat(key, delta).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Double> decrByFloat(String key, double delta) {
+        return reactiveRedisService.decrByFloat(key, delta).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Object> hget(String key, String item) {
+        return reactiveRedisService.hget(key, item).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Map<Object, Object>> hgetAll(String key) {
+        return reactiveRedisService.hgetAll(key).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hset(String key, Map<String, Object> map) {
+        return reactiveRedisService.hset(key, map).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hset(String key, Map<String, Object> map, Long time) {
+        return reactiveRedisService.hset(key, map, time).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hset(String key, String item, Object value) {
+        return reactiveRedisService.hset(key, item, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hset(String key, String item, Object value, Long time) {
+        return reactiveRedisService.hset(key, item, value, time).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hset(String key, String item, Object value, Long time, TimeUnit timeUnit) {
+        return reactiveRedisService.hset(key, item, value, time, timeUnit).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> hdel(String key, Object... item) {
+        return reactiveRedisService.hdel(key, item).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hHasKey(String key, String item) {
+        return reactiveRedisService.hHasKey(key, item).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Double> hincr(String key, String item, double by) {
+        return reactiveRedisService.hincr(key, item, by).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Double> hdecr(String key, String item, double by) {
+        return reactiveRedisService.hdecr(key, item, by).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Set<Object>> smembers(String key) {
+        return reactiveRedisService.smembers(key).<Set<Object>>collect(LinkedHashSet::new, Set::add).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> sismember(String key, Object value) {
+        return reactiveRedisService.sismember(key, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> sadd(String key, Long time, Object... values) {
+        return reactiveRedisService.sadd(key, time, values).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> sadd(String key, Long time, TimeUnit timeUnit, Object... values) {
+        return reactiveRedisService.sadd(key, time, timeUnit, values).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> sadd(String key, Object... values) {
+        return reactiveRedisService.sadd(key, values).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> scard(String key) {
+        return reactiveRedisService.scard(key).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> srem(String key, Object... values) {
+        return reactiveRedisService.srem(key, values).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> smove(String sourceKey, String targetKey, Object value) {
+        return reactiveRedisService.smove(sourceKey, targetKey, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<List<Object>> lrange(String key, Long start, Long end) {
+        return reactiveRedisService.lrange(key, start, end).collectList().toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> llen(String key) {
+        return reactiveRedisService.llen(key).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Object> lindex(String key, Long index) {
+        return reactiveRedisService.lindex(key, index).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> lpush(String key, Object value) {
+        return reactiveRedisService.lpush(key, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> rpush(String key, Object value) {
+        return reactiveRedisService.rpush(key, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> lpush(String key, List<Object> value) {
+        return reactiveRedisService.lpush(key, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> rpush(String key, List<Object> value) {
+        return reactiveRedisService.rpush(key, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> lset(String key, Long index, Object value) {
+        return reactiveRedisService.lset(key, index, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> lrem(String key, Long count, Object value) {
+        return reactiveRedisService.lrem(key, count, value).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> ltrim(String key, Long start, Long end) {
+        return reactiveRedisService.ltrim(key, start, end).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> zadd(String key, Object value, Double score) {
+        return reactiveRedisService.zadd(key, value, score).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> zadd(String key, Map<Object, Double> values) {
+        return reactiveRedisService.zadd(key, values).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Set<Object>> zrange(String key, Long start, Long end) {
+        return reactiveRedisService.zrange(key, start, end).<Set<Object>>collect(LinkedHashSet::new, Set::add).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> zrem(String key, Object... values) {
+        return reactiveRedisService.zrem(key, values).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<List<Object>> mget(Collection<String> keys) {
+        return reactiveRedisService.mget(keys).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> mset(Map<String, Object> map) {
+        return reactiveRedisService.mset(map).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> mset(Map<String, Object> map, Long time) {
+        return reactiveRedisService.mset(map, time).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Map<String, Object>>> hgetMulti(Map<String, Collection<String>> items) {
+        return reactiveRedisService.hgetMulti(items).toFuture();
+    }
+}
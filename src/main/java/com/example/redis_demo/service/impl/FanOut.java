@@ -0,0 +1,94 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.metrics.RedisInvocationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多键命令按分片拆开后的并行执行
+ * <p>
+ * 第一个任务在调用线程上执行, 其余提交到线程池; 只有一个分片时不经过线程池。
+ * 线程池满时由调用线程自己执行, 不丢弃也不无限排队;
+ * 使用虚拟线程时每个任务一个线程, 并发受连接池(借用闸门)限制
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+class FanOut {
+
+    private final ExecutorService executor;
+
+    FanOut(int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(threads * 4), runnable -> {
+            Thread thread = new Thread(runnable, "redis-fan-out-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * @param executor 执行器, 如每任务一个虚拟线程的执行器
+     */
+    FanOut(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 执行所有任务并等待完成
+     *
+     * @param tasks 任务
+     * @return 结果, 顺序与任务一致
+     * @throws RuntimeException 任一任务失败时抛出其异常
+     */
+    <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) {
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<>(tasks.size() - 1);
+        for (int i = 1; i < tasks.size(); i++) {
+            futures.add(executor.submit(RedisInvocationContext.propagate(tasks.get(i))));
+        }
+        RuntimeException failure = null;
+        try {
+            results.add(tasks.get(0).call());
+        } catch (Exception e) {
+            failure = unwrap(e);
+        }
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = failure == null ? new IllegalStateException("等待分片结果时被中断", e) : failure;
+            } catch (ExecutionException e) {
+                failure = failure == null ? unwrap(e.getCause()) : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        return error instanceof RuntimeException ? (RuntimeException) error : new IllegalStateException(error);
+    }
+}
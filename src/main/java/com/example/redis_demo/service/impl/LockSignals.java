@@ -0,0 +1,116 @@
+package com.example.redis_demo.service.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内按锁等待释放通知
+ * <p>
+ * 只有正在等待的锁才有信号对象, 最后一个等待者离开时移除。等待前先记下释放次数,
+ * 尝试获取失败后只在释放次数没有变化时才等待, 尝试期间到达的通知不会丢失
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+class LockSignals {
+
+    private final ConcurrentHashMap<String, Signal> signals = new ConcurrentHashMap<>();
+
+    /**
+     * 开始等待, 与 {@link #unregister(String)} 成对调用
+     *
+     * @param key 锁的键
+     * @return 信号
+     */
+    Signal register(String key) {
+        return signals.compute(key, (k, signal) -> {
+            if (signal == null) {
+                signal = new Signal();
+            }
+            signal.waiters++;
+            return signal;
+        });
+    }
+
+    void unregister(String key) {
+        signals.computeIfPresent(key, (k, signal) -> --signal.waiters == 0 ? null : signal);
+    }
+
+    /**
+     * 锁已释放, 唤醒本进程内的等待者
+     *
+     * @param key 锁的键
+     */
+    void released(String key) {
+        Signal signal = signals.get(key);
+        if (signal != null) {
+            signal.release();
+        }
+    }
+
+    /**
+     * @return 有等待者的锁的数量
+     */
+    int size() {
+        return signals.size();
+    }
+
+    static final class Signal {
+
+        /**
+         * 只在 map 的 compute 中修改
+         */
+        private int waiters;
+
+        private long releases;
+
+        /**
+         * 不用 synchronized/wait: 虚拟线程在 monitor 上等待会占住载体线程
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition changed = lock.newCondition();
+
+        long releases() {
+            lock.lock();
+            try {
+                return releases;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                releases++;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @param seen   尝试获取前的释放次数
+         * @param millis 最长等待时间(毫秒)
+         * @return true 期间有释放通知
+         */
+        boolean await(long seen, long millis) throws InterruptedException {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(millis);
+            lock.lock();
+            try {
+                while (releases == seen) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = changed.awaitNanos(remaining);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
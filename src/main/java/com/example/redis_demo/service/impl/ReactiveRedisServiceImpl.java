@@ -0,0 +1,470 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.bloom.BloomGuard;
+import com.example.redis_demo.cache.NearCache;
+import com.example.redis_demo.codec.EncodedValue;
+import com.example.redis_demo.codec.SerializationContext;
+import com.example.redis_demo.service.ReactiveRedisService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Service
+@ConditionalOnExpression("'${redis.mode:standalone}' != 'sharded'")
+public class ReactiveRedisServiceImpl implements ReactiveRedisService {
+
+    @Autowired
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+
+    /**
+     * 与 redisTemplate 相同的值序列化, 写入前在调用线程里按键序列化
+     */
+    @Autowired
+    @Qualifier("redisValueSerializer")
+    private RedisSerializer<Object> redisValueSerializer;
+
+    /**
+     * 进程内一级缓存, 这里只负责写后失效, 读取不经过一级缓存
+     */
+    @Autowired(required = false)
+    private NearCache nearCache;
+
+    /**
+     * 布隆过滤器守卫, 写入前把受守卫的键加入过滤器, 与同步接口写入的键对 get 同样可见
+     */
+    @Autowired(required = false)
+    private BloomGuard bloomGuard;
+
+    public ReactiveRedisServiceImpl() {
+    }
+
+    ReactiveRedisServiceImpl(ReactiveRedisTemplate<String, Object> reactiveRedisTemplate, RedisSerializer<Object> redisValueSerializer,
+                             NearCache nearCache, BloomGuard bloomGuard) {
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.redisValueSerializer = redisValueSerializer;
+        this.nearCache = nearCache;
+        this.bloomGuard = bloomGuard;
+    }
+
+    @Override
+    public Mono<Boolean> expire(String key, Long time) {
+        return expire(key, time, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Mono<Boolean> expire(String key, Long time, TimeUnit timeUnit) {
+        if (time > 0) {
+            return invalidating(reactiveRedisTemplate.expire(key, Duration.ofMillis(timeUnit.toMillis(time))), key);
+        }
+        return Mono.just(false);
+    }
+
+    @Override
+    public Mono<Long> getExpire(String key) {
+        return reactiveRedisTemplate.getExpire(key)
+                .map(duration -> duration.isZero() ? -1L : duration.getSeconds())
+                .defaultIfEmpty(-2L);
+    }
+
+    @Override
+    public Mono<Boolean> hasKey(String key) {
+        return reactiveRedisTemplate.hasKey(key);
+    }
+
+    @Override
+    public Mono<Long> del(String... key) {
+        if (key == null || key.length == 0) {
+            return Mono.just(0L);
+        }
+        return invalidating(reactiveRedisTemplate.delete(key), key);
+    }
+
+    @Override
+    public Mono<Object> get(String key) {
+        if (key == null) {
+            return Mono.empty();
+        }
+        return reactiveRedisTemplate.opsForValue().get(key);
+    }
+
+    @Override
+    public Mono<Boolean> set(String key, Object value) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForValue().set(key, encode(key, value)), key), key);
+    }
+
+    @Override
+    public Mono<Boolean> set(String key, Object value, Long secondTime) {
+        return set(key, value, secondTime, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Mono<Boolean> set(String key, Object value, Long time, TimeUnit timeUnit) {
+        if (time <= 0) {
+            return set(key, value);
+        }
+        return invalidating(guarded(reactiveRedisTemplate.opsForValue().set(key, encode(key, value), duration(time, timeUnit)), key), key);
+    }
+
+    @Override
+    public Mono<Boolean> setnx(String key, Object value) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForValue().setIfAbsent(key, encode(key, value)), key), key);
+    }
+
+    @Override
+    public Mono<Boolean> setnx(String key, Object value, Long secondTime) {
+        return setnx(key, value, secondTime, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Mono<Boolean> setnx(String key, Object value, Long time, TimeUnit timeUnit) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForValue().setIfAbsent(key, encode(key, value), duration(time, timeUnit)), key), key);
+    }
+
+    @Override
+    public Mono<Boolean> setex(String key, Object value) {
+        return invalidating(reactiveRedisTemplate.opsForValue().setIfPresent(key, encode(key, value)), key);
+    }
+
+    @Override
+    public Mono<Boolean> setex(String key, Object value, Long secondTime) {
+        return setex(key, value, secondTime, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Mono<Boolean> setex(String key, Object value, Long time, TimeUnit timeUnit) {
+        return invalidating(reactiveRedisTemplate.opsForValue().setIfPresent(key, encode(key, value), duration(time, timeUnit)), key);
+    }
+
+    @Override
+    public Mono<Object> getSet(String key, Object value) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForValue().getAndSet(key, encode(key, value)), key), key);
+    }
+
+    @Override
+    public Mono<Long> incrBy(String key, Long delta) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForValue().increment(key, delta), key), key);
+    }
+
+    @Override
+    public Mono<Long> decrBy(String key, Long delta) {
+        return incrBy(key, -delta);
+    }
+
+    @Override
+    public Mono<Double> incrByFloat(String key, double delta) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForValue().increment(key, delta), key), key);
+    }
+
+    @Override
+    public Mono<Double> decrByFloat(String key, double delta) {
+        return incrByFloat(key, -delta);
+    }
+
+    @Override
+    public Mono<Object> hget(String key, String item) {
+        return reactiveRedisTemplate.opsForHash().get(key, item);
+    }
+
+    @Override
+    public Mono<Map<Object, Object>> hgetAll(String key) {
+        return reactiveRedisTemplate.opsForHash().entries(key)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue, LinkedHashMap::new);
+    }
+
+    @Override
+    public Mono<Boolean> hset(String key, Map<String, Object> map) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForHash().putAll(key, encode(key, map)), key), key);
+    }
+
+    @Override
+    public Mono<Boolean> hset(String key, Map<String, Object> map, Long time) {
+        return withExpire(hset(key, map), key, time, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Mono<Boolean> hset(String key, String item, Object value) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForHash().put(key, item, encode(key, value)).thenReturn(true), key), key);
+    }
+
+    @Override
+    public Mono<Boolean> hset(String key, String item, Object value, Long time) {
+        return hset(key, item, value, time, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Mono<Boolean> hset(String key, String item, Object value, Long time, TimeUnit timeUnit) {
+        return withExpire(hset(key, item, value), key, time, timeUnit);
+    }
+
+    @Override
+    public Mono<Long> hdel(String key, Object... item) {
+        return invalidating(reactiveRedisTemplate.opsForHash().remove(key, item), key);
+    }
+
+    @Override
+    public Mono<Boolean> hHasKey(String key, String item) {
+        return reactiveRedisTemplate.opsForHash().hasKey(key, item);
+    }
+
+    @Override
+    public Mono<Double> hincr(String key, String item, double by) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForHash().increment(key, item, by), key), key);
+    }
+
+    @Override
+    public Mono<Double> hdecr(String key, String item, double by) {
+        return hincr(key, item, -by);
+    }
+
+    @Override
+    public Flux<Object> smembers(String key) {
+        return reactiveRedisTemplate.opsForSet().members(key);
+    }
+
+    @Override
+    public Mono<Boolean> sismember(String key, Object value) {
+        return reactiveRedisTemplate.opsForSet().isMember(key, encode(key, value));
+    }
+
+    @Override
+    public Mono<Long> sadd(String key, Long time, Object... values) {
+        return sadd(key, time, TimeUnit.SECONDS, values);
+    }
+
+    @Override
+    public Mono<Long> sadd(String key, Long time, TimeUnit timeUnit, Object... values) {
+        return withExpire(sadd(key, values), key, time, timeUnit);
+    }
+
+    @Override
+    public Mono<Long> sadd(String key, Object... values) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForSet().add(key, encode(key, values)), key), key);
+    }
+
+    @Override
+    public Mono<Long> scard(String key) {
+        return reactiveRedisTemplate.opsForSet().size(key);
+    }
+
+    @Override
+    public Mono<Long> srem(String key, Object... values) {
+        return invalidating(reactiveRedisTemplate.opsForSet().remove(key, encode(key, values)), key);
+    }
+
+    @Override
+    public Mono<Boolean> smove(String sourceKey, String targetKey, Object value) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForSet().move(sourceKey, encode(sourceKey, value), targetKey), targetKey), sourceKey, targetKey);
+    }
+
+    @Override
+    public Flux<Object> lrange(String key, Long start, Long end) {
+        return reactiveRedisTemplate.opsForList().range(key, start, end);
+    }
+
+    @Override
+    public Mono<Long> llen(String key) {
+        return reactiveRedisTemplate.opsForList().size(key);
+    }
+
+    @Override
+    public Mono<Object> lindex(String key, Long index) {
+        return reactiveRedisTemplate.opsForList().index(key, index);
+    }
+
+    @Override
+    public Mono<Long> lpush(String key, Object value) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForList().leftPush(key, encode(key, value)), key), key);
+    }
+
+    @Override
+    public Mono<Long> rpush(String key, Object value) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForList().rightPush(key, encode(key, value)), key), key);
+    }
+
+    @Override
+    public Mono<Long> lpush(String key, List<Object> value) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForList().leftPushAll(key, encode(key, value.toArray())), key), key);
+    }
+
+    @Override
+    public Mono<Long> rpush(String key, List<Object> value) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForList().rightPushAll(key, encode(key, value.toArray())), key), key);
+    }
+
+    @Override
+    public Mono<Boolean> lset(String key, Long index, Object value) {
+        return invalidating(reactiveRedisTemplate.opsForList().set(key, index, encode(key, value)), key);
+    }
+
+    @Override
+    public Mono<Long> lrem(String key, Long count, Object value) {
+        return invalidating(reactiveRedisTemplate.opsForList().remove(key, count, encode(key, value)), key);
+    }
+
+    @Override
+    public Mono<Boolean> ltrim(String key, Long start, Long end) {
+        return invalidating(reactiveRedisTemplate.opsForList().trim(key, start, end), key);
+    }
+
+    @Override
+    public Mono<Boolean> zadd(String key, Object value, Double score) {
+        return invalidating(guarded(reactiveRedisTemplate.opsForZSet().add(key, encode(key, value), score), key), key);
+    }
+
+    @Override
+    public Mono<Long> zadd(String key, Map<Object, Double> values) {
+        if (values == null) {
+            return Mono.just(0L);
+        }
+        List<ZSetOperations.TypedTuple<Object>> tuples = new ArrayList<>(values.size());
+        for (Map.Entry<Object, Double> entry : values.entrySet()) {
+            tuples.add(ZSetOperations.TypedTuple.of(encode(key, entry.getKey()), entry.getValue()));
+        }
+        return invalidating(guarded(reactiveRedisTemplate.opsForZSet().addAll(key, tuples), key), key);
+    }
+
+    @Override
+    public Flux<Object> zrange(String key, Long start, Long end) {
+        return reactiveRedisTemplate.opsForZSet().range(key, Range.closed(start, end));
+    }
+
+    @Override
+    public Mono<Long> zrem(String key, Object... values) {
+        return invalidating(reactiveRedisTemplate.opsForZSet().remove(key, encode(key, values)), key);
+    }
+
+    @Override
+    public Mono<List<Object>> mget(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        return reactiveRedisTemplate.opsForValue().multiGet(keys);
+    }
+
+    @Override
+    public Mono<Boolean> mset(Map<String, Object> map) {
+        if (map == null || map.isEmpty()) {
+            return Mono.just(true);
+        }
+        Map<String, Object> encoded = new LinkedHashMap<>(map.size() * 2);
+        map.forEach((key, value) -> encoded.put(key, encode(key, value)));
+        String[] keys = map.keySet().toArray(new String[0]);
+        return invalidating(guarded(reactiveRedisTemplate.opsForValue().multiSet(encoded), keys), keys);
+    }
+
+    @Override
+    public Mono<Boolean> mset(Map<String, Object> map, Long time) {
+        if (time == null || time <= 0) {
+            return mset(map);
+        }
+        return Flux.fromIterable(map.entrySet())
+                .flatMap(entry -> set(entry.getKey(), entry.getValue(), time, TimeUnit.SECONDS))
+                .all(Boolean::booleanValue);
+    }
+
+    @Override
+    public Mono<Map<String, Map<String, Object>>> hgetMulti(Map<String, Collection<String>> items) {
+        if (items == null || items.isEmpty()) {
+            return Mono.just(new LinkedHashMap<>());
+        }
+        return Flux.fromIterable(items.entrySet())
+                .flatMapSequential(entry -> {
+                    List<Object> fields = new ArrayList<>(entry.getValue());
+                    Mono<List<Object>> fetched = fields.isEmpty() ? Mono.just(Collections.emptyList())
+                            : reactiveRedisTemplate.opsForHash().multiGet(entry.getKey(), fields);
+                    return fetched.map(values -> {
+                        Map<String, Object> hash = new LinkedHashMap<>();
+                        for (int i = 0; i < fields.size(); i++) {
+                            hash.put((String) fields.get(i), i < values.size() ? values.get(i) : null);
+                        }
+                        return Collections.singletonMap(entry.getKey(), hash);
+                    });
+                })
+                .<Map<String, Map<String, Object>>>collect(LinkedHashMap::new, Map::putAll);
+    }
+
+    /**
+     * 在调用线程里按键序列化, 使按键前缀的序列化策略(如压缩)生效, 也避免在 IO 线程上做序列化
+     */
+    private EncodedValue encode(String key, Object value) {
+        String previous = SerializationContext.enter(key);
+        try {
+            return EncodedValue.of(redisValueSerializer.serialize(value));
+        } finally {
+            SerializationContext.exit(previous);
+        }
+    }
+
+    private Object[] encode(String key, Object[] values) {
+        Object[] encoded = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = encode(key, values[i]);
+        }
+        return encoded;
+    }
+
+    private Map<String, Object> encode(String key, Map<String, Object> map) {
+        Map<String, Object> encoded = new LinkedHashMap<>(map.size() * 2);
+        map.forEach((item, value) -> encoded.put(item, encode(key, value)));
+        return encoded;
+    }
+
+    private <T> Mono<T> withExpire(Mono<T> write, String key, Long time, TimeUnit timeUnit) {
+        if (time == null || time <= 0) {
+            return write;
+        }
+        return write.flatMap(result -> expire(key, time, timeUnit).thenReturn(result));
+    }
+
+    /**
+     * 写入前把受守卫的键加入布隆过滤器; 过滤器访问 redis 是阻塞调用, 放到 boundedElastic 线程上
+     */
+    private <T> Mono<T> guarded(Mono<T> write, String... keys) {
+        if (bloomGuard == null) {
+            return write;
+        }
+        return Mono.fromRunnable(() -> bloomGuard.addingAll(Arrays.asList(keys)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(write);
+    }
+
+    /**
+     * 写完成后失效一级缓存, 失效通知会访问 redis, 放到 boundedElastic 线程上避免阻塞 IO 线程
+     */
+    private <T> Mono<T> invalidating(Mono<T> write, String... keys) {
+        if (nearCache == null) {
+            return write;
+        }
+        return write.doFinally(signal -> Schedulers.boundedElastic().schedule(() -> {
+            for (String key : keys) {
+                nearCache.invalidate(key);
+            }
+        }));
+    }
+
+    private static Duration duration(Long time, TimeUnit timeUnit) {
+        return Duration.ofMillis(timeUnit.toMillis(time));
+    }
+}
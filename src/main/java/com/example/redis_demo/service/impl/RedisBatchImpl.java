@@ -0,0 +1,449 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.codec.SerializationContext;
+import com.example.redis_demo.routing.Pipelines;
+import com.example.redis_demo.service.BatchResult;
+import com.example.redis_demo.service.RedisBatch;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * pipeline 命令收集与执行
+ * <p>
+ * 命令先记录在本地, {@link #execute()} 时借用一个连接一次性发送, 再按顺序把原始结果反序列化到对应的 {@link BatchResult}。
+ * 所有命令发往同一个节点, 分片/集群模式下由 {@link ShardedBatch} 按分片拆分
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+class RedisBatchImpl implements RedisBatch {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final List<Command<?>> commands = new ArrayList<>();
+
+    private final Set<String> writtenKeys = new LinkedHashSet<>();
+
+    RedisBatchImpl(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public BatchResult<Object> get(String key) {
+        byte[] rawKey = rawKey(key);
+        return add("GET", key, c -> c.stringCommands().get(rawKey), this::deserializeValue);
+    }
+
+    @Override
+    public BatchResult<Boolean> set(String key, Object value) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawValue = rawValue(key, value);
+        return write("SET", key, c -> c.stringCommands().set(rawKey, rawValue), Boolean.class::cast);
+    }
+
+    @Override
+    public BatchResult<Boolean> set(String key, Object value, Long time, TimeUnit timeUnit) {
+        if (time == null || time <= 0) {
+            return set(key, value);
+        }
+        byte[] rawKey = rawKey(key);
+        byte[] rawValue = rawValue(key, value);
+        Expiration expiration = Expiration.from(time, timeUnit);
+        return write("SET", key, c -> c.stringCommands().set(rawKey, rawValue, expiration, RedisStringCommands.SetOption.upsert()),
+                Boolean.class::cast);
+    }
+
+    @Override
+    public BatchResult<Long> del(String key) {
+        byte[] rawKey = rawKey(key);
+        return write("DEL", key, c -> c.keyCommands().del(rawKey), Long.class::cast);
+    }
+
+    @Override
+    public BatchResult<Boolean> expire(String key, Long time, TimeUnit timeUnit) {
+        byte[] rawKey = rawKey(key);
+        long millis = timeUnit.toMillis(time);
+        return write("PEXPIRE", key, c -> c.keyCommands().pExpire(rawKey, millis), Boolean.class::cast);
+    }
+
+    @Override
+    public BatchResult<Long> incrBy(String key, Long delta) {
+        byte[] rawKey = rawKey(key);
+        return write("INCRBY", key, c -> c.stringCommands().incrBy(rawKey, delta), Long.class::cast);
+    }
+
+    @Override
+    public BatchResult<Double> incrByFloat(String key, double delta) {
+        byte[] rawKey = rawKey(key);
+        return write("INCRBYFLOAT", key, c -> c.stringCommands().incrBy(rawKey, delta), Double.class::cast);
+    }
+
+    @Override
+    public BatchResult<Object> hget(String key, String item) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawItem = rawHashKey(item);
+        return add("HGET", key, c -> c.hashCommands().hGet(rawKey, rawItem), this::deserializeHashValue);
+    }
+
+    @Override
+    public BatchResult<List<Object>> hmget(String key, List<String> items) {
+        byte[] rawKey = rawKey(key);
+        byte[][] rawItems = new byte[items.size()][];
+        for (int i = 0; i < rawItems.length; i++) {
+            rawItems[i] = rawHashKey(items.get(i));
+        }
+        return add("HMGET", key, c -> c.hashCommands().hMGet(rawKey, rawItems), this::deserializeHashValues);
+    }
+
+    @Override
+    public BatchResult<Map<Object, Object>> hgetAll(String key) {
+        byte[] rawKey = rawKey(key);
+        return add("HGETALL", key, c -> c.hashCommands().hGetAll(rawKey), this::deserializeHash);
+    }
+
+    @Override
+    public BatchResult<Boolean> hset(String key, String item, Object value) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawItem = rawHashKey(item);
+        byte[] rawValue = rawHashValue(key, value);
+        return write("HSET", key, c -> c.hashCommands().hSet(rawKey, rawItem, rawValue), Boolean.class::cast);
+    }
+
+    @Override
+    public BatchResult<Double> hincr(String key, String item, double by) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawItem = rawHashKey(item);
+        return write("HINCRBYFLOAT", key, c -> c.hashCommands().hIncrBy(rawKey, rawItem, by), Double.class::cast);
+    }
+
+    @Override
+    public BatchResult<Long> hincrLong(String key, String item, long delta) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawItem = rawHashKey(item);
+        return write("HINCRBY", key, c -> c.hashCommands().hIncrBy(rawKey, rawItem, delta), Long.class::cast);
+    }
+
+    @Override
+    public BatchResult<Set<Object>> smembers(String key) {
+        byte[] rawKey = rawKey(key);
+        return add("SMEMBERS", key, c -> c.setCommands().sMembers(rawKey), this::deserializeMembers);
+    }
+
+    @Override
+    public BatchResult<List<Object>> lrange(String key, Long start, Long end) {
+        byte[] rawKey = rawKey(key);
+        return add("LRANGE", key, c -> c.listCommands().lRange(rawKey, start, end), this::deserializeValues);
+    }
+
+    @Override
+    public BatchResult<Long> rpush(String key, Object value) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawValue = rawValue(key, value);
+        return write("RPUSH", key, c -> c.listCommands().rPush(rawKey, rawValue), Long.class::cast);
+    }
+
+    /**
+     * 剩余过期时间
+     *
+     * @param key 键
+     * @return 毫秒, -1 永久 -2 不存在
+     */
+    BatchResult<Long> pttl(String key) {
+        byte[] rawKey = rawKey(key);
+        return add("PTTL", key, c -> c.keyCommands().pTtl(rawKey), Long.class::cast);
+    }
+
+    /**
+     * @return 已收集的命令数
+     */
+    int size() {
+        return commands.size();
+    }
+
+    /**
+     * 批量放入(MSET)
+     *
+     * @param map 键值
+     * @return true成功
+     */
+    BatchResult<Boolean> mset(Map<String, Object> map) {
+        Map<byte[], byte[]> raw = new LinkedHashMap<>(map.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            raw.put(rawKey(entry.getKey()), rawValue(entry.getKey(), entry.getValue()));
+        }
+        writtenKeys.addAll(map.keySet());
+        return add("MSET", String.valueOf(map.keySet()), c -> c.stringCommands().mSet(raw), Boolean.class::cast);
+    }
+
+    /**
+     * 向一张hash表中放入多个项(HSET key item value ...)
+     *
+     * @param key 键
+     * @param map 项 -> 值
+     * @return true成功
+     */
+    BatchResult<Boolean> hmset(String key, Map<String, Object> map) {
+        byte[] rawKey = rawKey(key);
+        Map<byte[], byte[]> raw = new LinkedHashMap<>(map.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            raw.put(rawHashKey(entry.getKey()), rawHashValue(key, entry.getValue()));
+        }
+        writtenKeys.add(key);
+        Command<Boolean> command = new Command<>(new BatchResult<>("HMSET", key), c -> {
+            c.hashCommands().hMSet(rawKey, raw);
+            return null;
+        }, result -> true);
+        // HMSET 是状态回复, pipeline 结果中不包含它, 不占用结果位置
+        command.status = true;
+        commands.add(command);
+        return command.result;
+    }
+
+    /**
+     * @return 写命令涉及的键, 执行后用于失效本地缓存
+     */
+    Set<String> writtenKeys() {
+        return writtenKeys;
+    }
+
+    /**
+     * 一次网络往返执行所有已收集的命令
+     *
+     * @return 每条命令的结果, 顺序与加入顺序一致
+     */
+    List<BatchResult<?>> execute() {
+        List<BatchResult<?>> results = new ArrayList<>(commands.size());
+        if (commands.isEmpty()) {
+            return results;
+        }
+        List<Object> raw;
+        try {
+            raw = redisTemplate.execute((RedisCallback<List<Object>>) this::pipelined);
+        } catch (Exception e) {
+            // 连接获取失败等整体性错误, 所有命令都标记失败
+            for (Command<?> command : commands) {
+                command.result.fail(e);
+                results.add(command.result);
+            }
+            return results;
+        }
+        int index = 0;
+        for (Command<?> command : commands) {
+            if (command.status) {
+                command.accept(null);
+            } else if (raw == null || index >= raw.size()) {
+                command.result.fail(new IllegalStateException("pipeline 未返回该命令的结果"));
+            } else {
+                command.accept(raw.get(index++));
+            }
+            results.add(command.result);
+        }
+        return results;
+    }
+
+    private List<Object> pipelined(RedisConnection connection) {
+        if (!Pipelines.supported(connection)) {
+            return sequential(connection);
+        }
+        boolean closed = false;
+        connection.openPipeline();
+        try {
+            for (Command<?> command : commands) {
+                command.action.apply(connection);
+            }
+            closed = true;
+            return connection.closePipeline();
+        } catch (RedisPipelineException e) {
+            // 部分命令失败时异常结果会按位置放在结果列表中
+            return e.getPipelineResult();
+        } finally {
+            if (!closed) {
+                connection.closePipeline();
+            }
+        }
+    }
+
+    /**
+     * 集群连接不支持 pipeline, 逐条执行; 调用方已按 slot 拆分, 不同 slot 之间仍是并行的
+     */
+    private List<Object> sequential(RedisConnection connection) {
+        List<Object> raw = new ArrayList<>(commands.size());
+        for (Command<?> command : commands) {
+            Object result;
+            try {
+                result = command.action.apply(connection);
+            } catch (Exception e) {
+                result = e;
+            }
+            // 与 pipeline 一致, 状态回复不占结果位置
+            if (!command.status) {
+                raw.add(result);
+            }
+        }
+        return raw;
+    }
+
+    private <T> BatchResult<T> add(String name, String key, Function<RedisConnection, Object> action, Function<Object, T> decoder) {
+        Command<T> command = new Command<>(new BatchResult<>(name, key), action, decoder);
+        commands.add(command);
+        return command.result;
+    }
+
+    private <T> BatchResult<T> write(String name, String key, Function<RedisConnection, Object> action, Function<Object, T> decoder) {
+        writtenKeys.add(key);
+        return add(name, key, action, decoder);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawValue(String key, Object value) {
+        String previous = SerializationContext.enter(key);
+        try {
+            return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+        } finally {
+            SerializationContext.exit(previous);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawHashKey(String item) {
+        return ((RedisSerializer<String>) redisTemplate.getHashKeySerializer()).serialize(item);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawHashValue(String key, Object value) {
+        String previous = SerializationContext.enter(key);
+        try {
+            return ((RedisSerializer<Object>) redisTemplate.getHashValueSerializer()).serialize(value);
+        } finally {
+            SerializationContext.exit(previous);
+        }
+    }
+
+    private Object deserializeValue(Object raw) {
+        return redisTemplate.getValueSerializer().deserialize((byte[]) raw);
+    }
+
+    private Object deserializeHashValue(Object raw) {
+        return redisTemplate.getHashValueSerializer().deserialize((byte[]) raw);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> deserializeValues(Object raw) {
+        if (raw == null) {
+            return Collections.emptyList();
+        }
+        List<byte[]> values = (List<byte[]>) raw;
+        List<Object> result = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            result.add(redisTemplate.getValueSerializer().deserialize(value));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> deserializeHashValues(Object raw) {
+        if (raw == null) {
+            return Collections.emptyList();
+        }
+        List<byte[]> values = (List<byte[]>) raw;
+        List<Object> result = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            result.add(redisTemplate.getHashValueSerializer().deserialize(value));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Object> deserializeMembers(Object raw) {
+        if (raw == null) {
+            return Collections.emptySet();
+        }
+        Set<byte[]> values = (Set<byte[]>) raw;
+        Set<Object> result = new LinkedHashSet<>(values.size() * 4 / 3 + 1);
+        for (byte[] value : values) {
+            result.add(redisTemplate.getValueSerializer().deserialize(value));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object, Object> deserializeHash(Object raw) {
+        if (raw == null) {
+            return Collections.emptyMap();
+        }
+        Map<byte[], byte[]> entries = (Map<byte[], byte[]>) raw;
+        Map<Object, Object> result = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+        for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+            result.put(redisTemplate.getHashKeySerializer().deserialize(entry.getKey()),
+                    redisTemplate.getHashValueSerializer().deserialize(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static final class Command<T> {
+
+        private final BatchResult<T> result;
+
+        private final Function<RedisConnection, Object> action;
+
+        private final Function<Object, T> decoder;
+
+        private boolean status;
+
+        private Command(BatchResult<T> result, Function<RedisConnection, Object> action, Function<Object, T> decoder) {
+            this.result = result;
+            this.action = action;
+            this.decoder = decoder;
+        }
+
+        private void accept(Object raw) {
+            if (raw instanceof Throwable) {
+                result.fail((Throwable) raw);
+                return;
+            }
+            try {
+                result.complete(decoder.apply(raw), rawSize(raw));
+            } catch (Exception e) {
+                result.fail(e);
+            }
+        }
+
+        private static long rawSize(Object raw) {
+            if (raw instanceof byte[]) {
+                return ((byte[]) raw).length;
+            }
+            long size = 0;
+            if (raw instanceof Collection) {
+                for (Object element : (Collection<?>) raw) {
+                    size += rawSize(element);
+                }
+            } else if (raw instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) raw).entrySet()) {
+                    size += rawSize(entry.getKey()) + rawSize(entry.getValue());
+                }
+            }
+            return size;
+        }
+    }
+}
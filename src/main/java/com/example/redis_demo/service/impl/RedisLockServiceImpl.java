@@ -0,0 +1,497 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.routing.RedisRouter;
+import com.example.redis_demo.script.LuaScript;
+import com.example.redis_demo.script.ScriptRegistry;
+import com.example.redis_demo.service.RedisLock;
+import com.example.redis_demo.service.RedisLockService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分布式锁的实现
+ * <p>
+ * 键 lock:{name} 是 hash: 持有者 -> 重入次数, fence -> 本次持有的 token; lock:{name}:fence 是只增不减的 token 计数器, 不设过期。
+ * 公平锁另用 lock:{name}:queue(等待顺序) 和 lock:{name}:timeouts(等待者的续约期限), 只有队首能获取。
+ * 相关的键带同一个 hash tag, 集群和客户端分片下落在同一节点, 脚本可以一起操作
+ * <p>
+ * 释放脚本删除锁后向 redis.lock.channel 发布锁的键, 等待者按连接工厂订阅一次该频道;
+ * 通知是 at-most-once 的, 等待时间不超过锁的剩余租期, 丢失通知时最晚在租期到达后重试
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+@Service
+public class RedisLockServiceImpl implements RedisLockService {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisLockServiceImpl.class);
+
+    private static final String PREFIX = "lock:";
+
+    static final LuaScript<List<Object>> ACQUIRE = LuaScript.multi("lockAcquire",
+            "if redis.call('exists', KEYS[1]) == 0 then "
+                    + "local token = redis.call('incr', KEYS[2]) "
+                    + "redis.call('hset', KEYS[1], ARGV[1], 1) "
+                    + "redis.call('hset', KEYS[1], 'fence', token) "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "return {1, token} "
+                    + "end "
+                    + "if redis.call('hexists', KEYS[1], ARGV[1]) == 1 then "
+                    + "redis.call('hincrby', KEYS[1], ARGV[1], 1) "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "return {1, tonumber(redis.call('hget', KEYS[1], 'fence'))} "
+                    + "end "
+                    + "return {0, redis.call('pttl', KEYS[1])}").skipNearCache();
+
+    /**
+     * 先移除队首已过期的等待者; 锁空闲且自己是队首(或队列为空)时获取; 否则排队并续约
+     */
+    static final LuaScript<List<Object>> FAIR_ACQUIRE = LuaScript.multi("fairLockAcquire",
+            "local now = tonumber(ARGV[4]) "
+                    + "while true do "
+                    + "local head = redis.call('lindex', KEYS[3], 0) "
+                    + "if not head then break end "
+                    + "local deadline = redis.call('zscore', KEYS[4], head) "
+                    + "if deadline and tonumber(deadline) > now then break end "
+                    + "redis.call('lpop', KEYS[3]) "
+                    + "redis.call('zrem', KEYS[4], head) "
+                    + "end "
+                    + "if redis.call('exists', KEYS[1]) == 0 then "
+                    + "local head = redis.call('lindex', KEYS[3], 0) "
+                    + "if not head or head == ARGV[1] then "
+                    + "if head then "
+                    + "redis.call('lpop', KEYS[3]) "
+                    + "redis.call('zrem', KEYS[4], head) "
+                    + "end "
+                    + "local token = redis.call('incr', KEYS[2]) "
+                    + "redis.call('hset', KEYS[1], ARGV[1], 1) "
+                    + "redis.call('hset', KEYS[1], 'fence', token) "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "return {1, token} "
+                    + "end "
+                    + "elseif redis.call('hexists', KEYS[1], ARGV[1]) == 1 then "
+                    + "redis.call('hincrby', KEYS[1], ARGV[1], 1) "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "return {1, tonumber(redis.call('hget', KEYS[1], 'fence'))} "
+                    + "end "
+                    + "if not redis.call('zscore', KEYS[4], ARGV[1]) then "
+                    + "redis.call('rpush', KEYS[3], ARGV[1]) "
+                    + "end "
+                    + "redis.call('zadd', KEYS[4], now + tonumber(ARGV[3]), ARGV[1]) "
+                    + "redis.call('pexpire', KEYS[3], ARGV[3]) "
+                    + "redis.call('pexpire', KEYS[4], ARGV[3]) "
+                    + "return {0, redis.call('pttl', KEYS[1])}").skipNearCache();
+
+    /**
+     * 放弃等待时退出公平锁队列; 锁空闲时通知下一个等待者
+     */
+    static final LuaScript<Long> FAIR_CANCEL = LuaScript.integer("fairLockCancel",
+            "redis.call('lrem', KEYS[2], 0, ARGV[1]) "
+                    + "redis.call('zrem', KEYS[3], ARGV[1]) "
+                    + "if redis.call('exists', KEYS[1]) == 0 then "
+                    + "redis.call('publish', ARGV[2], KEYS[1]) "
+                    + "end "
+                    + "return 1").skipNearCache();
+
+    /**
+     * @return -1 不是持有者; 0 已释放; 大于 0 剩余重入次数
+     */
+    static final LuaScript<Long> RELEASE = LuaScript.integer("lockRelease",
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then "
+                    + "return -1 "
+                    + "end "
+                    + "local count = redis.call('hincrby', KEYS[1], ARGV[1], -1) "
+                    + "if count > 0 then "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "return count "
+                    + "end "
+                    + "redis.call('del', KEYS[1]) "
+                    + "redis.call('publish', ARGV[3], KEYS[1]) "
+                    + "return 0").skipNearCache();
+
+    static final LuaScript<Long> RENEW = LuaScript.integer("lockRenew",
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 1 then "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "return 1 "
+                    + "end "
+                    + "return 0").skipNearCache();
+
+    @Autowired
+    private RedisRouter redisRouter;
+
+    @Autowired
+    private ScriptRegistry scriptRegistry;
+
+    /**
+     * 不指定租期时的租期, 看门狗每 1/3 租期续期一次
+     */
+    @Value("${redis.lock.lease-ms:30000}")
+    private long leaseMillis;
+
+    @Value("${redis.lock.fair-queue-timeout-ms:5000}")
+    private long fairQueueTimeoutMillis;
+
+    @Value("${redis.lock.channel:redis-lock:released}")
+    private String channel;
+
+    /**
+     * 持有者标识的前缀, 区分不同进程中 id 相同的线程
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final LockSignals signals = new LockSignals();
+
+    /**
+     * 持有者(锁的键 + 持有者标识) -> 本地持有状态
+     */
+    private final ConcurrentHashMap<String, Holder> holders = new ConcurrentHashMap<>();
+
+    private final Map<RedisConnectionFactory, RedisMessageListenerContainer> containers = new IdentityHashMap<>();
+
+    private final LongAdder acquired = new LongAdder();
+
+    private final LongAdder contended = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final LongAdder lost = new LongAdder();
+
+    private volatile Timer waitTimer;
+
+    private volatile Timer holdTimer;
+
+    private ScheduledExecutorService watchdog;
+
+    public RedisLockServiceImpl() {
+    }
+
+    RedisLockServiceImpl(RedisRouter redisRouter, ScriptRegistry scriptRegistry, long leaseMillis, long fairQueueTimeoutMillis, String channel) {
+        this.redisRouter = redisRouter;
+        this.scriptRegistry = scriptRegistry;
+        this.leaseMillis = leaseMillis;
+        this.fairQueueTimeoutMillis = fairQueueTimeoutMillis;
+        this.channel = channel;
+    }
+
+    @PostConstruct
+    public void init() {
+        for (LuaScript<?> script : Arrays.asList(ACQUIRE, FAIR_ACQUIRE, FAIR_CANCEL, RELEASE, RENEW)) {
+            scriptRegistry.register(script);
+        }
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-lock-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        watchdog.shutdownNow();
+        synchronized (containers) {
+            for (RedisMessageListenerContainer container : containers.values()) {
+                try {
+                    container.destroy();
+                } catch (Exception e) {
+                    log.warn("lock listener container destroy failed", e);
+                }
+            }
+            containers.clear();
+        }
+    }
+
+    @Override
+    public RedisLock getLock(String name) {
+        return new Lock(name, false);
+    }
+
+    @Override
+    public RedisLock getFairLock(String name) {
+        return new Lock(name, true);
+    }
+
+    /**
+     * 注册锁的争用指标:
+     * redis.lock.acquired   获取成功次数, contended=true 表示等待过
+     * redis.lock.timeouts   等待超时次数
+     * redis.lock.lost       看门狗续期时发现锁已不属于自己的次数
+     * redis.lock.wait       获取成功前的等待时间
+     * redis.lock.held       持有时间
+     * redis.lock.waiting    本进程内有线程在等待的锁的数量
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("redis.lock.acquired", this, s -> s.acquired.sum() - s.contended.sum())
+                .tag("contended", "false").register(registry);
+        FunctionCounter.builder("redis.lock.acquired", contended, LongAdder::sum).tag("contended", "true").register(registry);
+        FunctionCounter.builder("redis.lock.timeouts", timeouts, LongAdder::sum).register(registry);
+        FunctionCounter.builder("redis.lock.lost", lost, LongAdder::sum).register(registry);
+        Gauge.builder("redis.lock.waiting", signals, LockSignals::size).register(registry);
+        waitTimer = Timer.builder("redis.lock.wait").publishPercentiles(0.5, 0.99).register(registry);
+        holdTimer = Timer.builder("redis.lock.held").publishPercentiles(0.5, 0.99).register(registry);
+    }
+
+    private String owner() {
+        return instanceId + ":" + Thread.currentThread().getId();
+    }
+
+    /**
+     * 订阅锁所在节点的释放通知, 每个连接工厂只订阅一次; 订阅失败时按剩余租期定时重试
+     */
+    private void subscribe(String key) {
+        RedisConnectionFactory factory = redisRouter.forKey(key).getConnectionFactory();
+        synchronized (containers) {
+            if (containers.containsKey(factory)) {
+                return;
+            }
+            RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(factory);
+            container.addMessageListener((message, pattern) -> signals.released(new String(message.getBody(), StandardCharsets.UTF_8)),
+                    new ChannelTopic(channel));
+            try {
+                container.afterPropertiesSet();
+                container.start();
+                containers.put(factory, container);
+            } catch (Exception e) {
+                log.warn("lock release subscription failed, waiting by lease time", e);
+            }
+        }
+    }
+
+    private void renew(Lock lock, String owner, Holder holder) {
+        try {
+            Long renewed = scriptRegistry.execute(RENEW, Collections.singletonList(lock.key), owner, holder.leaseMillis);
+            if (renewed == null || renewed == 0) {
+                // 停顿过久租期已到, 锁可能已被别人获取, 持有者的写入应由 fencing token 拒绝
+                lost.increment();
+                holder.stopRenewal();
+                log.warn("lock {} expired before renewal, fencing token {} is stale", lock.name, holder.token);
+            }
+        } catch (Exception e) {
+            // 下一次续期时重试, 租期内恢复即可
+            log.warn("lock {} renewal failed", lock.name, e);
+        }
+    }
+
+    private final class Lock implements RedisLock {
+
+        private final String name;
+
+        private final String key;
+
+        private final String fenceKey;
+
+        private final boolean fair;
+
+        private final String queueKey;
+
+        private final String timeoutKey;
+
+        private Lock(String name, boolean fair) {
+            this.name = name;
+            this.key = PREFIX + "{" + name + "}";
+            this.fenceKey = key + ":fence";
+            this.fair = fair;
+            this.queueKey = key + ":queue";
+            this.timeoutKey = key + ":timeouts";
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean tryLock(long waitTime, TimeUnit unit) {
+            return tryLock(waitTime, -1, unit);
+        }
+
+        @Override
+        public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) {
+            String owner = owner();
+            long lease = leaseTime > 0 ? unit.toMillis(leaseTime) : leaseMillis;
+            long start = System.nanoTime();
+            long deadline = start + unit.toNanos(Math.max(waitTime, 0));
+            boolean waited = false;
+            LockSignals.Signal signal = signals.register(key);
+            try {
+                while (true) {
+                    long seen = signal.releases();
+                    List<Object> result = acquire(owner, lease);
+                    long value = ((Number) result.get(1)).longValue();
+                    if (((Number) result.get(0)).longValue() == 1) {
+                        onAcquired(owner, value, lease, leaseTime <= 0, waited, System.nanoTime() - start);
+                        return true;
+                    }
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    if (!waited) {
+                        subscribe(key);
+                        waited = true;
+                    }
+                    // 锁的剩余租期内一定会有释放或过期, 公平锁还要在队列期限前续约
+                    long wait = value > 0 ? Math.min(remaining, value) : remaining;
+                    if (fair) {
+                        wait = Math.min(wait, Math.max(fairQueueTimeoutMillis / 2, 1));
+                    }
+                    signal.await(seen, wait);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                cancel(owner);
+                throw e;
+            } finally {
+                signals.unregister(key);
+            }
+            cancel(owner);
+            timeouts.increment();
+            return false;
+        }
+
+        @Override
+        public void unlock() {
+            String owner = owner();
+            Holder holder = holders.get(key + owner);
+            long lease = holder != null ? holder.leaseMillis : leaseMillis;
+            long remaining = scriptRegistry.execute(RELEASE, Collections.singletonList(key), owner, lease, channel);
+            if (remaining < 0) {
+                if (holder != null) {
+                    release(owner, holder);
+                }
+                throw new IllegalMonitorStateException("lock " + name + " is not held by current thread");
+            }
+            if (holder != null && (--holder.count <= 0 || remaining == 0)) {
+                release(owner, holder);
+            }
+            if (remaining == 0) {
+                // 本进程内的等待者不必等 pub/sub 往返
+                signals.released(key);
+            }
+        }
+
+        @Override
+        public long getFencingToken() {
+            Holder holder = holders.get(key + owner());
+            if (holder == null) {
+                throw new IllegalMonitorStateException("lock " + name + " is not held by current thread");
+            }
+            return holder.token;
+        }
+
+        @Override
+        public boolean isHeldByCurrentThread() {
+            if (!holders.containsKey(key + owner())) {
+                return false;
+            }
+            byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+            byte[] rawOwner = owner().getBytes(StandardCharsets.UTF_8);
+            return Boolean.TRUE.equals(redisRouter.forKey(key).execute((RedisCallback<Boolean>) connection -> connection.hashCommands()
+                    .hExists(rawKey, rawOwner)));
+        }
+
+        private List<Object> acquire(String owner, long lease) {
+            if (fair) {
+                return scriptRegistry.execute(FAIR_ACQUIRE, Arrays.asList(key, fenceKey, queueKey, timeoutKey),
+                        owner, lease, fairQueueTimeoutMillis, System.currentTimeMillis());
+            }
+            return scriptRegistry.execute(ACQUIRE, Arrays.asList(key, fenceKey), owner, lease);
+        }
+
+        private void cancel(String owner) {
+            if (!fair) {
+                return;
+            }
+            try {
+                scriptRegistry.execute(FAIR_CANCEL, Arrays.asList(key, queueKey, timeoutKey), owner, channel);
+            } catch (Exception e) {
+                // 队列中的位置到期后自动移除
+                log.warn("lock {} queue cancel failed", name, e);
+            }
+        }
+
+        private void onAcquired(String owner, long token, long lease, boolean renew, boolean waited, long waitNanos) {
+            Holder holder = holders.computeIfAbsent(key + owner, k -> new Holder(token, lease));
+            if (++holder.count > 1) {
+                return;
+            }
+            acquired.increment();
+            if (waited) {
+                contended.increment();
+            }
+            Timer timer = waitTimer;
+            if (timer != null) {
+                timer.record(waitNanos, TimeUnit.NANOSECONDS);
+            }
+            if (renew) {
+                long period = Math.max(lease / 3, 1);
+                holder.renewal = watchdog.scheduleAtFixedRate(() -> renew(this, owner, holder), period, period, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void release(String owner, Holder holder) {
+            holders.remove(key + owner, holder);
+            holder.stopRenewal();
+            Timer timer = holdTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - holder.acquiredAt, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * 一个线程对一把锁的持有状态, 只由持有线程修改(续期任务只读)
+     */
+    private static final class Holder {
+
+        private final long token;
+
+        private final long leaseMillis;
+
+        private final long acquiredAt = System.nanoTime();
+
+        private int count;
+
+        private volatile ScheduledFuture<?> renewal;
+
+        private Holder(long token, long leaseMillis) {
+            this.token = token;
+            this.leaseMillis = leaseMillis;
+        }
+
+        private void stopRenewal() {
+            ScheduledFuture<?> future = renewal;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -1,17 +1,60 @@
 package com.example.redis_demo.service.impl;
 
 import cn.hutool.core.collection.CollUtil;
+import com.example.redis_demo.bloom.BloomGuard;
+import com.example.redis_demo.cache.NearCache;
+import com.example.redis_demo.codec.AsciiNumbers;
+import com.example.redis_demo.codec.SerializationContext;
+import com.example.redis_demo.execution.VirtualThreads;
+import com.example.redis_demo.hotkey.HotKeyDetector;
+import com.example.redis_demo.metrics.RedisInvocationContext;
+import com.example.redis_demo.routing.ReadPreference;
+import com.example.redis_demo.routing.RedisRouter;
+import com.example.redis_demo.script.ScriptRegistry;
+import com.example.redis_demo.script.Scripts;
+import com.example.redis_demo.service.BatchResult;
+import com.example.redis_demo.service.RedisBatch;
 import com.example.redis_demo.service.RedisService;
+import com.example.redis_demo.service.ScoredMember;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
-import java.util.HashSet;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author dengR
@@ -20,8 +63,106 @@ import java.util.concurrent.TimeUnit;
 @Service
 public class RedisServiceImpl implements RedisService {
 
+    private static final Logger log = LoggerFactory.getLogger(RedisServiceImpl.class);
+
+    /**
+     * 键到节点的路由, 单机/集群/客户端分片由 redis.mode 决定
+     */
+    @Autowired
+    private RedisRouter redisRouter;
+
+    /**
+     * 原子的复合操作(写入 + 过期)用的 Lua 脚本
+     */
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private ScriptRegistry scriptRegistry;
+
+    /**
+     * 进程内一级缓存, 未开启 redis.near-cache.enabled 时为 null
+     */
+    @Autowired(required = false)
+    private NearCache nearCache;
+
+    /**
+     * get 前的布隆过滤器守卫, 未开启 redis.bloom.enabled 时为 null
+     */
+    @Autowired(required = false)
+    private BloomGuard bloomGuard;
+
+    /**
+     * 热键/大键探测, 未开启 redis.hot-key.enabled 时为 null
+     */
+    @Autowired(required = false)
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * getOrLoad 逻辑过期后旧值仍可返回的时间, 期间后台刷新
+     */
+    @Value("${redis.loader.stale-seconds:30}")
+    private long loaderStaleSeconds;
+
+    @Value("${redis.loader.lease-ms:10000}")
+    private long loaderLeaseMs;
+
+    @Value("${redis.loader.lease-wait-ms:3000}")
+    private long loaderLeaseWaitMs;
+
+    /**
+     * XFetch 提前刷新系数, 0 关闭
+     */
+    @Value("${redis.loader.beta:1.0}")
+    private double loaderBeta;
+
+    @Value("${redis.loader.refresh-threads:4}")
+    private int loaderRefreshThreads;
+
+    /**
+     * 多键命令按分片并行执行的线程数
+     */
+    @Value("${redis.multi-key.threads:8}")
+    private int multiKeyThreads;
+
+    /**
+     * JDK 21+ 上多键命令的分片并发改用虚拟线程, 不再受 redis.multi-key.threads 限制
+     */
+    @Value("${redis.execution.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    private SingleFlightLoader loader;
+
+    private FanOut fanOut;
+
+    public RedisServiceImpl() {
+    }
+
+    RedisServiceImpl(RedisRouter redisRouter, ScriptRegistry scriptRegistry, FanOut fanOut) {
+        this.redisRouter = redisRouter;
+        this.scriptRegistry = scriptRegistry;
+        this.fanOut = fanOut;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor refresher = new ThreadPoolExecutor(loaderRefreshThreads, loaderRefreshThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(1024), runnable -> {
+            Thread thread = new Thread(runnable, "redis-loader-refresh-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+        refresher.allowCoreThreadTimeOut(true);
+        loader = new SingleFlightLoader(redisRouter, scriptRegistry, this::guard, this::invalidate, refresher,
+                TimeUnit.SECONDS.toMillis(loaderStaleSeconds), loaderLeaseMs, loaderLeaseWaitMs, loaderBeta);
+        fanOut = virtualThreads && VirtualThreads.isAvailable()
+                ? new FanOut(VirtualThreads.newThreadPerTaskExecutor("redis-fan-out-"))
+                : new FanOut(multiKeyThreads);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        loader.shutdown();
+        fanOut.shutdown();
+    }
 
     @Override
     public Boolean expire(String key, Long time) {
@@ -31,45 +172,64 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean expire(String key, Long time, TimeUnit timeUnit) {
         if (time > 0) {
-            return redisTemplate.expire(key, time, timeUnit);
+            Boolean result = template(key).expire(key, time, timeUnit);
+            invalidate(key);
+            return result;
         }
         return false;
     }
 
     @Override
     public Long getExpire(String key) {
-        return redisTemplate.getExpire(key, TimeUnit.SECONDS);
+        return read(key, template -> template.getExpire(key, TimeUnit.SECONDS));
     }
 
     @Override
     public Boolean hasKey(String key) {
-        return redisTemplate.hasKey(key);
+        // 不经过布隆过滤器: hasKey 适用于所有类型的键, 过滤器只对字符串读取(get)做判断
+        return read(key, template -> template.hasKey(key));
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void del(String... key) {
         if (key != null && key.length > 0) {
             if (key.length == 1) {
-                redisTemplate.delete(key[0]);
+                template(key[0]).delete(key[0]);
             } else {
-                redisTemplate.delete(CollUtil.toList(key));
+                // 每个分片一条 DEL, 各分片并行
+                List<Callable<Long>> tasks = new ArrayList<>();
+                for (Map.Entry<Integer, List<String>> group : redisRouter.partition(CollUtil.toList(key)).entrySet()) {
+                    RedisTemplate<String, Object> template = redisRouter.template(group.getKey());
+                    tasks.add(() -> template.delete(group.getValue()));
+                }
+                fanOut.invokeAll(tasks);
+            }
+            for (String k : key) {
+                invalidate(k);
             }
         }
     }
 
     @Override
     public Object get(String key) {
-        return key == null ? null : redisTemplate.opsForValue().get(key);
+        if (key == null || bloomGuard != null && !bloomGuard.mightExist(key)) {
+            return null;
+        }
+        if (!nearCacheable(key)) {
+            return read(key, template -> template.opsForValue().get(key));
+        }
+        return nearCached(key, NearCache.VALUE, batch -> batch.get(key));
     }
 
     @Override
     public Boolean set(String key, Object value) {
         try {
-            redisTemplate.opsForValue().set(key, value);
+            guard(key);
+            withKey(key, () -> template(key).opsForValue().set(key, value));
+            invalidate(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
@@ -83,20 +243,25 @@ public class RedisServiceImpl implements RedisService {
     public Boolean set(String key, Object value, Long time, TimeUnit timeUnit) {
         try {
             if (time > 0) {
-                redisTemplate.opsForValue().set(key, value, time, timeUnit);
+                guard(key);
+                withKey(key, () -> template(key).opsForValue().set(key, value, time, timeUnit));
+                invalidate(key);
             } else {
                 set(key, value);
             }
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
 
     @Override
     public Boolean setnx(String key, Object value) {
-        return redisTemplate.opsForValue().setIfAbsent(key, value);
+        guard(key);
+        Boolean result = withKey(key, () -> template(key).opsForValue().setIfAbsent(key, value));
+        invalidate(key);
+        return result;
     }
 
     @Override
@@ -106,12 +271,17 @@ public class RedisServiceImpl implements RedisService {
 
     @Override
     public Boolean setnx(String key, Object value, Long time, TimeUnit timeUnit) {
-        return redisTemplate.opsForValue().setIfAbsent(key, value, time, timeUnit);
+        guard(key);
+        Boolean result = withKey(key, () -> template(key).opsForValue().setIfAbsent(key, value, time, timeUnit));
+        invalidate(key);
+        return result;
     }
 
     @Override
     public Boolean setex(String key, Object value) {
-        return redisTemplate.opsForValue().setIfPresent(key, value);
+        Boolean result = withKey(key, () -> template(key).opsForValue().setIfPresent(key, value));
+        invalidate(key);
+        return result;
     }
 
     @Override
@@ -121,17 +291,24 @@ public class RedisServiceImpl implements RedisService {
 
     @Override
     public Boolean setex(String key, Object value, Long time, TimeUnit timeUnit) {
-        return redisTemplate.opsForValue().setIfPresent(key, value, time, timeUnit);
+        Boolean result = withKey(key, () -> template(key).opsForValue().setIfPresent(key, value, time, timeUnit));
+        invalidate(key);
+        return result;
     }
 
     @Override
     public Object getSet(String key, Object value) {
-        return redisTemplate.opsForValue().getAndSet(key, value);
+        guard(key);
+        Object old = withKey(key, () -> template(key).opsForValue().getAndSet(key, value));
+        invalidate(key);
+        return old;
     }
 
     @Override
     public void incrBy(String key, Long delta) {
-        redisTemplate.opsForValue().increment(key, delta);
+        guard(key);
+        template(key).opsForValue().increment(key, delta);
+        invalidate(key);
     }
 
     @Override
@@ -141,7 +318,9 @@ public class RedisServiceImpl implements RedisService {
 
     @Override
     public void incrByFloat(String key, double delta) {
-        redisTemplate.opsForValue().increment(key, delta);
+        guard(key);
+        template(key).opsForValue().increment(key, delta);
+        invalidate(key);
     }
 
     @Override
@@ -149,24 +328,94 @@ public class RedisServiceImpl implements RedisService {
         incrByFloat(key, -delta);
     }
 
+    @Override
+    public long incrAndGet(String key, long delta) {
+        guard(key);
+        byte[] rawKey = rawKey(key);
+        Long value = template(key).execute((RedisCallback<Long>) connection -> connection.stringCommands().incrBy(rawKey, delta));
+        invalidate(key);
+        return value == null ? 0 : value;
+    }
+
+    @Override
+    public double incrAndGetFloat(String key, double delta) {
+        guard(key);
+        byte[] rawKey = rawKey(key);
+        Double value = template(key).execute((RedisCallback<Double>) connection -> connection.stringCommands().incrBy(rawKey, delta));
+        invalidate(key);
+        return value == null ? 0 : value;
+    }
+
+    @Override
+    public long[] mgetLongs(String... keys) {
+        long[] values = new long[keys.length];
+        if (keys.length == 0) {
+            return values;
+        }
+        if (redisRouter.size() == 1) {
+            byte[][] rawKeys = new byte[keys.length][];
+            for (int i = 0; i < keys.length; i++) {
+                rawKeys[i] = rawKey(keys[i]);
+            }
+            return read(keys[0], template -> fillLongs(template, keys, rawKeys, null, values));
+        }
+        // 按分片分组, 记录每个键在结果中的位置, 各分片并行 MGET
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            groups.computeIfAbsent(redisRouter.indexOf(keys[i]), index -> new ArrayList<>()).add(i);
+        }
+        List<Callable<long[]>> tasks = new ArrayList<>(groups.size());
+        for (List<Integer> positions : groups.values()) {
+            byte[][] rawKeys = new byte[positions.size()][];
+            for (int i = 0; i < rawKeys.length; i++) {
+                rawKeys[i] = rawKey(keys[positions.get(i)]);
+            }
+            tasks.add(() -> read(keys[positions.get(0)], template -> fillLongs(template, keys, rawKeys, positions, values)));
+        }
+        fanOut.invokeAll(tasks);
+        return values;
+    }
+
+    /**
+     * MGET 并把结果写入 values, positions 为 null 时按顺序写入
+     */
+    private static long[] fillLongs(RedisTemplate<String, Object> template, String[] keys, byte[][] rawKeys, List<Integer> positions,
+                                    long[] values) {
+        List<byte[]> raw = template.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+        for (int i = 0; i < rawKeys.length; i++) {
+            int position = positions == null ? i : positions.get(i);
+            values[position] = toLong(keys[position], raw == null ? null : raw.get(i), template);
+        }
+        return values;
+    }
+
     @Override
     public Object hget(String key, String item) {
-        return redisTemplate.opsForHash().get(key, item);
+        if (!nearCacheable(key)) {
+            return read(key, template -> template.opsForHash().get(key, item));
+        }
+        return nearCached(key, item, batch -> batch.hget(key, item));
     }
 
     @Override
     public Map<Object, Object> hgetAll(String key) {
-        return redisTemplate.opsForHash().entries(key);
+        if (!nearCacheable(key)) {
+            return read(key, template -> template.opsForHash().entries(key));
+        }
+        Map<Object, Object> entries = nearCached(key, NearCache.HASH, batch -> batch.hgetAll(key));
+        return entries == null ? new LinkedHashMap<>() : new LinkedHashMap<>(entries);
     }
 
 
     @Override
     public Boolean hset(String key, Map<String, Object> map) {
         try {
-            redisTemplate.opsForHash().putAll(key, map);
+            guard(key);
+            withKey(key, () -> template(key).opsForHash().putAll(key, map));
+            invalidate(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
@@ -174,13 +423,10 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean hset(String key, Map<String, Object> map, Long time) {
         try {
-            redisTemplate.opsForHash().putAll(key, map);
-            if (time > 0) {
-                expire(key, time);
-            }
+            hsetExpire(key, map, time, TimeUnit.SECONDS);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
@@ -188,10 +434,12 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean hset(String key, String item, Object value) {
         try {
-            redisTemplate.opsForHash().put(key, item, value);
+            guard(key);
+            withKey(key, () -> template(key).opsForHash().put(key, item, value));
+            invalidate(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
@@ -199,13 +447,10 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean hset(String key, String item, Object value, Long time) {
         try {
-            redisTemplate.opsForHash().put(key, item, value);
-            if (time > 0) {
-                expire(key, time);
-            }
+            hsetExpire(key, Collections.singletonMap(item, value), time, TimeUnit.SECONDS);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
@@ -213,43 +458,61 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean hset(String key, String item, Object value, Long time, TimeUnit timeUnit) {
         try {
-            redisTemplate.opsForHash().put(key, item, value);
-            if (time > 0) {
-                expire(key, time, timeUnit);
-            }
+            hsetExpire(key, Collections.singletonMap(item, value), time, timeUnit);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
 
     @Override
     public void hdel(String key, Object... item) {
-        redisTemplate.opsForHash().delete(key, item);
+        template(key).opsForHash().delete(key, item);
+        invalidate(key);
     }
 
     @Override
     public Boolean hHasKey(String key, String item) {
-        return redisTemplate.opsForHash().hasKey(key, item);
+        return read(key, template -> template.opsForHash().hasKey(key, item));
     }
 
     @Override
     public double hincr(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(key, item, by);
+        guard(key);
+        double result = template(key).opsForHash().increment(key, item, by);
+        invalidate(key);
+        return result;
     }
 
     @Override
     public double hdecr(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(key, item, -by);
+        guard(key);
+        double result = template(key).opsForHash().increment(key, item, -by);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public long hincrLong(String key, String item, long delta) {
+        guard(key);
+        byte[] rawKey = rawKey(key);
+        byte[] rawItem = rawKey(item);
+        Long value = template(key).execute((RedisCallback<Long>) connection -> connection.hashCommands().hIncrBy(rawKey, rawItem, delta));
+        invalidate(key);
+        return value == null ? 0 : value;
     }
 
     @Override
     public Set<Object> smembers(String key) {
         try {
-            return redisTemplate.opsForSet().members(key);
+            if (!nearCacheable(key)) {
+                return read(key, template -> template.opsForSet().members(key));
+            }
+            Set<Object> members = nearCached(key, NearCache.MEMBERS, batch -> batch.smembers(key));
+            return members == null ? new LinkedHashSet<>() : new LinkedHashSet<>(members);
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return null;
         }
     }
@@ -257,9 +520,9 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean sismember(String key, Object value) {
         try {
-            return redisTemplate.opsForSet().isMember(key, value);
+            return withKey(key, () -> read(key, template -> template.opsForSet().isMember(key, value)));
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
@@ -272,28 +535,34 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Long sadd(String key, Long time, TimeUnit timeUnit, Object... values) {
         try {
-            Long count = redisTemplate.opsForSet().add(key, values);
-            if (time > 0) {
-                expire(key, time, timeUnit);
+            guard(key);
+            // 添加和设置过期在一个脚本中执行, 不会留下没有过期时间的集合
+            Object[] args = new Object[values.length + 1];
+            args[0] = time > 0 ? timeUnit.toMillis(time) : 0;
+            for (int i = 0; i < values.length; i++) {
+                args[i + 1] = ScriptRegistry.value(values[i]);
             }
-            return count;
+            return scriptRegistry.execute(Scripts.SADD_EXPIRE, Collections.singletonList(key), args);
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return 0L;
         }
     }
 
     @Override
     public Long sadd(String key, Object... values) {
-        return redisTemplate.opsForSet().add(key, values);
+        guard(key);
+        Long count = withKey(key, () -> template(key).opsForSet().add(key, values));
+        invalidate(key);
+        return count;
     }
 
     @Override
     public Long scard(String key) {
         try {
-            return redisTemplate.opsForSet().size(key);
+            return read(key, template -> template.opsForSet().size(key));
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return 0L;
         }
     }
@@ -301,25 +570,30 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Long srem(String key, Object... values) {
         try {
-            Long count = redisTemplate.opsForSet().remove(key, values);
+            Long count = withKey(key, () -> template(key).opsForSet().remove(key, values));
+            invalidate(key);
             return count;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return 0L;
         }
     }
 
     @Override
     public Boolean smove(String sourceKey, String targetKey, Object value) {
-        return redisTemplate.opsForSet().move(sourceKey, value, targetKey);
+        guard(targetKey);
+        Boolean moved = withKey(sourceKey, () -> template(sourceKey).opsForSet().move(sourceKey, value, targetKey));
+        invalidate(sourceKey);
+        invalidate(targetKey);
+        return moved;
     }
 
     @Override
     public List<Object> lrange(String key, Long start, Long end) {
         try {
-            return redisTemplate.opsForList().range(key, start, end);
+            return read(key, template -> template.opsForList().range(key, start, end));
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return null;
         }
     }
@@ -327,9 +601,9 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Long llen(String key) {
         try {
-            return redisTemplate.opsForList().size(key);
+            return read(key, template -> template.opsForList().size(key));
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return 0L;
         }
     }
@@ -337,9 +611,9 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Object lindex(String key, Long index) {
         try {
-            return redisTemplate.opsForList().index(key, index);
+            return read(key, template -> template.opsForList().index(key, index));
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return null;
         }
     }
@@ -347,10 +621,12 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean lpush(String key, List<Object> value) {
         try {
-            redisTemplate.opsForList().leftPushAll(key, value);
+            guard(key);
+            withKey(key, () -> template(key).opsForList().leftPushAll(key, value));
+            invalidate(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
@@ -358,10 +634,12 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean lpush(String key, Object value) {
         try {
-            redisTemplate.opsForList().leftPush(key, value);
+            guard(key);
+            withKey(key, () -> template(key).opsForList().leftPush(key, value));
+            invalidate(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
@@ -369,10 +647,12 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean rpush(String key, Object value) {
         try {
-            redisTemplate.opsForList().rightPush(key, value);
+            guard(key);
+            withKey(key, () -> template(key).opsForList().rightPush(key, value));
+            invalidate(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
@@ -381,10 +661,12 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean rpush(String key, List<Object> value) {
         try {
-            redisTemplate.opsForList().rightPushAll(key, value);
+            guard(key);
+            withKey(key, () -> template(key).opsForList().rightPushAll(key, value));
+            invalidate(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
 
@@ -393,10 +675,11 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Boolean lset(String key, Long index, Object value) {
         try {
-            redisTemplate.opsForList().set(key, index, value);
+            withKey(key, () -> template(key).opsForList().set(key, index, value));
+            invalidate(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return false;
         }
     }
@@ -404,10 +687,11 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Long lrem(String key, Long count, Object value) {
         try {
-            Long remove = redisTemplate.opsForList().remove(key, count, value);
+            Long remove = withKey(key, () -> template(key).opsForList().remove(key, count, value));
+            invalidate(key);
             return remove;
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
             return 0L;
         }
     }
@@ -415,36 +699,554 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public void ltrim(String key, Long stard, Long end) {
         try {
-            redisTemplate.opsForList().trim(key, stard, end);
+            template(key).opsForList().trim(key, stard, end);
+            invalidate(key);
         } catch (Exception e) {
-            e.printStackTrace();
+            handleError(e);
         }
     }
 
+    @Override
+    public Object blpop(String key, long timeout, TimeUnit unit) {
+        Object value = template(key).opsForList().leftPop(key, timeout, unit);
+        invalidate(key);
+        return value;
+    }
+
+    @Override
+    public Object brpop(String key, long timeout, TimeUnit unit) {
+        Object value = template(key).opsForList().rightPop(key, timeout, unit);
+        invalidate(key);
+        return value;
+    }
+
     @Override
     public Boolean zadd(String key, Object value, Double score) {
-        return redisTemplate.opsForZSet().add(key, value, score);
+        guard(key);
+        Boolean added = withKey(key, () -> template(key).opsForZSet().add(key, value, score));
+        invalidate(key);
+        return added;
     }
 
     @Override
     public Long zadd(String key, Map<Object, Double> values) {
-        if (values == null) {
+        if (values == null || values.isEmpty()) {
             return 0L;
         }
-        Set<ZSetOperations.TypedTuple<Object>> vals = new HashSet<>();
-        for (Map.Entry<Object, Double> entry : values.entrySet()) {
-            vals.add(ZSetOperations.TypedTuple.of(entry.getKey(), entry.getValue()));
-        }
-        return redisTemplate.opsForZSet().add(key, vals);
+        guard(key);
+        // 直接序列化成连接层的 Tuple, 不再经过 TypedTuple 集合和模板层的二次复制
+        RedisTemplate<String, Object> template = template(key);
+        Set<RedisZSetCommands.Tuple> tuples = new LinkedHashSet<>(values.size() * 4 / 3 + 1);
+        withKey(key, () -> {
+            for (Map.Entry<Object, Double> entry : values.entrySet()) {
+                tuples.add(new DefaultTuple(rawValue(template, entry.getKey()), entry.getValue()));
+            }
+        });
+        byte[] rawKey = rawKey(key);
+        Long added = template.execute((RedisCallback<Long>) connection -> connection.zSetCommands().zAdd(rawKey, tuples));
+        invalidate(key);
+        return added;
     }
 
     @Override
     public Set<Object> zrange(String key, Long start, Long end) {
-        return redisTemplate.opsForZSet().range(key, start, end);
+        return read(key, template -> template.opsForZSet().range(key, start, end));
     }
 
     @Override
     public Long zrem(String key, Object... values) {
-        return redisTemplate.opsForZSet().remove(key, values);
+        Long removed = withKey(key, () -> template(key).opsForZSet().remove(key, values));
+        invalidate(key);
+        return removed;
+    }
+
+    @Override
+    public List<ScoredMember> zrangeWithScores(String key, long start, long end) {
+        byte[] rawKey = rawKey(key);
+        return read(key, template -> scored(template,
+                template.execute((RedisCallback<Set<RedisZSetCommands.Tuple>>) connection -> connection.zSetCommands().zRangeWithScores(rawKey, start, end))));
+    }
+
+    @Override
+    public List<ScoredMember> zrevrangeWithScores(String key, long start, long end) {
+        byte[] rawKey = rawKey(key);
+        return read(key, template -> scored(template,
+                template.execute((RedisCallback<Set<RedisZSetCommands.Tuple>>) connection -> connection.zSetCommands().zRevRangeWithScores(rawKey, start, end))));
+    }
+
+    @Override
+    public List<ScoredMember> zrangeByScore(String key, double min, double max, long offset, long count) {
+        byte[] rawKey = rawKey(key);
+        return read(key, template -> scored(template, template.execute((RedisCallback<Set<RedisZSetCommands.Tuple>>) connection ->
+                connection.zSetCommands().zRangeByScoreWithScores(rawKey, min, max, offset, count))));
+    }
+
+    @Override
+    public List<ScoredMember> zrevrangeByScore(String key, double max, double min, long offset, long count) {
+        byte[] rawKey = rawKey(key);
+        return read(key, template -> scored(template, template.execute((RedisCallback<Set<RedisZSetCommands.Tuple>>) connection ->
+                connection.zSetCommands().zRevRangeByScoreWithScores(rawKey, min, max, offset, count))));
+    }
+
+    @Override
+    public Long zrank(String key, Object member) {
+        return read(key, template -> withKey(key, () -> template.opsForZSet().rank(key, member)));
+    }
+
+    @Override
+    public Long zrevrank(String key, Object member) {
+        return read(key, template -> withKey(key, () -> template.opsForZSet().reverseRank(key, member)));
+    }
+
+    @Override
+    public Double zscore(String key, Object member) {
+        return read(key, template -> withKey(key, () -> template.opsForZSet().score(key, member)));
+    }
+
+    @Override
+    public double zincrby(String key, Object member, double delta) {
+        guard(key);
+        Double score = withKey(key, () -> template(key).opsForZSet().incrementScore(key, member, delta));
+        invalidate(key);
+        return score == null ? 0 : score;
+    }
+
+    @Override
+    public long zcard(String key) {
+        Long size = read(key, template -> template.opsForZSet().zCard(key));
+        return size == null ? 0 : size;
+    }
+
+    @Override
+    public long zcount(String key, double min, double max) {
+        Long count = read(key, template -> template.opsForZSet().count(key, min, max));
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public long zremrangeByScore(String key, double min, double max) {
+        Long removed = template(key).opsForZSet().removeRangeByScore(key, min, max);
+        invalidate(key);
+        return removed == null ? 0 : removed;
+    }
+
+    @Override
+    public long zunionstore(String destKey, Collection<String> keys) {
+        guard(destKey);
+        Long size = sameShard(destKey, keys).opsForZSet().unionAndStore(keys.iterator().next(), skipFirst(keys), destKey);
+        invalidate(destKey);
+        return size == null ? 0 : size;
+    }
+
+    @Override
+    public long zinterstore(String destKey, Collection<String> keys) {
+        guard(destKey);
+        Long size = sameShard(destKey, keys).opsForZSet().intersectAndStore(keys.iterator().next(), skipFirst(keys), destKey);
+        invalidate(destKey);
+        return size == null ? 0 : size;
+    }
+
+    @Override
+    public List<Object> mget(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Integer, List<String>> groups = redisRouter.partition(keys);
+        // 多键读取不计入单个键的热键统计, 直接经路由按读取策略选择节点
+        if (groups.size() == 1) {
+            return redisRouter.read(keys.iterator().next(), template -> template.opsForValue().multiGet(keys));
+        }
+        // 每个分片一条 MGET, 各分片并行, 再按请求顺序拼回
+        List<Callable<Map<String, Object>>> tasks = new ArrayList<>(groups.size());
+        for (List<String> groupKeys : groups.values()) {
+            tasks.add(() -> {
+                List<Object> values = redisRouter.read(groupKeys.get(0), template -> template.opsForValue().multiGet(groupKeys));
+                Map<String, Object> fetched = new HashMap<>(groupKeys.size() * 4 / 3 + 1);
+                for (int i = 0; i < groupKeys.size(); i++) {
+                    fetched.put(groupKeys.get(i), values == null ? null : values.get(i));
+                }
+                return fetched;
+            });
+        }
+        Map<String, Object> fetched = new HashMap<>(keys.size() * 4 / 3 + 1);
+        fanOut.invokeAll(tasks).forEach(fetched::putAll);
+        List<Object> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            values.add(fetched.get(key));
+        }
+        return values;
+    }
+
+    @Override
+    public Boolean mset(Map<String, Object> map) {
+        if (map == null || map.isEmpty()) {
+            return true;
+        }
+        // 逐个键序列化后再 MSET, 使按键前缀的序列化策略生效; 每个分片一条 MSET
+        if (bloomGuard != null) {
+            bloomGuard.addingAll(map.keySet());
+        }
+        ShardedBatch batch = new ShardedBatch(redisRouter, fanOut);
+        List<BatchResult<Boolean>> results = batch.mset(map);
+        batch.execute();
+        map.keySet().forEach(this::invalidate);
+        boolean success = true;
+        for (BatchResult<Boolean> result : results) {
+            if (!result.isSuccess()) {
+                handleError(result.getError());
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public Boolean mset(Map<String, Object> map, Long time) {
+        if (time == null || time <= 0) {
+            return mset(map);
+        }
+        if (bloomGuard != null) {
+            bloomGuard.addingAll(map.keySet());
+        }
+        ShardedBatch batch = new ShardedBatch(redisRouter, fanOut);
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            batch.set(entry.getKey(), entry.getValue(), time, TimeUnit.SECONDS);
+        }
+        List<BatchResult<?>> results = batch.execute();
+        map.keySet().forEach(this::invalidate);
+        boolean success = true;
+        for (BatchResult<?> result : results) {
+            if (!result.isSuccess()) {
+                handleError(result.getError());
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> hgetMulti(Map<String, Collection<String>> items) {
+        Map<String, Map<String, Object>> values = new LinkedHashMap<>();
+        if (items == null || items.isEmpty()) {
+            return values;
+        }
+        ShardedBatch batch = new ShardedBatch(redisRouter, fanOut);
+        Map<String, List<String>> requested = new LinkedHashMap<>();
+        Map<String, BatchResult<List<Object>>> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, Collection<String>> entry : items.entrySet()) {
+            List<String> fields = new ArrayList<>(entry.getValue());
+            requested.put(entry.getKey(), fields);
+            if (!fields.isEmpty()) {
+                pending.put(entry.getKey(), batch.hmget(entry.getKey(), fields));
+            }
+        }
+        batch.execute();
+        for (Map.Entry<String, List<String>> entry : requested.entrySet()) {
+            List<String> fields = entry.getValue();
+            BatchResult<List<Object>> result = pending.get(entry.getKey());
+            List<Object> fetched = result == null ? Collections.emptyList() : result.getOrDefault(Collections.emptyList());
+            Map<String, Object> hash = new LinkedHashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                hash.put(fields.get(i), i < fetched.size() ? fetched.get(i) : null);
+            }
+            values.put(entry.getKey(), hash);
+        }
+        return values;
+    }
+
+    @Override
+    public List<BatchResult<?>> pipeline(Consumer<RedisBatch> commands) {
+        ShardedBatch batch = new ShardedBatch(redisRouter, fanOut);
+        commands.accept(batch);
+        if (bloomGuard != null) {
+            bloomGuard.addingAll(batch.writtenKeys());
+        }
+        List<BatchResult<?>> results = batch.execute();
+        batch.writtenKeys().forEach(this::invalidate);
+        return results;
+    }
+
+    @Override
+    public <T> T getOrLoad(String key, Long time, Supplier<T> loader) {
+        return getOrLoad(key, time, TimeUnit.SECONDS, loader);
+    }
+
+    @Override
+    public <T> T getOrLoad(String key, Long time, TimeUnit timeUnit, Supplier<T> loader) {
+        return this.loader.getOrLoad(key, timeUnit.toMillis(time), loader);
+    }
+
+    @Override
+    public Stream<Map.Entry<Object, Object>> hscan(String key, String pattern, long count) {
+        // 关闭 Stream 时关闭游标, 归还连接
+        return template(key).opsForHash().scan(key, scanOptions(pattern, count)).stream();
+    }
+
+    @Override
+    public Stream<Object> sscan(String key, String pattern, long count) {
+        return template(key).opsForSet().scan(key, scanOptions(pattern, count)).stream();
+    }
+
+    @Override
+    public Stream<ZSetOperations.TypedTuple<Object>> zscan(String key, String pattern, long count) {
+        return template(key).opsForZSet().scan(key, scanOptions(pattern, count)).stream();
+    }
+
+    @Override
+    public Stream<String> scan(String pattern, long count) {
+        return redisRouter.scan(scanOptions(pattern, count));
+    }
+
+    @Override
+    public Stream<Object> lscan(String key, long count) {
+        Iterator<Object> pages = new ListPageIterator(key, count);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED), false);
+    }
+
+    /**
+     * 键所在节点的 RedisTemplate; SMOVE 按源键路由, 集群下要求两个键在同一 slot, 客户端分片时要求在同一节点, 可用 {tag} 保证
+     */
+    private RedisTemplate<String, Object> template(String key) {
+        return redisRouter.forKey(key);
+    }
+
+    /**
+     * 只读操作, 开启从节点读取时按读取策略选择节点
+     */
+    private <T> T read(String key, Function<RedisTemplate<String, Object>, T> operation) {
+        if (hotKeyDetector == null) {
+            return redisRouter.read(key, operation);
+        }
+        long mark = hotKeyDetector.mark();
+        try {
+            return redisRouter.read(key, operation);
+        } finally {
+            hotKeyDetector.recordRead(key, mark);
+        }
+    }
+
+    /**
+     * 开启一级缓存且(未开启热键提升或该键是热键)时经过一级缓存读取
+     */
+    private boolean nearCacheable(String key) {
+        return nearCache != null && (hotKeyDetector == null || hotKeyDetector.admits(key));
+    }
+
+    /**
+     * 多键命令的节点; 集群下 CROSSSLOT、客户端分片下跨节点的键在发送前拒绝
+     *
+     * @throws IllegalArgumentException 键不在同一分片
+     */
+    private RedisTemplate<String, Object> sameShard(String destKey, Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("keys must not be empty");
+        }
+        int index = redisRouter.indexOf(destKey);
+        for (String key : keys) {
+            if (redisRouter.indexOf(key) != index) {
+                throw new IllegalArgumentException("keys must be on the same shard as " + destKey + ", use a {hash tag}: " + keys);
+            }
+        }
+        return redisRouter.template(index);
+    }
+
+    private static List<String> skipFirst(Collection<String> keys) {
+        List<String> others = new ArrayList<>(keys);
+        others.remove(0);
+        return others;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] rawValue(RedisTemplate<String, Object> template, Object value) {
+        return ((RedisSerializer<Object>) template.getValueSerializer()).serialize(value);
+    }
+
+    /**
+     * 连接层返回的 Tuple 按顺序直接转成成员和分数列表
+     */
+    private static List<ScoredMember> scored(RedisTemplate<String, Object> template, Set<RedisZSetCommands.Tuple> tuples) {
+        if (tuples == null || tuples.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ScoredMember> members = new ArrayList<>(tuples.size());
+        for (RedisZSetCommands.Tuple tuple : tuples) {
+            members.add(new ScoredMember(template.getValueSerializer().deserialize(tuple.getValue()), tuple.getScore()));
+        }
+        return members;
+    }
+
+    /**
+     * 键和 hash 项都使用 StringRedisSerializer
+     */
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 计数器通常是 ASCII 整数, 直接解析; 通过 set 写入的数值经值序列化器解码
+     */
+    private static long toLong(String key, byte[] raw, RedisTemplate<String, Object> template) {
+        if (raw == null) {
+            return 0;
+        }
+        if (AsciiNumbers.isLong(raw)) {
+            return AsciiNumbers.parseLong(raw);
+        }
+        Object value = template.getValueSerializer().deserialize(raw);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        throw new IllegalStateException(key + " 不是整数: " + value);
+    }
+
+    private static ScanOptions scanOptions(String pattern, long count) {
+        ScanOptions.ScanOptionsBuilder builder = ScanOptions.scanOptions().count(count);
+        if (pattern != null) {
+            builder.match(pattern);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 经过一级缓存读取, 未命中时在同一次往返中读取值和剩余 TTL 并回填
+     * <p>
+     * 回填的读取总是发往主节点: 从节点有复制延迟, 读到的旧值会在一级缓存中一直保留到过期,
+     * 而写入后的失效通知只能清除已回填的值, 不能阻止之后从从节点读到的旧值被回填
+     */
+    private <T> T nearCached(String key, String part, Function<RedisBatchImpl, BatchResult<T>> command) {
+        @SuppressWarnings("unchecked")
+        T cached = (T) nearCache.get(key, part);
+        if (cached != null) {
+            // 命中也计入访问次数, 否则提升后的热键会因为不再访问 redis 而被降级
+            if (hotKeyDetector != null) {
+                hotKeyDetector.recordAccess(key);
+            }
+            return cached;
+        }
+        long sequence = nearCache.sequence(key);
+        return ReadPreference.master(() -> read(key, template -> {
+            RedisBatchImpl batch = new RedisBatchImpl(template);
+            BatchResult<T> value = command.apply(batch);
+            BatchResult<Long> pttl = batch.pttl(key);
+            batch.execute();
+            if (!value.isSuccess()) {
+                Throwable error = value.getError();
+                throw error instanceof RuntimeException ? (RuntimeException) error : new IllegalStateException(error);
+            }
+            nearCache.put(key, part, value.get(), value.getRawSize(), pttl.getOrDefault(-2L), sequence);
+            return value.get();
+        }));
+    }
+
+    /**
+     * 写入 hash 和设置过期在一个脚本中执行, 脚本执行后由注册表失效一级缓存
+     */
+    private void hsetExpire(String key, Map<String, Object> map, long time, TimeUnit timeUnit) {
+        guard(key);
+        Object[] args = new Object[map.size() * 2 + 1];
+        args[0] = time > 0 ? timeUnit.toMillis(time) : 0;
+        int i = 1;
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            args[i++] = entry.getKey();
+            args[i++] = ScriptRegistry.value(entry.getValue());
+        }
+        scriptRegistry.execute(Scripts.HSET_EXPIRE, Collections.singletonList(key), args);
+    }
+
+    /**
+     * 登记当前写入的键后再序列化值, 使按键前缀的序列化策略(如压缩)生效
+     */
+    private <T> T withKey(String key, Supplier<T> action) {
+        String previous = SerializationContext.enter(key);
+        try {
+            return action.get();
+        } finally {
+            SerializationContext.exit(previous);
+        }
+    }
+
+    private void withKey(String key, Runnable action) {
+        String previous = SerializationContext.enter(key);
+        try {
+            action.run();
+        } finally {
+            SerializationContext.exit(previous);
+        }
+    }
+
+    /**
+     * 写操作失败时按原有约定返回 false, 这里记录日志并计入当前方法的异常次数
+     */
+    private void handleError(Throwable e) {
+        RedisInvocationContext.recordError(e);
+        log.error("redis operation failed", e);
+    }
+
+    /**
+     * 写入前把受守卫的键加入布隆过滤器
+     */
+    private void guard(String key) {
+        if (bloomGuard != null) {
+            bloomGuard.adding(key);
+        }
+    }
+
+    /**
+     * 写入后调用: 计入热键访问, 失效一级缓存
+     */
+    private void invalidate(String key) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.recordAccess(key);
+        }
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 按页 LRANGE 的迭代器, 每页读取完才请求下一页, 读取之间不占用连接
+     */
+    private class ListPageIterator implements Iterator<Object> {
+
+        private final String key;
+
+        private final long count;
+
+        private long start;
+
+        private List<Object> page = Collections.emptyList();
+
+        private int index;
+
+        private boolean last;
+
+        private ListPageIterator(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (index < page.size()) {
+                return true;
+            }
+            if (last) {
+                return false;
+            }
+            List<Object> next = template(key).opsForList().range(key, start, start + count - 1);
+            page = next == null ? Collections.emptyList() : next;
+            index = 0;
+            start += page.size();
+            last = page.size() < count;
+            return !page.isEmpty();
+        }
+
+        @Override
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(index++);
+        }
     }
 }
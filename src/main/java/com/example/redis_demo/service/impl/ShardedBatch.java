@@ -0,0 +1,176 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.routing.RedisRouter;
+import com.example.redis_demo.service.BatchResult;
+import com.example.redis_demo.service.RedisBatch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按分片拆分的 pipeline
+ * <p>
+ * 每个分片一个 {@link RedisBatchImpl}, 执行时各分片并行发送, 结果仍按命令加入的顺序返回
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+class ShardedBatch implements RedisBatch {
+
+    private final RedisRouter router;
+
+    private final FanOut fanOut;
+
+    private final Map<Integer, RedisBatchImpl> batches = new LinkedHashMap<>();
+
+    private final List<BatchResult<?>> results = new ArrayList<>();
+
+    ShardedBatch(RedisRouter router, FanOut fanOut) {
+        this.router = router;
+        this.fanOut = fanOut;
+    }
+
+    @Override
+    public BatchResult<Object> get(String key) {
+        return add(batch(key).get(key));
+    }
+
+    @Override
+    public BatchResult<Boolean> set(String key, Object value) {
+        return add(batch(key).set(key, value));
+    }
+
+    @Override
+    public BatchResult<Boolean> set(String key, Object value, Long time, TimeUnit timeUnit) {
+        return add(batch(key).set(key, value, time, timeUnit));
+    }
+
+    @Override
+    public BatchResult<Long> del(String key) {
+        return add(batch(key).del(key));
+    }
+
+    @Override
+    public BatchResult<Boolean> expire(String key, Long time, TimeUnit timeUnit) {
+        return add(batch(key).expire(key, time, timeUnit));
+    }
+
+    @Override
+    public BatchResult<Long> incrBy(String key, Long delta) {
+        return add(batch(key).incrBy(key, delta));
+    }
+
+    @Override
+    public BatchResult<Double> incrByFloat(String key, double delta) {
+        return add(batch(key).incrByFloat(key, delta));
+    }
+
+    @Override
+    public BatchResult<Object> hget(String key, String item) {
+        return add(batch(key).hget(key, item));
+    }
+
+    @Override
+    public BatchResult<List<Object>> hmget(String key, List<String> items) {
+        return add(batch(key).hmget(key, items));
+    }
+
+    @Override
+    public BatchResult<Map<Object, Object>> hgetAll(String key) {
+        return add(batch(key).hgetAll(key));
+    }
+
+    @Override
+    public BatchResult<Boolean> hset(String key, String item, Object value) {
+        return add(batch(key).hset(key, item, value));
+    }
+
+    @Override
+    public BatchResult<Double> hincr(String key, String item, double by) {
+        return add(batch(key).hincr(key, item, by));
+    }
+
+    @Override
+    public BatchResult<Long> hincrLong(String key, String item, long delta) {
+        return add(batch(key).hincrLong(key, item, delta));
+    }
+
+    @Override
+    public BatchResult<Set<Object>> smembers(String key) {
+        return add(batch(key).smembers(key));
+    }
+
+    @Override
+    public BatchResult<List<Object>> lrange(String key, Long start, Long end) {
+        return add(batch(key).lrange(key, start, end));
+    }
+
+    @Override
+    public BatchResult<Long> rpush(String key, Object value) {
+        return add(batch(key).rpush(key, value));
+    }
+
+    /**
+     * 批量放入, 按分片拆成多条 MSET
+     *
+     * @param map 键值
+     * @return 每个分片一条结果
+     */
+    List<BatchResult<Boolean>> mset(Map<String, Object> map) {
+        Map<Integer, Map<String, Object>> groups = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            groups.computeIfAbsent(router.indexOf(entry.getKey()), index -> new LinkedHashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+        List<BatchResult<Boolean>> written = new ArrayList<>(groups.size());
+        for (Map.Entry<Integer, Map<String, Object>> group : groups.entrySet()) {
+            written.add(add(batch(group.getKey()).mset(group.getValue())));
+        }
+        return written;
+    }
+
+    /**
+     * @return 写命令涉及的键, 执行后用于失效本地缓存
+     */
+    Set<String> writtenKeys() {
+        Set<String> keys = new LinkedHashSet<>();
+        for (RedisBatchImpl batch : batches.values()) {
+            keys.addAll(batch.writtenKeys());
+        }
+        return keys;
+    }
+
+    /**
+     * 各分片并行执行
+     *
+     * @return 每条命令的结果, 顺序与加入顺序一致
+     */
+    List<BatchResult<?>> execute() {
+        List<Callable<List<BatchResult<?>>>> tasks = new ArrayList<>(batches.size());
+        for (RedisBatchImpl batch : batches.values()) {
+            tasks.add(batch::execute);
+        }
+        // 各分片的执行错误已经记录在对应的 BatchResult 中
+        fanOut.invokeAll(tasks);
+        return results;
+    }
+
+    private RedisBatchImpl batch(String key) {
+        return batch(router.indexOf(key));
+    }
+
+    private RedisBatchImpl batch(int index) {
+        return batches.computeIfAbsent(index, i -> new RedisBatchImpl(router.template(i)));
+    }
+
+    private <T> BatchResult<T> add(BatchResult<T> result) {
+        results.add(result);
+        return result;
+    }
+}
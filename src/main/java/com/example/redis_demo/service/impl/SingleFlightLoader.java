@@ -0,0 +1,314 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.routing.RedisRouter;
+import com.example.redis_demo.script.LuaScript;
+import com.example.redis_demo.script.ScriptRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * getOrLoad 的实现: 防缓存击穿的读取-加载-回写
+ * <p>
+ * 值以 hash 形式保存: v 值, d 上次加载耗时(毫秒), e 逻辑过期时间(毫秒时间戳)。
+ * 键的实际 TTL 比逻辑过期时间多 staleMillis, 这段时间内读到的旧值直接返回, 同时在后台刷新(stale-while-revalidate)。
+ * 逻辑过期前按 XFetch 以 d * beta * -ln(rand) 的概率提前刷新, 加载越慢越早刷新, 使热点键几乎不会真正过期。
+ * <p>
+ * 未命中时同一进程内同一个键只有一个线程加载, 其它线程等待同一个结果;
+ * 不同节点之间通过 SET NX PX 租约互斥, 没拿到租约的节点轮询等待结果, 超过 leaseWaitMillis 仍未写入时自行加载
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+class SingleFlightLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(SingleFlightLoader.class);
+
+    static final String VALUE = "v";
+
+    static final String DELTA = "d";
+
+    static final String EXPIRE_AT = "e";
+
+    private static final List<Object> FIELDS = Collections.unmodifiableList(Arrays.asList(VALUE, DELTA, EXPIRE_AT));
+
+    private static final String LEASE_SUFFIX = ":lease";
+
+    static final LuaScript<Long> RELEASE_LEASE = LuaScript.integer("releaseLease",
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('del', KEYS[1]) else return 0 end").skipNearCache();
+
+    /**
+     * 覆盖写入值的 hash 并设置过期, 一次原子执行; 先删除, 键原来不是 hash 时也能覆盖, 也不会留下没有过期时间的键
+     * <p>
+     * KEYS[1] 键; ARGV[1] 实际过期时间(毫秒); ARGV[2] 值; ARGV[3] 加载耗时(毫秒); ARGV[4] 逻辑过期时间(毫秒时间戳)。
+     * 一级缓存由调用方的 invalidator 失效
+     */
+    static final LuaScript<Long> WRITE = LuaScript.integer("getOrLoadWrite",
+            "redis.call('del', KEYS[1]) "
+                    + "redis.call('hset', KEYS[1], '" + VALUE + "', ARGV[2], '" + DELTA + "', ARGV[3], '" + EXPIRE_AT + "', ARGV[4]) "
+                    + "redis.call('pexpire', KEYS[1], ARGV[1]) "
+                    + "return 1").skipNearCache();
+
+    private final RedisRouter router;
+
+    private final ScriptRegistry scripts;
+
+    private final Consumer<String> guard;
+
+    private final Consumer<String> invalidator;
+
+    private final ExecutorService refresher;
+
+    private final long staleMillis;
+
+    private final long leaseMillis;
+
+    private final long leaseWaitMillis;
+
+    private final double beta;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param router          键到节点的路由
+     * @param scripts         写入值和释放租约的脚本
+     * @param guard           写入前调用, 用于把键加入布隆过滤器
+     * @param invalidator     写入后调用, 用于失效一级缓存
+     * @param refresher       后台刷新线程池
+     * @param staleMillis     逻辑过期后旧值仍可返回的时间(毫秒)
+     * @param leaseMillis     跨节点加载租约时间(毫秒), 应大于加载耗时
+     * @param leaseWaitMillis 未拿到租约时最多等待其它节点写入的时间(毫秒)
+     * @param beta            XFetch 系数, 大于 1 更早刷新, 0 关闭提前刷新
+     */
+    SingleFlightLoader(RedisRouter router, ScriptRegistry scripts, Consumer<String> guard, Consumer<String> invalidator,
+                       ExecutorService refresher, long staleMillis, long leaseMillis, long leaseWaitMillis, double beta) {
+        this.router = router;
+        this.scripts = scripts;
+        this.guard = guard;
+        this.invalidator = invalidator;
+        this.refresher = refresher;
+        this.staleMillis = staleMillis;
+        this.leaseMillis = leaseMillis;
+        this.leaseWaitMillis = leaseWaitMillis;
+        this.beta = beta;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T getOrLoad(String key, long ttlMillis, Supplier<T> loader) {
+        Entry entry = read(key);
+        if (entry != null) {
+            long remaining = entry.expireAt - System.currentTimeMillis();
+            if (remaining <= 0 || shouldRefreshEarly(entry.delta, remaining)) {
+                refreshAsync(key, ttlMillis, loader);
+            }
+            return (T) entry.value;
+        }
+        return (T) loadShared(key, ttlMillis, loader);
+    }
+
+    void shutdown() {
+        refresher.shutdown();
+    }
+
+    private Object loadShared(String key, long ttlMillis, Supplier<?> loader) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(key, mine);
+        if (existing != null) {
+            return join(existing);
+        }
+        try {
+            Object value = load(key, ttlMillis, loader, true);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private void refreshAsync(String key, long ttlMillis, Supplier<?> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    load(key, ttlMillis, loader, false);
+                } catch (Exception e) {
+                    // 刷新失败时旧值继续可用, 直到实际过期
+                    log.warn("background refresh failed, key={}", key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    /**
+     * @param wait 未拿到租约时是否等待其它节点的结果, 后台刷新不等待直接放弃
+     */
+    private Object load(String key, long ttlMillis, Supplier<?> loader, boolean wait) {
+        String token = tryAcquireLease(key);
+        if (token == null) {
+            if (!wait) {
+                return null;
+            }
+            Entry entry = awaitOtherNode(key);
+            if (entry != null) {
+                return entry.value;
+            }
+        }
+        try {
+            long start = System.nanoTime();
+            Object value = loader.get();
+            long delta = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (value != null) {
+                write(key, value, delta, ttlMillis);
+            }
+            return value;
+        } finally {
+            if (token != null) {
+                releaseLease(key, token);
+            }
+        }
+    }
+
+    private Entry read(String key) {
+        List<Object> values;
+        try {
+            values = router.forKey(key).opsForHash().multiGet(key, FIELDS);
+        } catch (Exception e) {
+            // redis 不可用时直接走加载
+            log.warn("getOrLoad read failed, key={}", key, e);
+            return null;
+        }
+        if (values == null || values.size() < FIELDS.size() || values.get(0) == null || values.get(2) == null) {
+            return null;
+        }
+        Object delta = values.get(1);
+        return new Entry(values.get(0), delta == null ? 0 : ((Number) delta).longValue(), ((Number) values.get(2)).longValue());
+    }
+
+    private void write(String key, Object value, long delta, long ttlMillis) {
+        guard.accept(key);
+        try {
+            scripts.execute(WRITE, Collections.singletonList(key), ttlMillis + staleMillis, ScriptRegistry.value(value),
+                    delta, System.currentTimeMillis() + ttlMillis);
+        } catch (Exception e) {
+            // 写入失败时本次仍返回加载的值, 下次读取重新加载
+            log.warn("getOrLoad write failed, key={}", key, e);
+        }
+        invalidator.accept(key);
+    }
+
+    /**
+     * @return 租约令牌; null 表示租约被其它节点持有; redis 不可用时返回空串, 按拿到租约处理
+     */
+    private String tryAcquireLease(String key) {
+        String token = UUID.randomUUID().toString();
+        String leaseKey = key + LEASE_SUFFIX;
+        byte[] rawKey = leaseKey.getBytes(StandardCharsets.UTF_8);
+        byte[] rawToken = token.getBytes(StandardCharsets.UTF_8);
+        try {
+            Boolean acquired = router.forKey(leaseKey).execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                    .set(rawKey, rawToken, Expiration.milliseconds(leaseMillis), RedisStringCommands.SetOption.ifAbsent()));
+            return Boolean.TRUE.equals(acquired) ? token : null;
+        } catch (Exception e) {
+            log.warn("getOrLoad lease failed, key={}", key, e);
+            return "";
+        }
+    }
+
+    private void releaseLease(String key, String token) {
+        if (token.isEmpty()) {
+            return;
+        }
+        try {
+            scripts.execute(RELEASE_LEASE, Collections.singletonList(key + LEASE_SUFFIX), token);
+        } catch (Exception e) {
+            // 释放失败时租约到期自动释放
+            log.warn("getOrLoad lease release failed, key={}", key, e);
+        }
+    }
+
+    private Entry awaitOtherNode(String key) {
+        long deadline = System.currentTimeMillis() + leaseWaitMillis;
+        long sleep = 10;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            Entry entry = read(key);
+            if (entry != null) {
+                return entry;
+            }
+            sleep = Math.min(sleep * 2, 100);
+        }
+        return null;
+    }
+
+    private boolean shouldRefreshEarly(long delta, long remaining) {
+        if (beta <= 0 || delta <= 0) {
+            return false;
+        }
+        return delta * beta * -Math.log(ThreadLocalRandom.current().nextDouble()) >= remaining;
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+
+        private final long delta;
+
+        private final long expireAt;
+
+        private Entry(Object value, long delta, long expireAt) {
+            this.value = value;
+            this.delta = delta;
+            this.expireAt = expireAt;
+        }
+    }
+}
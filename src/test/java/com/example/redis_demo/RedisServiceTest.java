@@ -1,12 +1,17 @@
 package com.example.redis_demo;
 
+import com.example.redis_demo.service.BatchResult;
 import com.example.redis_demo.service.RedisService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author dengR
@@ -23,4 +28,32 @@ public class RedisServiceTest {
         List<Object> mylist = redisService.lrange("mylist", 0L, -1L);
         System.out.println(mylist);
     }
+
+    @Test
+    public void testPipeline() {
+        // 需要本地 redis, 连不上时跳过
+        Assumptions.assumeTrue(Boolean.TRUE.equals(redisService.set("mykey", "v1")), "redis 不可用");
+        redisService.del("mylist", "myhash");
+        redisService.rpush("mylist", Arrays.asList("a", "b"));
+        redisService.hset("myhash", "name", "tom");
+
+        List<BatchResult<?>> results = redisService.pipeline(batch -> {
+            batch.get("mykey");
+            batch.lrange("mylist", 0L, -1L);
+            batch.hgetAll("myhash");
+        });
+
+        // 结果按命令加入顺序返回
+        Assertions.assertEquals(3, results.size());
+        Assertions.assertEquals(Arrays.asList("GET", "LRANGE", "HGETALL"),
+                results.stream().map(BatchResult::getCommand).collect(Collectors.toList()));
+        Assertions.assertEquals(Arrays.asList("mykey", "mylist", "myhash"),
+                results.stream().map(BatchResult::getKey).collect(Collectors.toList()));
+        for (BatchResult<?> result : results) {
+            Assertions.assertTrue(result.isSuccess(), result::toString);
+        }
+        Assertions.assertEquals("v1", results.get(0).get());
+        Assertions.assertEquals(Arrays.asList("a", "b"), results.get(1).get());
+        Assertions.assertEquals(Collections.singletonMap("name", "tom"), results.get(2).get());
+    }
 }
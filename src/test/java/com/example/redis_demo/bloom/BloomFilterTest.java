@@ -0,0 +1,172 @@
+package com.example.redis_demo.bloom;
+
+import com.example.redis_demo.routing.SingleNodeRouter;
+import com.example.redis_demo.support.Fakes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.redis_demo.support.Fakes.proxy;
+
+/**
+ * 用代理模拟 redis 位图(SETBIT / GETBIT / GET, 位序与 redis 一致), 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BloomFilterTest {
+
+    private byte[] bitmap = new byte[0];
+
+    private final List<Object> pipelined = new ArrayList<>();
+
+    private int getBits;
+
+    @Test
+    public void testSizing() {
+        BloomFilter filter = new BloomFilter("users", 1_000_000, 0.01, new SingleNodeRouter(template()));
+        Assertions.assertEquals(9_585_059, filter.getBits());
+        Assertions.assertEquals(7, filter.getHashes());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BloomFilter("huge", 1L << 32, 0.001, new SingleNodeRouter(template())));
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter("users", 1000, 0.01, new SingleNodeRouter(template()));
+        Assertions.assertTrue(filter.add("user:0"));
+        Assertions.assertFalse(filter.add("user:0"));
+        List<String> users = new ArrayList<>();
+        for (int i = 1; i < 1000; i++) {
+            users.add("user:" + i);
+        }
+        filter.addAll(users);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertTrue(filter.mightContain("user:" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("missing:" + i)) {
+                falsePositives++;
+            }
+        }
+        Assertions.assertTrue(falsePositives < 300, "false positives " + falsePositives);
+    }
+
+    @Test
+    public void testMirror() {
+        SingleNodeRouter router = new SingleNodeRouter(template());
+        BloomFilter writer = new BloomFilter("users", 1000, 0.01, router);
+        for (int i = 0; i < 100; i++) {
+            writer.add("user:" + i);
+        }
+        BloomFilter reader = new BloomFilter("users", 1000, 0.01, router);
+        reader.refreshMirror();
+        Assertions.assertTrue(reader.isMirrored());
+        reader.add("user:100");
+        getBits = 0;
+        for (int i = 0; i <= 100; i++) {
+            Assertions.assertTrue(reader.mightContain("user:" + i));
+        }
+        Assertions.assertEquals(0, getBits);
+
+        // 刷新时保留本地已写入的位
+        reader.add("user:101");
+        reader.refreshMirror();
+        Assertions.assertTrue(reader.mightContain("user:101"));
+
+        // 其他实例在刷新后添加的元素不在镜像中, 本地判定不存在时查询 redis, 不会误判为不存在
+        writer.add("user:500");
+        getBits = 0;
+        Assertions.assertTrue(reader.mightContain("user:500"));
+        Assertions.assertTrue(getBits > 0);
+
+        BloomGuard guard = new BloomGuard(reader, Arrays.asList("user:"));
+        Assertions.assertTrue(guard.mightExist("order:1"));
+        Assertions.assertTrue(guard.mightExist("user:1"));
+        guard.adding("user:200");
+        Assertions.assertTrue(guard.mightExist("user:200"));
+        Assertions.assertEquals(2, guard.getChecked());
+    }
+
+    @Test
+    public void testClusterConnectionWithoutPipeline() {
+        BloomFilter filter = new BloomFilter("users", 1000, 0.01, new SingleNodeRouter(template(true)));
+        Assertions.assertTrue(filter.add("user:0"));
+        Assertions.assertFalse(filter.add("user:0"));
+        filter.addAll(Arrays.asList("user:1", "user:2"));
+        Assertions.assertTrue(filter.mightContain("user:1"));
+        Assertions.assertTrue(filter.mightContain("user:2"));
+        Assertions.assertFalse(filter.mightContain("missing:0"));
+    }
+
+    private boolean bit(long offset) {
+        int index = (int) (offset >>> 3);
+        return index < bitmap.length && (bitmap[index] & 0x80 >>> (offset & 7)) != 0;
+    }
+
+    private RedisTemplate<String, Object> template() {
+        return template(false);
+    }
+
+    /**
+     * @param cluster true 时模拟集群连接: 不支持 pipeline, 每条命令直接返回结果
+     */
+    private RedisTemplate<String, Object> template(boolean cluster) {
+        RedisStringCommands strings = proxy(RedisStringCommands.class, (method, args) -> {
+            switch (method) {
+                case "setBit": {
+                    long offset = (Long) args[1];
+                    boolean previous = bit(offset);
+                    int index = (int) (offset >>> 3);
+                    if (index >= bitmap.length) {
+                        bitmap = Arrays.copyOf(bitmap, index + 1);
+                    }
+                    bitmap[index] |= 0x80 >>> (offset & 7);
+                    return reply(cluster, previous);
+                }
+                case "getBit":
+                    getBits++;
+                    return reply(cluster, bit((Long) args[1]));
+                case "get":
+                    return bitmap.length == 0 ? null : bitmap.clone();
+                default:
+                    return null;
+            }
+        });
+        Class<? extends RedisConnection> type = cluster ? RedisClusterConnection.class : RedisConnection.class;
+        RedisConnection connection = proxy(type, (method, args) -> {
+            switch (method) {
+                case "stringCommands":
+                    return strings;
+                case "openPipeline":
+                    if (cluster) {
+                        throw new UnsupportedOperationException("Pipeline is currently not supported for JedisClusterConnection.");
+                    }
+                    return null;
+                case "closePipeline": {
+                    List<Object> results = new ArrayList<>(pipelined);
+                    pipelined.clear();
+                    return results;
+                }
+                default:
+                    return null;
+            }
+        });
+        return Fakes.template(connection);
+    }
+
+    private Object reply(boolean cluster, boolean value) {
+        if (cluster) {
+            return value;
+        }
+        pipelined.add(value);
+        return null;
+    }
+}
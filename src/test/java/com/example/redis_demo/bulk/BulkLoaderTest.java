@@ -0,0 +1,308 @@
+package com.example.redis_demo.bulk;
+
+import com.example.redis_demo.routing.ClusterSlotRouter;
+import com.example.redis_demo.routing.SingleNodeRouter;
+import com.example.redis_demo.support.Fakes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisListCommands;
+import org.springframework.data.redis.connection.RedisNode;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisStringCommands;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.redis_demo.support.Fakes.proxy;
+
+/**
+ * 用代理代替 redis 记录 pipeline 中的命令, 验证分批、背压和失败计数; 文件格式用临时文件往返
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BulkLoaderTest {
+
+    private final Map<String, String> restored = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pipelines = new AtomicInteger();
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    @Test
+    public void testFileRoundTrip(@TempDir Path dir) throws Exception {
+        for (String name : Arrays.asList("export.bin", "export.bin.gz")) {
+            Path file = dir.resolve(name);
+            try (BulkFileWriter writer = new BulkFileWriter(file)) {
+                writer.accept(BulkRecord.dump("user:1", bytes("dump-1"), 0));
+                writer.accept(BulkRecord.dump("用户:2", new byte[100000], 60000));
+                Assertions.assertThrows(IllegalArgumentException.class, () -> writer.accept(BulkRecord.value("k", "v", 0)));
+            }
+            List<BulkRecord> records = new ArrayList<>();
+            try (BulkFileReader reader = new BulkFileReader(file)) {
+                reader.forEachRemaining(records::add);
+            }
+            Assertions.assertEquals(2, records.size());
+            Assertions.assertEquals("user:1", records.get(0).getKey());
+            Assertions.assertEquals("dump-1", new String(records.get(0).getDump(), StandardCharsets.UTF_8));
+            Assertions.assertEquals(0, records.get(0).getTtlMillis());
+            Assertions.assertEquals("用户:2", records.get(1).getKey());
+            Assertions.assertEquals(100000, records.get(1).getDump().length);
+            Assertions.assertEquals(60000, records.get(1).getTtlMillis());
+        }
+    }
+
+    @Test
+    public void testTruncatedFile() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BulkFileWriter writer = new BulkFileWriter(out);
+        writer.accept(BulkRecord.dump("user:1", bytes("dump-1"), 0));
+        // 没有 close, 缺少结束标记
+        BulkFileReader reader = new BulkFileReader(new ByteArrayInputStream(out.toByteArray()));
+        Assertions.assertTrue(reader.hasNext());
+        reader.next();
+        Assertions.assertThrows(UncheckedIOException.class, reader::hasNext);
+    }
+
+    @Test
+    public void testLoadInBatches() {
+        BulkLoader loader = new BulkLoader(router(), new BulkOptions().setBatchSize(10).setParallelism(3).setMaxInFlightBatches(2));
+        List<BulkRecord> records = new ArrayList<>();
+        for (int i = 0; i < 95; i++) {
+            records.add(BulkRecord.dump("key:" + i, bytes("v" + i), 0));
+        }
+        List<BulkProgress> reports = new ArrayList<>();
+        BulkProgress progress = loader.load(records.iterator(), reports::add);
+
+        Assertions.assertTrue(progress.isFinished());
+        Assertions.assertEquals(95, progress.getRecords());
+        Assertions.assertEquals(95, progress.getCompleted());
+        Assertions.assertEquals(0, progress.getFailed());
+        Assertions.assertEquals(10, pipelines.get());
+        Assertions.assertEquals(95, restored.size());
+        Assertions.assertEquals("v42", restored.get("key:42"));
+        Assertions.assertTrue(maxConcurrent.get() <= 2);
+        Assertions.assertSame(progress, reports.get(reports.size() - 1));
+    }
+
+    @Test
+    public void testFailuresCounted() {
+        BulkLoader loader = new BulkLoader(router(), new BulkOptions().setBatchSize(10).setParallelism(1));
+        // 批次发送完成后才失效, 部分失败的批次也失效其中所有键
+        Set<String> invalidated = ConcurrentHashMap.newKeySet();
+        loader.setInvalidator(keys -> keys.forEach(key -> {
+            Assertions.assertTrue("busy".equals(key) || restored.containsKey(key), key);
+            invalidated.add(key);
+        }));
+        List<BulkRecord> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            records.add(BulkRecord.dump(i == 3 ? "busy" : "key:" + i, bytes("v"), 0));
+        }
+        BulkProgress progress = loader.load(records.iterator(), p -> {
+        });
+        Assertions.assertEquals(19, progress.getCompleted());
+        Assertions.assertEquals(1, progress.getFailed());
+        Assertions.assertEquals(20, invalidated.size());
+        Assertions.assertTrue(invalidated.contains("busy"));
+    }
+
+    @Test
+    public void testNoReplaceSkipsExistingKeys() {
+        Set<String> existing = new HashSet<>(Arrays.asList("value:1", "hash:1", "list:1"));
+        Map<String, String> written = new ConcurrentHashMap<>();
+        RedisConnection connection = noReplaceConnection(existing, written);
+        BulkLoader loader = new BulkLoader(new SingleNodeRouter(Fakes.template(connection)),
+                new BulkOptions().setBatchSize(10).setParallelism(1).setReplace(false));
+        List<BulkRecord> records = Arrays.asList(
+                BulkRecord.value("value:1", "new", 0),
+                BulkRecord.value("value:2", "new", 60000),
+                BulkRecord.hash("hash:1", Collections.singletonMap("f", "new"), 0),
+                BulkRecord.hash("hash:2", Collections.singletonMap("f", "new"), 0),
+                BulkRecord.list("list:1", Collections.singletonList("new"), 0),
+                BulkRecord.list("list:2", Collections.singletonList("new"), 0));
+        BulkProgress progress = loader.load(records.iterator(), p -> {
+        });
+
+        Assertions.assertEquals(3, progress.getCompleted());
+        Assertions.assertEquals(3, progress.getFailed());
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("value:2", "hash:2", "list:2")), written.keySet());
+        Assertions.assertEquals("SET NX", written.get("value:2"));
+        Assertions.assertEquals("HMSET", written.get("hash:2"));
+        Assertions.assertEquals("RPUSH", written.get("list:2"));
+    }
+
+    @Test
+    public void testClusterGroupsByNodeWithoutPipeline() {
+        AtomicInteger batches = new AtomicInteger();
+        RedisClusterNode first = RedisClusterNode.newRedisClusterNode().listeningAt("10.0.0.1", 6379)
+                .promotedAs(RedisNode.NodeType.MASTER).serving(new RedisClusterNode.SlotRange(0, 8191)).build();
+        RedisClusterNode second = RedisClusterNode.newRedisClusterNode().listeningAt("10.0.0.2", 6379)
+                .promotedAs(RedisNode.NodeType.MASTER).serving(new RedisClusterNode.SlotRange(8192, 16383)).build();
+        RedisKeyCommands keyCommands = proxy(RedisKeyCommands.class, (method, args) -> {
+            if ("restore".equals(method)) {
+                restored.put(new String((byte[]) args[0], StandardCharsets.UTF_8), new String((byte[]) args[2], StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        RedisClusterConnection connection = proxy(RedisClusterConnection.class, (method, args) -> {
+            switch (method) {
+                case "keyCommands":
+                    return keyCommands;
+                case "clusterGetNodes":
+                    return Arrays.asList(first, second);
+                case "openPipeline":
+                    throw new UnsupportedOperationException("Pipeline is currently not supported for JedisClusterConnection.");
+                default:
+                    return null;
+            }
+        });
+        ClusterSlotRouter router = new ClusterSlotRouter(Fakes.template(() -> {
+            batches.incrementAndGet();
+            return connection;
+        }));
+        BulkLoader loader = new BulkLoader(router, new BulkOptions().setBatchSize(10).setParallelism(2));
+        List<BulkRecord> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.add(BulkRecord.dump("key:" + i, bytes("v" + i), 0));
+        }
+        BulkProgress progress = loader.load(records.iterator(), p -> {
+        });
+
+        Assertions.assertEquals(100, progress.getCompleted());
+        Assertions.assertEquals(0, progress.getFailed());
+        Assertions.assertEquals(100, restored.size());
+        // 按节点分组: 两个节点各 ceil(n / 10) 批, 加上一次获取拓扑; 按 slot 分组时几乎每条记录一批
+        Assertions.assertTrue(batches.get() <= 12, "batches " + batches.get());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private SingleNodeRouter router() {
+        return new SingleNodeRouter(Fakes.template(this::connection));
+    }
+
+    /**
+     * pipeline 中的 EXISTS / SET NX / HMSET / RPUSH, 已存在的键 EXISTS 为 true, SET NX 为 false
+     */
+    private RedisConnection noReplaceConnection(Set<String> existing, Map<String, String> written) {
+        List<Object> results = new ArrayList<>();
+        RedisKeyCommands keyCommands = proxy(RedisKeyCommands.class, (method, args) -> {
+            if ("exists".equals(method)) {
+                results.add(existing.contains(new String((byte[]) args[0], StandardCharsets.UTF_8)));
+            }
+            return null;
+        });
+        RedisStringCommands stringCommands = proxy(RedisStringCommands.class, (method, args) -> {
+            String key = new String((byte[]) args[0], StandardCharsets.UTF_8);
+            if ("set".equals(method) && args.length == 4 && args[3] == RedisStringCommands.SetOption.SET_IF_ABSENT) {
+                boolean absent = !existing.contains(key);
+                if (absent) {
+                    written.put(key, "SET NX");
+                }
+                results.add(absent);
+            }
+            return null;
+        });
+        RedisHashCommands hashCommands = proxy(RedisHashCommands.class, (method, args) -> {
+            if ("hMSet".equals(method)) {
+                written.put(new String((byte[]) args[0], StandardCharsets.UTF_8), "HMSET");
+            }
+            return null;
+        });
+        RedisListCommands listCommands = proxy(RedisListCommands.class, (method, args) -> {
+            if ("rPush".equals(method)) {
+                written.put(new String((byte[]) args[0], StandardCharsets.UTF_8), "RPUSH");
+                results.add(1L);
+            }
+            return null;
+        });
+        return proxy(RedisConnection.class, (method, args) -> {
+            switch (method) {
+                case "keyCommands":
+                    return keyCommands;
+                case "stringCommands":
+                    return stringCommands;
+                case "hashCommands":
+                    return hashCommands;
+                case "listCommands":
+                    return listCommands;
+                case "closePipeline": {
+                    List<Object> closed = new ArrayList<>(results);
+                    results.clear();
+                    return closed;
+                }
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * 每个连接单独记录 pipeline 中的结果, closePipeline 时返回
+     */
+    private RedisConnection connection() {
+        List<Object> results = new ArrayList<>();
+        RedisKeyCommands keyCommands = proxy(RedisKeyCommands.class, (method, args) -> {
+            if ("restore".equals(method)) {
+                String key = new String((byte[]) args[0], StandardCharsets.UTF_8);
+                if ("busy".equals(key)) {
+                    results.add(new IllegalStateException("BUSYKEY Target key name already exists."));
+                } else {
+                    restored.put(key, new String((byte[]) args[2], StandardCharsets.UTF_8));
+                    results.add("OK");
+                }
+            }
+            return null;
+        });
+        RedisStringCommands stringCommands = proxy(RedisStringCommands.class, (method, args) -> null);
+        return proxy(RedisConnection.class, (method, args) -> {
+            switch (method) {
+                case "keyCommands":
+                    return keyCommands;
+                case "stringCommands":
+                    return stringCommands;
+                case "openPipeline":
+                    pipelines.incrementAndGet();
+                    maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                    return null;
+                case "closePipeline":
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    concurrent.decrementAndGet();
+                    for (Object result : results) {
+                        if (result instanceof Exception) {
+                            throw new RedisPipelineException((Exception) result, results);
+                        }
+                    }
+                    return Collections.unmodifiableList(new ArrayList<>(results));
+                default:
+                    return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.redis_demo.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class NearCacheTest {
+
+    @Test
+    public void testInvalidate() {
+        NearCache nearCache = new NearCache(100, 1024, 60_000);
+        nearCache.put("user:1", NearCache.VALUE, "tom", 5, -1, nearCache.sequence("user:1"));
+        nearCache.put("user:1", "age", 18, 2, -1, nearCache.sequence("user:1"));
+        Assertions.assertEquals("tom", nearCache.get("user:1", NearCache.VALUE));
+        Assertions.assertEquals(18, nearCache.get("user:1", "age"));
+
+        nearCache.invalidateLocal("user:1");
+        Assertions.assertNull(nearCache.get("user:1", NearCache.VALUE));
+        Assertions.assertNull(nearCache.get("user:1", "age"));
+        Assertions.assertEquals(2, nearCache.stats().getHits());
+        Assertions.assertEquals(2, nearCache.stats().getMisses());
+    }
+
+    @Test
+    public void testStaleLoadIgnored() {
+        NearCache nearCache = new NearCache(100, 1024, 60_000);
+        long sequence = nearCache.sequence("user:1");
+        long other = nearCache.sequence("user:2");
+        nearCache.invalidateLocal("user:1");
+        nearCache.put("user:1", NearCache.VALUE, "old", 3, -1, sequence);
+        Assertions.assertNull(nearCache.get("user:1", NearCache.VALUE));
+        // 其他键的失效不影响回填
+        nearCache.put("user:2", NearCache.VALUE, "new", 3, -1, other);
+        Assertions.assertEquals("new", nearCache.get("user:2", NearCache.VALUE));
+    }
+
+    @Test
+    public void testEviction() {
+        NearCache nearCache = new NearCache(100, 10, 60_000);
+        nearCache.put("a", NearCache.VALUE, "a", 6, -1, nearCache.sequence("a"));
+        nearCache.put("b", NearCache.VALUE, "b", 6, -1, nearCache.sequence("b"));
+        Assertions.assertNull(nearCache.get("a", NearCache.VALUE));
+        Assertions.assertEquals("b", nearCache.get("b", NearCache.VALUE));
+        Assertions.assertEquals(1, nearCache.stats().getEvictions());
+        Assertions.assertEquals(6, nearCache.stats().getBytes());
+    }
+
+    @Test
+    public void testTtlBoundedByRedis() throws InterruptedException {
+        NearCache nearCache = new NearCache(100, 1024, 60_000);
+        nearCache.put("a", NearCache.VALUE, "a", 1, 20, nearCache.sequence("a"));
+        nearCache.put("gone", NearCache.VALUE, "x", 1, -2, nearCache.sequence("gone"));
+        Thread.sleep(40);
+        Assertions.assertNull(nearCache.get("a", NearCache.VALUE));
+        Assertions.assertNull(nearCache.get("gone", NearCache.VALUE));
+        Assertions.assertEquals(1, nearCache.stats().getExpirations());
+    }
+}
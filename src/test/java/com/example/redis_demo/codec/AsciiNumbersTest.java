@@ -0,0 +1,33 @@
+package com.example.redis_demo.codec;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class AsciiNumbersTest {
+
+    @Test
+    public void testParseLong() {
+        long[] values = {0, 7, -7, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+            Assertions.assertTrue(AsciiNumbers.isLong(bytes));
+            Assertions.assertEquals(value, AsciiNumbers.parseLong(bytes));
+        }
+    }
+
+    @Test
+    public void testRejectNonInteger() {
+        String[] values = {"", "-", "1.5", "12a", "\"1\"", "9223372036854775808", "-9223372036854775809", "12345678901234567890"};
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            Assertions.assertThrows(NumberFormatException.class, () -> AsciiNumbers.parseLong(bytes), value);
+        }
+        Assertions.assertFalse(AsciiNumbers.isLong(null));
+    }
+}
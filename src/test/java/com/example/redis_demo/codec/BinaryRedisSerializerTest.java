@@ -0,0 +1,116 @@
+package com.example.redis_demo.codec;
+
+import com.example.redis_demo.config.RedisConfig;
+import com.example.redis_demo.entity.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class BinaryRedisSerializerTest {
+
+    private final Jackson2JsonRedisSerializer<Object> json = RedisConfig.createJacksonRedisSerializer();
+
+    private final BinaryRedisSerializer binary = new BinaryRedisSerializer(
+            new CodecRegistry().register(UserCodec.ID, User.class, new UserCodec()), json);
+
+    @Test
+    public void testUserRoundTrip() {
+        User user = user();
+        byte[] bytes = binary.serialize(user);
+        Assertions.assertTrue(BinaryRedisSerializer.isBinary(bytes));
+        Assertions.assertEquals(user, binary.deserialize(bytes));
+
+        User empty = new User();
+        Assertions.assertEquals(empty, binary.deserialize(binary.serialize(empty)));
+    }
+
+    @Test
+    public void testReadLegacyJson() {
+        User user = user();
+        byte[] legacy = json.serialize(user);
+        Assertions.assertEquals(user, binary.deserialize(legacy));
+        Assertions.assertEquals("abc", binary.deserialize(json.serialize("abc")));
+        Assertions.assertEquals(Collections.singletonList(1), binary.deserialize(json.serialize(Collections.singletonList(1))));
+    }
+
+    @Test
+    public void testJsonWritingStillReadsBinary() {
+        // 滚动升级第一阶段: 只写 json, 旧版本可以读取; 已切换到 binary 的节点写入的值也能读取
+        BinaryRedisSerializer jsonWriting = new BinaryRedisSerializer(
+                new CodecRegistry().register(UserCodec.ID, User.class, new UserCodec()), json, new BinaryWriterPool(512), false);
+        User user = user();
+        byte[] written = jsonWriting.serialize(user);
+        Assertions.assertArrayEquals(json.serialize(user), written);
+        Assertions.assertEquals(user, json.deserialize(written));
+        Assertions.assertEquals(user, jsonWriting.deserialize(binary.serialize(user)));
+    }
+
+    @Test
+    public void testNumbersStayAscii() {
+        // INCRBY 之后的值必须能被读取, set 写入的数字也必须能被 INCRBY
+        Assertions.assertEquals("42", new String(binary.serialize(42), StandardCharsets.US_ASCII));
+        Assertions.assertEquals(42, binary.deserialize("42".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void testSmallerThanJson() {
+        User user = user();
+        int jsonSize = json.serialize(user).length;
+        int binarySize = binary.serialize(user).length;
+        Assertions.assertTrue(binarySize * 3 < jsonSize, "json=" + jsonSize + " bytes, binary=" + binarySize + " bytes");
+    }
+
+    @Test
+    public void testUtf8MatchesJdk() {
+        String[] values = {"", "ascii", "é", "中文名字", "emoji \uD83D\uDE00 end", "lone \uD800 high", "lone \uDC00 low", "\uD83D"};
+        for (String value : values) {
+            byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+            Assertions.assertArrayEquals(expected, new BinaryWriter(16).writeRawString(value).toByteArray(), value);
+            byte[] prefixed = new BinaryWriter(16).writeString(value).toByteArray();
+            BinaryReader in = new BinaryReader(prefixed);
+            Assertions.assertEquals(new String(expected, StandardCharsets.UTF_8), in.readString(), value);
+            Assertions.assertEquals(0, in.remaining());
+        }
+    }
+
+    @Test
+    public void testPooledBuffers() {
+        BinaryRedisSerializer pooled = new BinaryRedisSerializer(
+                new CodecRegistry().register(UserCodec.ID, User.class, new UserCodec()), json, new BinaryWriterPool(512));
+        User large = user();
+        large.setScores(Collections.nCopies(1000, 123456));
+        User small = user();
+        byte[] first = pooled.serialize(small);
+        byte[] big = pooled.serialize(large);
+        byte[] second = pooled.serialize(small);
+        // 每次返回独立的数组, 超过上限的缓冲区不会影响之后的结果
+        Assertions.assertNotSame(first, second);
+        Assertions.assertArrayEquals(first, second);
+        Assertions.assertArrayEquals(binary.serialize(large), big);
+        Assertions.assertEquals(large, pooled.deserialize(big));
+
+        BinaryWriterPool writers = new BinaryWriterPool(512);
+        BinaryWriter outer = writers.acquire();
+        BinaryWriter nested = writers.acquire();
+        Assertions.assertNotSame(outer, nested);
+        writers.release(nested);
+        writers.release(outer);
+        Assertions.assertSame(outer, writers.acquire());
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setName("tom");
+        user.setAge(18);
+        user.setScores(Arrays.asList(90, -5, null, 100000));
+        return user;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.redis_demo.codec;
+
+import com.example.redis_demo.config.RedisConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class CompressingRedisSerializerTest {
+
+    private final Jackson2JsonRedisSerializer<Object> json = RedisConfig.createJacksonRedisSerializer();
+
+    @Test
+    public void testCompressAboveThreshold() {
+        for (CompressionAlgorithm algorithm : CompressionAlgorithm.values()) {
+            CompressingRedisSerializer serializer = new CompressingRedisSerializer(json, new CompressionPolicy(1024, algorithm));
+            List<String> value = largeValue();
+            byte[] bytes = serializer.serialize(value);
+            Assertions.assertEquals(algorithm.getMarker(), bytes[0]);
+            Assertions.assertEquals(value, serializer.deserialize(bytes));
+            CompressingRedisSerializer.Stats stats = serializer.stats();
+            Assertions.assertEquals(1, stats.getValues());
+            Assertions.assertEquals(1, stats.getCompressedValues());
+            Assertions.assertEquals(1, stats.getDecompressedValues());
+            Assertions.assertEquals(json.serialize(value).length, stats.getBytesBeforeCompression());
+            Assertions.assertEquals(bytes.length, stats.getBytesAfterCompression());
+            Assertions.assertTrue(stats.getCompressionRatio() < 0.5, algorithm + " " + stats);
+        }
+    }
+
+    @Test
+    public void testSmallAndLegacyValuesUntouched() {
+        CompressingRedisSerializer serializer = new CompressingRedisSerializer(json, new CompressionPolicy(1024, CompressionAlgorithm.LZ4));
+        byte[] bytes = serializer.serialize("small");
+        Assertions.assertArrayEquals(json.serialize("small"), bytes);
+        Assertions.assertEquals(largeValue(), serializer.deserialize(json.serialize(largeValue())));
+        Assertions.assertEquals(0, serializer.stats().getCompressedValues());
+    }
+
+    @Test
+    public void testDisabledStillReadsCompressed() {
+        CompressingRedisSerializer enabled = new CompressingRedisSerializer(json, new CompressionPolicy(1024, CompressionAlgorithm.LZ4));
+        CompressingRedisSerializer disabled = new CompressingRedisSerializer(json, new CompressionPolicy(-1, CompressionAlgorithm.LZ4));
+        Assertions.assertArrayEquals(json.serialize(largeValue()), disabled.serialize(largeValue()));
+        Assertions.assertEquals(largeValue(), disabled.deserialize(enabled.serialize(largeValue())));
+        Assertions.assertEquals(0, disabled.stats().getCompressedValues());
+    }
+
+    @Test
+    public void testPrefixPolicy() {
+        CompressionPolicy policy = new CompressionPolicy(1024, CompressionAlgorithm.LZ4).prefixes("log:=off,report:=16:deflate");
+        CompressingRedisSerializer serializer = new CompressingRedisSerializer(json, policy);
+        Assertions.assertEquals('[', serialize(serializer, "log:1", largeValue())[0]);
+        Assertions.assertEquals(CompressionAlgorithm.LZ4.getMarker(), serialize(serializer, "user:1", largeValue())[0]);
+        Assertions.assertEquals(CompressionAlgorithm.DEFLATE.getMarker(), serialize(serializer, "report:1", largeValue())[0]);
+    }
+
+    private static byte[] serialize(CompressingRedisSerializer serializer, String key, Object value) {
+        String previous = SerializationContext.enter(key);
+        try {
+            return serializer.serialize(value);
+        } finally {
+            SerializationContext.exit(previous);
+        }
+    }
+
+    private static List<String> largeValue() {
+        List<String> value = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            value.add("item-" + (i % 10));
+        }
+        return value;
+    }
+}
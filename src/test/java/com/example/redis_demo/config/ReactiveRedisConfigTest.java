@@ -0,0 +1,49 @@
+package com.example.redis_demo.config;
+
+import com.example.redis_demo.service.AsyncRedisService;
+import com.example.redis_demo.service.ReactiveRedisService;
+import com.example.redis_demo.service.impl.AsyncRedisServiceImpl;
+import com.example.redis_demo.service.impl.ReactiveRedisServiceImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * 只加载非阻塞客户端的配置和服务, 连接在第一次使用时建立, 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class ReactiveRedisConfigTest {
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withUserConfiguration(ReactiveRedisConfig.class, ReactiveRedisServiceImpl.class, AsyncRedisServiceImpl.class)
+            .withBean("redisValueSerializer", RedisSerializer.class, RedisSerializer::java)
+            .withPropertyValues("redis.host=localhost", "redis.port=6379");
+
+    @Test
+    public void testCreatedOutsideShardedMode() {
+        runner.run(context -> {
+            Assertions.assertNull(context.getStartupFailure());
+            Assertions.assertEquals(1, context.getBeansOfType(ReactiveRedisService.class).size());
+            Assertions.assertEquals(1, context.getBeansOfType(AsyncRedisService.class).size());
+            Assertions.assertEquals(1, context.getBeansOfType(ReactiveRedisTemplate.class).size());
+            // 所有调用共用一个连接
+            Assertions.assertTrue(context.getBean(LettuceConnectionFactory.class).getShareNativeConnection());
+        });
+    }
+
+    @Test
+    public void testAbsentInShardedMode() {
+        runner.withPropertyValues("redis.mode=sharded").run(context -> {
+            Assertions.assertNull(context.getStartupFailure());
+            Assertions.assertTrue(context.getBeansOfType(ReactiveRedisService.class).isEmpty());
+            Assertions.assertTrue(context.getBeansOfType(AsyncRedisService.class).isEmpty());
+            Assertions.assertTrue(context.getBeansOfType(ReactiveRedisTemplate.class).isEmpty());
+            Assertions.assertTrue(context.getBeansOfType(LettuceConnectionFactory.class).isEmpty());
+        });
+    }
+}
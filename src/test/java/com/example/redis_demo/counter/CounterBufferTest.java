@@ -0,0 +1,147 @@
+package com.example.redis_demo.counter;
+
+import com.example.redis_demo.service.BatchResult;
+import com.example.redis_demo.service.RedisBatch;
+import com.example.redis_demo.service.RedisService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 用代理模拟 RedisService.pipeline, 把写入的增量累加到内存中, 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class CounterBufferTest {
+
+    private final Map<String, Double> redis = new ConcurrentHashMap<>();
+
+    private volatile boolean failing;
+
+    private int pipelines;
+
+    @Test
+    public void testConcurrentUpdatesAreNotLost() throws Exception {
+        CounterBuffer buffer = new CounterBuffer(redisService(), 1, 1000);
+        buffer.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    buffer.incr("pv", 1);
+                    buffer.hincr("stat", "uv", 2);
+                    buffer.hincr("stat", "amount", 0.5);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        buffer.close();
+        Assertions.assertEquals(200000, redis.get("pv"));
+        Assertions.assertEquals(400000, redis.get("stat.uv"));
+        Assertions.assertEquals(100000, redis.get("stat.amount"));
+        // 每次有增量的刷新一个 pipeline, 每个 pipeline 中每个计数器最多一条命令
+        Assertions.assertEquals(buffer.getFlushes(), pipelines);
+        Assertions.assertTrue(pipelines >= 1);
+        Assertions.assertTrue(buffer.getFlushedCommands() >= pipelines, "commands=" + buffer.getFlushedCommands() + " pipelines=" + pipelines);
+        Assertions.assertTrue(buffer.getFlushedCommands() <= pipelines * 3L, "commands=" + buffer.getFlushedCommands() + " pipelines=" + pipelines);
+        Assertions.assertTrue(buffer.getFlushedCommands() < buffer.getUpdates() / 10);
+    }
+
+    @Test
+    public void testFailedFlushIsRetried() {
+        CounterBuffer buffer = new CounterBuffer(redisService(), 60000, 1000);
+        buffer.incr("pv", 3);
+        failing = true;
+        Assertions.assertEquals(0, buffer.flush());
+        Assertions.assertEquals(1, buffer.getFailedCommands());
+        failing = false;
+        buffer.incr("pv", 4);
+        Assertions.assertEquals(1, buffer.flush());
+        Assertions.assertEquals(7, redis.get("pv"));
+        // 没有新的增量时不再写入
+        Assertions.assertEquals(0, buffer.flush());
+    }
+
+    @Test
+    public void testIdleCountersAreRemovedWithoutLoss() {
+        CounterBuffer buffer = new CounterBuffer(redisService(), 60000, 1000);
+        buffer.incr("pv", 1);
+        buffer.hincr("stat", "uv", 1);
+        buffer.flush();
+        for (int i = 0; i < CounterBuffer.MIN_IDLE_FLUSHES; i++) {
+            buffer.flush();
+        }
+        Assertions.assertEquals(0, buffer.getCounters());
+        buffer.incr("pv", 5);
+        buffer.flush();
+        Assertions.assertEquals(6, redis.get("pv"));
+        Assertions.assertEquals(1, redis.get("stat.uv"));
+    }
+
+    @Test
+    public void testIncrDuringCloseDoesNotThrow() throws Exception {
+        CounterBuffer buffer = new CounterBuffer(redisService(), 60000, 1);
+        buffer.start();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        buffer.incr("pv", 1);
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        Thread.sleep(20);
+        // 递增线程上的刷新请求与 close() 关闭线程池竞争, 被拒绝时不影响递增
+        buffer.close();
+        Thread.sleep(20);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertNull(error.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisService redisService() {
+        return (RedisService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RedisService.class}, (proxy, method, args) -> {
+            if (!"pipeline".equals(method.getName())) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            pipelines++;
+            List<BatchResult<?>> results = new ArrayList<>();
+            RedisBatch batch = (RedisBatch) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RedisBatch.class}, (p, m, a) -> {
+                String key = a.length == 3 ? a[0] + "." + a[1] : (String) a[0];
+                BatchResult<Object> result = new BatchResult<>(m.getName(), key);
+                if (failing) {
+                    result.fail(new RedisConnectionFailureException("connection refused"));
+                } else {
+                    result.complete(redis.merge(key, ((Number) a[a.length - 1]).doubleValue(), Double::sum));
+                }
+                results.add(result);
+                return result;
+            });
+            ((Consumer<RedisBatch>) args[0]).accept(batch);
+            return results;
+        });
+    }
+}
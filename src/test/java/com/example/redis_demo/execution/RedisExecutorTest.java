@@ -0,0 +1,92 @@
+package com.example.redis_demo.execution;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 低于 JDK 21 时只验证平台线程模式
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class RedisExecutorTest {
+
+    @Test
+    public void testFanOutKeepsOrder() {
+        try (RedisExecutor executor = create(0)) {
+            Map<String, String> results = executor.fanOut(Arrays.asList("c", "a", "b", "a"), key -> key.toUpperCase());
+            Assertions.assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<>(results.keySet()));
+            Assertions.assertEquals("A", results.get("a"));
+            Assertions.assertEquals(3, executor.getSubmitted());
+        }
+    }
+
+    @Test
+    public void testInvokeAllRunsConcurrently() {
+        int tasks = 8;
+        CountDownLatch started = new CountDownLatch(tasks);
+        List<Callable<Integer>> calls = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            int index = i;
+            calls.add(() -> {
+                // 全部任务同时在执行才能通过, 串行执行会超时
+                started.countDown();
+                Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+                return index;
+            });
+        }
+        try (RedisExecutor executor = create(0)) {
+            List<Integer> results = executor.invokeAll(calls);
+            Assertions.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7), results);
+        }
+    }
+
+    @Test
+    public void testMaxConcurrencyAndFailure() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Callable<Integer>> calls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int index = i;
+            calls.add(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(2);
+                running.decrementAndGet();
+                if (index == 7) {
+                    throw new IllegalArgumentException("task " + index);
+                }
+                return index;
+            });
+        }
+        try (RedisExecutor executor = create(2)) {
+            IllegalArgumentException error = Assertions.assertThrows(IllegalArgumentException.class, () -> executor.invokeAll(calls));
+            Assertions.assertEquals("task 7", error.getMessage());
+            Assertions.assertTrue(peak.get() <= 2, "peak " + peak.get());
+            Assertions.assertEquals(0, executor.getInFlight());
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsDetection() throws Exception {
+        if (!VirtualThreads.isAvailable()) {
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> RedisExecutor.virtual(0));
+            return;
+        }
+        try (RedisExecutor executor = RedisExecutor.virtual(0)) {
+            Assertions.assertTrue(executor.submit(() -> VirtualThreads.isVirtual(Thread.currentThread())).get());
+        }
+    }
+
+    private static RedisExecutor create(int maxConcurrency) {
+        return VirtualThreads.isAvailable() ? RedisExecutor.virtual(maxConcurrency) : RedisExecutor.platform(8, maxConcurrency);
+    }
+}
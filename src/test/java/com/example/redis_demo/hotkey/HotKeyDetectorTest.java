@@ -0,0 +1,87 @@
+package com.example.redis_demo.hotkey;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class HotKeyDetectorTest {
+
+    @Test
+    public void testSpaceSavingTopK() {
+        SpaceSaving sketch = new SpaceSaving(10);
+        // 3 个热键混在 1000 个只出现一次的键中
+        for (int i = 0; i < 1000; i++) {
+            sketch.offer("cold:" + i, 1, 0);
+            if (i % 2 == 0) {
+                sketch.offer("hot:a", 1, 0);
+            }
+            if (i % 4 == 0) {
+                sketch.offer("hot:b", 1, 0);
+            }
+            if (i % 8 == 0) {
+                sketch.offer("hot:c", 1, 0);
+            }
+        }
+        Assertions.assertEquals(10, sketch.size());
+        // 共 1875 次, 超过 1875 / 10 次的键一定在表中; hot:c 只有 125 次, 不保证
+        List<KeyStats> top = sketch.top(2, Comparator.comparingLong(KeyStats::getCount).reversed());
+        Assertions.assertEquals("hot:a", top.get(0).getKey());
+        Assertions.assertEquals("hot:b", top.get(1).getKey());
+        // 计数是上界, 减去误差是下界
+        Assertions.assertTrue(top.get(0).getCount() >= 500 && top.get(0).getCount() - top.get(0).getError() <= 500);
+
+        sketch.decay();
+        Assertions.assertTrue(sketch.count("hot:a") >= 250);
+    }
+
+    @Test
+    public void testHotKeyPromotion() {
+        HotKeyDetector detector = new HotKeyDetector(16, 1, 50, 1 << 20, true);
+        for (int i = 0; i < 60; i++) {
+            detector.recordAccess("user:1");
+        }
+        detector.recordAccess("user:2");
+        Assertions.assertTrue(detector.isHot("user:1"));
+        Assertions.assertTrue(detector.admits("user:1"));
+        Assertions.assertFalse(detector.admits("user:2"));
+        Assertions.assertEquals(1, detector.getDetected());
+        Assertions.assertEquals(61, detector.getSampledAccesses());
+
+        // 60 -> 30, 低于阈值后不再是热键
+        detector.decay();
+        Assertions.assertFalse(detector.isHot("user:1"));
+
+        HotKeyDetector observing = new HotKeyDetector(16, 1, 50, 1 << 20, false);
+        Assertions.assertTrue(observing.admits("user:2"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBigResponse() {
+        HotKeyDetector detector = new HotKeyDetector(16, 1000, 50, 1000, false);
+        SizeRecordingRedisSerializer serializer = new SizeRecordingRedisSerializer((RedisSerializer<Object>) (RedisSerializer<?>) RedisSerializer.byteArray());
+
+        long mark = detector.mark();
+        serializer.deserialize(new byte[600]);
+        serializer.deserialize(new byte[600]);
+        detector.recordRead("list:big", mark);
+
+        mark = detector.mark();
+        serializer.deserialize(new byte[10]);
+        detector.recordRead("small", mark);
+
+        Assertions.assertEquals(1, detector.getBigResponses());
+        List<KeyStats> big = detector.topBigKeys(10);
+        Assertions.assertEquals(1, big.size());
+        Assertions.assertEquals("list:big", big.get(0).getKey());
+        Assertions.assertEquals(1200, big.get(0).getMaxBytes());
+        Assertions.assertEquals(1, detector.getTopBigKeys().size());
+    }
+}
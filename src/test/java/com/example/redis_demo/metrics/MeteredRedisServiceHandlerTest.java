@@ -0,0 +1,78 @@
+package com.example.redis_demo.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class MeteredRedisServiceHandlerTest {
+
+    public interface Cache {
+
+        String get(String key);
+
+        Boolean set(String key, String value);
+
+        Long push(String key, String value);
+
+        Long push(String key, List<String> values);
+    }
+
+    @Test
+    public void testRecord() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MeteredRedisSerializer serializer = new MeteredRedisSerializer(new GenericToStringSerializer<>(Object.class));
+        Cache cache = MeteredRedisServiceHandler.wrap(new Cache() {
+            @Override
+            public String get(String key) {
+                if (key == null) {
+                    throw new IllegalArgumentException("key");
+                }
+                return (String) serializer.deserialize(key.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public Boolean set(String key, String value) {
+                serializer.serialize(value);
+                // 模拟 RedisServiceImpl 内部吞掉异常后返回 false
+                RedisInvocationContext.recordError(new IllegalStateException("down"));
+                return false;
+            }
+
+            @Override
+            public Long push(String key, String value) {
+                return 1L;
+            }
+
+            @Override
+            public Long push(String key, List<String> values) {
+                return (long) values.size();
+            }
+        }, Cache.class, registry);
+
+        cache.get("abc");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> cache.get(null));
+        cache.set("k", "12345");
+        cache.push("list", "a");
+        cache.push("list", Arrays.asList("a", "b"));
+        cache.push("list", Arrays.asList("c", "d"));
+
+        Assertions.assertEquals(2, registry.get("redis.service.calls").tag("method", "get(String)").timer().count());
+        Assertions.assertEquals(1, registry.get("redis.service.errors").tags("method", "get(String)", "exception", "IllegalArgumentException").counter().count());
+        Assertions.assertEquals(1, registry.get("redis.service.errors").tags("method", "set(String,String)", "exception", "IllegalStateException").counter().count());
+        Assertions.assertEquals(3, registry.get("redis.service.payload").tags("method", "get(String)", "direction", "in").summary().totalAmount());
+        Assertions.assertEquals(5, registry.get("redis.service.payload").tags("method", "set(String,String)", "direction", "out").summary().totalAmount());
+        // 参数个数相同的重载分开统计
+        Assertions.assertEquals(1, registry.get("redis.service.calls").tag("method", "push(String,String)").timer().count());
+        Assertions.assertEquals(2, registry.get("redis.service.calls").tag("method", "push(String,List)").timer().count());
+        Assertions.assertNull(RedisInvocationContext.current());
+    }
+}
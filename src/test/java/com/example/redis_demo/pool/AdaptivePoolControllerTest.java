@@ -0,0 +1,93 @@
+package com.example.redis_demo.pool;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+
+/**
+ * 不带密码时 Jedis 建立连接不发送命令, 用一个只监听的端口即可借出连接
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class AdaptivePoolControllerTest {
+
+    @Test
+    public void testGrowAndShrink() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            JedisPoolConfig config = new JedisPoolConfig();
+            config.setMaxTotal(2);
+            config.setMaxIdle(2);
+            config.setMinIdle(1);
+            config.setMaxWait(Duration.ofMillis(20));
+            InstrumentedJedisPool pool = new InstrumentedJedisPool(config, new HostAndPort("127.0.0.1", server.getLocalPort()),
+                    DefaultJedisClientConfig.builder().socketTimeoutMillis(100).build(), 5);
+            AdaptivePoolController controller = new AdaptivePoolController(pool, 2, 4, 1000, 2);
+
+            Jedis first = pool.getResource();
+            Jedis second = pool.getResource();
+            Assertions.assertThrows(JedisExhaustedPoolException.class, pool::getResource);
+            Assertions.assertEquals(1, pool.counters().getExhaustions());
+
+            controller.adjust();
+            Assertions.assertEquals(3, pool.getMaxTotal());
+            Assertions.assertEquals(2, pool.getMinIdle());
+
+            first.close();
+            second.close();
+            controller.adjust();
+            controller.adjust();
+            controller.adjust();
+            Assertions.assertEquals(2, pool.getMaxTotal());
+            Assertions.assertEquals(1, pool.getMinIdle());
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testBorrowGate() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            JedisPoolConfig config = new JedisPoolConfig();
+            config.setMaxTotal(2);
+            config.setMaxIdle(2);
+            config.setMaxWait(Duration.ofMillis(20));
+            InstrumentedJedisPool pool = new InstrumentedJedisPool(config, new HostAndPort("127.0.0.1", server.getLocalPort()),
+                    DefaultJedisClientConfig.builder().socketTimeoutMillis(100).build(), 5, true);
+            Assertions.assertTrue(pool.isBorrowGated());
+
+            Jedis first = pool.getResource();
+            Jedis second = pool.getResource();
+            // 第三次在闸门上等待超时, 不进入 commons-pool
+            Assertions.assertThrows(JedisExhaustedPoolException.class, pool::getResource);
+            Assertions.assertEquals(1, pool.counters().getExhaustions());
+
+            // 关闭两次只归还一个许可
+            first.close();
+            first.close();
+            Jedis third = pool.getResource();
+            Assertions.assertThrows(JedisExhaustedPoolException.class, pool::getResource);
+
+            // 缩容后已借出的连接归还前不再放行
+            pool.resize(1, 1, 0);
+            second.close();
+            Assertions.assertThrows(JedisExhaustedPoolException.class, pool::getResource);
+            third.close();
+            Jedis fourth = pool.getResource();
+            Assertions.assertThrows(JedisExhaustedPoolException.class, pool::getResource);
+
+            pool.resize(2, 2, 0);
+            Jedis fifth = pool.getResource();
+            fourth.close();
+            fifth.close();
+            Assertions.assertEquals(0, pool.getNumActive());
+            pool.close();
+        }
+    }
+}
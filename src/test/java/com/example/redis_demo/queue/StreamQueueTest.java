@@ -0,0 +1,196 @@
+package com.example.redis_demo.queue;
+
+import com.example.redis_demo.routing.SingleNodeRouter;
+import com.example.redis_demo.support.Fakes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.redis_demo.support.Fakes.proxy;
+
+/**
+ * 用代理模拟 redis stream 和消费者组(XADD / XREADGROUP / XACK / XPENDING / XCLAIM), 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class StreamQueueTest {
+
+    private final Map<String, Map<byte[], byte[]>> entries = new LinkedHashMap<>();
+
+    private final List<String> undelivered = new ArrayList<>();
+
+    private final Map<String, Integer> deliveries = new LinkedHashMap<>();
+
+    private final List<Map<byte[], byte[]>> dead = new ArrayList<>();
+
+    private int sequence;
+
+    private long maxReadCount;
+
+    @Test
+    public void testAckAndRedelivery() throws Exception {
+        StreamQueue queue = new StreamQueue(new SingleNodeRouter(template()), "jobs", "workers", options());
+        for (int i = 0; i < 10; i++) {
+            queue.publish(i == 3 ? "flaky" : "job" + i);
+        }
+        Set<String> done = ConcurrentHashMap.newKeySet();
+        AtomicInteger attempts = new AtomicInteger();
+        queue.start(message -> {
+            if ("flaky".equals(message.getPayload()) && attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("first attempt fails");
+            }
+            done.add((String) message.getPayload());
+        });
+        await(() -> done.size() == 9);
+        await(() -> pendingCount() == 1);
+
+        // 失败的消息未确认, 超时后被认领重新处理
+        Assertions.assertEquals(1, queue.reclaim());
+        await(() -> done.size() == 10);
+        await(() -> pendingCount() == 0);
+        Assertions.assertEquals(2, attempts.get());
+        Assertions.assertTrue(maxReadCount <= 2, "read count " + maxReadCount);
+        queue.close();
+    }
+
+    @Test
+    public void testDeadLetter() throws Exception {
+        StreamQueue queue = new StreamQueue(new SingleNodeRouter(template()), "jobs", "workers", options().setMaxDeliveries(2));
+        queue.publish("poison");
+        AtomicInteger attempts = new AtomicInteger();
+        queue.start(message -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("always fails");
+        });
+        await(() -> attempts.get() == 1);
+        await(() -> pendingCount() == 1 && deliveries.get(firstId()) == 1);
+        Assertions.assertEquals(1, queue.reclaim());
+        await(() -> attempts.get() == 2);
+        Thread.sleep(50);
+        Assertions.assertEquals(0, queue.reclaim());
+        Assertions.assertEquals(1, dead.size());
+        Assertions.assertEquals(0, pendingCount());
+        queue.close();
+    }
+
+    private static QueueOptions options() {
+        // 认领检查只手动触发
+        return new QueueOptions().setBatchSize(8).setMaxInFlight(2).setWorkers(2).setBlockMillis(20)
+                .setClaimIdleMillis(0).setClaimIntervalMillis(TimeUnit.HOURS.toMillis(1));
+    }
+
+    private synchronized int pendingCount() {
+        return deliveries.size();
+    }
+
+    private synchronized String firstId() {
+        return deliveries.keySet().iterator().next();
+    }
+
+    private static void await(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    private synchronized Object stream(String method, Object[] args) throws InterruptedException {
+        switch (method) {
+            case "xAdd": {
+                MapRecord<byte[], byte[], byte[]> record = (MapRecord<byte[], byte[], byte[]>) args[0];
+                if (new String(record.getStream(), StandardCharsets.UTF_8).endsWith(":dead")) {
+                    dead.add(record.getValue());
+                    return RecordId.autoGenerate();
+                }
+                String id = System.currentTimeMillis() + "-" + sequence++;
+                entries.put(id, record.getValue());
+                undelivered.add(id);
+                return RecordId.of(id);
+            }
+            case "xGroupCreate":
+                return "OK";
+            case "xReadGroup": {
+                long count = ((StreamReadOptions) args[1]).getCount();
+                maxReadCount = Math.max(maxReadCount, count);
+                List<ByteRecord> records = new ArrayList<>();
+                while (!undelivered.isEmpty() && records.size() < count) {
+                    String id = undelivered.remove(0);
+                    deliveries.put(id, 1);
+                    records.add(record(id));
+                }
+                if (records.isEmpty()) {
+                    wait(10);
+                }
+                return records;
+            }
+            case "xAck": {
+                long acked = 0;
+                for (RecordId id : (RecordId[]) args[2]) {
+                    if (deliveries.remove(id.getValue()) != null) {
+                        acked++;
+                    }
+                }
+                return acked;
+            }
+            case "xPending": {
+                if (args.length == 2) {
+                    return new PendingMessagesSummary("workers", deliveries.size(), Range.unbounded(), Collections.emptyMap());
+                }
+                List<PendingMessage> messages = new ArrayList<>();
+                deliveries.forEach((id, count) -> messages.add(new PendingMessage(RecordId.of(id), Consumer.from("workers", "c"),
+                        Duration.ofMillis(1), count)));
+                return new PendingMessages("workers", messages);
+            }
+            case "xLen":
+                return (long) entries.size();
+            case "xClaim": {
+                List<ByteRecord> records = new ArrayList<>();
+                for (RecordId id : ((RedisStreamCommands.XClaimOptions) args[3]).getIds()) {
+                    if (deliveries.containsKey(id.getValue())) {
+                        deliveries.merge(id.getValue(), 1, Integer::sum);
+                        records.add(record(id.getValue()));
+                    }
+                }
+                return records;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private ByteRecord record(String id) {
+        return StreamRecords.newRecord().in("queue:{jobs}".getBytes(StandardCharsets.UTF_8)).withId(id).ofBytes(entries.get(id));
+    }
+
+    private RedisTemplate<String, Object> template() {
+        RedisStreamCommands streams = proxy(RedisStreamCommands.class, this::stream);
+        RedisConnection connection = proxy(RedisConnection.class, (method, args) -> "streamCommands".equals(method) ? streams : null);
+        return Fakes.template(connection);
+    }
+}
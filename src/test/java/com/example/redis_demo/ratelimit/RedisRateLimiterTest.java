@@ -0,0 +1,116 @@
+package com.example.redis_demo.ratelimit;
+
+import com.example.redis_demo.routing.SingleNodeRouter;
+import com.example.redis_demo.script.ScriptRegistry;
+import com.example.redis_demo.support.Fakes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.redis_demo.support.Fakes.proxy;
+
+/**
+ * 用代理代替 redis 返回脚本结果, 验证本地拒绝缓存和参数; 脚本本身的计算需要真实的 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class RedisRateLimiterTest {
+
+    private final List<String> evaluated = new ArrayList<>();
+
+    private List<Object> reply = Arrays.asList(1L, 4L, 0L);
+
+    private byte[][] lastArgs;
+
+    @Test
+    public void testLocalDenial() {
+        RedisRateLimiter limiter = new RedisRateLimiter(registry(), 100);
+        RateLimit limit = RateLimit.gcra(10, 1, TimeUnit.SECONDS, 5);
+
+        Assertions.assertTrue(limiter.tryAcquire("api", limit).isAllowed());
+        Assertions.assertEquals("rate:gcra:api", new String(lastArgs[0], StandardCharsets.UTF_8));
+        Assertions.assertEquals(Arrays.asList("5", "1000", "10", "1"), args());
+
+        reply = Arrays.asList(0L, 0L, 60000L);
+        RateLimitDecision denied = limiter.tryAcquire("api", limit, 2);
+        Assertions.assertFalse(denied.isAllowed());
+        Assertions.assertFalse(denied.isLocal());
+        Assertions.assertEquals(60000, denied.getRetryAfterMillis());
+        Assertions.assertEquals(2, evaluated.size());
+
+        // 不少于被拒绝的许可数: 本地拒绝
+        RateLimitDecision local = limiter.tryAcquire("api", limit, 3);
+        Assertions.assertTrue(local.isLocal());
+        Assertions.assertFalse(local.isAllowed());
+        Assertions.assertTrue(local.getRetryAfterMillis() > 0 && local.getRetryAfterMillis() <= 60000);
+        Assertions.assertEquals(2, evaluated.size());
+
+        // 更少的许可数、其他规则或其他键仍然访问 redis
+        limiter.tryAcquire("api", limit, 1);
+        limiter.tryAcquire("api", RateLimit.gcra(20, 1, TimeUnit.SECONDS, 5), 2);
+        limiter.tryAcquire("other", limit, 2);
+        Assertions.assertEquals(5, evaluated.size());
+    }
+
+    @Test
+    public void testLocalDenialExpires() {
+        RedisRateLimiter limiter = new RedisRateLimiter(registry(), 100);
+        RateLimit limit = RateLimit.tokenBucket(10, 1, TimeUnit.SECONDS, 10);
+        reply = Arrays.asList(0L, 0L, 0L);
+        limiter.tryAcquire("api", limit);
+        limiter.tryAcquire("api", limit);
+        Assertions.assertEquals(2, evaluated.size());
+        Assertions.assertEquals(0, limiter.localDenials());
+    }
+
+    @Test
+    public void testLocalDenialDisabled() {
+        RedisRateLimiter limiter = new RedisRateLimiter(registry(), 0);
+        RateLimit limit = RateLimit.slidingLog(10, 1, TimeUnit.MINUTES);
+        reply = Arrays.asList(0L, 0L, 60000L);
+        limiter.tryAcquire("api", limit);
+        limiter.tryAcquire("api", limit);
+        Assertions.assertEquals(2, evaluated.size());
+        // 滑动日志每次调用带唯一的成员前缀
+        Assertions.assertEquals(6, lastArgs.length);
+    }
+
+    @Test
+    public void testPermitsValidation() {
+        RedisRateLimiter limiter = new RedisRateLimiter(registry(), 100);
+        RateLimit limit = RateLimit.tokenBucket(10, 1, TimeUnit.SECONDS, 5);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> limiter.tryAcquire("api", limit, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> limiter.tryAcquire("api", limit, 6));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RateLimit.gcra(10, 0, TimeUnit.SECONDS, 5));
+        Assertions.assertTrue(evaluated.isEmpty());
+    }
+
+    private List<String> args() {
+        List<String> args = new ArrayList<>();
+        for (int i = 1; i < lastArgs.length; i++) {
+            args.add(new String(lastArgs[i], StandardCharsets.UTF_8));
+        }
+        return args;
+    }
+
+    private ScriptRegistry registry() {
+        RedisScriptingCommands scripting = proxy(RedisScriptingCommands.class, (method, args) -> {
+            if ("evalSha".equals(method)) {
+                evaluated.add((String) args[0]);
+                lastArgs = (byte[][]) args[3];
+                return reply;
+            }
+            return null;
+        });
+        RedisConnection connection = proxy(RedisConnection.class, (method, args) -> "scriptingCommands".equals(method) ? scripting : null);
+        return new ScriptRegistry(new SingleNodeRouter(Fakes.template(connection)));
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.redis_demo.repository;
+
+import com.example.redis_demo.entity.User;
+import com.example.redis_demo.routing.SingleNodeRouter;
+import com.example.redis_demo.support.Fakes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.redis_demo.support.Fakes.proxy;
+
+/**
+ * 用代理在内存中模拟哈希命令, 验证字段编码和部分读写
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class HashRepositoryTest {
+
+    private final Map<String, Map<ByteBuffer, byte[]>> hashes = new HashMap<>();
+
+    private final List<String> commands = new ArrayList<>();
+
+    private final List<String> invalidated = new ArrayList<>();
+
+    @Test
+    public void testSaveAndFind() {
+        HashRepository<User> repository = repository();
+        User user = new User();
+        user.setName("张三");
+        user.setAge(30);
+        user.setScores(Arrays.asList(90, -1, 300, null));
+        repository.save("1", user);
+
+        Assertions.assertEquals(Arrays.asList("hMSet"), commands);
+        Assertions.assertEquals("30", field("user:1", "age"));
+        Assertions.assertEquals(user, repository.find("1"));
+        Assertions.assertNull(repository.find("2"));
+        Assertions.assertEquals(Arrays.asList("user:1"), invalidated);
+
+        // null 属性删除字段
+        user.setScores(null);
+        repository.save("1", user);
+        Assertions.assertFalse(hashes.get("user:1").containsKey(ByteBuffer.wrap("scores".getBytes(StandardCharsets.UTF_8))));
+        Assertions.assertEquals(user, repository.find("1"));
+    }
+
+    @Test
+    public void testPartialReadAndWrite() {
+        HashRepository<User> repository = repository();
+        User user = new User();
+        user.setName("李四");
+        user.setAge(20);
+        user.setScores(Arrays.asList(1, 2, 3));
+        repository.save("1", user);
+
+        User partial = repository.find("1", "age");
+        Assertions.assertEquals(20, partial.getAge());
+        Assertions.assertNull(partial.getName());
+        Assertions.assertNull(repository.find("2", "age", "name"));
+
+        repository.set("1", UserHashSchema.AGE, 21);
+        Assertions.assertEquals(22, repository.increment("1", UserHashSchema.AGE, 1));
+        Assertions.assertEquals(22, repository.get("1", UserHashSchema.AGE));
+        Assertions.assertEquals(Arrays.asList(1, 2, 3), repository.get("1", UserHashSchema.SCORES));
+
+        User changed = new User();
+        changed.setName("王五");
+        repository.update("1", changed, "name");
+        User found = repository.find("1");
+        Assertions.assertEquals("王五", found.getName());
+        Assertions.assertEquals(22, found.getAge());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> repository.find("1", "email"));
+        Assertions.assertTrue(repository.delete("1"));
+        Assertions.assertNull(repository.find("1"));
+    }
+
+    @Test
+    public void testSaveNullFieldsOnClusterConnection() {
+        HashRepository<User> repository = repository(true);
+        User user = new User();
+        user.setName("赵六");
+        user.setAge(40);
+        user.setScores(Arrays.asList(1, 2));
+        repository.save("1", user);
+
+        user.setScores(null);
+        repository.save("1", user);
+        Assertions.assertEquals(Arrays.asList("hMSet", "hMSet", "hDel"), commands);
+        Assertions.assertEquals(user, repository.find("1"));
+    }
+
+    @Test
+    public void testCompactList() {
+        byte[] bytes = FieldCodecs.INT_LIST.encode(Arrays.asList(1, 2, 3, 4, 5));
+        // 个数 1 字节, 每个小整数 1 字节
+        Assertions.assertEquals(6, bytes.length);
+        Assertions.assertEquals(Arrays.asList(1, 2, 3, 4, 5), FieldCodecs.INT_LIST.decode(bytes));
+    }
+
+    private String field(String key, String field) {
+        return new String(hashes.get(key).get(ByteBuffer.wrap(field.getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8);
+    }
+
+    private HashRepository<User> repository() {
+        return repository(false);
+    }
+
+    /**
+     * @param cluster true 时模拟集群连接: openPipeline 抛出异常, 命令逐条执行
+     */
+    @SuppressWarnings("unchecked")
+    private HashRepository<User> repository(boolean cluster) {
+        RedisHashCommands hashCommands = proxy(RedisHashCommands.class, (method, args) -> {
+            commands.add(method);
+            Map<ByteBuffer, byte[]> hash = hashes.computeIfAbsent(new String((byte[]) args[0], StandardCharsets.UTF_8), k -> new LinkedHashMap<>());
+            switch (method) {
+                case "hMSet":
+                    ((Map<byte[], byte[]>) args[1]).forEach((field, value) -> hash.put(ByteBuffer.wrap(field), value));
+                    return null;
+                case "hSet":
+                    return hash.put(ByteBuffer.wrap((byte[]) args[1]), (byte[]) args[2]) == null;
+                case "hDel":
+                    long removed = 0;
+                    for (byte[] field : (byte[][]) args[1]) {
+                        removed += hash.remove(ByteBuffer.wrap(field)) == null ? 0 : 1;
+                    }
+                    return removed;
+                case "hGet":
+                    return hash.get(ByteBuffer.wrap((byte[]) args[1]));
+                case "hMGet":
+                    List<byte[]> values = new ArrayList<>();
+                    for (byte[] field : (byte[][]) args[1]) {
+                        values.add(hash.get(ByteBuffer.wrap(field)));
+                    }
+                    return values;
+                case "hGetAll":
+                    Map<byte[], byte[]> all = new LinkedHashMap<>();
+                    hash.forEach((field, value) -> all.put(field.array(), value));
+                    return all;
+                case "hIncrBy":
+                    byte[] current = hash.get(ByteBuffer.wrap((byte[]) args[1]));
+                    long value = (current == null ? 0 : Long.parseLong(new String(current, StandardCharsets.US_ASCII))) + (long) args[2];
+                    hash.put(ByteBuffer.wrap((byte[]) args[1]), Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+                    return value;
+                default:
+                    return null;
+            }
+        });
+        Class<? extends RedisConnection> type = cluster ? RedisClusterConnection.class : RedisConnection.class;
+        RedisConnection connection = proxy(type, (method, args) -> {
+            switch (method) {
+                case "hashCommands":
+                    return hashCommands;
+                case "openPipeline":
+                    if (cluster) {
+                        throw new UnsupportedOperationException("Pipeline is currently not supported for JedisClusterConnection.");
+                    }
+                    return null;
+                case "closePipeline":
+                    return new ArrayList<>();
+                case "del":
+                    long deleted = 0;
+                    for (byte[] key : (byte[][]) args[0]) {
+                        deleted += hashes.remove(new String(key, StandardCharsets.UTF_8)) == null ? 0 : 1;
+                    }
+                    return deleted;
+                default:
+                    return null;
+            }
+        });
+        RedisTemplate<String, Object> template = Fakes.template(connection);
+        HashRepository<User> repository = new HashRepository<>(new SingleNodeRouter(template), UserHashSchema.SCHEMA, "user:");
+        repository.setInvalidator(invalidated::add);
+        return repository;
+    }
+}
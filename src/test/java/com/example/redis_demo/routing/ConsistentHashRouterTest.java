@@ -0,0 +1,89 @@
+package com.example.redis_demo.routing;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 只计算路由, 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class ConsistentHashRouterTest {
+
+    private static final int KEYS = 100000;
+
+    @Test
+    public void testDistribution() {
+        ConsistentHashRouter router = router("10.0.0.1:6379", "10.0.0.2:6379", "10.0.0.3:6379", "10.0.0.4:6379");
+        int[] counts = new int[router.size()];
+        for (int i = 0; i < KEYS; i++) {
+            counts[router.indexOf("user:" + i)]++;
+        }
+        for (int count : counts) {
+            Assertions.assertTrue(Math.abs(count - KEYS / 4) < KEYS / 4 * 0.2, Arrays.toString(counts));
+        }
+    }
+
+    @Test
+    public void testAddNodeMovesFewKeys() {
+        ConsistentHashRouter before = router("10.0.0.1:6379", "10.0.0.2:6379", "10.0.0.3:6379", "10.0.0.4:6379");
+        // 节点顺序不影响分配
+        ConsistentHashRouter after = router("10.0.0.5:6379", "10.0.0.4:6379", "10.0.0.3:6379", "10.0.0.2:6379", "10.0.0.1:6379");
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "user:" + i;
+            if (!name(before, key).equals(name(after, key))) {
+                // 只有分给新节点的键移动, 原节点之间不互相迁移
+                Assertions.assertEquals("10.0.0.5:6379", name(after, key), key);
+                moved++;
+            }
+        }
+        // 加入第 N 个节点约移动 1/N 的键
+        double ratio = (double) moved / KEYS;
+        Assertions.assertEquals(1.0 / after.size(), ratio, 1.0 / after.size() * 0.3, "moved " + moved);
+    }
+
+    @Test
+    public void testHashTagAndPartition() {
+        ConsistentHashRouter router = router("10.0.0.1:6379", "10.0.0.2:6379", "10.0.0.3:6379");
+        Assertions.assertEquals(router.indexOf("{order:42}:items"), router.indexOf("{order:42}:total"));
+        Assertions.assertEquals("order:42", RedisRouter.hashTag("{order:42}:items"));
+        Assertions.assertEquals("{}a", RedisRouter.hashTag("{}a"));
+
+        List<String> keys = Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h");
+        Map<Integer, List<String>> groups = router.partition(keys);
+        int total = 0;
+        for (Map.Entry<Integer, List<String>> group : groups.entrySet()) {
+            for (String key : group.getValue()) {
+                Assertions.assertEquals(group.getKey().intValue(), router.indexOf(key));
+            }
+            total += group.getValue().size();
+        }
+        Assertions.assertEquals(keys.size(), total);
+    }
+
+    private static String name(ConsistentHashRouter router, String key) {
+        RedisTemplate<String, Object> template = router.template(router.indexOf(key));
+        for (Map.Entry<String, RedisTemplate<String, Object>> shard : router.getShards().entrySet()) {
+            if (shard.getValue() == template) {
+                return shard.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private static ConsistentHashRouter router(String... nodes) {
+        Map<String, RedisTemplate<String, Object>> shards = new LinkedHashMap<>();
+        for (String node : nodes) {
+            shards.put(node, new RedisTemplate<>());
+        }
+        return new ConsistentHashRouter(shards, 160);
+    }
+}
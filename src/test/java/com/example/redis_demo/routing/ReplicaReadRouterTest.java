@@ -0,0 +1,80 @@
+package com.example.redis_demo.routing;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 只验证节点选择, 读取操作直接返回所选节点的名称, 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class ReplicaReadRouterTest {
+
+    private final RedisTemplate<String, Object> masterTemplate = new RedisTemplate<>();
+
+    private final Map<RedisTemplate<String, Object>, String> names = new IdentityHashMap<>();
+
+    @Test
+    public void testReplicaPreferred() {
+        ReplicaReadRouter router = router(ReadPolicy.replicaPreferred());
+        Assertions.assertEquals("master", router.read("k", this::name));
+
+        router.updateReplicas(Arrays.asList("r1:6379", "r2:6379"));
+        Assertions.assertNotEquals(router.read("k", this::name), router.read("k", this::name));
+        Assertions.assertTrue(router.read("k", this::name).startsWith("r"));
+        // 写入和 forKey 始终是主节点
+        Assertions.assertSame(masterTemplate, router.forKey("k"));
+        Assertions.assertEquals("master", ReadPreference.master(() -> router.read("k", this::name)));
+    }
+
+    @Test
+    public void testFailedReplicaFallsBackToMaster() {
+        ReplicaReadRouter router = router(ReadPolicy.replicaPreferred());
+        router.updateReplicas(Collections.singletonList("r1:6379"));
+        String result = router.read("k", template -> {
+            if (template != masterTemplate) {
+                throw new RedisConnectionFailureException("connection refused");
+            }
+            return name(template);
+        });
+        Assertions.assertEquals("master", result);
+        // 摘除期间直接读主节点
+        Assertions.assertEquals("master", router.read("k", this::name));
+        ReadNode replica = router.nodes().get(1);
+        Assertions.assertFalse(replica.isAvailable());
+        Assertions.assertEquals(1, replica.getFailures());
+
+        // 保留仍在列表中的节点和统计
+        router.updateReplicas(Arrays.asList("r1:6379", "r2:6379"));
+        Assertions.assertSame(replica, router.nodes().get(1));
+        Assertions.assertEquals("r2:6379", router.read("k", this::name));
+    }
+
+    @Test
+    public void testRoundRobinIncludesMaster() {
+        ReplicaReadRouter router = router(ReadPolicy.roundRobin());
+        router.updateReplicas(Collections.singletonList("r1:6379"));
+        Assertions.assertNotEquals(router.read("k", this::name), router.read("k", this::name));
+    }
+
+    private ReplicaReadRouter router(ReadPolicy policy) {
+        names.put(masterTemplate, "master");
+        return new ReplicaReadRouter(new SingleNodeRouter(masterTemplate), "master", policy, address -> {
+            RedisTemplate<String, Object> template = new RedisTemplate<>();
+            names.put(template, address);
+            return template;
+        }, 60000);
+    }
+
+    private String name(RedisTemplate<String, Object> template) {
+        return names.get(template);
+    }
+}
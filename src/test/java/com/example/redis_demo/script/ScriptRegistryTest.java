@@ -0,0 +1,111 @@
+package com.example.redis_demo.script;
+
+import com.example.redis_demo.routing.ConsistentHashRouter;
+import com.example.redis_demo.routing.SingleNodeRouter;
+import com.example.redis_demo.support.Fakes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.example.redis_demo.support.Fakes.proxy;
+
+/**
+ * 用代理模拟 redis 的脚本缓存: 未 SCRIPT LOAD 的 SHA 返回 NOSCRIPT, 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class ScriptRegistryTest {
+
+    private final Set<String> loaded = new HashSet<>();
+
+    private final List<String> calls = new ArrayList<>();
+
+    private byte[][] lastArgs;
+
+    @Test
+    public void testSha1MatchesScriptLoad() {
+        Assertions.assertEquals("e0e1f9fabfc9d4800c877a703b823ac0578ff8db", LuaScript.integer("one", "return 1").getSha1());
+    }
+
+    @Test
+    public void testReloadOnNoScript() {
+        ScriptRegistry registry = new ScriptRegistry(new SingleNodeRouter(template()));
+        List<String> invalidated = new ArrayList<>();
+        registry.setInvalidator(invalidated::add);
+        Object[] args = {60000, "name", ScriptRegistry.value("tom")};
+
+        Assertions.assertEquals(1L, registry.execute(Scripts.HSET_EXPIRE, Collections.singletonList("user:1"), args));
+        Assertions.assertEquals(Arrays.asList("EVALSHA", "SCRIPT LOAD", "EVALSHA"), calls);
+        Assertions.assertEquals(1, registry.getReloads());
+        Assertions.assertEquals("60000", new String(lastArgs[1], StandardCharsets.UTF_8));
+        Assertions.assertEquals("tom", new String(lastArgs[3], StandardCharsets.UTF_8));
+        Assertions.assertEquals(Collections.singletonList("user:1"), invalidated);
+
+        // 已加载后只有一次 EVALSHA
+        calls.clear();
+        registry.execute("hsetExpire", Collections.singletonList("user:2"), args);
+        Assertions.assertEquals(Collections.singletonList("EVALSHA"), calls);
+        Assertions.assertEquals(1, registry.getReloads());
+
+        // 不失效一级缓存的脚本
+        registry.execute(LuaScript.integer("one", "return 1").skipNearCache(), Collections.singletonList("user:3"));
+        Assertions.assertEquals(Arrays.asList("user:1", "user:2"), invalidated);
+    }
+
+    @Test
+    public void testKeysMustBeOnSameShard() {
+        Map<String, RedisTemplate<String, Object>> shards = new LinkedHashMap<>();
+        shards.put("10.0.0.1:6379", template());
+        shards.put("10.0.0.2:6379", template());
+        ConsistentHashRouter router = new ConsistentHashRouter(shards, 160);
+        ScriptRegistry registry = new ScriptRegistry(router);
+        String other = "b";
+        for (int i = 0; router.indexOf(other) == router.indexOf("a"); i++) {
+            other = "b" + i;
+        }
+        List<String> keys = Arrays.asList("a", other);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.execute(Scripts.SADD_EXPIRE, keys, 0, "x"));
+        registry.execute(Scripts.SADD_EXPIRE, Arrays.asList("{u}:a", "{u}:" + other), 0, "x");
+    }
+
+    @Test
+    public void testRegisterConflict() {
+        ScriptRegistry registry = new ScriptRegistry(new SingleNodeRouter(template()));
+        registry.register(LuaScript.integer("one", "return 1"));
+        registry.register(LuaScript.integer("one", "return 1"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.register(LuaScript.integer("one", "return 2")));
+        Assertions.assertNotNull(registry.get("saddExpire"));
+    }
+
+    private RedisTemplate<String, Object> template() {
+        RedisScriptingCommands scripting = proxy(RedisScriptingCommands.class, (method, args) -> {
+            if ("scriptLoad".equals(method)) {
+                calls.add("SCRIPT LOAD");
+                loaded.add(LuaScript.integer("", new String((byte[]) args[0], StandardCharsets.UTF_8)).getSha1());
+                return null;
+            }
+            calls.add("EVALSHA");
+            if (!loaded.contains((String) args[0])) {
+                throw new RedisSystemException("NOSCRIPT No matching script. Please use EVAL.", null);
+            }
+            lastArgs = (byte[][]) args[3];
+            return 1L;
+        });
+        RedisConnection connection = proxy(RedisConnection.class, (method, args) -> "scriptingCommands".equals(method) ? scripting : null);
+        return Fakes.template(connection);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.redis_demo.service.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class LockSignalsTest {
+
+    @Test
+    public void testReleaseWakesWaiter() throws Exception {
+        LockSignals signals = new LockSignals();
+        LockSignals.Signal signal = signals.register("lock:{a}");
+        long seen = signal.releases();
+        CompletableFuture<Boolean> woken = CompletableFuture.supplyAsync(() -> {
+            try {
+                return signal.await(seen, 10000);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        Thread.sleep(50);
+        signals.released("lock:{a}");
+        Assertions.assertTrue(woken.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReleaseBeforeWaitIsNotLost() throws Exception {
+        LockSignals signals = new LockSignals();
+        LockSignals.Signal signal = signals.register("lock:{a}");
+        long seen = signal.releases();
+        // 尝试获取与开始等待之间到达的通知
+        signals.released("lock:{a}");
+        long start = System.nanoTime();
+        Assertions.assertTrue(signal.await(seen, 10000));
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        Assertions.assertFalse(signal.await(signal.releases(), 20));
+    }
+
+    @Test
+    public void testSignalRemovedWithLastWaiter() {
+        LockSignals signals = new LockSignals();
+        LockSignals.Signal first = signals.register("lock:{a}");
+        Assertions.assertSame(first, signals.register("lock:{a}"));
+        signals.unregister("lock:{a}");
+        Assertions.assertEquals(1, signals.size());
+        signals.unregister("lock:{a}");
+        Assertions.assertEquals(0, signals.size());
+        // 没有等待者时的通知直接忽略
+        signals.released("lock:{a}");
+    }
+}
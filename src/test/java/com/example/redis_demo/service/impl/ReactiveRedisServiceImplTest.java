@@ -0,0 +1,356 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.bloom.BloomGuard;
+import com.example.redis_demo.cache.NearCache;
+import com.example.redis_demo.codec.SerializationContext;
+import com.example.redis_demo.config.ReactiveRedisConfig;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.CommandArgs;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.redis_demo.support.Fakes.proxy;
+
+/**
+ * 用代理代替 Lettuce 的连接和命令, 经 ReactiveRedisConfig 的模板验证写入的值、守卫、失效和结果转换, 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class ReactiveRedisServiceImplTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(1);
+
+    private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> pttls = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<String, byte[]>> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * 守卫、写入和失效的顺序, 如 "guard user:1", "SET user:1", "invalidate user:1"
+     */
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * 每次序列化时的键上下文和线程
+     */
+    private final List<String> encodings = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * 按键延迟 HMGET 的响应, 使响应顺序与请求顺序不同
+     */
+    private final Map<String, Duration> delays = new ConcurrentHashMap<>();
+
+    private final RedisSerializer<Object> serializer = new RedisSerializer<Object>() {
+        @Override
+        public byte[] serialize(Object value) {
+            encodings.add(SerializationContext.currentKey() + " " + Thread.currentThread().getName());
+            return raw(SerializationContext.currentKey() + "|" + value);
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    private LettuceConnectionFactory factory;
+
+    private ReactiveRedisServiceImpl service;
+
+    @BeforeEach
+    public void setUp() {
+        StatefulRedisConnection<ByteBuffer, ByteBuffer> connection = connection();
+        factory = new LettuceConnectionFactory() {
+            @Override
+            protected StatefulConnection<ByteBuffer, ByteBuffer> getSharedReactiveConnection() {
+                return connection;
+            }
+        };
+        factory.afterPropertiesSet();
+        NearCache nearCache = new NearCache(100, 1 << 20, 60000);
+        nearCache.setInvalidationPublisher(key -> events.add("invalidate " + key));
+        BloomGuard bloomGuard = new BloomGuard(null, Collections.singletonList("user:")) {
+            @Override
+            public void addingAll(Collection<String> keys) {
+                keys.stream().filter(this::guards).forEach(key -> events.add("guard " + key));
+            }
+        };
+        service = new ReactiveRedisServiceImpl(new ReactiveRedisConfig().reactiveRedisTemplate(factory, serializer), serializer,
+                nearCache, bloomGuard);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        factory.destroy();
+    }
+
+    @Test
+    public void testValuesEncodedLikeBlockingPath() {
+        Mono<Boolean> set = service.set("user:1", "tom");
+        // 调用时即在调用线程按键序列化, 与 redisTemplate 的值序列化相同
+        Assertions.assertEquals(Collections.singletonList("user:1 " + Thread.currentThread().getName()), encodings);
+        Assertions.assertTrue(values.isEmpty());
+        Assertions.assertEquals(true, set.block(TIMEOUT));
+        Assertions.assertEquals("user:1|tom", text(values.get("user:1")));
+        Assertions.assertArrayEquals(encodeAs("user:1", "tom"), values.get("user:1"));
+
+        Assertions.assertEquals(true, service.hset("user:2", "name", "jerry").block(TIMEOUT));
+        Assertions.assertEquals("user:2|jerry", text(hashes.get("user:2").get("name")));
+        Assertions.assertEquals("user:1|tom", service.get("user:1").block(TIMEOUT));
+    }
+
+    @Test
+    public void testWritesGuardedAndInvalidated() {
+        Assertions.assertEquals(true, service.set("user:1", "tom").block(TIMEOUT));
+        awaitEvent("invalidate user:1");
+        Assertions.assertEquals(Arrays.asList("guard user:1", "SET user:1", "invalidate user:1"), events);
+
+        events.clear();
+        Map<String, Object> hash = new LinkedHashMap<>();
+        hash.put("name", "jerry");
+        hash.put("age", 3);
+        Assertions.assertEquals(true, service.hset("user:2", hash).block(TIMEOUT));
+        awaitEvent("invalidate user:2");
+        Assertions.assertEquals(Arrays.asList("guard user:2", "HMSET user:2", "invalidate user:2"), events);
+
+        // 不受守卫的键只失效
+        events.clear();
+        Assertions.assertEquals(true, service.set("order:1", "book").block(TIMEOUT));
+        awaitEvent("invalidate order:1");
+        Assertions.assertEquals(Arrays.asList("SET order:1", "invalidate order:1"), events);
+    }
+
+    @Test
+    public void testGetExpireMapping() {
+        pttls.put("forever", -1L);
+        pttls.put("session", 5500L);
+        Assertions.assertEquals(-1L, service.getExpire("forever").block(TIMEOUT));
+        Assertions.assertEquals(-2L, service.getExpire("missing").block(TIMEOUT));
+        Assertions.assertEquals(5L, service.getExpire("session").block(TIMEOUT));
+    }
+
+    @Test
+    public void testHgetMultiKeepsRequestOrder() {
+        Map<String, byte[]> first = new ConcurrentHashMap<>();
+        first.put("name", raw("tom"));
+        first.put("age", raw("18"));
+        hashes.put("user:1", first);
+        hashes.put("user:2", new ConcurrentHashMap<>(Collections.singletonMap("name", raw("jerry"))));
+        // 先请求的键最后响应
+        delays.put("user:1", Duration.ofMillis(100));
+
+        Map<String, Collection<String>> items = new LinkedHashMap<>();
+        items.put("user:1", Arrays.asList("age", "name", "email"));
+        items.put("user:2", Collections.singletonList("name"));
+        items.put("user:3", Collections.emptyList());
+        Map<String, Map<String, Object>> result = service.hgetMulti(items).block(TIMEOUT);
+
+        Assertions.assertNotNull(result);
+        Assertions.assertEquals(Arrays.asList("user:1", "user:2", "user:3"), new ArrayList<>(result.keySet()));
+        Assertions.assertEquals(Arrays.asList("age", "name", "email"), new ArrayList<>(result.get("user:1").keySet()));
+        Assertions.assertEquals("18", result.get("user:1").get("age"));
+        Assertions.assertNull(result.get("user:1").get("email"));
+        Assertions.assertEquals("jerry", result.get("user:2").get("name"));
+        Assertions.assertTrue(result.get("user:3").isEmpty());
+    }
+
+    @Test
+    public void testMsetWithTtl() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("user:1", "tom");
+        map.put("order:1", "book");
+        Assertions.assertEquals(true, service.mset(map, 60L).block(TIMEOUT));
+
+        // 每个键一条带过期时间的 SET, 按键序列化, 受守卫的键加入过滤器
+        Assertions.assertEquals("user:1|tom", text(values.get("user:1")));
+        Assertions.assertEquals("order:1|book", text(values.get("order:1")));
+        Assertions.assertEquals(60000L, pttls.get("user:1"));
+        Assertions.assertEquals(60000L, pttls.get("order:1"));
+        Assertions.assertTrue(events.contains("guard user:1"));
+        Assertions.assertFalse(events.contains("guard order:1"));
+        awaitEvent("invalidate user:1");
+        awaitEvent("invalidate order:1");
+    }
+
+    @Test
+    public void testAsyncIssuesCommandOnCall() throws Exception {
+        AsyncRedisServiceImpl async = new AsyncRedisServiceImpl(service);
+        CompletableFuture<Boolean> set = async.set("user:1", "tom", 30L);
+        // 不等待结果也已发出命令
+        long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+        while (!values.containsKey("user:1") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assertions.assertTrue(values.containsKey("user:1"));
+        Assertions.assertTrue(set.get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(30L, async.getExpire("user:1").get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(-2L, async.getExpire("missing").get(1, TimeUnit.SECONDS));
+
+        hashes.put("user:2", new ConcurrentHashMap<>(Collections.singletonMap("name", raw("jerry"))));
+        delays.put("user:1", Duration.ofMillis(50));
+        Map<String, Collection<String>> items = new LinkedHashMap<>();
+        items.put("user:1", Collections.singletonList("name"));
+        items.put("user:2", Collections.singletonList("name"));
+        Map<String, Map<String, Object>> result = async.hgetMulti(items).get(1, TimeUnit.SECONDS);
+        Assertions.assertEquals(Arrays.asList("user:1", "user:2"), new ArrayList<>(result.keySet()));
+        Assertions.assertEquals("jerry", result.get("user:2").get("name"));
+    }
+
+    private byte[] encodeAs(String key, Object value) {
+        String previous = SerializationContext.enter(key);
+        try {
+            return serializer.serialize(value);
+        } finally {
+            SerializationContext.exit(previous);
+        }
+    }
+
+    private void awaitEvent(String event) {
+        long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+        while (!events.contains(event) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        Assertions.assertTrue(events.contains(event), event + " " + events);
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String text(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * SET 的 EX / PX 参数换算成毫秒, 没有时为 null
+     */
+    private static Long pttl(SetArgs args) {
+        CommandArgs<String, String> built = new CommandArgs<>(StringCodec.UTF8);
+        args.build(built);
+        String[] parts = built.toCommandString().split(" ");
+        for (int i = 0; i + 1 < parts.length; i++) {
+            if ("EX".equalsIgnoreCase(parts[i])) {
+                return Long.parseLong(parts[i + 1]) * 1000;
+            }
+            if ("PX".equalsIgnoreCase(parts[i])) {
+                return Long.parseLong(parts[i + 1]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lettuce 的共享连接, reactive() 返回按方法名处理的 SET / GET / PTTL / HSET / HMSET / HGET / HMGET
+     */
+    @SuppressWarnings("unchecked")
+    private StatefulRedisConnection<ByteBuffer, ByteBuffer> connection() {
+        RedisReactiveCommands<ByteBuffer, ByteBuffer> commands = proxy(RedisReactiveCommands.class, (method, args) -> {
+            switch (method) {
+                case "set": {
+                    String key = text((ByteBuffer) args[0]);
+                    values.put(key, bytes((ByteBuffer) args[1]));
+                    Long pttl = args.length > 2 ? pttl((SetArgs) args[2]) : null;
+                    if (pttl != null) {
+                        pttls.put(key, pttl);
+                    } else {
+                        pttls.remove(key);
+                    }
+                    events.add("SET " + key);
+                    return Mono.just("OK");
+                }
+                case "get": {
+                    byte[] value = values.get(text((ByteBuffer) args[0]));
+                    return value == null ? Mono.empty() : Mono.just(ByteBuffer.wrap(value));
+                }
+                case "pttl": {
+                    String key = text((ByteBuffer) args[0]);
+                    Long pttl = pttls.get(key);
+                    return Mono.just(pttl != null ? pttl : values.containsKey(key) ? -1L : -2L);
+                }
+                case "hset": {
+                    String key = text((ByteBuffer) args[0]);
+                    hashes.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).put(text((ByteBuffer) args[1]), bytes((ByteBuffer) args[2]));
+                    events.add("HSET " + key);
+                    return Mono.just(true);
+                }
+                case "hmset": {
+                    String key = text((ByteBuffer) args[0]);
+                    Map<String, byte[]> hash = hashes.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+                    ((Map<ByteBuffer, ByteBuffer>) args[1]).forEach((field, value) -> hash.put(text(field), bytes(value)));
+                    events.add("HMSET " + key);
+                    return Mono.just("OK");
+                }
+                case "hget": {
+                    String key = text((ByteBuffer) args[0]);
+                    byte[] value = hashes.getOrDefault(key, Collections.emptyMap()).get(text((ByteBuffer) args[1]));
+                    return (value == null ? Mono.<ByteBuffer>empty() : Mono.just(ByteBuffer.wrap(value)))
+                            .delaySubscription(delays.getOrDefault(key, Duration.ZERO));
+                }
+                case "hmget": {
+                    String key = text((ByteBuffer) args[0]);
+                    Map<String, byte[]> hash = hashes.getOrDefault(key, Collections.emptyMap());
+                    List<KeyValue<ByteBuffer, ByteBuffer>> fields = new ArrayList<>();
+                    for (ByteBuffer field : (ByteBuffer[]) args[1]) {
+                        byte[] value = hash.get(text(field));
+                        fields.add(KeyValue.fromNullable(field, value == null ? null : ByteBuffer.wrap(value)));
+                    }
+                    return Flux.fromIterable(fields).delaySubscription(delays.getOrDefault(key, Duration.ZERO));
+                }
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+        return proxy(StatefulRedisConnection.class, (method, args) -> {
+            switch (method) {
+                case "reactive":
+                    return commands;
+                case "isOpen":
+                    return true;
+                default:
+                    return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.routing.SingleNodeRouter;
+import com.example.redis_demo.script.ScriptRegistry;
+import com.example.redis_demo.service.RedisLock;
+import com.example.redis_demo.support.Fakes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.redis_demo.support.Fakes.proxy;
+
+/**
+ * 用代理按 SHA 分派并逐条模拟锁脚本对 hash、fence 计数器、等待队列和期限的操作, 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class RedisLockServiceImplTest {
+
+    private static final String CHANNEL = "redis-lock:released";
+
+    private final Map<String, Map<String, Long>> hashes = new HashMap<>();
+
+    private final Map<String, Long> counters = new HashMap<>();
+
+    private final Map<String, LinkedList<String>> queues = new HashMap<>();
+
+    private final Map<String, Map<String, Long>> deadlines = new HashMap<>();
+
+    private final Map<String, Long> expireAt = new HashMap<>();
+
+    private final List<String> published = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger renewals = new AtomicInteger();
+
+    /**
+     * 最近一次排队写入的等待期限
+     */
+    private long lastDeadline;
+
+    private RedisLockServiceImpl service;
+
+    @AfterEach
+    public void destroy() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    public void testReentrantUnlockAndFencing() {
+        RedisLock lock = service(30000).getLock("order:1");
+        Assertions.assertTrue(lock.tryLock(0, 10, TimeUnit.SECONDS));
+        Assertions.assertTrue(lock.tryLock(0, 10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, lock.getFencingToken());
+        Assertions.assertTrue(hashes.get("lock:{order:1}").containsValue(2L));
+
+        // 重入两次要释放两次
+        lock.unlock();
+        Assertions.assertTrue(lock.isHeldByCurrentThread());
+        Assertions.assertTrue(published.isEmpty());
+        lock.unlock();
+        Assertions.assertFalse(lock.isHeldByCurrentThread());
+        Assertions.assertEquals(Collections.singletonList("lock:{order:1}"), published);
+        Assertions.assertThrows(IllegalMonitorStateException.class, lock::unlock);
+
+        // fence 计数器不随锁删除, 下一次持有的 token 更大
+        Assertions.assertTrue(lock.tryLock(0, 10, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, lock.getFencingToken());
+        lock.unlock();
+    }
+
+    @Test
+    public void testUnlockChecksOwner() throws Exception {
+        RedisLock lock = service(30000).getLock("order:2");
+        Assertions.assertTrue(lock.tryLock(0, 10, TimeUnit.SECONDS));
+
+        Assertions.assertFalse(inOtherThread(() -> lock.tryLock(0, 10, TimeUnit.SECONDS)));
+        Throwable error = inOtherThread(() -> {
+            try {
+                lock.unlock();
+                return null;
+            } catch (IllegalMonitorStateException e) {
+                return e;
+            }
+        });
+        Assertions.assertTrue(error instanceof IllegalMonitorStateException);
+        Assertions.assertTrue(lock.isHeldByCurrentThread());
+        Assertions.assertTrue(published.isEmpty());
+        lock.unlock();
+    }
+
+    @Test
+    public void testFairQueueDeadlines() throws Exception {
+        RedisLock lock = service(30000).getFairLock("order:3");
+        String queue = "lock:{order:3}:queue";
+        String timeouts = "lock:{order:3}:timeouts";
+
+        // 队首是期限未到的其它等待者, 锁空闲也不能插队; 放弃时退出队列
+        enqueue(queue, timeouts, "other", System.currentTimeMillis() + 10000);
+        Assertions.assertFalse(lock.tryLock(0, 10, TimeUnit.SECONDS));
+        Assertions.assertEquals(Collections.singletonList("other"), queues.get(queue));
+        Assertions.assertEquals(Collections.singleton("other"), deadlines.get(timeouts).keySet());
+        // 锁空闲时退出队列会通知下一个等待者
+        Assertions.assertEquals(Collections.singletonList("lock:{order:3}"), published);
+        published.clear();
+
+        // 队首期限已过时被移除, 后面的等待者获取
+        deadlines.get(timeouts).put("other", System.currentTimeMillis() - 1);
+        Assertions.assertTrue(lock.tryLock(0, 10, TimeUnit.SECONDS));
+        Assertions.assertTrue(queues.get(queue).isEmpty());
+        Assertions.assertTrue(deadlines.get(timeouts).isEmpty());
+
+        // 锁被持有时排队的期限为 fair-queue-timeout-ms, 放弃后出队且不发通知
+        long before = System.currentTimeMillis();
+        Assertions.assertFalse(inOtherThread(() -> lock.tryLock(0, 10, TimeUnit.SECONDS)));
+        Assertions.assertTrue(queues.get(queue).isEmpty());
+        Assertions.assertTrue(published.isEmpty());
+        Assertions.assertTrue(lastDeadline >= before + 5000);
+        lock.unlock();
+        Assertions.assertEquals(Collections.singletonList("lock:{order:3}"), published);
+    }
+
+    @Test
+    public void testWatchdogExtendsLease() throws Exception {
+        RedisLock lock = service(300).getLock("order:4");
+        // 不指定租期时由看门狗每 1/3 租期续期
+        Assertions.assertTrue(lock.tryLock(0, TimeUnit.SECONDS));
+        Thread.sleep(1000);
+        Assertions.assertTrue(lock.isHeldByCurrentThread());
+        Assertions.assertTrue(renewals.get() >= 5);
+
+        lock.unlock();
+        // 取消不打断正在执行的续期
+        Thread.sleep(50);
+        int stopped = renewals.get();
+        Thread.sleep(250);
+        Assertions.assertEquals(stopped, renewals.get());
+
+        // 指定租期时不续期
+        Assertions.assertTrue(lock.tryLock(0, 300, TimeUnit.MILLISECONDS));
+        Thread.sleep(400);
+        Assertions.assertEquals(stopped, renewals.get());
+        Assertions.assertFalse(lock.isHeldByCurrentThread());
+    }
+
+    private RedisLockServiceImpl service(long leaseMillis) {
+        SingleNodeRouter router = new SingleNodeRouter(template());
+        service = new RedisLockServiceImpl(router, new ScriptRegistry(router), leaseMillis, 5000, CHANNEL);
+        service.init();
+        return service;
+    }
+
+    private synchronized void enqueue(String queue, String timeouts, String owner, long deadline) {
+        queues.computeIfAbsent(queue, k -> new LinkedList<>()).add(owner);
+        deadlines.computeIfAbsent(timeouts, k -> new LinkedHashMap<>()).put(owner, deadline);
+    }
+
+    private static <T> T inOtherThread(Callable<T> task) throws Exception {
+        FutureTask<T> future = new FutureTask<>(task);
+        new Thread(future).start();
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private RedisTemplate<String, Object> template() {
+        RedisScriptingCommands scripting = proxy(RedisScriptingCommands.class, (method, args) -> {
+            if (!"evalSha".equals(method)) {
+                return null;
+            }
+            int numKeys = (Integer) args[2];
+            byte[][] keysAndArgs = (byte[][]) args[3];
+            List<String> keys = new ArrayList<>();
+            List<String> argv = new ArrayList<>();
+            for (int i = 0; i < keysAndArgs.length; i++) {
+                (i < numKeys ? keys : argv).add(text(keysAndArgs[i]));
+            }
+            return eval((String) args[0], keys, argv);
+        });
+        RedisHashCommands hashCommands = proxy(RedisHashCommands.class, (method, args) -> {
+            if ("hExists".equals(method)) {
+                synchronized (this) {
+                    purge(System.currentTimeMillis());
+                    Map<String, Long> hash = hashes.get(text((byte[]) args[0]));
+                    return hash != null && hash.containsKey(text((byte[]) args[1]));
+                }
+            }
+            return null;
+        });
+        RedisConnection connection = proxy(RedisConnection.class, (method, args) -> {
+            switch (method) {
+                case "scriptingCommands":
+                    return scripting;
+                case "hashCommands":
+                    return hashCommands;
+                default:
+                    return null;
+            }
+        });
+        return Fakes.template(connection);
+    }
+
+    private synchronized Object eval(String sha, List<String> keys, List<String> argv) {
+        long now = System.currentTimeMillis();
+        purge(now);
+        String key = keys.get(0);
+        Map<String, Long> hash = hashes.get(key);
+        if (sha.equals(RedisLockServiceImpl.ACQUIRE.getSha1())) {
+            List<Object> granted = grant(key, keys.get(1), argv.get(0), Long.parseLong(argv.get(1)), now);
+            return granted != null ? granted : Arrays.asList(0L, pttl(key, now));
+        }
+        if (sha.equals(RedisLockServiceImpl.FAIR_ACQUIRE.getSha1())) {
+            String owner = argv.get(0);
+            LinkedList<String> queue = queues.computeIfAbsent(keys.get(2), k -> new LinkedList<>());
+            Map<String, Long> timeouts = deadlines.computeIfAbsent(keys.get(3), k -> new LinkedHashMap<>());
+            long time = Long.parseLong(argv.get(3));
+            while (!queue.isEmpty() && timeouts.getOrDefault(queue.peek(), 0L) <= time) {
+                timeouts.remove(queue.poll());
+            }
+            if ((hash == null && (queue.isEmpty() || queue.peek().equals(owner))) || (hash != null && hash.containsKey(owner))) {
+                queue.remove(owner);
+                timeouts.remove(owner);
+                return grant(key, keys.get(1), owner, Long.parseLong(argv.get(1)), now);
+            }
+            if (!timeouts.containsKey(owner)) {
+                queue.add(owner);
+            }
+            lastDeadline = time + Long.parseLong(argv.get(2));
+            timeouts.put(owner, lastDeadline);
+            return Arrays.asList(0L, pttl(key, now));
+        }
+        if (sha.equals(RedisLockServiceImpl.FAIR_CANCEL.getSha1())) {
+            queues.getOrDefault(keys.get(1), new LinkedList<>()).remove(argv.get(0));
+            deadlines.getOrDefault(keys.get(2), new HashMap<>()).remove(argv.get(0));
+            if (hash == null) {
+                published.add(key);
+            }
+            return 1L;
+        }
+        if (sha.equals(RedisLockServiceImpl.RELEASE.getSha1())) {
+            if (hash == null || !hash.containsKey(argv.get(0))) {
+                return -1L;
+            }
+            long count = hash.merge(argv.get(0), -1L, Long::sum);
+            if (count > 0) {
+                expireAt.put(key, now + Long.parseLong(argv.get(1)));
+                return count;
+            }
+            hashes.remove(key);
+            expireAt.remove(key);
+            published.add(key);
+            return 0L;
+        }
+        if (sha.equals(RedisLockServiceImpl.RENEW.getSha1())) {
+            renewals.incrementAndGet();
+            if (hash == null || !hash.containsKey(argv.get(0))) {
+                return 0L;
+            }
+            expireAt.put(key, now + Long.parseLong(argv.get(1)));
+            return 1L;
+        }
+        throw new IllegalStateException("unexpected script " + sha);
+    }
+
+    /**
+     * 锁空闲时获取并递增 fence; 持有者重入时计数加一; 其它情况返回 null
+     */
+    private List<Object> grant(String key, String fenceKey, String owner, long lease, long now) {
+        Map<String, Long> hash = hashes.get(key);
+        if (hash == null) {
+            long token = counters.merge(fenceKey, 1L, Long::sum);
+            hash = new HashMap<>();
+            hash.put(owner, 1L);
+            hash.put("fence", token);
+            hashes.put(key, hash);
+        } else if (hash.containsKey(owner)) {
+            hash.merge(owner, 1L, Long::sum);
+        } else {
+            return null;
+        }
+        expireAt.put(key, now + lease);
+        return Arrays.asList(1L, hash.get("fence"));
+    }
+
+    private long pttl(String key, long now) {
+        Long at = expireAt.get(key);
+        return at == null ? -2 : at - now;
+    }
+
+    private void purge(long now) {
+        for (Iterator<Map.Entry<String, Long>> it = expireAt.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getValue() <= now) {
+                hashes.remove(entry.getKey());
+                it.remove();
+            }
+        }
+    }
+}
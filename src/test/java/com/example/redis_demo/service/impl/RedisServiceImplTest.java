@@ -0,0 +1,417 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.routing.ConsistentHashRouter;
+import com.example.redis_demo.routing.RedisRouter;
+import com.example.redis_demo.routing.SingleNodeRouter;
+import com.example.redis_demo.script.ScriptRegistry;
+import com.example.redis_demo.support.Fakes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.example.redis_demo.support.Fakes.proxy;
+
+/**
+ * 用代理模拟 SCAN 系列命令返回的游标、LRANGE 分页和计数器命令, 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class RedisServiceImplTest {
+
+    /**
+     * 命令 -> 已关闭的游标数; Jedis 的游标关闭时归还它占用的连接
+     */
+    private final Map<String, Integer> closed = new LinkedHashMap<>();
+
+    private final Map<String, Integer> opened = new LinkedHashMap<>();
+
+    private final List<String> ranges = new ArrayList<>();
+
+    private final List<String> stored = new ArrayList<>();
+
+    /**
+     * 经 RedisRouter.read 路由的键, 开启从节点读取时只有这些读取会按读取策略选择节点
+     */
+    private final List<String> reads = new ArrayList<>();
+
+    /**
+     * 计数器用的字符串和 hash, 键 -> 原始字节; 多个分片共用, 路由由 RedisRouter 决定
+     */
+    private final Map<String, byte[]> numbers = new ConcurrentHashMap<>();
+
+    /**
+     * 每条 MGET 的分片和键
+     */
+    private final List<String> mgets = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testScanStreamsCloseCursor() {
+        RedisServiceImpl service = service(new SingleNodeRouter(template()));
+
+        try (Stream<Map.Entry<Object, Object>> entries = service.hscan("user:1", "*", 10)) {
+            Assertions.assertEquals(Arrays.asList("name", "age"), entries.map(Map.Entry::getKey).collect(Collectors.toList()));
+            Assertions.assertEquals(0, closed.getOrDefault("hScan", 0));
+        }
+        try (Stream<Object> members = service.sscan("tags", "*", 10)) {
+            Assertions.assertEquals("a", members.findFirst().orElse(null));
+        }
+        try (Stream<ZSetOperations.TypedTuple<Object>> tuples = service.zscan("rank", "*", 10)) {
+            Assertions.assertEquals(2.0, tuples.skip(1).findFirst().map(ZSetOperations.TypedTuple::getScore).orElse(null));
+        }
+        try (Stream<String> keys = service.scan("user:*", 10)) {
+            Assertions.assertEquals(1, keys.limit(1).count());
+        }
+
+        // 读完或提前结束后关闭 Stream 都关闭游标
+        Assertions.assertEquals(opened, closed);
+        Assertions.assertEquals(Arrays.asList("hScan", "sScan", "zScan", "scan"), new ArrayList<>(closed.keySet()));
+
+        // 不关闭 Stream 时游标一直占用连接
+        Stream<Object> leaked = service.sscan("tags", "*", 10);
+        leaked.findFirst();
+        Assertions.assertEquals(2, opened.get("sScan"));
+        Assertions.assertEquals(1, closed.get("sScan"));
+        leaked.close();
+        Assertions.assertEquals(2, closed.get("sScan"));
+    }
+
+    @Test
+    public void testShardedScanClosesEveryCursor() {
+        RedisServiceImpl service = service(shardedRouter());
+        try (Stream<String> keys = service.scan("*", 10)) {
+            Assertions.assertEquals(4, keys.count());
+        }
+        Assertions.assertEquals(2, opened.get("scan"));
+        Assertions.assertEquals(2, closed.get("scan"));
+    }
+
+    @Test
+    public void testListScanReadsPagesLazily() {
+        RedisServiceImpl service = service(new SingleNodeRouter(template()));
+        try (Stream<Object> values = service.lscan("queue", 2)) {
+            Assertions.assertEquals(Arrays.asList("v0", "v1", "v2"), values.limit(3).collect(Collectors.toList()));
+        }
+        // 只读到需要的页, 每页一次 LRANGE, 读取之间不占用连接
+        Assertions.assertEquals(Arrays.asList("0..1", "2..3"), ranges);
+
+        ranges.clear();
+        try (Stream<Object> values = service.lscan("queue", 2)) {
+            Assertions.assertEquals(5, values.count());
+        }
+        Assertions.assertEquals(Arrays.asList("0..1", "2..3", "4..5"), ranges);
+    }
+
+    @Test
+    public void testStoreRejectsKeysOnOtherShards() {
+        ConsistentHashRouter router = shardedRouter();
+        RedisServiceImpl service = service(router);
+        String other = otherShard(router, "a");
+        List<String> crossShard = Arrays.asList("a", other);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.zunionstore("a", crossShard));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.zinterstore("a", crossShard));
+        // 目标键也要和源键在同一分片
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.zunionstore(other, Collections.singletonList("a")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.zinterstore("a", Collections.emptyList()));
+        Assertions.assertTrue(stored.isEmpty());
+
+        List<String> tagged = Arrays.asList("{rank}:a", "{rank}:" + other);
+        Assertions.assertEquals(3, service.zunionstore("{rank}:sum", tagged));
+        Assertions.assertEquals(3, service.zinterstore("{rank}:both", tagged));
+        Assertions.assertEquals(Arrays.asList("zUnionStore {rank}:sum", "zInterStore {rank}:both"), stored);
+    }
+
+    @Test
+    public void testMultiKeyReadsUseReadRouting() {
+        ConsistentHashRouter router = shardedRouter();
+        RedisServiceImpl service = service(recording(router));
+        String other = otherShard(router, "a");
+
+        Assertions.assertEquals(Arrays.asList("a", "{a}:1"), service.mget(Arrays.asList("a", "{a}:1")));
+        Assertions.assertEquals(Collections.singletonList("a"), reads);
+
+        // 跨分片时每个分片一次读取, 结果按请求顺序拼回
+        reads.clear();
+        Assertions.assertEquals(Arrays.asList(other, "a", "{a}:1"), service.mget(Arrays.asList(other, "a", "{a}:1")));
+        Assertions.assertEquals(Arrays.asList("a", other), reads.stream().sorted().collect(Collectors.toList()));
+
+        reads.clear();
+        Assertions.assertTrue(service.hHasKey("user:1", "name"));
+        Assertions.assertEquals(Collections.singletonList("user:1"), reads);
+    }
+
+    @Test
+    public void testCountersReturnNewValue() {
+        RedisServiceImpl service = service(recording(new SingleNodeRouter(numberTemplate("node"))));
+        Assertions.assertEquals(3, service.incrAndGet("visits", 3));
+        Assertions.assertEquals(1, service.incrAndGet("visits", -2));
+        Assertions.assertEquals(1.5, service.incrAndGetFloat("ratio", 1.5));
+        Assertions.assertEquals(1.25, service.incrAndGetFloat("ratio", -0.25));
+        Assertions.assertEquals(2, service.hincrLong("user:1", "logins", 2));
+        Assertions.assertEquals(7, service.hincrLong("user:1", "logins", 5));
+        Assertions.assertEquals("7", text(numbers.get("user:1.logins")));
+        // 写入总是发往主节点, 不经过读取路由
+        Assertions.assertTrue(reads.isEmpty());
+
+        Assertions.assertArrayEquals(new long[]{1, 0}, service.mgetLongs("visits", "missing"));
+        Assertions.assertEquals(Collections.singletonList("visits"), reads);
+    }
+
+    @Test
+    public void testMgetLongsFallsBackToValueSerializer() {
+        RedisServiceImpl service = service(new SingleNodeRouter(numberTemplate("node")));
+        // set() 经值序列化器写入, 不是 ASCII 数字, 读取时用值序列化器解码
+        service.set("total", 42L);
+        Assertions.assertFalse(Character.isDigit(numbers.get("total")[0]));
+        service.incrAndGet("visits", 5);
+        Assertions.assertArrayEquals(new long[]{42, 5, 0}, service.mgetLongs("total", "visits", "missing"));
+        Assertions.assertArrayEquals(new long[0], service.mgetLongs());
+
+        service.set("name", "tom");
+        Assertions.assertThrows(IllegalStateException.class, () -> service.mgetLongs("name"));
+    }
+
+    @Test
+    public void testShardedMgetLongsKeepsOrder() {
+        Map<String, RedisTemplate<String, Object>> shards = new LinkedHashMap<>();
+        shards.put("first", numberTemplate("first"));
+        shards.put("second", numberTemplate("second"));
+        ConsistentHashRouter router = new ConsistentHashRouter(shards, 160);
+        RedisServiceImpl service = service(recording(router));
+        String other = otherShard(router, "a");
+        service.incrAndGet("a", 1);
+        service.incrAndGet(other, 2);
+        service.incrAndGet("{a}:3", 3);
+        String[] keys = {other, "a", "missing", "{a}:3"};
+
+        Assertions.assertArrayEquals(new long[]{2, 1, 0, 3}, service.mgetLongs(keys));
+        // 每个分片一条 MGET, 组内保持请求顺序; 每组经读取路由选择节点
+        Map<String, String> expected = new LinkedHashMap<>();
+        for (String key : keys) {
+            String shard = shards.entrySet().stream().filter(entry -> entry.getValue() == router.forKey(key))
+                    .map(Map.Entry::getKey).findFirst().orElseThrow(IllegalStateException::new);
+            expected.merge(shard, shard + " " + key, (group, next) -> group + next.substring(shard.length()));
+        }
+        Assertions.assertEquals(new HashSet<>(expected.values()), new HashSet<>(mgets));
+        Assertions.assertEquals(2, reads.size());
+        Assertions.assertNotEquals(router.indexOf(reads.get(0)), router.indexOf(reads.get(1)));
+    }
+
+    private static RedisServiceImpl service(RedisRouter router) {
+        return new RedisServiceImpl(router, new ScriptRegistry(router), new FanOut(2));
+    }
+
+    private static String otherShard(RedisRouter router, String key) {
+        String other = "b";
+        for (int i = 0; router.indexOf(other) == router.indexOf(key); i++) {
+            other = "b" + i;
+        }
+        return other;
+    }
+
+    /**
+     * 记录 read 的键, 其余委托给 router
+     */
+    private RedisRouter recording(RedisRouter router) {
+        return new RedisRouter() {
+            @Override
+            public int size() {
+                return router.size();
+            }
+
+            @Override
+            public int indexOf(String key) {
+                return router.indexOf(key);
+            }
+
+            @Override
+            public RedisTemplate<String, Object> template(int index) {
+                return router.template(index);
+            }
+
+            @Override
+            public Stream<String> scan(ScanOptions options) {
+                return router.scan(options);
+            }
+
+            @Override
+            public <T> T read(String key, Function<RedisTemplate<String, Object>, T> operation) {
+                synchronized (reads) {
+                    reads.add(key);
+                }
+                return router.read(key, operation);
+            }
+        };
+    }
+
+    private ConsistentHashRouter shardedRouter() {
+        Map<String, RedisTemplate<String, Object>> shards = new LinkedHashMap<>();
+        shards.put("10.0.0.1:6379", template());
+        shards.put("10.0.0.2:6379", template());
+        return new ConsistentHashRouter(shards, 160);
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private <T> Cursor<T> cursor(String command, List<T> items) {
+        opened.merge(command, 1, Integer::sum);
+        Iterator<T> iterator = items.iterator();
+        boolean[] isClosed = {false};
+        return proxy(Cursor.class, (method, args) -> {
+            switch (method) {
+                case "hasNext":
+                    return iterator.hasNext();
+                case "next":
+                    return iterator.next();
+                case "close":
+                    if (!isClosed[0]) {
+                        isClosed[0] = true;
+                        closed.merge(command, 1, Integer::sum);
+                    }
+                    return null;
+                case "isClosed":
+                    return isClosed[0];
+                case "getCursorId":
+                case "getPosition":
+                    return 0L;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * INCRBY / INCRBYFLOAT / HINCRBY / MGET 和值的 SET, 数字按 ASCII 存储; 值用 JDK 序列化, 不是 ASCII 数字
+     */
+    private RedisTemplate<String, Object> numberTemplate(String name) {
+        RedisStringCommands strings = proxy(RedisStringCommands.class, (method, args) -> {
+            switch (method) {
+                case "incrBy": {
+                    String key = text((byte[]) args[0]);
+                    if (args[1] instanceof Double) {
+                        double value = Double.parseDouble(text(numbers.getOrDefault(key, raw("0")))) + (Double) args[1];
+                        numbers.put(key, raw(String.valueOf(value)));
+                        return value;
+                    }
+                    long value = Long.parseLong(text(numbers.getOrDefault(key, raw("0")))) + (Long) args[1];
+                    numbers.put(key, raw(String.valueOf(value)));
+                    return value;
+                }
+                case "mGet": {
+                    StringBuilder command = new StringBuilder(name);
+                    List<byte[]> values = new ArrayList<>();
+                    for (byte[] key : (byte[][]) args[0]) {
+                        command.append(' ').append(text(key));
+                        values.add(numbers.get(text(key)));
+                    }
+                    mgets.add(command.toString());
+                    return values;
+                }
+                default:
+                    return null;
+            }
+        });
+        RedisHashCommands hashes = proxy(RedisHashCommands.class, (method, args) -> {
+            if ("hIncrBy".equals(method)) {
+                String field = text((byte[]) args[0]) + "." + text((byte[]) args[1]);
+                long value = Long.parseLong(text(numbers.getOrDefault(field, raw("0")))) + (Long) args[2];
+                numbers.put(field, raw(String.valueOf(value)));
+                return value;
+            }
+            return null;
+        });
+        RedisConnection connection = proxy(RedisConnection.class, (method, args) -> {
+            switch (method) {
+                case "stringCommands":
+                    return strings;
+                case "hashCommands":
+                    return hashes;
+                case "set":
+                    numbers.put(text((byte[]) args[0]), (byte[]) args[1]);
+                    return true;
+                default:
+                    return null;
+            }
+        });
+        RedisTemplate<String, Object> template = Fakes.template(connection);
+        template.setValueSerializer(new JdkSerializationRedisSerializer());
+        return template;
+    }
+
+    private RedisTemplate<String, Object> template() {
+        RedisConnection connection = proxy(RedisConnection.class, (method, args) -> {
+            switch (method) {
+                case "hScan":
+                    return cursor(method, Arrays.asList(new AbstractMap.SimpleEntry<>(raw("name"), raw("tom")),
+                            new AbstractMap.SimpleEntry<>(raw("age"), raw("18"))));
+                case "sScan":
+                    return cursor(method, Arrays.asList(raw("a"), raw("b")));
+                case "zScan":
+                    return cursor(method, Arrays.<RedisZSetCommands.Tuple>asList(new DefaultTuple(raw("x"), 1.0), new DefaultTuple(raw("y"), 2.0)));
+                case "scan":
+                    return cursor(method, Arrays.asList(raw("user:1"), raw("user:2")));
+                case "lRange": {
+                    long start = (Long) args[1];
+                    long end = Math.min((Long) args[2], 4);
+                    ranges.add(start + ".." + args[2]);
+                    List<byte[]> page = new ArrayList<>();
+                    for (long i = start; i <= end; i++) {
+                        page.add(raw("v" + i));
+                    }
+                    return page;
+                }
+                case "mGet": {
+                    // 值为键本身, 用于检查拼回的顺序
+                    List<byte[]> values = new ArrayList<>();
+                    for (byte[] key : (byte[][]) args[0]) {
+                        values.add(key);
+                    }
+                    return values;
+                }
+                case "hExists":
+                    return true;
+                case "zUnionStore":
+                case "zInterStore":
+                    stored.add(method + " " + text((byte[]) args[0]));
+                    return 3L;
+                default:
+                    return null;
+            }
+        });
+        RedisTemplate<String, Object> template = Fakes.template(connection);
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(new StringRedisSerializer());
+        return template;
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.redis_demo.service.impl;
+
+import com.example.redis_demo.config.RedisConfig;
+import com.example.redis_demo.routing.SingleNodeRouter;
+import com.example.redis_demo.script.ScriptRegistry;
+import com.example.redis_demo.support.Fakes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.redis_demo.support.Fakes.proxy;
+
+/**
+ * 用代理模拟 HMGET、租约的 SET NX PX 和两个脚本(写入、释放租约), 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public class SingleFlightLoaderTest {
+
+    private final Jackson2JsonRedisSerializer<Object> json = RedisConfig.createJacksonRedisSerializer();
+
+    private final Map<String, Map<String, byte[]>> hashes = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> ttls = new ConcurrentHashMap<>();
+
+    private final Map<String, String> leases = new ConcurrentHashMap<>();
+
+    private final AtomicInteger writes = new AtomicInteger();
+
+    private final List<String> invalidated = new ArrayList<>();
+
+    @Test
+    public void testSingleFlightInProcess() throws Exception {
+        SingleFlightLoader loader = loader(Executors.newSingleThreadExecutor(), 0);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(CompletableFuture.supplyAsync(() -> loader.getOrLoad("user:1", 60000, () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                sleep(100);
+                return "tom";
+            })));
+        }
+        Assertions.assertTrue(started.await(1, TimeUnit.SECONDS));
+        for (CompletableFuture<Object> result : results) {
+            Assertions.assertEquals("tom", result.get(1, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(1, writes.get());
+        // 实际 TTL = 逻辑过期 + stale, 写入后释放租约并失效一级缓存
+        Assertions.assertEquals(60000 + 30000, ttls.get("user:1"));
+        Assertions.assertTrue(leases.isEmpty());
+        Assertions.assertEquals("tom", loader.getOrLoad("user:1", 60000, () -> "other"));
+        Assertions.assertTrue(invalidated.contains("user:1"));
+    }
+
+    @Test
+    public void testLeaseHeldByOtherNode() {
+        SingleFlightLoader loader = loader(Executors.newSingleThreadExecutor(), 0);
+        leases.put("user:2:lease", "other-node");
+        // 持有租约的节点稍后写入, 本节点等待其结果而不自己加载
+        CompletableFuture.runAsync(() -> {
+            sleep(50);
+            put("user:2", "from-other", 10, System.currentTimeMillis() + 60000);
+        });
+        AtomicInteger loads = new AtomicInteger();
+        Assertions.assertEquals("from-other", loader.getOrLoad("user:2", 60000, () -> {
+            loads.incrementAndGet();
+            return "mine";
+        }));
+        Assertions.assertEquals(0, loads.get());
+        Assertions.assertEquals("other-node", leases.get("user:2:lease"));
+
+        // 超过 leaseWaitMillis 仍未写入时自行加载, 不释放别人的租约
+        leases.put("user:3:lease", "other-node");
+        Assertions.assertEquals("mine", loader.getOrLoad("user:3", 60000, () -> "mine"));
+        Assertions.assertEquals("other-node", leases.get("user:3:lease"));
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        ExecutorService refresher = Executors.newSingleThreadExecutor();
+        SingleFlightLoader loader = loader(refresher, 0);
+        put("user:4", "old", 10, System.currentTimeMillis() - 1000);
+
+        // 逻辑过期后直接返回旧值, 后台刷新
+        Assertions.assertEquals("old", loader.getOrLoad("user:4", 60000, () -> "new"));
+        refresher.shutdown();
+        Assertions.assertTrue(refresher.awaitTermination(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, writes.get());
+        Assertions.assertEquals("new", json.deserialize(hashes.get("user:4").get(SingleFlightLoader.VALUE)));
+        Assertions.assertEquals("new", loader.getOrLoad("user:4", 60000, () -> "newer"));
+    }
+
+    @Test
+    public void testXFetchRefreshesEarly() throws Exception {
+        // 加载耗时远大于剩余时间, beta 很大时几乎必然提前刷新
+        ExecutorService refresher = Executors.newSingleThreadExecutor();
+        SingleFlightLoader eager = loader(refresher, 1_000_000);
+        put("user:5", "old", 10000, System.currentTimeMillis() + 60000);
+        Assertions.assertEquals("old", eager.getOrLoad("user:5", 60000, () -> "new"));
+        refresher.shutdown();
+        Assertions.assertTrue(refresher.awaitTermination(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, writes.get());
+
+        // beta = 0 关闭提前刷新, 逻辑过期前不刷新
+        ExecutorService idle = Executors.newSingleThreadExecutor();
+        SingleFlightLoader disabled = loader(idle, 0);
+        put("user:6", "old", 10000, System.currentTimeMillis() + 60000);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals("old", disabled.getOrLoad("user:6", 60000, () -> "new"));
+        }
+        idle.shutdown();
+        Assertions.assertTrue(idle.awaitTermination(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, writes.get());
+    }
+
+    private SingleFlightLoader loader(ExecutorService refresher, double beta) {
+        SingleNodeRouter router = new SingleNodeRouter(template());
+        return new SingleFlightLoader(router, new ScriptRegistry(router), key -> {
+        }, invalidated::add, refresher, 30000, 10000, 200, beta);
+    }
+
+    private void put(String key, Object value, long delta, long expireAt) {
+        Map<String, byte[]> hash = new HashMap<>();
+        hash.put(SingleFlightLoader.VALUE, json.serialize(value));
+        hash.put(SingleFlightLoader.DELTA, json.serialize(delta));
+        hash.put(SingleFlightLoader.EXPIRE_AT, json.serialize(expireAt));
+        hashes.put(key, hash);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private RedisTemplate<String, Object> template() {
+        RedisStringCommands strings = proxy(RedisStringCommands.class, (method, args) -> {
+            if ("set".equals(method)) {
+                return leases.putIfAbsent(text((byte[]) args[0]), text((byte[]) args[1])) == null;
+            }
+            return null;
+        });
+        RedisScriptingCommands scripting = proxy(RedisScriptingCommands.class, (method, args) -> {
+            if (!"evalSha".equals(method)) {
+                return null;
+            }
+            String sha = (String) args[0];
+            byte[][] keysAndArgs = (byte[][]) args[3];
+            String key = text(keysAndArgs[0]);
+            if (sha.equals(SingleFlightLoader.WRITE.getSha1())) {
+                Map<String, byte[]> hash = new HashMap<>();
+                hash.put(SingleFlightLoader.VALUE, keysAndArgs[2]);
+                hash.put(SingleFlightLoader.DELTA, keysAndArgs[3]);
+                hash.put(SingleFlightLoader.EXPIRE_AT, keysAndArgs[4]);
+                hashes.put(key, hash);
+                ttls.put(key, Long.parseLong(text(keysAndArgs[1])));
+                writes.incrementAndGet();
+                return 1L;
+            }
+            if (sha.equals(SingleFlightLoader.RELEASE_LEASE.getSha1())) {
+                return leases.remove(key, text(keysAndArgs[1])) ? 1L : 0L;
+            }
+            throw new IllegalStateException("unexpected script " + sha);
+        });
+        RedisConnection connection = proxy(RedisConnection.class, (method, args) -> {
+            switch (method) {
+                case "stringCommands":
+                    return strings;
+                case "scriptingCommands":
+                    return scripting;
+                case "hMGet": {
+                    Map<String, byte[]> hash = hashes.getOrDefault(text((byte[]) args[0]), new HashMap<>());
+                    List<byte[]> values = new ArrayList<>();
+                    for (byte[] field : (byte[][]) args[1]) {
+                        values.add(hash.get(text(field)));
+                    }
+                    return values;
+                }
+                default:
+                    return null;
+            }
+        });
+        RedisTemplate<String, Object> template = Fakes.template(connection);
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(json);
+        template.setHashValueSerializer(json);
+        return template;
+    }
+}
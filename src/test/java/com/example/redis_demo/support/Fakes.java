@@ -0,0 +1,73 @@
+package com.example.redis_demo.support;
+
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.lang.reflect.Proxy;
+import java.util.function.Supplier;
+
+/**
+ * 测试用的 JDK 动态代理替身, 按方法名分派, 不连接 redis
+ *
+ * @author dengR
+ * @date 2022/4/27 20:31
+ */
+public final class Fakes {
+
+    private Fakes() {
+    }
+
+    /**
+     * 按方法名处理调用, 返回 null 时 boolean 方法返回 false
+     */
+    public interface Handler {
+        Object invoke(String method, Object[] args) throws Exception;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result = handler.invoke(method.getName(), args);
+            if (result == null && method.getReturnType() == boolean.class) {
+                return false;
+            }
+            return result;
+        });
+    }
+
+    /**
+     * @param connection 每次 getConnection 返回的连接
+     * @return 键和值都按字符串序列化的 RedisTemplate
+     */
+    public static RedisTemplate<String, Object> template(RedisConnection connection) {
+        return template(() -> connection);
+    }
+
+    /**
+     * @param connections 每次 getConnection 调用一次; 返回集群连接时 getClusterConnection 也从这里获取
+     * @return 键和值都按字符串序列化的 RedisTemplate
+     */
+    public static RedisTemplate<String, Object> template(Supplier<RedisConnection> connections) {
+        RedisConnectionFactory factory = proxy(RedisConnectionFactory.class, (method, args) -> {
+            switch (method) {
+                case "getConnection":
+                    return connections.get();
+                case "getClusterConnection": {
+                    RedisConnection connection = connections.get();
+                    return connection instanceof RedisClusterConnection ? connection : null;
+                }
+                default:
+                    return null;
+            }
+        });
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new StringRedisSerializer());
+        template.afterPropertiesSet();
+        return template;
+    }
+}